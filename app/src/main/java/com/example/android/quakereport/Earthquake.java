@@ -6,24 +6,44 @@ package com.example.android.quakereport;
 
 public class Earthquake {
 
+    private String mId;
     private double mMagnitude;
     private String mLocation;
     private long mTimeInMilliseconds;
     private String mUrl;
+    private long mUpdatedInMilliseconds;
+    private double mLatitude;
+    private double mLongitude;
+    private double mDepth;
 
     /**
      * Constructs a new {@link Earthquake}
      *
-     * @param magnitude          is the magnitude of the earthquake
-     * @param location           is the location where the earthquake happened
-     * @param timeInMilliseconds is the time in milliseconds when the earthquake happened from JANUARY 1970 midnight
-     * @param url                is the USGS url for the earthquake
+     * @param id                    is the USGS event id of the earthquake
+     * @param magnitude             is the magnitude of the earthquake
+     * @param location              is the location where the earthquake happened
+     * @param timeInMilliseconds    is the time in milliseconds when the earthquake happened from JANUARY 1970 midnight
+     * @param url                   is the USGS url for the earthquake
+     * @param updatedInMilliseconds is the time in milliseconds when USGS last updated the event
+     * @param latitude              is the latitude of the epicenter in degrees, or NaN if unknown
+     * @param longitude             is the longitude of the epicenter in degrees, or NaN if unknown
+     * @param depth                 is the depth of the hypocenter in kilometers, or NaN if unknown
      */
-    public Earthquake(double magnitude, String location, long timeInMilliseconds, String url) {
+    public Earthquake(String id, double magnitude, String location, long timeInMilliseconds, String url,
+                      long updatedInMilliseconds, double latitude, double longitude, double depth) {
+        this.mId = id;
         this.mMagnitude = magnitude;
         this.mLocation = location;
         this.mTimeInMilliseconds = timeInMilliseconds;
         this.mUrl = url;
+        this.mUpdatedInMilliseconds = updatedInMilliseconds;
+        this.mLatitude = latitude;
+        this.mLongitude = longitude;
+        this.mDepth = depth;
+    }
+
+    public String getId() {
+        return mId;
     }
 
     public double getMagnitude() {
@@ -41,4 +61,27 @@ public class Earthquake {
     public String getUrl() {
         return mUrl;
     }
-}
\ No newline at end of file
+
+    public long getUpdatedInMilliseconds() {
+        return mUpdatedInMilliseconds;
+    }
+
+    public double getLatitude() {
+        return mLatitude;
+    }
+
+    public double getLongitude() {
+        return mLongitude;
+    }
+
+    public double getDepth() {
+        return mDepth;
+    }
+
+    /**
+     * Returns true if the feature came with the coordinates of its epicenter
+     */
+    public boolean hasCoordinates() {
+        return !Double.isNaN(mLatitude) && !Double.isNaN(mLongitude);
+    }
+}
@@ -17,37 +17,61 @@ package com.example.android.quakereport;
 
 import android.app.LoaderManager;
 import android.app.LoaderManager.LoaderCallbacks;
+import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
+import android.content.IntentFilter;
 import android.content.Loader;
 import android.content.SharedPreferences;
 import android.net.ConnectivityManager;
-import android.net.NetworkInfo;
-import android.net.Uri;
 import android.os.Bundle;
 import android.preference.PreferenceManager;
 import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.text.format.DateUtils;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
-import android.widget.AdapterView;
-import android.widget.ListView;
 import android.widget.ProgressBar;
 import android.widget.TextView;
 
-import java.util.ArrayList;
-import java.util.List;
-
-public class EarthquakeActivity extends AppCompatActivity implements LoaderCallbacks<List<Earthquake>> {
+public class EarthquakeActivity extends AppCompatActivity implements LoaderCallbacks<EarthquakeTable>,
+        SharedPreferences.OnSharedPreferenceChangeListener {
 
     public static final String LOG_TAG = EarthquakeActivity.class.getName();
     public static final String USGS_REQUEST_URL = "http://earthquake.usgs.gov/fdsnws/event/1/query";
 
     private static final int EARTHQUAKE_LOADER_ID = 1;
     private EarthquakeAdapter mAdapter;
-    private ListView mEarthquakeListView;
+    private RecyclerView mEarthquakeRecyclerView;
     private TextView mEmptyStateTextView;
+    private TextView mStatusTextView;
     private ProgressBar mProgressBar;
+    private EarthquakePager mPager;
+    private EarthquakeLiveFeed mLiveFeed;
+    private boolean mQueryChanged;
+
+    /**
+     * True if the device was offline when the query was started, so that it is started again,
+     * possibly with the live feed or the pager, once the device is back online
+     */
+    private boolean mOffline;
+
+    private final BroadcastReceiver mConnectivityReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            if (!EarthquakeSyncScheduler.isConnected(context)) {
+                return;
+            }
+            if (mOffline) {
+                startQuery(true);
+            } else if (mPager != null && mPager.hasFailed()) {
+                // Pages that failed while the connection was down are requested again
+                retryPages();
+            }
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -55,46 +79,130 @@ public class EarthquakeActivity extends AppCompatActivity implements LoaderCallb
         setContentView(R.layout.earthquake_activity);
 
         mEmptyStateTextView = (TextView) findViewById(R.id.empty_view);
+        mStatusTextView = (TextView) findViewById(R.id.status_view);
         mProgressBar = (ProgressBar) findViewById(R.id.loading_spinner);
-        mEarthquakeListView = (ListView) findViewById(R.id.list);
-
-        mEarthquakeListView.setEmptyView(mEmptyStateTextView);
+        mEarthquakeRecyclerView = (RecyclerView) findViewById(R.id.list);
 
-        // Create a new {@link ArrayAdapter} of earthquakes
-        mAdapter = new EarthquakeAdapter(EarthquakeActivity.this, new ArrayList<Earthquake>());
+        // While the pager shows a failed request, either view retries it when tapped
+        View.OnClickListener retryListener = new View.OnClickListener() {
+            @Override
+            public void onClick(View view) {
+                if (mPager != null && mPager.hasFailed()) {
+                    retryPages();
+                }
+            }
+        };
+        mEmptyStateTextView.setOnClickListener(retryListener);
+        mStatusTextView.setOnClickListener(retryListener);
 
-        // Set the adapter on the {@link ListView}
-        // so the list can be populated in the user interface
-        mEarthquakeListView.setAdapter(mAdapter);
+        EarthquakeMetrics.setEnabled(EarthquakePreferences.isMetricsEnabled(this));
 
-        mEarthquakeListView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+        // Restart the query when the settings change, see onStart()
+        PreferenceManager.getDefaultSharedPreferences(this).registerOnSharedPreferenceChangeListener(this);
 
-            @Override
-            public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
+        // Keep the store fresh in the background, so the next launch is mostly a local read
+        EarthquakeSyncScheduler.ensureScheduled(this);
 
-                Earthquake currentEarthquake = mAdapter.getItem(position);
-                String url = currentEarthquake.getUrl();
+        // Create a new {@link EarthquakeAdapter} which opens the detail screen of a clicked earthquake
+        mAdapter = new EarthquakeAdapter(new EarthquakeAdapter.OnItemClickListener() {
 
-                //Create an intent to view an url
-                Intent browserIntent = new Intent(Intent.ACTION_VIEW);
-                browserIntent.setData(Uri.parse(url));
-                if (browserIntent.resolveActivity(getPackageManager()) != null)
-                    startActivity(browserIntent);
+            @Override
+            public void onItemClick(EarthquakeTable table, int index) {
+                EarthquakeDetailActivity.start(EarthquakeActivity.this, table, index);
             }
         });
 
-        //check if the device is connected to internet
-        ConnectivityManager connectivityManager = (ConnectivityManager) getSystemService(Context.CONNECTIVITY_SERVICE);
-        NetworkInfo networkInfo = connectivityManager.getActiveNetworkInfo();
-        if (networkInfo != null && networkInfo.isConnected()) {
-            LoaderManager loaderManager = getLoaderManager();
-            loaderManager.initLoader(EARTHQUAKE_LOADER_ID, null, this);
-        } else {
-            //hide the progress bar
-            mProgressBar.setVisibility(View.GONE);
+        // Set the adapter on the {@link RecyclerView}
+        // so the list can be populated in the user interface
+        mEarthquakeRecyclerView.setLayoutManager(new LinearLayoutManager(this));
+        mEarthquakeRecyclerView.setHasFixedSize(true);
+        mEarthquakeRecyclerView.setAdapter(mAdapter);
+
+        // Fetch the details of the rows on and near the screen, so that opening one is instant
+        EarthquakeDetailPrefetcher.attach(mEarthquakeRecyclerView, mAdapter);
+
+        // Offline the loader answers from the store, so the list never waits for the network
+        startQuery(false);
+    }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+        // Refresh what was shown offline as soon as the device is back online
+        registerReceiver(mConnectivityReceiver, new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+        if (mQueryChanged) {
+            // The settings changed while another screen was in front
+            mQueryChanged = false;
+            startQuery(true);
+        } else if (mLiveFeed != null) {
+            mLiveFeed.start();
+        }
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        unregisterReceiver(mConnectivityReceiver);
+        // Only poll the live feed while it is on screen
+        if (mLiveFeed != null) {
+            mLiveFeed.stop();
+        }
+    }
 
-            // Set empty state text to display "No Internet Connectivity".
-            mEmptyStateTextView.setText(R.string.no_internet);
+    @Override
+    public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+        if (key.equals(getString(R.string.settings_min_magnitude_key))
+                || key.equals(getString(R.string.settings_limit_key))
+                || key.equals(getString(R.string.settings_order_by_key))
+                || key.equals(getString(R.string.settings_feed_key))) {
+            mQueryChanged = true;
+        } else if (key.equals(getString(R.string.settings_sync_interval_key))
+                || key.equals(getString(R.string.settings_sync_unmetered_key))
+                || key.equals(getString(R.string.settings_sync_charging_key))) {
+            EarthquakeSyncScheduler.schedule(this);
+        } else if (key.equals(getString(R.string.settings_metrics_key))) {
+            EarthquakeMetrics.setEnabled(EarthquakePreferences.isMetricsEnabled(this));
+        }
+    }
+
+    /**
+     * Starts loading the query of the current settings. A query that only narrows or reorders
+     * a result already in memory is answered by the loader without going to the network.
+     *
+     * @param restart is true if the settings changed since the last query was started
+     */
+    private void startQuery(boolean restart) {
+        EarthquakeMetrics.startSpan(EarthquakeMetrics.FIRST_ROW);
+        LoaderManager loaderManager = getLoaderManager();
+        mOffline = !EarthquakeSyncScheduler.isConnected(this);
+        mStatusTextView.setVisibility(View.GONE);
+
+        // The live feed and the pager only work online, offline their events come from the
+        // store through the loader like any other query
+        if (EarthquakePreferences.isLiveFeed(this) && !mOffline) {
+            // The latest earthquakes come from a small summary feed that is polled for changes
+            loaderManager.destroyLoader(EARTHQUAKE_LOADER_ID);
+            releasePager();
+            startLiveFeed();
+            return;
+        }
+        releaseLiveFeed();
+
+        int limit = EarthquakePreferences.getLimit(this);
+        if (limit > EarthquakePager.PAGE_SIZE && !mOffline && !EarthquakeShardFetcher.canShard(
+                EarthquakePreferences.getLoaderUrl(this), EarthquakePreferences.getShards(this))) {
+            // Large results are fetched page by page as the list is scrolled, except those
+            // large enough for the loader to fetch as parallel shards
+            loaderManager.destroyLoader(EARTHQUAKE_LOADER_ID);
+            startPaging(limit);
+            return;
+        }
+
+        releasePager();
+        if (restart) {
+            loaderManager.restartLoader(EARTHQUAKE_LOADER_ID, null, this);
+        } else {
+            loaderManager.initLoader(EARTHQUAKE_LOADER_ID, null, this);
         }
     }
 
@@ -104,6 +212,13 @@ public class EarthquakeActivity extends AppCompatActivity implements LoaderCallb
         return true;
     }
 
+    @Override
+    public boolean onPrepareOptionsMenu(Menu menu) {
+        // The debug screen is only offered while metrics are being recorded
+        menu.findItem(R.id.action_metrics).setVisible(EarthquakeMetrics.isEnabled());
+        return super.onPrepareOptionsMenu(menu);
+    }
+
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
         int id = item.getItemId();
@@ -111,50 +226,233 @@ public class EarthquakeActivity extends AppCompatActivity implements LoaderCallb
             Intent settingsIntent = new Intent(this, SettingsActivity.class);
             startActivity(settingsIntent);
             return true;
+        } else if (id == R.id.action_search) {
+            startActivity(new Intent(this, SearchActivity.class));
+            return true;
+        } else if (id == R.id.action_map) {
+            startActivity(new Intent(this, MapActivity.class));
+            return true;
+        } else if (id == R.id.action_statistics) {
+            startActivity(new Intent(this, StatisticsActivity.class));
+            return true;
+        } else if (id == R.id.action_import) {
+            startActivity(new Intent(this, ImportActivity.class));
+            return true;
+        } else if (id == R.id.action_metrics) {
+            startActivity(new Intent(this, MetricsActivity.class));
+            return true;
         }
         return super.onOptionsItemSelected(item);
     }
 
     @Override
-    public Loader<List<Earthquake>> onCreateLoader(int id, Bundle args) {
+    public Loader<EarthquakeTable> onCreateLoader(int id, Bundle args) {
+
+        // While the background sync is on it keeps the store fresh, so a load mostly reads it
+        return new EarthquakeLoader(EarthquakeActivity.this,
+                EarthquakePreferences.getLoaderUrl(this),
+                EarthquakeSyncScheduler.getStoreMaxAge(this));
+    }
+
+    /**
+     * Shows the query page by page instead of through the loader, reusing the pager kept
+     * across a configuration change if it still matches the settings
+     *
+     * @param limit is the total number of earthquakes to page through
+     */
+    private void startPaging(int limit) {
+        String queryUrl = EarthquakePreferences.buildQueryUri(this).toString();
+        Object retained = getLastCustomNonConfigurationInstance();
+        EarthquakePager pager = mPager != null ? mPager
+                : retained instanceof EarthquakePager ? (EarthquakePager) retained : null;
+        if (pager == null || !pager.getQueryUrl().equals(queryUrl) || pager.getTotalLimit() != limit) {
+            if (pager != null) {
+                pager.release();
+            }
+            pager = new EarthquakePager(this, queryUrl, limit);
+        }
+        mPager = pager;
+        mPager.setListener(new EarthquakePager.Listener() {
+            @Override
+            public void onRowsInserted(int positionStart, int itemCount) {
+                mAdapter.notifyItemRangeInserted(positionStart, itemCount);
+                onPagesChanged();
+            }
+
+            @Override
+            public void onRowsChanged(int positionStart, int itemCount) {
+                mAdapter.notifyItemRangeChanged(positionStart, itemCount);
+            }
+
+            @Override
+            public void onLoadFailed() {
+                onPagesChanged();
+            }
+        });
+        mAdapter.setPager(mPager);
+
+        if (mPager.hasLoadedFirstPage()) {
+            onPagesChanged();
+        } else {
+            mPager.loadFirstPage();
+        }
+    }
+
+    private void onPagesChanged() {
+        boolean failed = mPager.hasFailed();
+        boolean isEmpty = mPager.getCount() == 0;
+
+        // Keep the progress bar up until the first page arrives or fails
+        mProgressBar.setVisibility(isEmpty && !failed && !mPager.hasLoadedFirstPage()
+                ? View.VISIBLE : View.GONE);
+
+        // Set empty state text to display "No earthquakes found", or the failure of the first page
+        mEmptyStateTextView.setText(failed ? R.string.pages_failed : R.string.no_earthquakes);
+        mEmptyStateTextView.setVisibility(isEmpty && (failed || mPager.hasLoadedFirstPage())
+                ? View.VISIBLE : View.GONE);
+
+        // A later page that failed is reported above the rows already shown
+        mStatusTextView.setText(R.string.pages_more_failed);
+        mStatusTextView.setVisibility(failed && !isEmpty ? View.VISIBLE : View.GONE);
+    }
+
+    /**
+     * Requests the pages that failed again and shows that they are loading
+     */
+    private void retryPages() {
+        mPager.retry();
+        onPagesChanged();
+    }
+
+    /**
+     * Shows the live summary feed of the current settings, reusing the feed kept across a
+     * configuration change if it still matches them
+     */
+    private void startLiveFeed() {
+        String period = EarthquakePreferences.getFeed(this);
+        double minMagnitude = EarthquakePreferences.getMinMagnitude(this);
+        Object retained = getLastCustomNonConfigurationInstance();
+        EarthquakeLiveFeed liveFeed = mLiveFeed != null ? mLiveFeed
+                : retained instanceof EarthquakeLiveFeed ? (EarthquakeLiveFeed) retained : null;
+        if (liveFeed == null || !liveFeed.getPeriod().equals(period)
+                || liveFeed.getMinMagnitude() != minMagnitude) {
+            if (liveFeed != null) {
+                liveFeed.release();
+            }
+            liveFeed = new EarthquakeLiveFeed(this, period, minMagnitude);
+        }
+        mLiveFeed = liveFeed;
+        mLiveFeed.setListener(new EarthquakeLiveFeed.Listener() {
+            @Override
+            public void onFeedChanged(EarthquakeTable table) {
+                onLoadFinished(null, table);
+            }
 
-        SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(this);
-        String minMagnitude = sharedPrefs.getString(
-                getString(R.string.settings_min_magnitude_key),
-                getString(R.string.settings_min_magnitude_default));
-        String limit = sharedPrefs.getString(
-                getString(R.string.settings_limit_key),
-                getString(R.string.settings_limit_default));
-        String orderBy = sharedPrefs.getString(getString(R.string.settings_order_by_key), getString(R.string.settings_order_by_default));
+            @Override
+            public void onPollFailed() {
+                if (mLiveFeed.getTable() == null) {
+                    onLoadFinished(null, null);
+                }
+            }
+        });
 
-        Uri baseUri = Uri.parse(USGS_REQUEST_URL);
-        Uri.Builder uriBuilder = baseUri.buildUpon();
+        // Paint what the feed already holds, later polls only push the rows that changed
+        EarthquakeTable table = mLiveFeed.getTable();
+        if (table != null) {
+            onLoadFinished(null, table);
+        } else {
+            mAdapter.swapTable(null);
+            mEmptyStateTextView.setVisibility(View.GONE);
+            mProgressBar.setVisibility(View.VISIBLE);
+        }
+        mLiveFeed.start();
+    }
 
-        uriBuilder.appendQueryParameter("format", "geojson");
-        uriBuilder.appendQueryParameter("eventtype", "earthquake");
-        uriBuilder.appendQueryParameter("minmag", minMagnitude);
-        uriBuilder.appendQueryParameter("limit", limit);
-        uriBuilder.appendQueryParameter("orderby", orderBy);
+    private void releasePager() {
+        if (mPager != null) {
+            mPager.release();
+            mPager = null;
+        }
+    }
 
-        return new EarthquakeLoader(EarthquakeActivity.this, uriBuilder.toString());
+    private void releaseLiveFeed() {
+        if (mLiveFeed != null) {
+            mLiveFeed.release();
+            mLiveFeed = null;
+        }
     }
 
     @Override
-    public void onLoadFinished(Loader<List<Earthquake>> loader, List<Earthquake> earthquakeList) {
+    public Object onRetainCustomNonConfigurationInstance() {
+        // Keep the loaded pages or the live feed across a rotation
+        return mPager != null ? mPager : mLiveFeed;
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        PreferenceManager.getDefaultSharedPreferences(this).unregisterOnSharedPreferenceChangeListener(this);
+        if (mPager != null) {
+            mPager.setListener(null);
+            if (!isChangingConfigurations()) {
+                mPager.release();
+            }
+        }
+        if (mLiveFeed != null) {
+            mLiveFeed.setListener(null);
+            if (!isChangingConfigurations()) {
+                mLiveFeed.release();
+            }
+        }
+    }
+
+    @Override
+    public void onLoadFinished(Loader<EarthquakeTable> loader, EarthquakeTable earthquakeTable) {
 
         //hide the progress bar
         mProgressBar.setVisibility(View.GONE);
 
-        // Set empty state text to display "No earthquakes found".
-        mEmptyStateTextView.setText(R.string.no_earthquakes);
+        boolean offline = mOffline;
+        if (loader instanceof EarthquakeLoader) {
+            EarthquakeLoader earthquakeLoader = (EarthquakeLoader) loader;
+            offline = earthquakeLoader.isOffline();
+            showStatus(earthquakeLoader.getFetchedAt(), offline);
+        }
+
+        // Set empty state text to display "No earthquakes found", or "No Internet
+        // Connectivity" if nothing was stored before the device went offline.
+        mEmptyStateTextView.setText(offline ? R.string.no_internet : R.string.no_earthquakes);
+        boolean isEmpty = earthquakeTable == null || earthquakeTable.size() == 0;
+        mEmptyStateTextView.setVisibility(isEmpty ? View.VISIBLE : View.GONE);
+
+        // Only the rows that changed since the last result are rebound
+        mAdapter.swapTable(earthquakeTable);
+    }
 
-        mAdapter.clear();
-        if (earthquakeList != null && !earthquakeList.isEmpty())
-            mAdapter.addAll(earthquakeList);
+    /**
+     * Tells how old the shown earthquakes are if they could not be refreshed, or are older
+     * than the background sync should keep them
+     *
+     * @param fetchedAt is when the shown result was fetched from USGS, or 0 if it never was
+     * @param offline   is true if the result could not be refreshed because the device was offline
+     */
+    private void showStatus(long fetchedAt, boolean offline) {
+        long now = System.currentTimeMillis();
+        CharSequence age = DateUtils.getRelativeTimeSpanString(fetchedAt, now, DateUtils.MINUTE_IN_MILLIS);
+        if (offline) {
+            mStatusTextView.setText(fetchedAt > 0 ? getString(R.string.status_offline, age)
+                    : getString(R.string.status_offline_never));
+        } else if (fetchedAt > 0 && now - fetchedAt >= EarthquakeSyncScheduler.getStoreMaxAge(this)) {
+            mStatusTextView.setText(getString(R.string.status_stale, age));
+        } else {
+            mStatusTextView.setVisibility(View.GONE);
+            return;
+        }
+        mStatusTextView.setVisibility(View.VISIBLE);
     }
 
     @Override
-    public void onLoaderReset(Loader<List<Earthquake>> loader) {
-        mAdapter.clear();
+    public void onLoaderReset(Loader<EarthquakeTable> loader) {
+        mAdapter.swapTable(null);
     }
 }
\ No newline at end of file
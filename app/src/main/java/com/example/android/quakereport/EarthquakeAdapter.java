@@ -2,140 +2,277 @@ package com.example.android.quakereport;
 
 import android.content.Context;
 import android.graphics.drawable.GradientDrawable;
+import android.os.AsyncTask;
 import android.support.v4.content.ContextCompat;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.ArrayAdapter;
 import android.widget.TextView;
 
-import java.text.DecimalFormat;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.List;
-
 /**
  * Created by Jayabrata Dhakai on 11/19/2016.
  */
 
-public class EarthquakeAdapter extends ArrayAdapter<Earthquake> {
+public class EarthquakeAdapter extends RecyclerView.Adapter<EarthquakeAdapter.ViewHolder> {
+
+    /**
+     * Colors of the magnitude circle, indexed by the floor of the magnitude
+     */
+    private static final int[] MAGNITUDE_COLOR_RESOURCE_IDS = {
+            R.color.magnitude1,
+            R.color.magnitude1,
+            R.color.magnitude2,
+            R.color.magnitude3,
+            R.color.magnitude4,
+            R.color.magnitude5,
+            R.color.magnitude6,
+            R.color.magnitude7,
+            R.color.magnitude8,
+            R.color.magnitude9,
+            R.color.magnitude10plus
+    };
+
+    /**
+     * Interface definition for a callback to be invoked when an earthquake in the list is clicked.
+     */
+    public interface OnItemClickListener {
+        void onItemClick(EarthquakeTable table, int index);
+    }
+
+    private EarthquakeTable mTable = EarthquakeTable.empty();
+    private final OnItemClickListener mOnItemClickListener;
+    private EarthquakePager mPager;
 
-    private final String LOCATION_SEPARATOR = "of ";
+    /**
+     * Incremented for every new table, so a diff that finishes after a newer one was requested is dropped
+     */
+    private int mGeneration;
+
+    public EarthquakeAdapter(OnItemClickListener onItemClickListener) {
+        this.mOnItemClickListener = onItemClickListener;
+    }
+
+    /**
+     * Creates an {@link EarthquakeFormatter} with the colors and strings of the list items
+     *
+     * @param context used to resolve the resources
+     * @return a new {@link EarthquakeFormatter}
+     */
+    public static EarthquakeFormatter createFormatter(Context context) {
+        int[] magnitudeColors = new int[MAGNITUDE_COLOR_RESOURCE_IDS.length];
+        for (int i = 0; i < MAGNITUDE_COLOR_RESOURCE_IDS.length; i++) {
+            magnitudeColors[i] = ContextCompat.getColor(context, MAGNITUDE_COLOR_RESOURCE_IDS[i]);
+        }
+        return new EarthquakeFormatter(magnitudeColors, context.getString(R.string.near_the));
+    }
 
-    public EarthquakeAdapter(Context context, List<Earthquake> earthquakes) {
-        super(context, 0, earthquakes);
+    @Override
+    public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        View listItemView = LayoutInflater.from(parent.getContext())
+                .inflate(R.layout.earthquake_list_item, parent, false);
+        return new ViewHolder(listItemView);
     }
 
     @Override
-    public View getView(int position, View convertView, ViewGroup parent) {
-        View listItemView = convertView;
-        if (listItemView == null) {
-            listItemView = LayoutInflater.from(getContext()).inflate(R.layout.earthquake_list_item, parent, false);
+    public void onBindViewHolder(ViewHolder holder, int position) {
+        if (mPager == null) {
+            holder.bind(mTable, position);
+            EarthquakeMetrics.endSpan(EarthquakeMetrics.FIRST_ROW);
+            return;
         }
 
-        Earthquake currentEarthquake = getItem(position);
+        mPager.onPositionBound(position);
+        EarthquakeTable page = mPager.getPage(position);
+        if (page != null) {
+            holder.bind(page, mPager.getIndexInPage(position));
+            EarthquakeMetrics.endSpan(EarthquakeMetrics.FIRST_ROW);
+        } else {
+            // The page of this row was dropped from memory and is being fetched again, or it
+            // came back without this row
+            holder.bindPlaceholder();
+        }
+    }
 
-        DecimalFormat formatter = new DecimalFormat("0.0");
-        String magnitude = formatter.format(currentEarthquake.getMagnitude());
-        TextView magnitudeTextView = (TextView) listItemView.findViewById(R.id.magnitude);
-        magnitudeTextView.setText(magnitude);
+    @Override
+    public int getItemCount() {
+        return mPager != null ? mPager.getCount() : mTable.size();
+    }
 
-        // Set the proper background color on the magnitude circle.
-        // Fetch the background from the TextView, which is a GradientDrawable.
-        GradientDrawable magnitudeCircle = (GradientDrawable) magnitudeTextView.getBackground();
+    /**
+     * Returns the USGS event id of the row at a position, or null if its page is not in memory
+     *
+     * @param position is the adapter position of the row
+     */
+    public String getId(int position) {
+        if (mPager == null) {
+            return mTable.getId(position);
+        }
+        EarthquakeTable page = mPager.getPage(position);
+        return page != null ? page.getId(mPager.getIndexInPage(position)) : null;
+    }
 
-        // Get the appropriate background color based on the current earthquake magnitude
-        int magnitudeColor = getMagnitudeColor(currentEarthquake.getMagnitude());
+    /**
+     * Returns when USGS last updated the earthquake of the row at a position, or 0 if its page
+     * is not in memory
+     *
+     * @param position is the adapter position of the row
+     */
+    public long getUpdatedInMilliseconds(int position) {
+        if (mPager == null) {
+            return mTable.getUpdatedInMilliseconds(position);
+        }
+        EarthquakeTable page = mPager.getPage(position);
+        return page != null ? page.getUpdatedInMilliseconds(mPager.getIndexInPage(position)) : 0;
+    }
 
-        // Set the color on the magnitude circle
-        magnitudeCircle.setColor(magnitudeColor);
+    /**
+     * Shows the rows of a {@link EarthquakePager}. The pager reports its changes through
+     * its own listener, so no diff is computed in this mode.
+     *
+     * @param pager is the pager to show, or null to leave paging mode
+     */
+    public void setPager(EarthquakePager pager) {
+        mGeneration++;
+        mPager = pager;
+        mTable = EarthquakeTable.empty();
+        notifyDataSetChanged();
+    }
 
-        // Get the current earthquake location
-        String location = currentEarthquake.getLocation();
+    /**
+     * Replaces the rows of the adapter. The difference to the current rows is computed on a
+     * background thread, and only the rows that were inserted, removed or changed are rebound.
+     *
+     * @param table is the new table, or null to clear the list
+     */
+    public void swapTable(EarthquakeTable table) {
+        final EarthquakeTable oldTable = mTable;
+        final EarthquakeTable newTable = table != null ? table : EarthquakeTable.empty();
+        final int generation = ++mGeneration;
 
-        //separate the location to locationOffset and primaryLocation
-        String locationOffset = "";
-        String primaryLocation = "";
-        if (location.contains(LOCATION_SEPARATOR)) {
-            String[] parts = location.split(LOCATION_SEPARATOR);
-            locationOffset = parts[0] + LOCATION_SEPARATOR;
-            primaryLocation = parts[1];
-        } else {
-            locationOffset = getContext().getString(R.string.near_the);
-            primaryLocation = location;
+        if (mPager != null || oldTable.size() == 0 || newTable.size() == 0) {
+            // Nothing to diff against, a plain change notification is cheaper
+            mPager = null;
+            mTable = newTable;
+            notifyDataSetChanged();
+            return;
         }
 
-        // Set the text on the location offset
-        TextView locationOffsetTextView = (TextView) listItemView.findViewById(R.id.location_offset);
-        locationOffsetTextView.setText(locationOffset);
+        new AsyncTask<Void, Void, DiffUtil.DiffResult>() {
+            @Override
+            protected DiffUtil.DiffResult doInBackground(Void... params) {
+                return DiffUtil.calculateDiff(new EarthquakeDiffCallback(oldTable, newTable));
+            }
 
-        // Set the text on the primary location
-        TextView primaryLocationTextView = (TextView) listItemView.findViewById(R.id.primary_location);
-        primaryLocationTextView.setText(primaryLocation);
+            @Override
+            protected void onPostExecute(DiffUtil.DiffResult diffResult) {
+                if (generation != mGeneration) {
+                    return;
+                }
+                mTable = newTable;
+                diffResult.dispatchUpdatesTo(EarthquakeAdapter.this);
+            }
+        }.execute();
+    }
+
+    /**
+     * Compares two tables by USGS event id
+     */
+    private static class EarthquakeDiffCallback extends DiffUtil.Callback {
 
-        // Make a Date object from the current earthquake time in milliseconds
-        Date dateObject = new Date(currentEarthquake.getTimeInMilliseconds());
+        private final EarthquakeTable mOldTable;
+        private final EarthquakeTable mNewTable;
 
-        // Make a SimpleDateFormat object of the required date format
-        SimpleDateFormat dateFormat = new SimpleDateFormat("LLL dd, yyyy");
-        String formattedDate = dateFormat.format(dateObject);
-        // Set the text on the date
-        TextView dateTextView = (TextView) listItemView.findViewById(R.id.date);
-        dateTextView.setText(formattedDate);
+        EarthquakeDiffCallback(EarthquakeTable oldTable, EarthquakeTable newTable) {
+            this.mOldTable = oldTable;
+            this.mNewTable = newTable;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return mOldTable.size();
+        }
 
-        // Make a SimpleDateFormat object of the required time format
-        SimpleDateFormat timeFormat = new SimpleDateFormat("h:mm a");
-        String formattedTime = timeFormat.format(dateObject);
-        // Set the text on the time
-        TextView timeTextView = (TextView) listItemView.findViewById(R.id.time);
-        timeTextView.setText(formattedTime);
+        @Override
+        public int getNewListSize() {
+            return mNewTable.size();
+        }
 
-        return listItemView;
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return mOldTable.getId(oldItemPosition).equals(mNewTable.getId(newItemPosition));
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            // USGS bumps "updated" whenever anything about the event changes
+            return mOldTable.getUpdatedInMilliseconds(oldItemPosition)
+                    == mNewTable.getUpdatedInMilliseconds(newItemPosition)
+                    && mOldTable.getDate(oldItemPosition).equals(mNewTable.getDate(newItemPosition))
+                    && mOldTable.getTimeLabel(oldItemPosition).equals(mNewTable.getTimeLabel(newItemPosition));
+        }
     }
 
     /**
-     * Return an integer value of the corresponding magnitude color
-     *
-     * @param magnitude is the magnitude of the earthquake
-     * @return integer value of the corresponding magnitude color
+     * Caches the views of a list item, so they are only looked up when the item is inflated
      */
-    private int getMagnitudeColor(double magnitude) {
-
-        int magnitudeColorResourceId;
-        int magnitudeFloor = (int) Math.floor(magnitude);
-        switch (magnitudeFloor) {
-            case 0:
-            case 1:
-                magnitudeColorResourceId = R.color.magnitude1;
-                break;
-            case 2:
-                magnitudeColorResourceId = R.color.magnitude2;
-                break;
-            case 3:
-                magnitudeColorResourceId = R.color.magnitude3;
-                break;
-            case 4:
-                magnitudeColorResourceId = R.color.magnitude4;
-                break;
-            case 5:
-                magnitudeColorResourceId = R.color.magnitude5;
-                break;
-            case 6:
-                magnitudeColorResourceId = R.color.magnitude6;
-                break;
-            case 7:
-                magnitudeColorResourceId = R.color.magnitude7;
-                break;
-            case 8:
-                magnitudeColorResourceId = R.color.magnitude8;
-                break;
-            case 9:
-                magnitudeColorResourceId = R.color.magnitude9;
-                break;
-            default:
-                magnitudeColorResourceId = R.color.magnitude10plus;
-                break;
+    class ViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
+
+        final TextView magnitudeTextView;
+        final GradientDrawable magnitudeCircle;
+        final TextView locationOffsetTextView;
+        final TextView primaryLocationTextView;
+        final TextView dateTextView;
+        final TextView timeTextView;
+
+        private EarthquakeTable mBoundTable;
+        private int mBoundIndex;
+
+        ViewHolder(View listItemView) {
+            super(listItemView);
+            magnitudeTextView = (TextView) listItemView.findViewById(R.id.magnitude);
+            // The background of the magnitude TextView is a GradientDrawable
+            magnitudeCircle = (GradientDrawable) magnitudeTextView.getBackground();
+            locationOffsetTextView = (TextView) listItemView.findViewById(R.id.location_offset);
+            primaryLocationTextView = (TextView) listItemView.findViewById(R.id.primary_location);
+            dateTextView = (TextView) listItemView.findViewById(R.id.date);
+            timeTextView = (TextView) listItemView.findViewById(R.id.time);
+            listItemView.setOnClickListener(this);
+        }
+
+        /**
+         * Binds a row; everything shown was formatted off the UI thread by EarthquakeFormatter
+         */
+        void bind(EarthquakeTable table, int index) {
+            mBoundTable = table;
+            mBoundIndex = index;
+
+            magnitudeTextView.setText(table.getMagnitudeLabel(index));
+
+            // Set the proper background color on the magnitude circle
+            magnitudeCircle.setColor(table.getMagnitudeColor(index));
+
+            locationOffsetTextView.setText(table.getLocationOffset(index));
+            primaryLocationTextView.setText(table.getPrimaryLocation(index));
+            dateTextView.setText(table.getDate(index));
+            timeTextView.setText(table.getTimeLabel(index));
+        }
+
+        void bindPlaceholder() {
+            mBoundTable = null;
+            magnitudeTextView.setText(null);
+            locationOffsetTextView.setText(null);
+            primaryLocationTextView.setText(null);
+            dateTextView.setText(null);
+            timeTextView.setText(null);
+        }
+
+        @Override
+        public void onClick(View v) {
+            if (mBoundTable != null && mOnItemClickListener != null) {
+                mOnItemClickListener.onItemClick(mBoundTable, mBoundIndex);
+            }
         }
-        return ContextCompat.getColor(getContext(), magnitudeColorResourceId);
     }
 }
@@ -0,0 +1,216 @@
+package com.example.android.quakereport;
+
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.appwidget.AppWidgetManager;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.support.v4.app.NotificationCompat;
+import android.text.TextUtils;
+import android.widget.RemoteViews;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Detects significant earthquakes as they arrive in the {@link EarthquakeStore} and drives the
+ * home screen widget and the notifications from them.
+ * <p>
+ * The detector keeps a watermark of the latest "updated" time it has looked at and runs after
+ * every sync. Each run only reads the rows updated past the watermark through the index on
+ * that column, and compares their ids with the few it notified about recently, so its cost
+ * follows the number of new events and not the size of the store. The widget is drawn from
+ * the small state kept here, so updating it never queries the store.
+ */
+public final class EarthquakeAlerts {
+
+    private static final int NOTIFICATION_ID = 1;
+
+    /**
+     * An event that reaches the store later than this after it happened, e.g. through a
+     * backfill of older results, is shown in the widget but not notified
+     */
+    private static final long MAX_ALERT_AGE_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    /**
+     * Number of notified event ids remembered, so that a revision of an event is not notified again
+     */
+    private static final int MAX_NOTIFIED_IDS = 50;
+
+    private static final String PREFS_NAME = "earthquake_alerts";
+    private static final String PREF_WATERMARK = "watermark";
+    private static final String PREF_NOTIFIED_IDS = "notified_ids";
+    private static final String PREF_LATEST_ID = "latest_id";
+    private static final String PREF_LATEST_MAGNITUDE = "latest_magnitude";
+    private static final String PREF_LATEST_PLACE = "latest_place";
+    private static final String PREF_LATEST_TIME = "latest_time";
+
+    /**
+     * Create a private constructor because no one should ever create a {@link EarthquakeAlerts} object.
+     */
+    private EarthquakeAlerts() {
+    }
+
+    /**
+     * Looks at the earthquakes stored since the last run, updating the widget and notifying
+     * about the significant ones. Called on a background thread after each sync.
+     *
+     * @param context is used to read the settings and open the store
+     */
+    public static synchronized void checkForNewEvents(Context context) {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        EarthquakeStore store = new EarthquakeStore(context);
+        long watermark = prefs.getLong(PREF_WATERMARK, 0);
+        long latestUpdate = store.getLatestUpdate();
+        if (latestUpdate <= watermark) {
+            return;
+        }
+
+        double threshold = EarthquakePreferences.getAlertMagnitude(context);
+        EarthquakeFormatter formatter = EarthquakeAdapter.createFormatter(context);
+        SharedPreferences.Editor editor = prefs.edit().putLong(PREF_WATERMARK, latestUpdate);
+
+        // On the first run everything in the store is old news, so only pick the event the
+        // widget shows and start watching from here
+        if (watermark == 0) {
+            EarthquakeTable latest = store.query(threshold, Long.MIN_VALUE, "time", 1, formatter);
+            if (latest.size() > 0) {
+                putLatest(editor, latest, 0);
+            }
+            editor.apply();
+            updateWidgets(context);
+            return;
+        }
+
+        EarthquakeTable arrived = store.queryUpdated(watermark, latestUpdate, threshold, formatter);
+        List<String> notifiedIds = new ArrayList<>(Arrays.asList(
+                TextUtils.split(prefs.getString(PREF_NOTIFIED_IDS, ""), ",")));
+        String latestId = prefs.getString(PREF_LATEST_ID, null);
+        long latestTime = prefs.getLong(PREF_LATEST_TIME, 0);
+        long now = System.currentTimeMillis();
+        boolean widgetChanged = false;
+        List<Integer> alerts = new ArrayList<>();
+
+        for (int i = 0; i < arrived.size(); i++) {
+            String id = arrived.getId(i);
+            long time = arrived.getTimeInMilliseconds(i);
+
+            // A newer event, or a revision of the one shown, replaces the event in the widget
+            if (time > latestTime || id.equals(latestId)) {
+                putLatest(editor, arrived, i);
+                latestId = id;
+                latestTime = time;
+                widgetChanged = true;
+            }
+            if (now - time <= MAX_ALERT_AGE_MILLIS && !notifiedIds.contains(id)) {
+                alerts.add(i);
+                notifiedIds.add(id);
+            }
+        }
+
+        if (!alerts.isEmpty()) {
+            if (notifiedIds.size() > MAX_NOTIFIED_IDS) {
+                notifiedIds = notifiedIds.subList(notifiedIds.size() - MAX_NOTIFIED_IDS, notifiedIds.size());
+            }
+            editor.putString(PREF_NOTIFIED_IDS, TextUtils.join(",", notifiedIds));
+        }
+        editor.apply();
+
+        if (widgetChanged) {
+            updateWidgets(context);
+        }
+        if (!alerts.isEmpty() && EarthquakePreferences.isNotificationsEnabled(context)) {
+            notify(context, arrived, alerts);
+        }
+    }
+
+    /**
+     * Redraws every widget from the last significant event detected
+     *
+     * @param context is used to reach the widget service
+     */
+    public static void updateWidgets(Context context) {
+        AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(context);
+        int[] widgetIds = appWidgetManager.getAppWidgetIds(
+                new ComponentName(context, EarthquakeWidgetProvider.class));
+        if (widgetIds.length == 0) {
+            return;
+        }
+
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        RemoteViews views = new RemoteViews(context.getPackageName(), R.layout.earthquake_widget);
+        if (prefs.contains(PREF_LATEST_ID)) {
+            EarthquakeFormatter formatter = EarthquakeAdapter.createFormatter(context);
+            double magnitude = Double.longBitsToDouble(prefs.getLong(PREF_LATEST_MAGNITUDE, 0));
+            long time = prefs.getLong(PREF_LATEST_TIME, 0);
+            views.setTextViewText(R.id.widget_magnitude, formatter.formatMagnitude(magnitude));
+            views.setTextColor(R.id.widget_magnitude, formatter.getMagnitudeColor(magnitude));
+            views.setTextViewText(R.id.widget_place, prefs.getString(PREF_LATEST_PLACE, ""));
+            views.setTextViewText(R.id.widget_time,
+                    formatter.formatDate(time) + " " + formatter.formatTime(time));
+        } else {
+            views.setTextViewText(R.id.widget_magnitude, "");
+            views.setTextViewText(R.id.widget_place, context.getString(R.string.widget_no_earthquakes));
+            views.setTextViewText(R.id.widget_time, "");
+        }
+        views.setOnClickPendingIntent(R.id.widget, getListIntent(context));
+        appWidgetManager.updateAppWidget(widgetIds, views);
+    }
+
+    private static void putLatest(SharedPreferences.Editor editor, EarthquakeTable table, int index) {
+        editor.putString(PREF_LATEST_ID, table.getId(index))
+                .putLong(PREF_LATEST_MAGNITUDE, Double.doubleToLongBits(table.getMagnitude(index)))
+                .putString(PREF_LATEST_PLACE, table.getLocation(index))
+                .putLong(PREF_LATEST_TIME, table.getTimeInMilliseconds(index));
+    }
+
+    /**
+     * Posts one notification for the new significant events, replacing the previous one
+     */
+    private static void notify(Context context, EarthquakeTable arrived, List<Integer> alerts) {
+        int strongest = alerts.get(0);
+        for (int index : alerts) {
+            if (arrived.getMagnitude(index) > arrived.getMagnitude(strongest)) {
+                strongest = index;
+            }
+        }
+
+        NotificationCompat.Builder builder = new NotificationCompat.Builder(context)
+                .setSmallIcon(R.mipmap.ic_launcher)
+                .setContentIntent(getListIntent(context))
+                .setAutoCancel(true)
+                .setCategory(NotificationCompat.CATEGORY_EVENT)
+                .setWhen(arrived.getTimeInMilliseconds(strongest))
+                .setShowWhen(true);
+        if (alerts.size() == 1) {
+            builder.setContentTitle(context.getString(R.string.alert_title,
+                    arrived.getMagnitudeLabel(strongest)))
+                    .setContentText(arrived.getLocation(strongest));
+        } else {
+            NotificationCompat.InboxStyle style = new NotificationCompat.InboxStyle();
+            for (int index : alerts) {
+                style.addLine(context.getString(R.string.alert_line,
+                        arrived.getMagnitudeLabel(index), arrived.getLocation(index)));
+            }
+            builder.setContentTitle(context.getResources().getQuantityString(R.plurals.alert_title_multiple,
+                    alerts.size(), alerts.size()))
+                    .setContentText(context.getString(R.string.alert_line,
+                            arrived.getMagnitudeLabel(strongest), arrived.getLocation(strongest)))
+                    .setNumber(alerts.size())
+                    .setStyle(style);
+        }
+
+        NotificationManager notificationManager =
+                (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+        notificationManager.notify(NOTIFICATION_ID, builder.build());
+    }
+
+    private static PendingIntent getListIntent(Context context) {
+        Intent intent = new Intent(context, EarthquakeActivity.class);
+        return PendingIntent.getActivity(context, 0, intent, PendingIntent.FLAG_UPDATE_CURRENT);
+    }
+}
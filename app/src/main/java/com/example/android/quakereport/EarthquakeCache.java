@@ -0,0 +1,153 @@
+package com.example.android.quakereport;
+
+import android.net.Uri;
+import android.os.SystemClock;
+import android.util.LruCache;
+
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Process-wide memory cache of parsed and formatted query results, keyed by the normalized USGS query url.
+ * <p>
+ * This is the first tier in front of the {@link EarthquakeStore}: it lets the list be painted
+ * straight away after a rotation or a return from {@link SettingsActivity}, while the loader
+ * decides whether the result is still fresh or has to be revalidated in the background.
+ */
+public final class EarthquakeCache {
+
+    /**
+     * Upper bound on the number of earthquakes held across all cached queries
+     */
+    private static final int MAX_CACHED_EARTHQUAKES = 20000;
+
+    private static final LruCache<String, Entry> sMemoryCache =
+            new LruCache<String, Entry>(MAX_CACHED_EARTHQUAKES) {
+                @Override
+                protected int sizeOf(String key, Entry entry) {
+                    return Math.max(1, entry.getTable().size());
+                }
+            };
+
+    /**
+     * Create a private constructor because no one should ever create a {@link EarthquakeCache} object.
+     */
+    private EarthquakeCache() {
+    }
+
+    /**
+     * Returns a canonical form of a USGS query url, with the query parameters sorted by name,
+     * so that equivalent queries share one cache entry and one sync state.
+     *
+     * @param url is the USGS query url
+     * @return the normalized url
+     */
+    public static String normalize(String url) {
+        Uri uri = Uri.parse(url);
+        Uri.Builder builder = uri.buildUpon().clearQuery();
+        for (String name : new TreeSet<>(uri.getQueryParameterNames())) {
+            for (String value : uri.getQueryParameters(name)) {
+                builder.appendQueryParameter(name, value);
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Returns the cached result of a query, or null if it is not in memory
+     *
+     * @param key is the normalized query url
+     */
+    public static Entry get(String key) {
+        return sMemoryCache.get(key);
+    }
+
+    /**
+     * Answers a query from any fresh cached result that is known to hold all of its earthquakes,
+     * e.g. a higher minimum magnitude or a different order over a result that was not cut off
+     *
+     * @param query             is the query to answer
+     * @param ttlInMilliseconds is the time to live of a cached result
+     * @return the answer, as old as the result it was answered from, or null if no cached
+     * result can answer the query
+     */
+    public static Entry answerLocally(EarthquakeQuery query, long ttlInMilliseconds) {
+        for (Map.Entry<String, Entry> cached : sMemoryCache.snapshot().entrySet()) {
+            Entry entry = cached.getValue();
+            if (!entry.isFresh(ttlInMilliseconds)) {
+                continue;
+            }
+            EarthquakeTable answer = query.answerFrom(EarthquakeQuery.parse(cached.getKey()), entry.getTable());
+            if (answer != null) {
+                return new Entry(answer, entry.mLoadedAt, entry.mFetchedAt);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Caches the result of a query, stamped with the current time
+     *
+     * @param key       is the normalized query url
+     * @param table     is the formatted result of the query
+     * @param fetchedAt is when the result was last fetched from USGS, see
+     *                  {@link EarthquakeStore#getFetchedAt(String)}, or 0 if it never was
+     */
+    public static void put(String key, EarthquakeTable table, long fetchedAt) {
+        sMemoryCache.put(key, new Entry(table, SystemClock.elapsedRealtime(), fetchedAt));
+    }
+
+    /**
+     * Caches a result answered from another cached result, keeping the age of that result
+     *
+     * @param key   is the normalized query url
+     * @param entry is the answer, see {@link #answerLocally(EarthquakeQuery, long)}
+     */
+    public static void put(String key, Entry entry) {
+        sMemoryCache.put(key, entry);
+    }
+
+    /**
+     * Drops every cached result, e.g. after the store was changed behind the loaders' backs
+     */
+    public static void evictAll() {
+        sMemoryCache.evictAll();
+    }
+
+    /**
+     * A cached query result, the time it was loaded and the time it was fetched
+     */
+    public static final class Entry {
+
+        private final EarthquakeTable mTable;
+        private final long mLoadedAt;
+        private final long mFetchedAt;
+
+        private Entry(EarthquakeTable table, long loadedAt, long fetchedAt) {
+            this.mTable = table;
+            this.mLoadedAt = loadedAt;
+            this.mFetchedAt = fetchedAt;
+        }
+
+        public EarthquakeTable getTable() {
+            return mTable;
+        }
+
+        /**
+         * Returns when the result was last fetched from USGS, in milliseconds since the epoch,
+         * or 0 if it never was
+         */
+        public long getFetchedAt() {
+            return mFetchedAt;
+        }
+
+        /**
+         * Returns true if the entry is younger than the given time to live
+         *
+         * @param ttlInMilliseconds is the time to live of a query result
+         */
+        public boolean isFresh(long ttlInMilliseconds) {
+            return SystemClock.elapsedRealtime() - mLoadedAt < ttlInMilliseconds;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.android.quakereport;
+
+/**
+ * Follows the earthquakes written to the {@link EarthquakeStore}, for what is derived from the
+ * store and kept up to date incrementally, such as {@link EarthquakeStatistics} and
+ * {@link EarthquakeSearch}.
+ * <p>
+ * The rows are followed by the sequence number of the write that stored them, not by their
+ * "updated" time: a row stored late with an older "updated" time, such as an event revised
+ * before the previous sync but only fetched now, is still written after the last row seen.
+ * Not thread safe, the owner guards it.
+ */
+final class EarthquakeChangeTracker {
+
+    /**
+     * Sequence number of the latest write read, 0 before the first read
+     */
+    private long mSequence;
+
+    /**
+     * Reads the earthquakes written since the previous read, every stored earthquake on the
+     * first read, oldest write first
+     *
+     * @param store is the store to read from
+     * @return the earthquakes written since, or null if nothing was written
+     */
+    EarthquakeTable readChanges(EarthquakeStore store) {
+        long latestSequence = store.getLatestSequence();
+        if (latestSequence <= mSequence) {
+            return null;
+        }
+        EarthquakeTable changed = store.queryStored(mSequence, latestSequence, null);
+        mSequence = latestSequence;
+        return changed;
+    }
+
+    /**
+     * Starts over, so that the next read returns every stored earthquake
+     */
+    void reset() {
+        mSequence = 0;
+    }
+}
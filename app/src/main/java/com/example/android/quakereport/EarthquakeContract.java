@@ -0,0 +1,203 @@
+package com.example.android.quakereport;
+
+import android.provider.BaseColumns;
+
+/**
+ * API Contract for the earthquake store kept on the device.
+ */
+public final class EarthquakeContract {
+
+    /**
+     * To prevent someone from accidentally instantiating the contract class,
+     * give it an empty constructor.
+     */
+    private EarthquakeContract() {
+    }
+
+    /**
+     * Inner class that defines constant values for the earthquakes table.
+     * Each row is one USGS event, keyed by its event id.
+     */
+    public static final class EarthquakeEntry implements BaseColumns {
+
+        public static final String TABLE_NAME = "earthquakes";
+
+        /**
+         * USGS event id of the earthquake, unique across all queries.
+         * <p>
+         * Type: TEXT
+         */
+        public static final String COLUMN_EVENT_ID = "event_id";
+
+        /**
+         * Magnitude of the earthquake.
+         * <p>
+         * Type: REAL
+         */
+        public static final String COLUMN_MAGNITUDE = "magnitude";
+
+        /**
+         * Place string reported by USGS.
+         * <p>
+         * Type: TEXT
+         */
+        public static final String COLUMN_PLACE = "place";
+
+        /**
+         * Time of the earthquake in milliseconds since the epoch.
+         * <p>
+         * Type: INTEGER
+         */
+        public static final String COLUMN_TIME = "time";
+
+        /**
+         * USGS event page of the earthquake.
+         * <p>
+         * Type: TEXT
+         */
+        public static final String COLUMN_URL = "url";
+
+        /**
+         * Time USGS last updated the event, in milliseconds since the epoch.
+         * <p>
+         * Type: INTEGER
+         */
+        public static final String COLUMN_UPDATED = "updated";
+
+        /**
+         * Latitude of the epicenter in degrees, null if unknown.
+         * <p>
+         * Type: REAL
+         */
+        public static final String COLUMN_LATITUDE = "latitude";
+
+        /**
+         * Longitude of the epicenter in degrees, null if unknown.
+         * <p>
+         * Type: REAL
+         */
+        public static final String COLUMN_LONGITUDE = "longitude";
+
+        /**
+         * Depth of the hypocenter in kilometers, null if unknown.
+         * <p>
+         * Type: REAL
+         */
+        public static final String COLUMN_DEPTH = "depth";
+
+        /**
+         * 1 if a bulk import stored the earthquake, which keeps it whatever the period of the
+         * synced queries, 0 otherwise.
+         * <p>
+         * Type: INTEGER
+         */
+        public static final String COLUMN_IMPORTED = "imported";
+
+        /**
+         * Sequence number of the write that stored the row last. Every transaction that writes
+         * earthquakes takes the next number, so the rows stored since a write are the rows
+         * with a higher number, whatever their "updated" times.
+         * <p>
+         * Type: INTEGER
+         */
+        public static final String COLUMN_STORED_SEQUENCE = "stored_seq";
+    }
+
+    /**
+     * Inner class that defines constant values for the sync state table.
+     * Each row records how far a single USGS query has been synced.
+     */
+    public static final class SyncEntry implements BaseColumns {
+
+        public static final String TABLE_NAME = "sync_state";
+
+        /**
+         * The USGS query url the row belongs to, without any sync parameters.
+         * <p>
+         * Type: TEXT
+         */
+        public static final String COLUMN_QUERY = "query";
+
+        /**
+         * Latest "updated" time seen in a response to the query, in milliseconds since the epoch.
+         * <p>
+         * Type: INTEGER
+         */
+        public static final String COLUMN_WATERMARK = "watermark";
+
+        /**
+         * ETag header of the last successful response to the query.
+         * <p>
+         * Type: TEXT
+         */
+        public static final String COLUMN_ETAG = "etag";
+
+        /**
+         * Last-Modified header of the last successful response to the query.
+         * <p>
+         * Type: TEXT
+         */
+        public static final String COLUMN_LAST_MODIFIED = "last_modified";
+
+        /**
+         * Wall clock time the query was last fetched or revalidated, in milliseconds since the epoch.
+         * <p>
+         * Type: INTEGER
+         */
+        public static final String COLUMN_FETCHED_AT = "fetched_at";
+    }
+
+    /**
+     * Inner class that defines constant values for the import state table.
+     * The single row records how far the bulk import of a historical catalog has come, and is
+     * written in the same transaction as every batch of the import, so an interrupted import
+     * resumes right after the last batch stored.
+     */
+    public static final class ImportEntry implements BaseColumns {
+
+        public static final String TABLE_NAME = "import_state";
+
+        /**
+         * The USGS query url or the file uri the catalog is imported from.
+         * <p>
+         * Type: TEXT
+         */
+        public static final String COLUMN_SOURCE = "source";
+
+        /**
+         * Start of the imported period in milliseconds since the epoch, 0 for a file.
+         * <p>
+         * Type: INTEGER
+         */
+        public static final String COLUMN_START = "start";
+
+        /**
+         * End of the imported period in milliseconds since the epoch, 0 for a file.
+         * <p>
+         * Type: INTEGER
+         */
+        public static final String COLUMN_END = "end";
+
+        /**
+         * How far the import has come: the time up to which every earthquake of a USGS query
+         * is stored, or the number of records of a file read.
+         * <p>
+         * Type: INTEGER
+         */
+        public static final String COLUMN_CURSOR = "cursor";
+
+        /**
+         * Number of earthquakes stored by the import so far.
+         * <p>
+         * Type: INTEGER
+         */
+        public static final String COLUMN_IMPORTED = "imported";
+
+        /**
+         * 1 once the whole catalog was imported, 0 otherwise.
+         * <p>
+         * Type: INTEGER
+         */
+        public static final String COLUMN_COMPLETE = "complete";
+    }
+}
@@ -0,0 +1,365 @@
+package com.example.android.quakereport;
+
+import android.support.v4.os.CancellationSignal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.List;
+
+/**
+ * Reads a USGS "format=csv" response into the same {@link Earthquake} objects as the GeoJSON
+ * parser of {@link QueryUtils}.
+ * <p>
+ * The CSV body names every property once in its header instead of once per event and leaves
+ * out the nested geometry and the properties the app does not read, so it is several times
+ * smaller than the GeoJSON body. The parser works on the raw bytes: fields are split in place
+ * in a reused record buffer, numbers and ISO 8601 times are decoded straight from the bytes,
+ * and the only objects made per event are its id, its place and the {@link Earthquake}.
+ * <p>
+ * CSV has no url column, so the url is rebuilt from the id the way USGS builds its event
+ * pages, and no "generated" metadata, so a response is never recognized as unchanged before
+ * it is read.
+ */
+final class EarthquakeCsvParser {
+
+    /**
+     * Prefix of the USGS event page of an earthquake, followed by its id
+     */
+    static final String EVENT_PAGE_URL = "http://earthquake.usgs.gov/earthquakes/eventpage/";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Exact powers of ten, so that a decimal with few digits converts with a single rounding
+     */
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private static final int MAX_EXACT_MANTISSA_DIGITS = 15;
+
+    private final InputStream mInputStream;
+    private final byte[] mBuffer = new byte[8192];
+    private int mPosition;
+    private int mLimit;
+
+    // The current record, unquoted, and where each of its fields starts and ends
+    private byte[] mRecord = new byte[256];
+    private int mRecordLength;
+    private int[] mFieldStarts = new int[32];
+    private int[] mFieldEnds = new int[32];
+    private int mFieldCount;
+
+    // Columns of the fields read, found by name in the header
+    private int mTimeColumn = -1;
+    private int mLatitudeColumn = -1;
+    private int mLongitudeColumn = -1;
+    private int mDepthColumn = -1;
+    private int mMagnitudeColumn = -1;
+    private int mIdColumn = -1;
+    private int mUpdatedColumn = -1;
+    private int mPlaceColumn = -1;
+
+    private EarthquakeCsvParser(InputStream inputStream) {
+        mInputStream = inputStream;
+    }
+
+    /**
+     * Parses a CSV response, appending one {@link Earthquake} per row as soon as it has been read.
+     * The stream is left open for the caller to close.
+     *
+     * @param inputStream        is the response body
+     * @param earthquakeList     is the list the parsed earthquakes are added to
+     * @param listener           is told about the rows parsed so far, or null
+     * @param cancellationSignal stops the parse when canceled, or null
+     * @throws IOException if the stream fails or the header lacks a column the app needs
+     */
+    static void read(InputStream inputStream, List<Earthquake> earthquakeList,
+                     QueryUtils.ParseListener listener, CancellationSignal cancellationSignal)
+            throws IOException {
+        EarthquakeCsvParser parser = new EarthquakeCsvParser(inputStream);
+        if (!parser.readRecord()) {
+            // An empty body is an empty result
+            return;
+        }
+        parser.readHeader();
+
+        int nextChunk = QueryUtils.FIRST_CHUNK_SIZE;
+        while (parser.readRecord()) {
+            if (cancellationSignal != null) {
+                cancellationSignal.throwIfCanceled();
+            }
+            Earthquake earthquake = parser.readEarthquake();
+            QueryUtils.countRecord(earthquakeList);
+            if (earthquake != null) {
+                earthquakeList.add(earthquake);
+            }
+            if (listener != null && earthquakeList.size() == nextChunk) {
+                listener.onFeaturesParsed(earthquakeList);
+                // Doubling the chunks keeps the total work of the listener linear
+                nextChunk *= 2;
+            }
+        }
+    }
+
+    private void readHeader() throws IOException {
+        for (int i = 0; i < mFieldCount; i++) {
+            String name = getString(i);
+            switch (name) {
+                case "time":
+                    mTimeColumn = i;
+                    break;
+                case "latitude":
+                    mLatitudeColumn = i;
+                    break;
+                case "longitude":
+                    mLongitudeColumn = i;
+                    break;
+                case "depth":
+                    mDepthColumn = i;
+                    break;
+                case "mag":
+                    mMagnitudeColumn = i;
+                    break;
+                case "id":
+                    mIdColumn = i;
+                    break;
+                case "updated":
+                    mUpdatedColumn = i;
+                    break;
+                case "place":
+                    mPlaceColumn = i;
+                    break;
+                default:
+                    break;
+            }
+        }
+        if (mTimeColumn < 0 || mMagnitudeColumn < 0 || mIdColumn < 0 || mUpdatedColumn < 0 || mPlaceColumn < 0) {
+            throw new IOException("Problem parsing the earthquake CSV results, unexpected header");
+        }
+    }
+
+    /**
+     * Reads the current record like the GeoJSON parser reads a feature
+     *
+     * @return the {@link Earthquake} of the record, or null if it has no id, magnitude or place
+     */
+    private Earthquake readEarthquake() throws IOException {
+        if (isEmpty(mIdColumn) || isEmpty(mMagnitudeColumn) || isEmpty(mPlaceColumn)) {
+            return null;
+        }
+        String id = getString(mIdColumn);
+        return new Earthquake(id,
+                getDouble(mMagnitudeColumn),
+                getString(mPlaceColumn),
+                getTime(mTimeColumn),
+                EVENT_PAGE_URL + id,
+                getTime(mUpdatedColumn),
+                getDouble(mLatitudeColumn),
+                getDouble(mLongitudeColumn),
+                getDouble(mDepthColumn));
+    }
+
+    /**
+     * Reads the next record into the record buffer, removing the quotes around fields and
+     * turning doubled quotes inside them into one
+     *
+     * @return false at the end of the stream
+     */
+    private boolean readRecord() throws IOException {
+        mRecordLength = 0;
+        mFieldCount = 0;
+        int b = read();
+        if (b == -1) {
+            return false;
+        }
+        int fieldStart = 0;
+        boolean quoted = false;
+        while (true) {
+            if (quoted) {
+                if (b == -1) {
+                    throw new IOException("Problem parsing the earthquake CSV results, unterminated quote");
+                } else if (b == '"') {
+                    b = read();
+                    if (b != '"') {
+                        // The closing quote, look at the byte after it as any other
+                        quoted = false;
+                        continue;
+                    }
+                }
+                append(b);
+            } else if (b == '"') {
+                quoted = true;
+            } else if (b == ',') {
+                endField(fieldStart);
+                fieldStart = mRecordLength;
+            } else if (b == '\n' || b == -1) {
+                endField(fieldStart);
+                return true;
+            } else if (b != '\r') {
+                append(b);
+            }
+            b = read();
+        }
+    }
+
+    private int read() throws IOException {
+        if (mPosition == mLimit) {
+            mLimit = mInputStream.read(mBuffer, 0, mBuffer.length);
+            mPosition = 0;
+            if (mLimit <= 0) {
+                mLimit = 0;
+                return -1;
+            }
+        }
+        return mBuffer[mPosition++] & 0xFF;
+    }
+
+    private void append(int b) {
+        if (mRecordLength == mRecord.length) {
+            byte[] record = new byte[mRecord.length * 2];
+            System.arraycopy(mRecord, 0, record, 0, mRecordLength);
+            mRecord = record;
+        }
+        mRecord[mRecordLength++] = (byte) b;
+    }
+
+    private void endField(int fieldStart) {
+        if (mFieldCount == mFieldStarts.length) {
+            int[] starts = new int[mFieldCount * 2];
+            int[] ends = new int[mFieldCount * 2];
+            System.arraycopy(mFieldStarts, 0, starts, 0, mFieldCount);
+            System.arraycopy(mFieldEnds, 0, ends, 0, mFieldCount);
+            mFieldStarts = starts;
+            mFieldEnds = ends;
+        }
+        mFieldStarts[mFieldCount] = fieldStart;
+        mFieldEnds[mFieldCount] = mRecordLength;
+        mFieldCount++;
+    }
+
+    private boolean isEmpty(int column) {
+        return column < 0 || column >= mFieldCount || mFieldStarts[column] == mFieldEnds[column];
+    }
+
+    private String getString(int column) {
+        int start = mFieldStarts[column];
+        return new String(mRecord, start, mFieldEnds[column] - start, UTF_8);
+    }
+
+    /**
+     * Decodes a decimal field, or returns NaN if the column is missing or empty
+     */
+    private double getDouble(int column) throws IOException {
+        if (isEmpty(column)) {
+            return Double.NaN;
+        }
+        int position = mFieldStarts[column];
+        int end = mFieldEnds[column];
+        boolean negative = false;
+        if (mRecord[position] == '-' || mRecord[position] == '+') {
+            negative = mRecord[position] == '-';
+            position++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = -1;
+        for (; position < end; position++) {
+            int b = mRecord[position];
+            if (b >= '0' && b <= '9') {
+                if (mantissa != 0 || b != '0') {
+                    digits++;
+                }
+                mantissa = mantissa * 10 + (b - '0');
+                if (fractionDigits >= 0) {
+                    fractionDigits++;
+                }
+            } else if (b == '.' && fractionDigits < 0) {
+                fractionDigits = 0;
+            } else {
+                // An exponent or anything unusual, leave it to the platform
+                return parseDouble(column);
+            }
+            if (digits > MAX_EXACT_MANTISSA_DIGITS) {
+                return parseDouble(column);
+            }
+        }
+        if (fractionDigits >= POWERS_OF_TEN.length) {
+            // Leading zeros are not counted as digits, so "0.000...1" can get here; past
+            // 10^22 the divisor is no longer exact
+            return parseDouble(column);
+        }
+        // Both operands are exact, so the quotient is the correctly rounded value
+        double value = fractionDigits > 0 ? mantissa / POWERS_OF_TEN[fractionDigits] : mantissa;
+        return negative ? -value : value;
+    }
+
+    private double parseDouble(int column) throws IOException {
+        try {
+            return Double.parseDouble(getString(column));
+        } catch (NumberFormatException e) {
+            throw new IOException("Problem parsing the earthquake CSV results", e);
+        }
+    }
+
+    /**
+     * Decodes a UTC time written as "2016-11-20T21:42:52.270Z", with zero to three digits of
+     * milliseconds, into milliseconds since the epoch
+     */
+    private long getTime(int column) throws IOException {
+        if (isEmpty(column)) {
+            return 0;
+        }
+        int start = mFieldStarts[column];
+        int length = mFieldEnds[column] - start;
+        if (length < 20 || mRecord[start + 4] != '-' || mRecord[start + 7] != '-' || mRecord[start + 10] != 'T'
+                || mRecord[start + 13] != ':' || mRecord[start + 16] != ':') {
+            throw new IOException("Problem parsing the earthquake CSV results, unexpected time " + getString(column));
+        }
+        long year = getDigits(start, 4);
+        long month = getDigits(start + 5, 2);
+        long day = getDigits(start + 8, 2);
+        long hour = getDigits(start + 11, 2);
+        long minute = getDigits(start + 14, 2);
+        long second = getDigits(start + 17, 2);
+        long millisecond = 0;
+        int end = start + length;
+        int position = start + 19;
+        if (mRecord[position] == '.') {
+            int scale = 100;
+            for (position++; position < end && mRecord[position] >= '0' && mRecord[position] <= '9'; position++) {
+                millisecond += (mRecord[position] - '0') * scale;
+                scale /= 10;
+            }
+        }
+        long days = daysFromCivil(year, month, day);
+        return (((days * 24 + hour) * 60 + minute) * 60 + second) * 1000 + millisecond;
+    }
+
+    private long getDigits(int start, int count) throws IOException {
+        long value = 0;
+        for (int i = start; i < start + count; i++) {
+            int b = mRecord[i];
+            if (b < '0' || b > '9') {
+                throw new IOException("Problem parsing the earthquake CSV results, unexpected digit");
+            }
+            value = value * 10 + (b - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Returns the number of days from 1970-01-01 to a date of the proleptic Gregorian calendar
+     */
+    static long daysFromCivil(long year, long month, long day) {
+        // Count years from March, so that the leap day is the last day of the year
+        year -= month <= 2 ? 1 : 0;
+        long era = (year >= 0 ? year : year - 399) / 400;
+        long yearOfEra = year - era * 400;
+        long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.android.quakereport;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import com.example.android.quakereport.EarthquakeContract.EarthquakeEntry;
+import com.example.android.quakereport.EarthquakeContract.ImportEntry;
+import com.example.android.quakereport.EarthquakeContract.SyncEntry;
+
+/**
+ * Database helper for the on-device earthquake store. Manages database creation and version management.
+ */
+public class EarthquakeDbHelper extends SQLiteOpenHelper {
+
+    /**
+     * Name of the database file
+     */
+    private static final String DATABASE_NAME = "earthquakes.db";
+
+    /**
+     * Database version. If you change the database schema, you must increment the database version.
+     */
+    private static final int DATABASE_VERSION = 8;
+
+    /**
+     * Index that lets the earthquakes written since a sequence number be read without a scan
+     */
+    private static final String SQL_CREATE_STORED_SEQUENCE_INDEX = "CREATE INDEX earthquakes_stored_seq ON "
+            + EarthquakeEntry.TABLE_NAME + " (" + EarthquakeEntry.COLUMN_STORED_SEQUENCE + ");";
+
+    private static EarthquakeDbHelper sInstance;
+
+    /**
+     * Returns the helper shared by the whole process, so that every caller goes through
+     * the same {@link SQLiteDatabase} connection.
+     *
+     * @param context of the app
+     * @return the shared {@link EarthquakeDbHelper}
+     */
+    public static synchronized EarthquakeDbHelper getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new EarthquakeDbHelper(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private EarthquakeDbHelper(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    /**
+     * This is called when the database is created for the first time.
+     */
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        String SQL_CREATE_EARTHQUAKES_TABLE = "CREATE TABLE " + EarthquakeEntry.TABLE_NAME + " ("
+                + EarthquakeEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + EarthquakeEntry.COLUMN_EVENT_ID + " TEXT NOT NULL UNIQUE, "
+                + EarthquakeEntry.COLUMN_MAGNITUDE + " REAL NOT NULL, "
+                + EarthquakeEntry.COLUMN_PLACE + " TEXT NOT NULL, "
+                + EarthquakeEntry.COLUMN_TIME + " INTEGER NOT NULL, "
+                + EarthquakeEntry.COLUMN_URL + " TEXT, "
+                + EarthquakeEntry.COLUMN_UPDATED + " INTEGER NOT NULL DEFAULT 0, "
+                + EarthquakeEntry.COLUMN_LATITUDE + " REAL, "
+                + EarthquakeEntry.COLUMN_LONGITUDE + " REAL, "
+                + EarthquakeEntry.COLUMN_DEPTH + " REAL, "
+                + EarthquakeEntry.COLUMN_IMPORTED + " INTEGER NOT NULL DEFAULT 0, "
+                + EarthquakeEntry.COLUMN_STORED_SEQUENCE + " INTEGER NOT NULL DEFAULT 0);";
+
+        String SQL_CREATE_SYNC_TABLE = "CREATE TABLE " + SyncEntry.TABLE_NAME + " ("
+                + SyncEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + SyncEntry.COLUMN_QUERY + " TEXT NOT NULL UNIQUE, "
+                + SyncEntry.COLUMN_WATERMARK + " INTEGER NOT NULL DEFAULT 0, "
+                + SyncEntry.COLUMN_ETAG + " TEXT, "
+                + SyncEntry.COLUMN_LAST_MODIFIED + " TEXT, "
+                + SyncEntry.COLUMN_FETCHED_AT + " INTEGER NOT NULL DEFAULT 0);";
+
+        String SQL_CREATE_IMPORT_TABLE = "CREATE TABLE " + ImportEntry.TABLE_NAME + " ("
+                + ImportEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + ImportEntry.COLUMN_SOURCE + " TEXT NOT NULL, "
+                + ImportEntry.COLUMN_START + " INTEGER NOT NULL DEFAULT 0, "
+                + ImportEntry.COLUMN_END + " INTEGER NOT NULL DEFAULT 0, "
+                + ImportEntry.COLUMN_CURSOR + " INTEGER NOT NULL DEFAULT 0, "
+                + ImportEntry.COLUMN_IMPORTED + " INTEGER NOT NULL DEFAULT 0, "
+                + ImportEntry.COLUMN_COMPLETE + " INTEGER NOT NULL DEFAULT 0);";
+
+        db.execSQL(SQL_CREATE_EARTHQUAKES_TABLE);
+        db.execSQL("CREATE INDEX earthquakes_magnitude ON " + EarthquakeEntry.TABLE_NAME
+                + " (" + EarthquakeEntry.COLUMN_MAGNITUDE + ");");
+        db.execSQL("CREATE INDEX earthquakes_time ON " + EarthquakeEntry.TABLE_NAME
+                + " (" + EarthquakeEntry.COLUMN_TIME + ");");
+        db.execSQL("CREATE INDEX earthquakes_updated ON " + EarthquakeEntry.TABLE_NAME
+                + " (" + EarthquakeEntry.COLUMN_UPDATED + ");");
+        db.execSQL(SQL_CREATE_STORED_SEQUENCE_INDEX);
+        db.execSQL(SQL_CREATE_SYNC_TABLE);
+        db.execSQL(SQL_CREATE_IMPORT_TABLE);
+    }
+
+    /**
+     * This is called when the database needs to be upgraded.
+     * <p>
+     * From version 7 on the store holds imported history, which may have taken hours to
+     * download, so the upgrade keeps it along with the import state. Version 8 only numbers
+     * the writes to the store; earthquakes stored before count as written before any of them.
+     * <p>
+     * Anything older is dropped and recreated, it can be downloaded again from USGS. A
+     * version 6 store did not tell imported earthquakes from synced ones, so its import state
+     * goes with it and the import screen offers to run the import again.
+     */
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (oldVersion >= 7) {
+            db.execSQL("ALTER TABLE " + EarthquakeEntry.TABLE_NAME + " ADD COLUMN "
+                    + EarthquakeEntry.COLUMN_STORED_SEQUENCE + " INTEGER NOT NULL DEFAULT 0;");
+            db.execSQL(SQL_CREATE_STORED_SEQUENCE_INDEX);
+            return;
+        }
+        db.execSQL("DROP TABLE IF EXISTS " + EarthquakeEntry.TABLE_NAME);
+        db.execSQL("DROP TABLE IF EXISTS " + SyncEntry.TABLE_NAME);
+        db.execSQL("DROP TABLE IF EXISTS " + ImportEntry.TABLE_NAME);
+        onCreate(db);
+    }
+}
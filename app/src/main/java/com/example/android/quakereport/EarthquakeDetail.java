@@ -0,0 +1,117 @@
+package com.example.android.quakereport;
+
+import java.util.List;
+
+/**
+ * The details of one earthquake from its USGS event GeoJSON, beyond what a row of a query
+ * result carries: how it was measured, how strongly it was felt and which products USGS
+ * published for it. Immutable, so one object is shared by the cache and every screen.
+ */
+public class EarthquakeDetail {
+
+    private final Earthquake mEarthquake;
+    private final String mTitle;
+    private final String mMagnitudeType;
+    private final int mFelt;
+    private final double mCdi;
+    private final double mMmi;
+    private final String mAlert;
+    private final boolean mTsunami;
+    private final int mSignificance;
+    private final String mStatus;
+    private final String mNetwork;
+    private final List<String> mProductTypes;
+
+    /**
+     * Constructs a new {@link EarthquakeDetail}
+     *
+     * @param earthquake    holds the properties shared with a query result
+     * @param title         is the USGS title of the event, e.g. "M 6.4 - 10km S of Anchorage, Alaska"
+     * @param magnitudeType is the method the magnitude was measured with, e.g. "mww", or null
+     * @param felt          is the number of "Did You Feel It?" reports, or -1 if unknown
+     * @param cdi           is the highest reported intensity, or NaN if unknown
+     * @param mmi           is the highest estimated instrumental intensity, or NaN if unknown
+     * @param alert         is the PAGER alert level, "green" to "red", or null
+     * @param tsunami       is true if the event happened in an oceanic region
+     * @param significance  is the USGS significance of the event, from 0 upwards
+     * @param status        is "automatic" or "reviewed", or null
+     * @param network       is the id of the network that contributed the preferred solution, or null
+     * @param productTypes  are the types of the products published for the event, e.g. "shakemap"
+     */
+    public EarthquakeDetail(Earthquake earthquake, String title, String magnitudeType, int felt, double cdi,
+                            double mmi, String alert, boolean tsunami, int significance, String status,
+                            String network, List<String> productTypes) {
+        this.mEarthquake = earthquake;
+        this.mTitle = title;
+        this.mMagnitudeType = magnitudeType;
+        this.mFelt = felt;
+        this.mCdi = cdi;
+        this.mMmi = mmi;
+        this.mAlert = alert;
+        this.mTsunami = tsunami;
+        this.mSignificance = significance;
+        this.mStatus = status;
+        this.mNetwork = network;
+        this.mProductTypes = productTypes;
+    }
+
+    public Earthquake getEarthquake() {
+        return mEarthquake;
+    }
+
+    public String getTitle() {
+        return mTitle;
+    }
+
+    public String getMagnitudeType() {
+        return mMagnitudeType;
+    }
+
+    /**
+     * Returns the number of "Did You Feel It?" reports, or -1 if unknown
+     */
+    public int getFelt() {
+        return mFelt;
+    }
+
+    /**
+     * Returns the highest intensity reported by the people who felt it, or NaN if unknown
+     */
+    public double getCdi() {
+        return mCdi;
+    }
+
+    /**
+     * Returns the highest instrumental intensity estimated by ShakeMap, or NaN if unknown
+     */
+    public double getMmi() {
+        return mMmi;
+    }
+
+    /**
+     * Returns the PAGER alert level, "green", "yellow", "orange" or "red", or null if there is none
+     */
+    public String getAlert() {
+        return mAlert;
+    }
+
+    public boolean isTsunami() {
+        return mTsunami;
+    }
+
+    public int getSignificance() {
+        return mSignificance;
+    }
+
+    public String getStatus() {
+        return mStatus;
+    }
+
+    public String getNetwork() {
+        return mNetwork;
+    }
+
+    public List<String> getProductTypes() {
+        return mProductTypes;
+    }
+}
@@ -0,0 +1,243 @@
+package com.example.android.quakereport;
+
+import android.app.LoaderManager.LoaderCallbacks;
+import android.content.AsyncTaskLoader;
+import android.content.Context;
+import android.content.Intent;
+import android.content.Loader;
+import android.graphics.drawable.GradientDrawable;
+import android.net.Uri;
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.text.TextUtils;
+import android.text.format.DateUtils;
+import android.util.Log;
+import android.view.View;
+import android.widget.Button;
+import android.widget.ProgressBar;
+import android.widget.TextView;
+
+import java.io.IOException;
+
+/**
+ * Shows the details of one earthquake from its USGS event GeoJSON, in place of its USGS web
+ * page. The row it was opened from is shown at once; the details usually come straight from
+ * {@link EarthquakeDetails}, where the list prefetched them, and are fetched otherwise.
+ */
+public class EarthquakeDetailActivity extends AppCompatActivity implements LoaderCallbacks<EarthquakeDetail> {
+
+    public static final String LOG_TAG = EarthquakeDetailActivity.class.getName();
+
+    private static final int DETAIL_LOADER_ID = 1;
+
+    private static final String EXTRA_ID = "id";
+    private static final String EXTRA_MAGNITUDE = "magnitude";
+    private static final String EXTRA_PLACE = "place";
+    private static final String EXTRA_TIME = "time";
+    private static final String EXTRA_UPDATED = "updated";
+    private static final String EXTRA_URL = "url";
+
+    private String mId;
+    private long mUpdatedInMilliseconds;
+    private String mUrl;
+
+    private TextView mTitleTextView;
+    private TextView mReportTextView;
+    private ProgressBar mProgressBar;
+    private Button mOpenButton;
+
+    /**
+     * Opens the detail screen of an earthquake of a list
+     *
+     * @param context is used to start the activity
+     * @param table   holds the earthquake
+     * @param index   is the index of the earthquake in the table
+     */
+    public static void start(Context context, EarthquakeTable table, int index) {
+        Intent intent = new Intent(context, EarthquakeDetailActivity.class)
+                .putExtra(EXTRA_ID, table.getId(index))
+                .putExtra(EXTRA_MAGNITUDE, table.getMagnitude(index))
+                .putExtra(EXTRA_PLACE, table.getLocation(index))
+                .putExtra(EXTRA_TIME, table.getTimeInMilliseconds(index))
+                .putExtra(EXTRA_UPDATED, table.getUpdatedInMilliseconds(index))
+                .putExtra(EXTRA_URL, table.getUrl(index));
+        context.startActivity(intent);
+    }
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.detail_activity);
+        mTitleTextView = (TextView) findViewById(R.id.detail_title);
+        mReportTextView = (TextView) findViewById(R.id.detail_report);
+        mProgressBar = (ProgressBar) findViewById(R.id.detail_loading);
+        mOpenButton = (Button) findViewById(R.id.detail_open_usgs);
+
+        Intent intent = getIntent();
+        mId = intent.getStringExtra(EXTRA_ID);
+        mUpdatedInMilliseconds = intent.getLongExtra(EXTRA_UPDATED, 0);
+        mUrl = intent.getStringExtra(EXTRA_URL);
+        showHeader(intent.getDoubleExtra(EXTRA_MAGNITUDE, 0), intent.getStringExtra(EXTRA_PLACE),
+                intent.getLongExtra(EXTRA_TIME, 0));
+
+        mOpenButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                //Create an intent to view an url
+                Intent browserIntent = new Intent(Intent.ACTION_VIEW);
+                browserIntent.setData(Uri.parse(mUrl));
+                if (browserIntent.resolveActivity(getPackageManager()) != null)
+                    startActivity(browserIntent);
+            }
+        });
+        mOpenButton.setVisibility(mUrl != null ? View.VISIBLE : View.GONE);
+
+        // A prefetched or revisited event is shown without waiting for a loader
+        EarthquakeDetail detail = EarthquakeDetails.get(mId, mUpdatedInMilliseconds);
+        if (detail != null) {
+            showDetail(detail);
+        } else {
+            mProgressBar.setVisibility(View.VISIBLE);
+            getLoaderManager().initLoader(DETAIL_LOADER_ID, null, this);
+        }
+    }
+
+    @Override
+    public Loader<EarthquakeDetail> onCreateLoader(int id, Bundle args) {
+        return new DetailLoader(this, mId, mUpdatedInMilliseconds);
+    }
+
+    @Override
+    public void onLoadFinished(Loader<EarthquakeDetail> loader, EarthquakeDetail detail) {
+        mProgressBar.setVisibility(View.GONE);
+        if (detail != null) {
+            showDetail(detail);
+        } else {
+            mReportTextView.setText(EarthquakeSyncScheduler.isConnected(this)
+                    ? R.string.detail_error : R.string.detail_offline);
+        }
+    }
+
+    @Override
+    public void onLoaderReset(Loader<EarthquakeDetail> loader) {
+    }
+
+    /**
+     * Fills in the row of the earthquake, the same as in the list
+     */
+    private void showHeader(double magnitude, String place, long timeInMilliseconds) {
+        EarthquakeFormatter formatter = EarthquakeAdapter.createFormatter(this);
+        TextView magnitudeTextView = (TextView) findViewById(R.id.magnitude);
+        magnitudeTextView.setText(formatter.formatMagnitude(magnitude));
+        ((GradientDrawable) magnitudeTextView.getBackground()).setColor(formatter.getMagnitudeColor(magnitude));
+        String[] location = formatter.splitLocation(place != null ? place : "");
+        ((TextView) findViewById(R.id.location_offset)).setText(location[0]);
+        ((TextView) findViewById(R.id.primary_location)).setText(location[1]);
+        ((TextView) findViewById(R.id.date)).setText(formatter.formatDate(timeInMilliseconds));
+        ((TextView) findViewById(R.id.time)).setText(formatter.formatTime(timeInMilliseconds));
+    }
+
+    private void showDetail(EarthquakeDetail detail) {
+        Earthquake earthquake = detail.getEarthquake();
+        mTitleTextView.setText(detail.getTitle() != null ? detail.getTitle() : earthquake.getLocation());
+
+        StringBuilder report = new StringBuilder();
+        String magnitude = EarthquakeAdapter.createFormatter(this).formatMagnitude(earthquake.getMagnitude());
+        appendLine(report, getString(R.string.detail_magnitude, magnitude,
+                detail.getMagnitudeType() != null ? detail.getMagnitudeType() : ""));
+        if (!Double.isNaN(earthquake.getLatitude()) && !Double.isNaN(earthquake.getLongitude())) {
+            appendLine(report, getString(R.string.detail_epicenter, earthquake.getLatitude(), earthquake.getLongitude()));
+        }
+        if (!Double.isNaN(earthquake.getDepth())) {
+            appendLine(report, getString(R.string.detail_depth, earthquake.getDepth()));
+        }
+        if (detail.getFelt() >= 0) {
+            appendLine(report, getString(R.string.detail_felt, detail.getFelt()));
+        }
+        if (!Double.isNaN(detail.getCdi())) {
+            appendLine(report, getString(R.string.detail_cdi, detail.getCdi()));
+        }
+        if (!Double.isNaN(detail.getMmi())) {
+            appendLine(report, getString(R.string.detail_mmi, detail.getMmi()));
+        }
+        if (detail.getAlert() != null) {
+            appendLine(report, getString(R.string.detail_alert, detail.getAlert()));
+        }
+        if (detail.isTsunami()) {
+            appendLine(report, getString(R.string.detail_tsunami));
+        }
+        appendLine(report, getString(R.string.detail_significance, detail.getSignificance()));
+        if (detail.getStatus() != null) {
+            appendLine(report, getString(R.string.detail_status, detail.getStatus()));
+        }
+        if (detail.getNetwork() != null) {
+            appendLine(report, getString(R.string.detail_network, detail.getNetwork()));
+        }
+        appendLine(report, getString(R.string.detail_updated, DateUtils.getRelativeTimeSpanString(
+                earthquake.getUpdatedInMilliseconds(), System.currentTimeMillis(), DateUtils.MINUTE_IN_MILLIS)));
+        if (!detail.getProductTypes().isEmpty()) {
+            appendLine(report, getString(R.string.detail_products, TextUtils.join(", ", detail.getProductTypes())));
+        }
+        mReportTextView.setText(report.toString());
+
+        // Rows read from CSV carry no url, the event itself does
+        if (earthquake.getUrl() != null) {
+            mUrl = earthquake.getUrl();
+            mOpenButton.setVisibility(View.VISIBLE);
+        }
+    }
+
+    private static void appendLine(StringBuilder report, String line) {
+        if (report.length() > 0) {
+            report.append('\n');
+        }
+        report.append(line);
+    }
+
+    /**
+     * Fetches the details of an earthquake off the UI thread, joining its prefetch if one is
+     * in flight
+     */
+    private static class DetailLoader extends AsyncTaskLoader<EarthquakeDetail> {
+
+        private final String mId;
+        private final long mUpdatedInMilliseconds;
+        private EarthquakeDetail mDetail;
+
+        DetailLoader(Context context, String id, long updatedInMilliseconds) {
+            super(context);
+            this.mId = id;
+            this.mUpdatedInMilliseconds = updatedInMilliseconds;
+        }
+
+        @Override
+        protected void onStartLoading() {
+            if (mDetail != null) {
+                deliverResult(mDetail);
+            } else {
+                forceLoad();
+            }
+        }
+
+        @Override
+        public EarthquakeDetail loadInBackground() {
+            try {
+                return EarthquakeDetails.fetch(mId, mUpdatedInMilliseconds);
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Problem fetching the earthquake detail " + mId, e);
+                return null;
+            }
+        }
+
+        @Override
+        public void deliverResult(EarthquakeDetail detail) {
+            mDetail = detail;
+            super.deliverResult(detail);
+        }
+
+        @Override
+        protected void onReset() {
+            mDetail = null;
+        }
+    }
+}
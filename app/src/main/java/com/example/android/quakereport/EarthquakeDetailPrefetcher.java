@@ -0,0 +1,124 @@
+package com.example.android.quakereport;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.support.v4.net.ConnectivityManagerCompat;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Prefetches the details of the earthquakes a list shows through {@link EarthquakeDetails},
+ * once the list has settled: after a scroll came to rest or the rows changed. Nothing is
+ * prefetched while the list is being scrolled, so a fling never queues rows it flew past.
+ */
+public final class EarthquakeDetailPrefetcher extends RecyclerView.OnScrollListener {
+
+    /**
+     * Number of rows past each end of the screen whose details are prefetched as well
+     */
+    private static final int NEARBY_ROWS = 10;
+
+    /**
+     * Time the list has to stay still before its rows are prefetched, in milliseconds
+     */
+    private static final long SETTLE_DELAY_MILLIS = 300;
+
+    private final Context mContext;
+    private final RecyclerView mRecyclerView;
+    private final EarthquakeAdapter mAdapter;
+
+    private final Runnable mPrefetchRunnable = new Runnable() {
+        @Override
+        public void run() {
+            prefetch();
+        }
+    };
+
+    private EarthquakeDetailPrefetcher(RecyclerView recyclerView, EarthquakeAdapter adapter) {
+        this.mContext = recyclerView.getContext().getApplicationContext();
+        this.mRecyclerView = recyclerView;
+        this.mAdapter = adapter;
+    }
+
+    /**
+     * Starts prefetching the details of the rows of a list
+     *
+     * @param recyclerView is the list, laid out by a {@link LinearLayoutManager}
+     * @param adapter      is the adapter of the list
+     */
+    public static void attach(RecyclerView recyclerView, EarthquakeAdapter adapter) {
+        final EarthquakeDetailPrefetcher prefetcher = new EarthquakeDetailPrefetcher(recyclerView, adapter);
+        recyclerView.addOnScrollListener(prefetcher);
+        adapter.registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
+            @Override
+            public void onChanged() {
+                prefetcher.schedule();
+            }
+
+            @Override
+            public void onItemRangeChanged(int positionStart, int itemCount) {
+                prefetcher.schedule();
+            }
+
+            @Override
+            public void onItemRangeInserted(int positionStart, int itemCount) {
+                prefetcher.schedule();
+            }
+
+            @Override
+            public void onItemRangeRemoved(int positionStart, int itemCount) {
+                prefetcher.schedule();
+            }
+        });
+    }
+
+    @Override
+    public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+        if (newState == RecyclerView.SCROLL_STATE_IDLE) {
+            schedule();
+        } else {
+            mRecyclerView.removeCallbacks(mPrefetchRunnable);
+        }
+    }
+
+    private void schedule() {
+        mRecyclerView.removeCallbacks(mPrefetchRunnable);
+        mRecyclerView.postDelayed(mPrefetchRunnable, SETTLE_DELAY_MILLIS);
+    }
+
+    private void prefetch() {
+        LinearLayoutManager layoutManager = (LinearLayoutManager) mRecyclerView.getLayoutManager();
+        int first = layoutManager.findFirstVisibleItemPosition();
+        int last = layoutManager.findLastVisibleItemPosition();
+        if (first == RecyclerView.NO_POSITION || !EarthquakeSyncScheduler.isConnected(mContext)) {
+            return;
+        }
+
+        // On a metered network only the rows on screen are worth their data
+        ConnectivityManager connectivityManager =
+                (ConnectivityManager) mContext.getSystemService(Context.CONNECTIVITY_SERVICE);
+        int nearby = ConnectivityManagerCompat.isActiveNetworkMetered(connectivityManager) ? 0 : NEARBY_ROWS;
+
+        // The rows on screen first, then the rows below, where a list is usually scrolled to,
+        // then the rows above, nearest first
+        Map<String, Long> events = new LinkedHashMap<>();
+        int end = Math.min(last + nearby, mAdapter.getItemCount() - 1);
+        for (int position = first; position <= end; position++) {
+            addRow(events, position);
+        }
+        for (int position = first - 1; position >= Math.max(first - nearby, 0); position--) {
+            addRow(events, position);
+        }
+        EarthquakeDetails.prefetch(events);
+    }
+
+    private void addRow(Map<String, Long> events, int position) {
+        String id = mAdapter.getId(position);
+        if (id != null) {
+            events.put(id, mAdapter.getUpdatedInMilliseconds(position));
+        }
+    }
+}
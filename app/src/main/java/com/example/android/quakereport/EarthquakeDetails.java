@@ -0,0 +1,229 @@
+package com.example.android.quakereport;
+
+import android.net.Uri;
+import android.os.Process;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Process-wide memory cache of the {@link EarthquakeDetail}s of single events, and the
+ * background prefetch that fills it.
+ * <p>
+ * The rows on screen and the rows next to them are prefetched one at a time on a single
+ * thread of background priority, so that opening an earthquake usually finds its details
+ * here and shows them at once. A detail is served from the cache for as long as USGS did not
+ * update the event since, so a revisit costs no network. A screen that needs a detail that is
+ * being prefetched waits for that request instead of making another one.
+ */
+public final class EarthquakeDetails {
+
+    private static final String LOG_TAG = EarthquakeDetails.class.getName();
+
+    /**
+     * Upper bound on the number of details held; a detail without its products is small
+     */
+    private static final int MAX_CACHED_DETAILS = 200;
+
+    private static final LruCache<String, EarthquakeDetail> sMemoryCache =
+            new LruCache<>(MAX_CACHED_DETAILS);
+
+    private static final ExecutorService sPrefetchExecutor = Executors.newSingleThreadExecutor(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "EarthquakeDetailPrefetch");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    /**
+     * Requests in flight, by event id; guarded by itself
+     */
+    private static final Map<String, FutureTask<EarthquakeDetail>> sRequests = new HashMap<>();
+
+    /**
+     * Events waiting to be prefetched, in the order they are fetched, with the time they were
+     * last updated; guarded by itself
+     */
+    private static final LinkedHashMap<String, Long> sPending = new LinkedHashMap<>();
+
+    // Guarded by sPending
+    private static boolean sPrefetching;
+
+    /**
+     * Create a private constructor because no one should ever create a {@link EarthquakeDetails} object.
+     */
+    private EarthquakeDetails() {
+    }
+
+    /**
+     * Returns the url of the USGS event GeoJSON of an earthquake
+     *
+     * @param id is the USGS event id
+     */
+    public static String buildDetailUrl(String id) {
+        return Uri.parse(EarthquakeActivity.USGS_REQUEST_URL).buildUpon()
+                .appendQueryParameter("eventid", id)
+                .appendQueryParameter("format", QueryUtils.FORMAT_GEOJSON)
+                .toString();
+    }
+
+    /**
+     * Returns the cached detail of an earthquake if USGS did not update it since, without
+     * blocking, so it can be called on the UI thread
+     *
+     * @param id                    is the USGS event id
+     * @param updatedInMilliseconds is when USGS last updated the event as far as the caller knows
+     * @return the cached {@link EarthquakeDetail}, or null if it is not cached or out of date
+     */
+    public static EarthquakeDetail get(String id, long updatedInMilliseconds) {
+        EarthquakeDetail detail = sMemoryCache.get(id);
+        if (detail == null || detail.getEarthquake().getUpdatedInMilliseconds() < updatedInMilliseconds) {
+            return null;
+        }
+        return detail;
+    }
+
+    /**
+     * Returns the detail of an earthquake from the cache, or fetches it on the calling thread,
+     * joining a prefetch of the same event that is already in flight
+     *
+     * @param id                    is the USGS event id
+     * @param updatedInMilliseconds is when USGS last updated the event as far as the caller knows
+     * @return the {@link EarthquakeDetail}, or null if USGS has no such event
+     * @throws IOException if the request failed
+     */
+    public static EarthquakeDetail fetch(String id, long updatedInMilliseconds) throws IOException {
+        EarthquakeDetail detail = get(id, updatedInMilliseconds);
+        if (detail != null) {
+            return detail;
+        }
+
+        FutureTask<EarthquakeDetail> request;
+        boolean joined;
+        synchronized (sRequests) {
+            // Checked again, a request may have finished since
+            detail = get(id, updatedInMilliseconds);
+            if (detail != null) {
+                return detail;
+            }
+            request = sRequests.get(id);
+            joined = request != null;
+            if (!joined) {
+                request = new FutureTask<>(new Request(id));
+                sRequests.put(id, request);
+            }
+        }
+        if (!joined) {
+            request.run();
+        }
+
+        try {
+            return request.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the earthquake detail", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw new IOException(cause.getMessage(), cause);
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Replaces the events waiting to be prefetched, e.g. with the rows on screen after a
+     * scroll, dropping those that scrolled away before their turn came
+     *
+     * @param events are the event ids with the time they were last updated, in the order
+     *               they should be fetched
+     */
+    public static void prefetch(Map<String, Long> events) {
+        synchronized (sPending) {
+            sPending.clear();
+            for (Map.Entry<String, Long> event : events.entrySet()) {
+                if (get(event.getKey(), event.getValue()) == null) {
+                    sPending.put(event.getKey(), event.getValue());
+                }
+            }
+            if (sPending.isEmpty() || sPrefetching) {
+                return;
+            }
+            sPrefetching = true;
+        }
+        sPrefetchExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                // Leave the CPU and the network to the screen that is being used
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                while (true) {
+                    String id;
+                    long updated;
+                    synchronized (sPending) {
+                        Iterator<Map.Entry<String, Long>> iterator = sPending.entrySet().iterator();
+                        if (!iterator.hasNext()) {
+                            sPrefetching = false;
+                            return;
+                        }
+                        Map.Entry<String, Long> next = iterator.next();
+                        id = next.getKey();
+                        updated = next.getValue();
+                        iterator.remove();
+                    }
+                    try {
+                        fetch(id, updated);
+                    } catch (IOException e) {
+                        // The detail screen tries again if the event is opened
+                        Log.w(LOG_TAG, "Problem prefetching the earthquake detail " + id, e);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Fetches the detail of one event into the cache
+     */
+    private static final class Request implements Callable<EarthquakeDetail> {
+
+        private final String mId;
+
+        Request(String id) {
+            this.mId = id;
+        }
+
+        @Override
+        public EarthquakeDetail call() throws IOException {
+            try {
+                long fetchStart = System.nanoTime();
+                EarthquakeDetail detail = QueryUtils.fetchEarthquakeDetail(buildDetailUrl(mId), null);
+                EarthquakeMetrics.recordSince(EarthquakeMetrics.DETAIL_FETCH, fetchStart);
+                if (detail != null) {
+                    sMemoryCache.put(mId, detail);
+                }
+                return detail;
+            } finally {
+                synchronized (sRequests) {
+                    sRequests.remove(mId);
+                }
+            }
+        }
+    }
+}
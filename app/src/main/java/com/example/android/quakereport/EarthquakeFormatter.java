@@ -0,0 +1,148 @@
+package com.example.android.quakereport;
+
+import java.text.DecimalFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Formats the display columns of an {@link EarthquakeTable}.
+ * <p>
+ * The formatters and colors are created once per instance, and every formatted string is
+ * pooled: magnitudes per tenth, dates per day, times per minute of the day and locations per
+ * distinct place. An instance is not thread safe, so it is meant to be used from a single
+ * background thread, e.g. inside a loader.
+ */
+public class EarthquakeFormatter {
+
+    private static final String LOCATION_SEPARATOR = "of ";
+
+    private static final long MILLISECONDS_PER_DAY = TimeUnit.DAYS.toMillis(1);
+    private static final long MILLISECONDS_PER_MINUTE = TimeUnit.MINUTES.toMillis(1);
+
+    /**
+     * Magnitude labels are pooled from 0.0 up to, but not including, this many tenths
+     */
+    private static final int MAX_CACHED_MAGNITUDE_TENTHS = 120;
+
+    private final DecimalFormat mMagnitudeFormat = new DecimalFormat("0.0");
+    private final SimpleDateFormat mDateFormat = new SimpleDateFormat("LLL dd, yyyy");
+    private final SimpleDateFormat mTimeFormat = new SimpleDateFormat("h:mm a");
+    private final TimeZone mTimeZone = TimeZone.getDefault();
+    private final Date mDate = new Date();
+    private final int[] mMagnitudeColors;
+    private final String mNearThe;
+
+    private final String[] mMagnitudeLabels = new String[MAX_CACHED_MAGNITUDE_TENTHS];
+    private final Map<Long, String> mDateLabels = new HashMap<>();
+    private final String[] mTimeLabels = new String[(int) (MILLISECONDS_PER_DAY / MILLISECONDS_PER_MINUTE)];
+    private final Map<String, String[]> mLocations = new HashMap<>();
+
+    /**
+     * Constructs a new {@link EarthquakeFormatter}. Use {@link EarthquakeAdapter#createFormatter}
+     * to get one with the app's colors and strings.
+     *
+     * @param magnitudeColors are the resolved ARGB colors of the magnitude circle, indexed by the
+     *                        floor of the magnitude; the last one is used for anything above
+     * @param nearThe         is the location offset shown when the place has none
+     */
+    public EarthquakeFormatter(int[] magnitudeColors, String nearThe) {
+        this.mMagnitudeColors = magnitudeColors;
+        this.mNearThe = nearThe;
+    }
+
+    /**
+     * Formats a magnitude with one decimal, e.g. "6.2", rounding halves up: 4.25 shows "4.3".
+     * The label is made from the rounded tenths rather than by DecimalFormat, which rounds
+     * halves to even, so a pooled label is the same whichever magnitude was formatted first.
+     */
+    public String formatMagnitude(double magnitude) {
+        int tenths = (int) Math.round(magnitude * 10);
+        if (tenths < 0 || tenths >= MAX_CACHED_MAGNITUDE_TENTHS) {
+            return mMagnitudeFormat.format(tenths / 10.0);
+        }
+        String label = mMagnitudeLabels[tenths];
+        if (label == null) {
+            // Formatted from the key, not from the magnitude, so that every magnitude pooled
+            // under a tenth shows that tenth, e.g. 2.25 and 2.3 both show "2.3" whichever came first
+            label = mMagnitudeFormat.format(tenths / 10.0);
+            mMagnitudeLabels[tenths] = label;
+        }
+        return label;
+    }
+
+    /**
+     * Formats the local date of a time in milliseconds, e.g. "Mar 06, 2010"
+     */
+    public String formatDate(long timeInMilliseconds) {
+        long localTime = toLocalTime(timeInMilliseconds);
+        long day = localTime >= 0 ? localTime / MILLISECONDS_PER_DAY
+                : (localTime - MILLISECONDS_PER_DAY + 1) / MILLISECONDS_PER_DAY;
+        String label = mDateLabels.get(day);
+        if (label == null) {
+            mDate.setTime(timeInMilliseconds);
+            label = mDateFormat.format(mDate);
+            mDateLabels.put(day, label);
+        }
+        return label;
+    }
+
+    /**
+     * Formats the local time of day of a time in milliseconds, e.g. "3:00 PM"
+     */
+    public String formatTime(long timeInMilliseconds) {
+        long localTime = toLocalTime(timeInMilliseconds);
+        int minuteOfDay = (int) (((localTime % MILLISECONDS_PER_DAY) + MILLISECONDS_PER_DAY)
+                % MILLISECONDS_PER_DAY / MILLISECONDS_PER_MINUTE);
+        String label = mTimeLabels[minuteOfDay];
+        if (label == null) {
+            mDate.setTime(timeInMilliseconds);
+            label = mTimeFormat.format(mDate);
+            mTimeLabels[minuteOfDay] = label;
+        }
+        return label;
+    }
+
+    /**
+     * Separates a USGS place into its offset and its primary location,
+     * e.g. "30km S of" and "San Francisco, CA"
+     *
+     * @param location is the place string reported by USGS
+     * @return an array holding the location offset and the primary location
+     */
+    public String[] splitLocation(String location) {
+        String[] parts = mLocations.get(location);
+        if (parts == null) {
+            int separator = location.indexOf(LOCATION_SEPARATOR);
+            if (separator >= 0) {
+                int primaryStart = separator + LOCATION_SEPARATOR.length();
+                parts = new String[]{location.substring(0, primaryStart), location.substring(primaryStart)};
+            } else {
+                parts = new String[]{mNearThe, location};
+            }
+            mLocations.put(location, parts);
+        }
+        return parts;
+    }
+
+    /**
+     * Return an integer value of the corresponding magnitude color
+     *
+     * @param magnitude is the magnitude of the earthquake
+     * @return integer value of the corresponding magnitude color
+     */
+    public int getMagnitudeColor(double magnitude) {
+        int magnitudeFloor = (int) Math.floor(magnitude);
+        if (magnitudeFloor < 0) {
+            magnitudeFloor = 0;
+        }
+        return mMagnitudeColors[Math.min(magnitudeFloor, mMagnitudeColors.length - 1)];
+    }
+
+    private long toLocalTime(long timeInMilliseconds) {
+        return timeInMilliseconds + mTimeZone.getOffset(timeInMilliseconds);
+    }
+}
@@ -0,0 +1,181 @@
+package com.example.android.quakereport;
+
+import android.app.IntentService;
+import android.app.Notification;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.os.PowerManager;
+import android.os.SystemClock;
+import android.support.v4.app.NotificationCompat;
+import android.support.v4.os.CancellationSignal;
+import android.support.v4.os.OperationCanceledException;
+import android.util.Log;
+
+import java.io.IOException;
+
+/**
+ * Runs the bulk imports of {@link EarthquakeImporter} in the foreground, with their progress
+ * in a notification, so that an import of years of history survives leaving the app.
+ * <p>
+ * Imports are handled one at a time on a worker thread. If the process is killed half way, the
+ * system delivers the import again and it resumes after the last batch stored.
+ */
+public class EarthquakeImportService extends IntentService {
+
+    private static final String LOG_TAG = EarthquakeImportService.class.getName();
+
+    private static final String ACTION_IMPORT = "com.example.android.quakereport.action.IMPORT";
+    private static final String ACTION_CANCEL = "com.example.android.quakereport.action.CANCEL_IMPORT";
+
+    private static final String EXTRA_SOURCE = "source";
+    private static final String EXTRA_START = "start";
+    private static final String EXTRA_END = "end";
+
+    /**
+     * Separate from the alerts of {@link EarthquakeAlerts}
+     */
+    private static final int NOTIFICATION_ID = 2;
+
+    /**
+     * Shortest time between two updates of the progress notification
+     */
+    private static final long NOTIFICATION_INTERVAL_MILLIS = 1000;
+
+    // Signal of the import in progress, canceled from the main thread
+    private CancellationSignal mCancellationSignal;
+
+    public EarthquakeImportService() {
+        super(EarthquakeImportService.class.getSimpleName());
+        setIntentRedelivery(true);
+    }
+
+    /**
+     * Starts or resumes an import, see {@link EarthquakeImporter#run(Context, String, long, long,
+     * CancellationSignal)}
+     *
+     * @param context is used to start the service
+     * @param source  is the USGS query or the file uri to import
+     * @param start   is the start of the period to import in milliseconds, 0 for a file
+     * @param end     is the end of the period to import in milliseconds, 0 for a file
+     */
+    public static void startImport(Context context, String source, long start, long end) {
+        Intent intent = new Intent(context, EarthquakeImportService.class)
+                .setAction(ACTION_IMPORT)
+                .putExtra(EXTRA_SOURCE, source)
+                .putExtra(EXTRA_START, start)
+                .putExtra(EXTRA_END, end);
+        context.startService(intent);
+    }
+
+    /**
+     * Stops the import in progress, which can be resumed later
+     *
+     * @param context is used to reach the service
+     */
+    public static void cancelImport(Context context) {
+        context.startService(getCancelIntent(context));
+    }
+
+    private static Intent getCancelIntent(Context context) {
+        return new Intent(context, EarthquakeImportService.class).setAction(ACTION_CANCEL);
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        // The worker thread is busy with the import, so a cancel is acted upon right here
+        if (intent != null && ACTION_CANCEL.equals(intent.getAction())) {
+            synchronized (this) {
+                if (mCancellationSignal != null) {
+                    mCancellationSignal.cancel();
+                }
+            }
+        }
+        return super.onStartCommand(intent, flags, startId);
+    }
+
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        if (intent == null || !ACTION_IMPORT.equals(intent.getAction())) {
+            return;
+        }
+        String source = intent.getStringExtra(EXTRA_SOURCE);
+        long start = intent.getLongExtra(EXTRA_START, 0);
+        long end = intent.getLongExtra(EXTRA_END, 0);
+
+        CancellationSignal cancellationSignal = new CancellationSignal();
+        synchronized (this) {
+            mCancellationSignal = cancellationSignal;
+        }
+        final NotificationManager notificationManager =
+                (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
+        EarthquakeImporter.Listener listener = new EarthquakeImporter.Listener() {
+            private long mNotifiedAt;
+
+            @Override
+            public void onImportProgress(EarthquakeImporter.Progress progress) {
+                long now = SystemClock.elapsedRealtime();
+                if (now - mNotifiedAt >= NOTIFICATION_INTERVAL_MILLIS) {
+                    mNotifiedAt = now;
+                    notificationManager.notify(NOTIFICATION_ID, buildProgressNotification(progress));
+                }
+            }
+        };
+
+        // Keep the CPU up for an import that runs on with the screen off
+        PowerManager powerManager = (PowerManager) getSystemService(Context.POWER_SERVICE);
+        PowerManager.WakeLock wakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, LOG_TAG);
+        wakeLock.acquire();
+        startForeground(NOTIFICATION_ID, buildProgressNotification(null));
+        EarthquakeImporter.addListener(listener);
+        int result = R.string.import_notification_stopped;
+        EarthquakeImporter.Progress progress = null;
+        try {
+            progress = EarthquakeImporter.run(this, source, start, end, cancellationSignal);
+            result = R.string.import_notification_complete;
+        } catch (OperationCanceledException e) {
+            // Stopped by the user, the import is resumed when it is started again
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem importing the earthquake catalog.", e);
+        } finally {
+            EarthquakeImporter.removeListener(listener);
+            synchronized (this) {
+                mCancellationSignal = null;
+            }
+            stopForeground(true);
+            wakeLock.release();
+        }
+
+        NotificationCompat.Builder builder = new NotificationCompat.Builder(this)
+                .setSmallIcon(R.mipmap.ic_launcher)
+                .setContentIntent(getImportIntent())
+                .setAutoCancel(true)
+                .setContentTitle(getString(result));
+        if (progress != null) {
+            builder.setContentText(getString(R.string.import_imported, progress.getImported()));
+        }
+        notificationManager.notify(NOTIFICATION_ID, builder.build());
+    }
+
+    private Notification buildProgressNotification(EarthquakeImporter.Progress progress) {
+        NotificationCompat.Builder builder = new NotificationCompat.Builder(this)
+                .setSmallIcon(R.mipmap.ic_launcher)
+                .setContentIntent(getImportIntent())
+                .setOngoing(true)
+                .setContentTitle(getString(R.string.import_notification_title))
+                .addAction(0, getString(R.string.import_stop),
+                        PendingIntent.getService(this, 0, getCancelIntent(this), PendingIntent.FLAG_UPDATE_CURRENT));
+        int percent = progress == null ? -1 : progress.getPercent();
+        builder.setProgress(100, Math.max(percent, 0), percent < 0);
+        if (progress != null) {
+            builder.setContentText(getString(R.string.import_imported, progress.getImported()));
+        }
+        return builder.build();
+    }
+
+    private PendingIntent getImportIntent() {
+        Intent intent = new Intent(this, ImportActivity.class);
+        return PendingIntent.getActivity(this, 0, intent, PendingIntent.FLAG_UPDATE_CURRENT);
+    }
+}
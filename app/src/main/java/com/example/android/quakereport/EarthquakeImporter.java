@@ -0,0 +1,381 @@
+package com.example.android.quakereport;
+
+import android.content.Context;
+import android.net.Uri;
+import android.support.v4.os.CancellationSignal;
+import android.support.v4.os.OperationCanceledException;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Imports a historical catalog, years of events and up to millions of rows, into the
+ * {@link EarthquakeStore}, either from USGS or from a file holding a USGS response.
+ * <p>
+ * The catalog is never held in memory: responses are parsed in batches of {@link #BATCH_SIZE}
+ * earthquakes, and each batch is written in its own transaction together with the cursor of
+ * the import, so memory stays flat for the whole run and an interrupted import resumes right
+ * after the last batch stored. From USGS, the period is walked oldest first in time slices,
+ * each asked for in time order and cut to a page of {@link #PAGE_SIZE} events, the most USGS
+ * returns for one request. A full page goes on from the time of its last event, and the
+ * width of the slices follows the density of the catalog, so that a slice stays well under a
+ * page wherever it is.
+ */
+public final class EarthquakeImporter {
+
+    /**
+     * Interface definition for a callback invoked, on the importing thread, after every batch
+     * stored and when an import stops.
+     */
+    public interface Listener {
+        void onImportProgress(Progress progress);
+    }
+
+    /**
+     * Number of earthquakes written in one transaction
+     */
+    static final int BATCH_SIZE = 500;
+
+    /**
+     * Largest "limit" USGS accepts for a single request
+     */
+    private static final int PAGE_SIZE = 20000;
+
+    private static final long INITIAL_SLICE_MILLIS = TimeUnit.DAYS.toMillis(30);
+    private static final long MIN_SLICE_MILLIS = TimeUnit.HOURS.toMillis(1);
+    private static final long MAX_SLICE_MILLIS = TimeUnit.DAYS.toMillis(366);
+
+    /**
+     * Number of bytes looked at to tell a GeoJSON file from a CSV one
+     */
+    private static final int FORMAT_SNIFF_LIMIT = 1024;
+
+    private static final List<Listener> sListeners = new CopyOnWriteArrayList<>();
+
+    private static volatile boolean sRunning;
+
+    /**
+     * Create a private constructor because no one should ever create a {@link EarthquakeImporter} object.
+     */
+    private EarthquakeImporter() {
+    }
+
+    public static void addListener(Listener listener) {
+        sListeners.add(listener);
+    }
+
+    public static void removeListener(Listener listener) {
+        sListeners.remove(listener);
+    }
+
+    /**
+     * Returns true while an import is running in this process
+     */
+    public static boolean isRunning() {
+        return sRunning;
+    }
+
+    /**
+     * Builds the USGS query of a catalog import, without any time parameters
+     *
+     * @param minMagnitude is the smallest magnitude to import
+     * @param bounds       are the minimum latitude, maximum latitude, minimum longitude and maximum
+     *                     longitude of the region to import, or null for the whole world
+     * @return the query url
+     */
+    public static String buildCatalogQuery(double minMagnitude, double[] bounds) {
+        Uri.Builder uriBuilder = Uri.parse(EarthquakeActivity.USGS_REQUEST_URL).buildUpon();
+        uriBuilder.appendQueryParameter("format", QueryUtils.FORMAT_GEOJSON);
+        uriBuilder.appendQueryParameter("eventtype", "earthquake");
+        uriBuilder.appendQueryParameter("minmag", String.valueOf(minMagnitude));
+        if (bounds != null) {
+            uriBuilder.appendQueryParameter("minlatitude", String.valueOf(bounds[0]));
+            uriBuilder.appendQueryParameter("maxlatitude", String.valueOf(bounds[1]));
+            uriBuilder.appendQueryParameter("minlongitude", String.valueOf(bounds[2]));
+            uriBuilder.appendQueryParameter("maxlongitude", String.valueOf(bounds[3]));
+        }
+        return uriBuilder.toString();
+    }
+
+    /**
+     * Imports a catalog, resuming the import recorded in the store if it is the same one and
+     * was not completed, and starting it from the beginning otherwise. Must be called off the
+     * UI thread.
+     *
+     * @param context            is used to open the store and the file
+     * @param source             is a query built by {@link #buildCatalogQuery(double, double[])},
+     *                           or the uri of a file holding a USGS response in GeoJSON or CSV
+     * @param start              is the start of the period to import in milliseconds, 0 for a file
+     * @param end                is the end of the period to import in milliseconds, 0 for a file
+     * @param cancellationSignal stops the import when canceled, or null
+     * @return the state of the import once it stopped
+     * @throws IOException                if a request or the file failed, the batches stored so far are kept
+     * @throws OperationCanceledException if the import was canceled, the batches stored so far are kept
+     */
+    public static Progress run(Context context, String source, long start, long end,
+                               CancellationSignal cancellationSignal) throws IOException {
+        EarthquakeStore store = new EarthquakeStore(context);
+        Progress progress = store.getImport();
+        if (progress == null || progress.isComplete() || !progress.getSource().equals(source)
+                || progress.getStart() != start || progress.getEnd() != end) {
+            store.startImport(source, start, end);
+            progress = store.getImport();
+        }
+
+        sRunning = true;
+        try {
+            if (progress.isFile()) {
+                importFile(context, store, progress, cancellationSignal);
+            } else {
+                importQuery(context, store, progress, cancellationSignal);
+            }
+            store.finishImport(source);
+        } finally {
+            // Whatever was stored so far is shown, even if the import stopped half way
+            onStoreImported(context);
+            progress = store.getImport();
+            sRunning = false;
+            notifyListeners(progress);
+        }
+        return progress;
+    }
+
+    /**
+     * Walks the period of the import in time slices, from its cursor on
+     */
+    private static void importQuery(Context context, EarthquakeStore store, Progress progress,
+                                    CancellationSignal cancellationSignal) throws IOException {
+        String source = progress.getSource();
+        String format = EarthquakePreferences.getWireFormat(context);
+        long cursor = progress.getCursor();
+        long end = progress.getEnd();
+        long imported = progress.getImported();
+        long slice = INITIAL_SLICE_MILLIS;
+        while (cursor < end) {
+            if (cancellationSignal != null) {
+                cancellationSignal.throwIfCanceled();
+            }
+            long sliceEnd = Math.min(cursor + slice, end);
+            String url = Uri.parse(EarthquakeSync.withFormat(source, format)).buildUpon()
+                    .appendQueryParameter("starttime", EarthquakeSync.formatUsgsTime(cursor))
+                    .appendQueryParameter("endtime", EarthquakeSync.formatUsgsTime(sliceEnd))
+                    .appendQueryParameter("orderby", "time-asc")
+                    .appendQueryParameter("limit", String.valueOf(PAGE_SIZE))
+                    .toString();
+            BatchWriter writer = new BatchWriter(store, progress, cursor, imported);
+            // Counts the events USGS returned, stored or not, so a page of partly dropped
+            // events is still known to be full
+            int count = QueryUtils.fetchEarthquakeBatches(url, BATCH_SIZE, writer, cancellationSignal);
+            imported = writer.mImported;
+
+            if (count < PAGE_SIZE) {
+                // Both ends of a slice are inclusive, so the next one starts at the end of this one
+                cursor = sliceEnd;
+                store.importBatch(source, Collections.<Earthquake>emptyList(), cursor);
+                notifyListeners(progress.advance(cursor, imported));
+                // Aim the next slice at half a page
+                slice = slice * (PAGE_SIZE / 2) / Math.max(count, 1);
+            } else {
+                // The slice holds more than a page, go on from the last event stored. Events at
+                // that very time are asked for again, which the store takes as a revision.
+                // A page of events that all happened in the same millisecond cannot be paged
+                // through, so that millisecond is left behind instead of looping on it.
+                cursor = Math.max(writer.mCursor, cursor + 1);
+                slice = slice / 2;
+            }
+            slice = Math.max(MIN_SLICE_MILLIS, Math.min(slice, MAX_SLICE_MILLIS));
+        }
+    }
+
+    /**
+     * Reads the file of the import, skipping the earthquakes stored by an earlier run
+     */
+    private static void importFile(Context context, EarthquakeStore store, Progress progress,
+                                   CancellationSignal cancellationSignal) throws IOException {
+        InputStream inputStream;
+        try {
+            inputStream = context.getContentResolver().openInputStream(Uri.parse(progress.getSource()));
+        } catch (SecurityException e) {
+            // The access granted by the file picker ended with the process that picked the file
+            throw new IOException("No longer allowed to read " + progress.getSource(), e);
+        }
+        if (inputStream == null) {
+            throw new IOException("Problem opening " + progress.getSource());
+        }
+        try {
+            BufferedInputStream bufferedStream = new BufferedInputStream(inputStream);
+            QueryUtils.readBatches(bufferedStream, detectFormat(bufferedStream), BATCH_SIZE,
+                    new BatchWriter(store, progress, progress.getCursor(), progress.getImported()),
+                    cancellationSignal);
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    /**
+     * Tells a GeoJSON response, which is an object, from a CSV one by its first byte
+     */
+    private static String detectFormat(BufferedInputStream inputStream) throws IOException {
+        inputStream.mark(FORMAT_SNIFF_LIMIT);
+        int b;
+        int read = 0;
+        do {
+            b = inputStream.read();
+            read++;
+        } while ((b == ' ' || b == '\t' || b == '\r' || b == '\n') && read < FORMAT_SNIFF_LIMIT);
+        inputStream.reset();
+        return b == '{' ? QueryUtils.FORMAT_GEOJSON : QueryUtils.FORMAT_CSV;
+    }
+
+    /**
+     * Lets the caches and everything derived from the store see the imported earthquakes
+     */
+    private static void onStoreImported(Context context) {
+        EarthquakeCache.evictAll();
+        EarthquakeSnapshot.delete(EarthquakeSnapshot.getFile(context));
+        EarthquakeSync.notifyStoreChanged(context);
+    }
+
+    private static void notifyListeners(Progress progress) {
+        for (Listener listener : sListeners) {
+            listener.onImportProgress(progress);
+        }
+    }
+
+    /**
+     * Stores every batch parsed together with how far the import has come
+     */
+    private static final class BatchWriter implements QueryUtils.BatchListener {
+
+        private final EarthquakeStore mStore;
+        private final Progress mProgress;
+
+        // A file is read again from its beginning, the earthquakes stored before are skipped
+        private final long mSkip;
+        private long mRead;
+
+        private long mCursor;
+        private long mImported;
+
+        /**
+         * @param cursor   is the cursor of the import before the first batch
+         * @param imported is the number of earthquakes imported before the first batch
+         */
+        BatchWriter(EarthquakeStore store, Progress progress, long cursor, long imported) {
+            this.mStore = store;
+            this.mProgress = progress;
+            this.mCursor = cursor;
+            this.mImported = imported;
+            this.mSkip = progress.isFile() ? cursor : 0;
+        }
+
+        @Override
+        public void onBatchParsed(List<Earthquake> batch) {
+            List<Earthquake> stored = batch;
+            if (mProgress.isFile()) {
+                long read = mRead;
+                mRead += batch.size();
+                if (mRead <= mSkip) {
+                    return;
+                }
+                if (read < mSkip) {
+                    stored = batch.subList((int) (mSkip - read), batch.size());
+                }
+                mCursor = mRead;
+            } else {
+                // A time slice is asked for in time order, so everything before the last event
+                // of the batch is stored
+                mCursor = Math.max(mCursor, batch.get(batch.size() - 1).getTimeInMilliseconds());
+            }
+            mStore.importBatch(mProgress.getSource(), stored, mCursor);
+            mImported += stored.size();
+            notifyListeners(mProgress.advance(mCursor, mImported));
+        }
+    }
+
+    /**
+     * State of a bulk import, as recorded in the store
+     */
+    public static final class Progress {
+
+        private final String mSource;
+        private final long mStart;
+        private final long mEnd;
+        private final long mCursor;
+        private final long mImported;
+        private final boolean mComplete;
+
+        Progress(String source, long start, long end, long cursor, long imported, boolean complete) {
+            this.mSource = source;
+            this.mStart = start;
+            this.mEnd = end;
+            this.mCursor = cursor;
+            this.mImported = imported;
+            this.mComplete = complete;
+        }
+
+        /**
+         * Returns the USGS query or the file uri the catalog is imported from
+         */
+        public String getSource() {
+            return mSource;
+        }
+
+        public long getStart() {
+            return mStart;
+        }
+
+        public long getEnd() {
+            return mEnd;
+        }
+
+        /**
+         * Returns the time up to which every earthquake of a USGS query is stored, or the
+         * number of earthquakes of a file read
+         */
+        public long getCursor() {
+            return mCursor;
+        }
+
+        /**
+         * Returns the number of earthquakes stored by the import so far
+         */
+        public long getImported() {
+            return mImported;
+        }
+
+        public boolean isComplete() {
+            return mComplete;
+        }
+
+        /**
+         * Returns true if the catalog is imported from a file, which has no period
+         */
+        public boolean isFile() {
+            return mEnd == 0;
+        }
+
+        /**
+         * Returns how much of the period has been imported, from 0 to 100, or -1 for a file,
+         * whose size in earthquakes is not known before it has been read
+         */
+        public int getPercent() {
+            if (mComplete) {
+                return 100;
+            }
+            if (isFile() || mEnd <= mStart) {
+                return -1;
+            }
+            return (int) (Math.max(0, mCursor - mStart) * 100 / (mEnd - mStart));
+        }
+
+        private Progress advance(long cursor, long imported) {
+            return new Progress(mSource, mStart, mEnd, cursor, imported, false);
+        }
+    }
+}
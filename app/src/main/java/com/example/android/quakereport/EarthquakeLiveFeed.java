@@ -0,0 +1,302 @@
+package com.example.android.quakereport;
+
+import android.content.Context;
+import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps a "latest earthquakes" list up to date by polling one of the small summary feeds USGS
+ * regenerates every minute, instead of repeating a full query.
+ * <p>
+ * A poll that gets "304 Not Modified", or a payload whose metadata was not generated after the
+ * previous one, is dropped before its features are parsed. Otherwise only the features that are
+ * new or carry a later "updated" time are merged into the held set, and the listener is handed a
+ * new table only if something changed, so the adapter can diff it against the rows on screen.
+ */
+public class EarthquakeLiveFeed {
+
+    public static final String LOG_TAG = EarthquakeLiveFeed.class.getName();
+
+    public static final String USGS_FEED_URL = "http://earthquake.usgs.gov/earthquakes/feed/v1.0/summary/";
+
+    /**
+     * The summary feeds are regenerated about once a minute
+     */
+    private static final long POLL_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    /**
+     * Interface definition for callbacks invoked on the UI thread after a poll.
+     */
+    public interface Listener {
+        void onFeedChanged(EarthquakeTable table);
+
+        void onPollFailed();
+    }
+
+    private final Context mContext;
+    private final String mPeriod;
+    private final double mMinMagnitude;
+    private final String mFeedUrl;
+    private final Handler mHandler = new Handler();
+    private final QueryUtils.Validators mValidators = new QueryUtils.Validators(null, null);
+
+    /**
+     * Every earthquake of the feed window, keyed by event id. Only touched by the poll task,
+     * and polls never overlap.
+     */
+    private final Map<String, Earthquake> mEarthquakes = new HashMap<>();
+
+    private Listener mListener;
+    private EarthquakeTable mTable;
+    private PollTask mPollTask;
+    private boolean mStarted;
+    private long mLastPolledAt;
+
+    private final Runnable mPollRunnable = new Runnable() {
+        @Override
+        public void run() {
+            poll();
+        }
+    };
+
+    /**
+     * Constructs a new {@link EarthquakeLiveFeed}
+     *
+     * @param context      of the app
+     * @param period       is the window of the feed, "hour" or "day"
+     * @param minMagnitude is the smallest magnitude to show
+     */
+    public EarthquakeLiveFeed(Context context, String period, double minMagnitude) {
+        this.mContext = context.getApplicationContext();
+        this.mPeriod = period;
+        this.mMinMagnitude = minMagnitude;
+        this.mFeedUrl = buildFeedUrl(period, minMagnitude);
+    }
+
+    /**
+     * Returns the url of the smallest summary feed that holds every earthquake of the window at
+     * or above the given magnitude
+     *
+     * @param period       is the window of the feed, "hour" or "day"
+     * @param minMagnitude is the smallest magnitude to show
+     * @return the url of the feed
+     */
+    public static String buildFeedUrl(String period, double minMagnitude) {
+        String magnitude;
+        if (minMagnitude >= 4.5) {
+            magnitude = "4.5";
+        } else if (minMagnitude >= 2.5) {
+            magnitude = "2.5";
+        } else if (minMagnitude >= 1.0) {
+            magnitude = "1.0";
+        } else {
+            magnitude = "all";
+        }
+        return USGS_FEED_URL + magnitude + "_" + period + ".geojson";
+    }
+
+    public void setListener(Listener listener) {
+        this.mListener = listener;
+    }
+
+    public String getPeriod() {
+        return mPeriod;
+    }
+
+    public double getMinMagnitude() {
+        return mMinMagnitude;
+    }
+
+    /**
+     * Returns the table of the last poll that changed the feed, or null before the first one
+     */
+    public EarthquakeTable getTable() {
+        return mTable;
+    }
+
+    /**
+     * Starts polling, straight away if the last poll is older than the poll interval
+     */
+    public void start() {
+        if (mStarted) {
+            return;
+        }
+        mStarted = true;
+        long sinceLastPoll = SystemClock.elapsedRealtime() - mLastPolledAt;
+        if (mLastPolledAt == 0 || sinceLastPoll >= POLL_INTERVAL_MILLIS) {
+            poll();
+        } else {
+            mHandler.postDelayed(mPollRunnable, POLL_INTERVAL_MILLIS - sinceLastPoll);
+        }
+    }
+
+    /**
+     * Stops polling; a poll in flight still delivers its result
+     */
+    public void stop() {
+        mStarted = false;
+        mHandler.removeCallbacks(mPollRunnable);
+    }
+
+    /**
+     * Stops polling and cancels the poll in flight
+     */
+    public void release() {
+        stop();
+        if (mPollTask != null) {
+            mPollTask.cancel(true);
+            mPollTask = null;
+        }
+        mListener = null;
+    }
+
+    private void poll() {
+        if (mPollTask != null) {
+            return;
+        }
+        mLastPolledAt = SystemClock.elapsedRealtime();
+        mPollTask = new PollTask();
+        mPollTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
+    private void onPollFinished(PollResult result) {
+        mPollTask = null;
+        if (mStarted) {
+            mHandler.postDelayed(mPollRunnable, POLL_INTERVAL_MILLIS);
+        }
+        if (result.mFailed) {
+            if (mListener != null) {
+                mListener.onPollFailed();
+            }
+            return;
+        }
+        if (result.mTable == null && mTable != null) {
+            // Nothing changed, the rows on screen are still current
+            return;
+        }
+        mTable = result.mTable != null ? result.mTable : EarthquakeTable.empty();
+        if (mListener != null) {
+            mListener.onFeedChanged(mTable);
+        }
+    }
+
+    /**
+     * Merges the fetched earthquakes into the held set
+     *
+     * @param fetched are the earthquakes of the feed, or null if it is unchanged
+     * @return the earthquakes that were new or updated
+     */
+    private List<Earthquake> merge(List<Earthquake> fetched) {
+        List<Earthquake> changed = new ArrayList<>();
+        if (fetched != null) {
+            for (Earthquake earthquake : fetched) {
+                if (earthquake.getMagnitude() < mMinMagnitude) {
+                    continue;
+                }
+                Earthquake held = mEarthquakes.get(earthquake.getId());
+                if (held == null || held.getUpdatedInMilliseconds() < earthquake.getUpdatedInMilliseconds()) {
+                    mEarthquakes.put(earthquake.getId(), earthquake);
+                    changed.add(earthquake);
+                }
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Drops the held earthquakes that left the feed window
+     *
+     * @param windowStart is the start of the window in milliseconds
+     * @return true if any earthquake was dropped
+     */
+    private boolean dropExpired(long windowStart) {
+        boolean dropped = false;
+        Iterator<Earthquake> iterator = mEarthquakes.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().getTimeInMilliseconds() < windowStart) {
+                iterator.remove();
+                dropped = true;
+            }
+        }
+        return dropped;
+    }
+
+    private long getWindowMillis() {
+        return "hour".equals(mPeriod) ? TimeUnit.HOURS.toMillis(1) : TimeUnit.DAYS.toMillis(1);
+    }
+
+    /**
+     * Outcome of a poll: failed, unchanged (no table) or a new table
+     */
+    private static final class PollResult {
+        private final boolean mFailed;
+        private final EarthquakeTable mTable;
+
+        private PollResult(boolean failed, EarthquakeTable table) {
+            this.mFailed = failed;
+            this.mTable = table;
+        }
+    }
+
+    /**
+     * Fetches the feed, merges it and formats the new table off the UI thread
+     */
+    private class PollTask extends AsyncTask<Void, Void, PollResult> {
+
+        @Override
+        protected PollResult doInBackground(Void... params) {
+            List<Earthquake> fetched;
+            try {
+                fetched = EarthquakeRequests.fetchEarthquakeData(mFeedUrl, mValidators, null, null);
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Problem polling the earthquake feed.", e);
+                return new PollResult(true, null);
+            }
+
+            long windowStart = System.currentTimeMillis() - getWindowMillis();
+            List<Earthquake> changed = merge(fetched);
+            boolean dropped = dropExpired(windowStart);
+            if (changed.isEmpty() && !dropped && mTable != null) {
+                return new PollResult(false, null);
+            }
+            if (!changed.isEmpty()) {
+                // Keep the events for the regular list and the offline store
+                new EarthquakeStore(mContext).insert(changed);
+                EarthquakeSync.notifyStoreChanged(mContext);
+            }
+
+            // Latest first, like the feed itself
+            List<Earthquake> earthquakes = new ArrayList<>(mEarthquakes.values());
+            Collections.sort(earthquakes, new Comparator<Earthquake>() {
+                @Override
+                public int compare(Earthquake a, Earthquake b) {
+                    long timeA = a.getTimeInMilliseconds();
+                    long timeB = b.getTimeInMilliseconds();
+                    return timeA > timeB ? -1 : (timeA == timeB ? 0 : 1);
+                }
+            });
+            EarthquakeTable.Builder builder = new EarthquakeTable.Builder(earthquakes.size());
+            for (Earthquake earthquake : earthquakes) {
+                builder.add(earthquake);
+            }
+            return new PollResult(false, builder.build(EarthquakeAdapter.createFormatter(mContext)));
+        }
+
+        @Override
+        protected void onPostExecute(PollResult result) {
+            onPollFinished(result);
+        }
+    }
+}
@@ -2,37 +2,275 @@ package com.example.android.quakereport;
 
 import android.content.AsyncTaskLoader;
 import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v4.os.CancellationSignal;
+import android.support.v4.os.OperationCanceledException;
+import android.util.Log;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.List;
 
 /**
  * Created by Jayabrata Dhakai on 11/20/2016.
  */
 
-public class EarthquakeLoader extends AsyncTaskLoader<List<Earthquake>> {
+public class EarthquakeLoader extends AsyncTaskLoader<EarthquakeTable> {
 
     private static final String LOG_TAG = EarthquakeLoader.class.getName();
 
+    /**
+     * Number of rows read from the snapshot before anything else on a cold start
+     */
+    private static final int FIRST_SCREEN_ROWS = 30;
+
     private String mUrl;
+    private long mTtlInMilliseconds;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    // State of the last delivered result, only touched on the UI thread
+    private long mFetchedAt;
+    private boolean mOffline;
+
+    /**
+     * Signal of the load in progress, canceled by cancelLoadInBackground()
+     */
+    private CancellationSignal mCancellationSignal;
 
-    public EarthquakeLoader(Context context, String urls) {
+    /**
+     * Constructs a new {@link EarthquakeLoader}
+     *
+     * @param context           of the activity
+     * @param urls              is the USGS query url
+     * @param ttlInMilliseconds is how long a result is served from the cache before it is revalidated
+     */
+    public EarthquakeLoader(Context context, String urls, long ttlInMilliseconds) {
         super(context);
-        this.mUrl = urls;
+        this.mUrl = urls == null ? null : EarthquakeCache.normalize(urls);
+        this.mTtlInMilliseconds = ttlInMilliseconds;
     }
 
     @Override
     protected void onStartLoading() {
+        EarthquakeCache.Entry entry = mUrl == null ? null : EarthquakeCache.get(mUrl);
+        if (entry != null) {
+            // Paint straight away from memory, even if the entry is stale.
+            mFetchedAt = entry.getFetchedAt();
+            deliverResult(entry.getTable());
+            if (entry.isFresh(mTtlInMilliseconds) && !takeContentChanged()) {
+                return;
+            }
+        }
+        // Nothing cached or the cached result is stale, so revalidate in the background.
         forceLoad();
     }
 
     @Override
-    public List<Earthquake> loadInBackground() {
+    public EarthquakeTable loadInBackground() {
         // Don't perform the request if there are no URLs, or the first URL is null.
         if (mUrl == null) {
             return null;
         }
 
-        // Perform the HTTP request for earthquake data and process the response.
-        return QueryUtils.fetchEarthquakeData(mUrl);
+        // A query that only narrows or reorders a result already in memory is answered locally
+        EarthquakeQuery query = EarthquakeQuery.parse(mUrl);
+        EarthquakeCache.Entry localAnswer = EarthquakeCache.answerLocally(query, mTtlInMilliseconds);
+        if (localAnswer != null) {
+            EarthquakeCache.put(mUrl, localAnswer);
+            publishStatus(localAnswer.getFetchedAt(), false, null);
+            return localAnswer.getTable();
+        }
+
+        long loadStart = System.nanoTime();
+        final CancellationSignal cancellationSignal;
+        synchronized (this) {
+            mCancellationSignal = new CancellationSignal();
+            cancellationSignal = mCancellationSignal;
+        }
+        try {
+            final EarthquakeFormatter formatter = EarthquakeAdapter.createFormatter(getContext());
+            File snapshotFile = EarthquakeSnapshot.getFile(getContext());
+            EarthquakeSnapshot snapshot = null;
+
+            // On a cold start, paint the first screen from the snapshot before the database is
+            // even opened
+            if (EarthquakeCache.get(mUrl) == null) {
+                long snapshotStart = System.nanoTime();
+                snapshot = EarthquakeSnapshot.open(snapshotFile, mUrl);
+                if (snapshot != null && snapshot.size() > 0) {
+                    publish(snapshot.read(FIRST_SCREEN_ROWS, formatter), snapshot.getFetchedAt(),
+                            cancellationSignal);
+                    EarthquakeMetrics.recordSince(EarthquakeMetrics.SNAPSHOT_READ, snapshotStart);
+                }
+            }
+
+            EarthquakeStore store = new EarthquakeStore(getContext());
+
+            // Without anything in memory, show what is stored while the query is revalidated.
+            // Events stored by other queries or the live feed are better than a spinner, even
+            // if the query itself was never fetched.
+            boolean stale = isStale(store);
+            if (stale && snapshot == null && EarthquakeCache.get(mUrl) == null) {
+                EarthquakeTable stored = store.query(query.getMinMagnitude(),
+                        query.getStartTime(System.currentTimeMillis()), query.getOrderBy(),
+                        query.getLimit(), formatter);
+                if (stored.size() > 0) {
+                    publish(stored, store.getFetchedAt(mUrl), cancellationSignal);
+                }
+            }
+
+            // Offline, the stored result is all there is: answer from it and sync once the
+            // device is back online instead of failing the load
+            boolean offline = stale && !EarthquakeSyncScheduler.isConnected(getContext());
+            if (offline) {
+                EarthquakeSyncScheduler.requestSyncWhenConnected(getContext());
+            }
+
+            // The store is the disk tier of the cache: only go to the network once it is stale.
+            if (stale && !offline) {
+                try {
+                    boolean merged = EarthquakeSync.syncIfStale(store, mUrl, mTtlInMilliseconds,
+                            EarthquakePreferences.getShards(getContext()),
+                            EarthquakePreferences.getWireFormat(getContext()),
+                            new QueryUtils.ParseListener() {
+                                @Override
+                                public void onFeaturesParsed(List<Earthquake> parsed) {
+                                    // The first rows of a full response are the first rows of the result
+                                    EarthquakeTable.Builder builder = new EarthquakeTable.Builder(parsed.size());
+                                    for (Earthquake earthquake : parsed) {
+                                        builder.add(earthquake);
+                                    }
+                                    publish(builder.build(formatter), System.currentTimeMillis(),
+                                            cancellationSignal);
+                                }
+                            },
+                            cancellationSignal);
+                    if (merged) {
+                        EarthquakeSync.notifyStoreChanged(getContext());
+                    }
+                } catch (IOException e) {
+                    // Keep serving what is stored, it will be revalidated on the next load.
+                    Log.e(LOG_TAG, "Problem syncing the earthquake results.", e);
+                }
+            }
+
+            // Answer the query from the snapshot if nothing was fetched since it was written, and
+            // from the store, which now holds the old and the new events, otherwise.
+            // The display columns are formatted here, off the UI thread, so binding a row does no work
+            cancellationSignal.throwIfCanceled();
+            long fetchedAt = store.getFetchedAt(mUrl);
+            EarthquakeTable table;
+            if (snapshot != null && snapshot.getFetchedAt() == fetchedAt) {
+                table = snapshot.read(0, formatter);
+            } else {
+                long queryStart = System.nanoTime();
+                table = store.query(query.getMinMagnitude(),
+                        query.getStartTime(System.currentTimeMillis()),
+                        query.getOrderBy(),
+                        query.getLimit(),
+                        formatter);
+                EarthquakeMetrics.recordSince(EarthquakeMetrics.STORE_QUERY, queryStart);
+                writeSnapshot(snapshotFile, fetchedAt, table);
+            }
+            EarthquakeCache.put(mUrl, table, fetchedAt);
+            publishStatus(fetchedAt, offline, cancellationSignal);
+            EarthquakeMetrics.recordSince(EarthquakeMetrics.LOAD, loadStart);
+            return table;
+        } catch (OperationCanceledException e) {
+            // The result of a canceled load is dropped by AsyncTaskLoader
+            return null;
+        } finally {
+            synchronized (this) {
+                mCancellationSignal = null;
+            }
+        }
+    }
+
+    /**
+     * Aborts the HTTP request and the parse of a load that was superseded, e.g. by a settings
+     * change. Only called from Jelly Bean on; older releases let the load run to completion.
+     */
+    @Override
+    public void cancelLoadInBackground() {
+        super.cancelLoadInBackground();
+        synchronized (this) {
+            if (mCancellationSignal != null) {
+                mCancellationSignal.cancel();
+            }
+        }
+    }
+
+    /**
+     * Keeps the result of the query for the next cold start. A result that was never fetched
+     * is not kept, so that the next start goes to the store and the network again.
+     */
+    private void writeSnapshot(File file, long fetchedAt, EarthquakeTable table) {
+        if (fetchedAt <= 0) {
+            EarthquakeSnapshot.delete(file);
+            return;
+        }
+        try {
+            EarthquakeSnapshot.write(file, mUrl, fetchedAt, table);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem writing the snapshot.", e);
+            EarthquakeSnapshot.delete(file);
+        }
+    }
+
+    /**
+     * Returns when the result delivered last was fetched from USGS, in milliseconds since the
+     * epoch, or 0 if it never was. Must be called on the UI thread.
+     */
+    public long getFetchedAt() {
+        return mFetchedAt;
+    }
+
+    /**
+     * Returns true if the result delivered last could not be revalidated because the device
+     * was offline. Must be called on the UI thread.
+     */
+    public boolean isOffline() {
+        return mOffline;
+    }
+
+    private boolean isStale(EarthquakeStore store) {
+        long age = System.currentTimeMillis() - store.getFetchedAt(mUrl);
+        return age < 0 || age >= mTtlInMilliseconds;
+    }
+
+    /**
+     * Delivers a partial result on the UI thread while the load goes on
+     */
+    private void publish(final EarthquakeTable table, final long fetchedAt,
+                         final CancellationSignal cancellationSignal) {
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                // A partial result that arrives after the load was canceled or stopped is dropped
+                if (!cancellationSignal.isCanceled() && isStarted()) {
+                    mFetchedAt = fetchedAt;
+                    mOffline = false;
+                    deliverResult(table);
+                }
+            }
+        });
+    }
+
+    /**
+     * Sets the state reported with the final result of the load. The result itself is posted
+     * to the UI thread after this returns, so the state is always in place when it arrives.
+     */
+    private void publishStatus(final long fetchedAt, final boolean offline,
+                               final CancellationSignal cancellationSignal) {
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (cancellationSignal == null || !cancellationSignal.isCanceled()) {
+                    mFetchedAt = fetchedAt;
+                    mOffline = offline;
+                }
+            }
+        });
     }
 }
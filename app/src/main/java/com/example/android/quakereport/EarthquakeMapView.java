@@ -0,0 +1,320 @@
+package com.example.android.quakereport;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.support.v4.content.ContextCompat;
+import android.util.AttributeSet;
+import android.view.GestureDetector;
+import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
+import android.view.View;
+
+/**
+ * Pannable and zoomable world map drawing the earthquakes of an {@link EarthquakeSpatialIndex}
+ * as clustered markers.
+ * <p>
+ * The map uses a plain equirectangular projection over a graticule, so it needs no map tiles.
+ * Every frame asks the index for the clusters of the grid level whose cells are about one
+ * marker wide on screen, which keeps the work per frame bounded by what fits on screen
+ * however many earthquakes are indexed.
+ */
+public class EarthquakeMapView extends View {
+
+    /**
+     * Interface definition for a callback invoked when a single earthquake is tapped.
+     */
+    public interface OnEarthquakeClickListener {
+        /**
+         * @param index is the row of the earthquake in the indexed table
+         */
+        void onEarthquakeClick(int index);
+    }
+
+    /**
+     * Size of a grid cell on screen, which is also the largest marker size
+     */
+    private static final float CLUSTER_SIZE_DP = 48;
+    private static final float MIN_RADIUS_DP = 6;
+    private static final float TEXT_SIZE_SP = 12;
+
+    /**
+     * Pixels per degree at the closest zoom, relative to the finest cell filling a cluster
+     */
+    private static final float MAX_ZOOM_MARGIN = 4;
+
+    private final float mDensity;
+    private final Paint mGraticulePaint = new Paint();
+    private final Paint mMarkerPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint mTextPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final int mOceanColor;
+    private final GestureDetector mGestureDetector;
+    private final ScaleGestureDetector mScaleGestureDetector;
+    private final EarthquakeSpatialIndex.Clusters mClusters = new EarthquakeSpatialIndex.Clusters();
+
+    private EarthquakeSpatialIndex mIndex;
+    private OnEarthquakeClickListener mListener;
+    private int mLevel;
+
+    private double mCenterLatitude;
+    private double mCenterLongitude;
+
+    /**
+     * Zoom of the map; 0 until the view has a size and the whole world can be fitted
+     */
+    private double mPixelsPerDegree;
+
+    public EarthquakeMapView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        mDensity = context.getResources().getDisplayMetrics().density;
+        mOceanColor = ContextCompat.getColor(context, R.color.map_ocean);
+
+        mGraticulePaint.setColor(ContextCompat.getColor(context, R.color.map_graticule));
+        mGraticulePaint.setStrokeWidth(mDensity);
+        mTextPaint.setColor(ContextCompat.getColor(context, R.color.map_marker_text));
+        mTextPaint.setTextSize(TEXT_SIZE_SP * context.getResources().getDisplayMetrics().scaledDensity);
+        mTextPaint.setTextAlign(Paint.Align.CENTER);
+
+        mGestureDetector = new GestureDetector(context, new GestureListener());
+        mScaleGestureDetector = new ScaleGestureDetector(context, new ScaleListener());
+    }
+
+    /**
+     * Sets the earthquakes to draw
+     *
+     * @param index is the index over the earthquakes, or null to clear the map
+     */
+    public void setIndex(EarthquakeSpatialIndex index) {
+        mIndex = index;
+        invalidate();
+    }
+
+    public void setOnEarthquakeClickListener(OnEarthquakeClickListener listener) {
+        mListener = listener;
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        setZoom(mPixelsPerDegree);
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        boolean handled = mScaleGestureDetector.onTouchEvent(event);
+        handled = mGestureDetector.onTouchEvent(event) || handled;
+        return handled || super.onTouchEvent(event);
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        canvas.drawColor(mOceanColor);
+        if (mPixelsPerDegree <= 0) {
+            return;
+        }
+        drawGraticule(canvas);
+        if (mIndex == null) {
+            return;
+        }
+
+        queryClusters();
+        EarthquakeTable table = mIndex.getTable();
+        float maxRadius = CLUSTER_SIZE_DP * mDensity / 2;
+        for (int i = 0; i < mClusters.size(); i++) {
+            int count = mClusters.getCount(i);
+            float x = toScreenX(mClusters.getLongitude(i));
+            float y = toScreenY(mClusters.getLatitude(i));
+
+            mMarkerPaint.setColor(table.getMagnitudeColor(mClusters.getStrongest(i)));
+            canvas.drawCircle(x, y, getRadius(count, maxRadius), mMarkerPaint);
+            if (count > 1) {
+                canvas.drawText(String.valueOf(count), x, y - (mTextPaint.descent() + mTextPaint.ascent()) / 2,
+                        mTextPaint);
+            }
+        }
+    }
+
+    /**
+     * Grows the marker with the logarithm of the number of earthquakes it stands for
+     */
+    private float getRadius(int count, float maxRadius) {
+        float minRadius = MIN_RADIUS_DP * mDensity;
+        float radius = minRadius + (float) Math.log10(count) * minRadius;
+        return Math.min(radius, maxRadius);
+    }
+
+    private void drawGraticule(Canvas canvas) {
+        // Keep the lines at least a marker apart
+        double step = 30;
+        while (step > 1 && (step / 2) * mPixelsPerDegree >= CLUSTER_SIZE_DP * mDensity * 2) {
+            step /= 2;
+        }
+        for (double longitude = -180; longitude <= 180; longitude += step) {
+            float x = toScreenX(longitude);
+            if (x >= 0 && x <= getWidth()) {
+                canvas.drawLine(x, Math.max(0, toScreenY(90)), x, Math.min(getHeight(), toScreenY(-90)),
+                        mGraticulePaint);
+            }
+        }
+        for (double latitude = -90; latitude <= 90; latitude += step) {
+            float y = toScreenY(latitude);
+            if (y >= 0 && y <= getHeight()) {
+                canvas.drawLine(Math.max(0, toScreenX(-180)), y, Math.min(getWidth(), toScreenX(180)), y,
+                        mGraticulePaint);
+            }
+        }
+    }
+
+    /**
+     * Queries the clusters of the viewport at the level whose cells are about a marker wide
+     */
+    private void queryClusters() {
+        double cellsPerWorld = 180 * mPixelsPerDegree / (CLUSTER_SIZE_DP * mDensity);
+        int level = (int) Math.ceil(Math.log(cellsPerWorld) / Math.log(2));
+        mLevel = Math.max(0, Math.min(level, EarthquakeSpatialIndex.MAX_LEVEL));
+
+        // Take a marker of margin so that markers centered just off screen are still drawn
+        double margin = CLUSTER_SIZE_DP * mDensity / mPixelsPerDegree;
+        mIndex.query(mLevel,
+                toLatitude(getHeight()) - margin,
+                toLatitude(0) + margin,
+                toLongitude(0) - margin,
+                toLongitude(getWidth()) + margin,
+                mClusters);
+    }
+
+    /**
+     * Returns the cluster drawn closest to the given point, or -1 if none is under it
+     */
+    private int findCluster(float x, float y) {
+        if (mIndex == null) {
+            return -1;
+        }
+        float maxRadius = CLUSTER_SIZE_DP * mDensity / 2;
+        int closest = -1;
+        float closestDistance = Float.MAX_VALUE;
+        for (int i = 0; i < mClusters.size(); i++) {
+            float dx = toScreenX(mClusters.getLongitude(i)) - x;
+            float dy = toScreenY(mClusters.getLatitude(i)) - y;
+            float distance = dx * dx + dy * dy;
+            // Accept a tap around a small marker as well, so that it is easy to hit
+            float radius = Math.max(getRadius(mClusters.getCount(i), maxRadius), maxRadius / 2);
+            if (distance <= radius * radius && distance < closestDistance) {
+                closest = i;
+                closestDistance = distance;
+            }
+        }
+        return closest;
+    }
+
+    /**
+     * Zooms by the given factor, keeping the map point under the focus where it is
+     */
+    private void zoomBy(double factor, float focusX, float focusY) {
+        if (mPixelsPerDegree <= 0) {
+            return;
+        }
+        double latitude = toLatitude(focusY);
+        double longitude = toLongitude(focusX);
+        setZoom(mPixelsPerDegree * factor);
+        mCenterLatitude = latitude + (focusY - getHeight() / 2f) / mPixelsPerDegree;
+        mCenterLongitude = longitude - (focusX - getWidth() / 2f) / mPixelsPerDegree;
+        clampCenter();
+        invalidate();
+    }
+
+    /**
+     * Sets the zoom, bounded so that the world always fills the view and the finest grid
+     * level still clusters
+     */
+    private void setZoom(double pixelsPerDegree) {
+        if (getWidth() == 0 || getHeight() == 0) {
+            return;
+        }
+        double minPixelsPerDegree = Math.max(getWidth() / 360.0, getHeight() / 180.0);
+        double maxPixelsPerDegree = MAX_ZOOM_MARGIN * CLUSTER_SIZE_DP * mDensity
+                / EarthquakeSpatialIndex.getCellSize(EarthquakeSpatialIndex.MAX_LEVEL);
+        mPixelsPerDegree = Math.max(minPixelsPerDegree, Math.min(pixelsPerDegree, maxPixelsPerDegree));
+        clampCenter();
+        invalidate();
+    }
+
+    private void clampCenter() {
+        double halfHeight = getHeight() / 2.0 / mPixelsPerDegree;
+        double halfWidth = getWidth() / 2.0 / mPixelsPerDegree;
+        mCenterLatitude = Math.max(-90 + halfHeight, Math.min(mCenterLatitude, 90 - halfHeight));
+        mCenterLongitude = Math.max(-180 + halfWidth, Math.min(mCenterLongitude, 180 - halfWidth));
+    }
+
+    private float toScreenX(double longitude) {
+        return (float) (getWidth() / 2.0 + (longitude - mCenterLongitude) * mPixelsPerDegree);
+    }
+
+    private float toScreenY(double latitude) {
+        return (float) (getHeight() / 2.0 - (latitude - mCenterLatitude) * mPixelsPerDegree);
+    }
+
+    private double toLongitude(float x) {
+        return mCenterLongitude + (x - getWidth() / 2.0) / mPixelsPerDegree;
+    }
+
+    private double toLatitude(float y) {
+        return mCenterLatitude - (y - getHeight() / 2.0) / mPixelsPerDegree;
+    }
+
+    private class GestureListener extends GestureDetector.SimpleOnGestureListener {
+
+        @Override
+        public boolean onDown(MotionEvent e) {
+            return true;
+        }
+
+        @Override
+        public boolean onScroll(MotionEvent e1, MotionEvent e2, float distanceX, float distanceY) {
+            if (mPixelsPerDegree <= 0) {
+                return false;
+            }
+            mCenterLongitude += distanceX / mPixelsPerDegree;
+            mCenterLatitude -= distanceY / mPixelsPerDegree;
+            clampCenter();
+            invalidate();
+            return true;
+        }
+
+        @Override
+        public boolean onDoubleTap(MotionEvent e) {
+            zoomBy(2, e.getX(), e.getY());
+            return true;
+        }
+
+        @Override
+        public boolean onSingleTapConfirmed(MotionEvent e) {
+            int cluster = findCluster(e.getX(), e.getY());
+            if (cluster < 0) {
+                return false;
+            }
+
+            // Open a single earthquake, or one that cannot be split any further, and zoom
+            // into a cluster otherwise
+            if (mClusters.getCount(cluster) == 1 || mLevel == EarthquakeSpatialIndex.MAX_LEVEL) {
+                if (mListener != null) {
+                    mListener.onEarthquakeClick(mClusters.getStrongest(cluster));
+                }
+            } else {
+                mCenterLatitude = mClusters.getLatitude(cluster);
+                mCenterLongitude = mClusters.getLongitude(cluster);
+                zoomBy(2, getWidth() / 2f, getHeight() / 2f);
+            }
+            return true;
+        }
+    }
+
+    private class ScaleListener extends ScaleGestureDetector.SimpleOnScaleGestureListener {
+
+        @Override
+        public boolean onScale(ScaleGestureDetector detector) {
+            zoomBy(detector.getScaleFactor(), detector.getFocusX(), detector.getFocusY());
+            return true;
+        }
+    }
+}
@@ -0,0 +1,390 @@
+package com.example.android.quakereport;
+
+import android.content.Context;
+import android.os.Debug;
+import android.os.SystemClock;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Process-wide stage timers and counters of a refresh, each kept as a histogram so that
+ * percentiles can be read in {@link MetricsActivity} or dumped to a file.
+ * <p>
+ * Recording is off until {@link #setEnabled(boolean)} turns it on, so the instrumented code
+ * paths only pay for a volatile read in normal use.
+ */
+public final class EarthquakeMetrics {
+
+    /**
+     * Time to resolve the host name of a request, in milliseconds
+     */
+    public static final String DNS = "dns_ms";
+
+    /**
+     * Time to open the connection, including TCP and TLS handshakes, in milliseconds
+     */
+    public static final String CONNECT = "connect_ms";
+
+    /**
+     * Time from sending a request to receiving the response headers, in milliseconds
+     */
+    public static final String FIRST_BYTE = "first_byte_ms";
+
+    /**
+     * Bytes of a response body as received, before it is decompressed
+     */
+    public static final String DOWNLOAD_BYTES = "download_bytes";
+
+    /**
+     * Wall time of reading and parsing a response body, in milliseconds
+     */
+    public static final String BODY = "body_ms";
+
+    /**
+     * CPU time of the thread parsing a response body, in milliseconds
+     */
+    public static final String PARSE_CPU = "parse_cpu_ms";
+
+    /**
+     * Features parsed per second of parse CPU time
+     */
+    public static final String FEATURES_PER_SECOND = "features_per_second";
+
+    /**
+     * Objects allocated while parsing a response body
+     */
+    public static final String PARSE_ALLOCATIONS = "parse_allocations";
+
+    /**
+     * Time of EarthquakeLoader.loadInBackground(), in milliseconds
+     */
+    public static final String LOAD = "load_ms";
+
+    /**
+     * Time of reading and formatting a result from the store, in milliseconds
+     */
+    public static final String STORE_QUERY = "store_query_ms";
+
+    /**
+     * Time of mapping the snapshot and reading its first screen of rows, in milliseconds
+     */
+    public static final String SNAPSHOT_READ = "snapshot_read_ms";
+
+    /**
+     * Time from starting a query to binding its first row, in milliseconds
+     */
+    public static final String FIRST_ROW = "first_row_ms";
+
+    /**
+     * Time of looking up a place name query in the search index, in milliseconds
+     */
+    public static final String SEARCH = "search_ms";
+
+    /**
+     * Time of fetching and parsing the USGS event GeoJSON of one earthquake, in milliseconds
+     */
+    public static final String DETAIL_FETCH = "detail_fetch_ms";
+
+    private static volatile boolean sEnabled;
+
+    private static final Map<String, Histogram> sHistograms = new TreeMap<>();
+
+    /**
+     * Start times of the spans in progress, see {@link #startSpan(String)}
+     */
+    private static final Map<String, Long> sSpans = new TreeMap<>();
+
+    /**
+     * Create a private constructor because no one should ever create a {@link EarthquakeMetrics} object.
+     */
+    private EarthquakeMetrics() {
+    }
+
+    public static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    /**
+     * Turns recording on or off. Allocation counting slows the runtime down a little, so it
+     * only runs while recording is on.
+     *
+     * @param enabled is true to record
+     */
+    @SuppressWarnings("deprecation")
+    public static void setEnabled(boolean enabled) {
+        if (sEnabled == enabled) {
+            return;
+        }
+        sEnabled = enabled;
+        if (enabled) {
+            Debug.startAllocCounting();
+        } else {
+            Debug.stopAllocCounting();
+        }
+    }
+
+    /**
+     * Adds a value to the histogram of the given metric
+     *
+     * @param name  is one of the metric names of this class
+     * @param value is the value to record
+     */
+    public static void record(String name, long value) {
+        if (!sEnabled) {
+            return;
+        }
+        Histogram histogram;
+        synchronized (sHistograms) {
+            histogram = sHistograms.get(name);
+            if (histogram == null) {
+                histogram = new Histogram();
+                sHistograms.put(name, histogram);
+            }
+        }
+        histogram.record(value);
+    }
+
+    /**
+     * Records the milliseconds elapsed since a start time taken with {@link System#nanoTime()}
+     */
+    public static void recordSince(String name, long startNanos) {
+        if (sEnabled) {
+            record(name, (System.nanoTime() - startNanos) / 1000000);
+        }
+    }
+
+    /**
+     * Starts timing a span that ends on another thread or in another component, replacing a
+     * span of the same name that did not end
+     *
+     * @param name is the metric the span is recorded as
+     */
+    public static void startSpan(String name) {
+        if (!sEnabled) {
+            return;
+        }
+        synchronized (sSpans) {
+            sSpans.put(name, SystemClock.elapsedRealtime());
+        }
+    }
+
+    /**
+     * Ends a span started with {@link #startSpan(String)} and records its length; does nothing
+     * if the span already ended
+     *
+     * @param name is the metric the span is recorded as
+     */
+    public static void endSpan(String name) {
+        if (!sEnabled) {
+            return;
+        }
+        Long start;
+        synchronized (sSpans) {
+            start = sSpans.remove(name);
+        }
+        if (start != null) {
+            record(name, SystemClock.elapsedRealtime() - start);
+        }
+    }
+
+    /**
+     * Returns the number of objects allocated by the calling thread so far, or 0 while
+     * recording is off
+     */
+    @SuppressWarnings("deprecation")
+    public static long getThreadAllocations() {
+        return sEnabled ? Debug.getThreadAllocCount() : 0;
+    }
+
+    /**
+     * Forgets everything recorded so far
+     */
+    public static void reset() {
+        synchronized (sHistograms) {
+            sHistograms.clear();
+        }
+        synchronized (sSpans) {
+            sSpans.clear();
+        }
+    }
+
+    /**
+     * Returns a plain text table of every metric: count, p50, p90, p99 and max
+     */
+    public static String report() {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format(Locale.US, "%-20s %7s %9s %9s %9s %9s%n",
+                "metric", "count", "p50", "p90", "p99", "max"));
+        for (Map.Entry<String, Histogram> entry : snapshot().entrySet()) {
+            Histogram histogram = entry.getValue();
+            report.append(String.format(Locale.US, "%-20s %7d %9d %9d %9d %9d%n",
+                    entry.getKey(),
+                    histogram.getCount(),
+                    histogram.getPercentile(50),
+                    histogram.getPercentile(90),
+                    histogram.getPercentile(99),
+                    histogram.getMax()));
+        }
+        return report.toString();
+    }
+
+    /**
+     * Returns every metric as JSON, with its count, sum, min, max and percentiles
+     *
+     * @throws JSONException
+     */
+    public static JSONObject toJson() throws JSONException {
+        JSONObject metrics = new JSONObject();
+        for (Map.Entry<String, Histogram> entry : snapshot().entrySet()) {
+            Histogram histogram = entry.getValue();
+            JSONObject metric = new JSONObject();
+            metric.put("count", histogram.getCount());
+            metric.put("sum", histogram.getSum());
+            metric.put("min", histogram.getMin());
+            metric.put("max", histogram.getMax());
+            metric.put("p50", histogram.getPercentile(50));
+            metric.put("p90", histogram.getPercentile(90));
+            metric.put("p95", histogram.getPercentile(95));
+            metric.put("p99", histogram.getPercentile(99));
+            metrics.put(entry.getKey(), metric);
+        }
+        return metrics;
+    }
+
+    /**
+     * Writes the metrics as JSON to a new file in the app's external files directory, which
+     * can be pulled from the device without root, or its internal one if there is no storage
+     *
+     * @param context is used to find the directory
+     * @return the file written
+     * @throws IOException if the file could not be written
+     */
+    public static File dump(Context context) throws IOException {
+        File directory = context.getExternalFilesDir(null);
+        if (directory == null) {
+            directory = context.getFilesDir();
+        }
+        String timestamp = new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(new Date());
+        File file = new File(directory, "metrics-" + timestamp + ".json");
+
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), Charset.forName("UTF-8"));
+        try {
+            JSONObject dump = new JSONObject();
+            dump.put("generated", System.currentTimeMillis());
+            dump.put("device", android.os.Build.MANUFACTURER + " " + android.os.Build.MODEL);
+            dump.put("sdk", android.os.Build.VERSION.SDK_INT);
+            dump.put("metrics", toJson());
+            writer.write(dump.toString(2));
+        } catch (JSONException e) {
+            throw new IOException("Problem writing the metrics", e);
+        } finally {
+            writer.close();
+        }
+        return file;
+    }
+
+    private static Map<String, Histogram> snapshot() {
+        synchronized (sHistograms) {
+            return new TreeMap<>(sHistograms);
+        }
+    }
+
+    /**
+     * A histogram of non-negative values with log-linear buckets: exact below 16, and eight
+     * buckets per power of two above, so a percentile is within 12.5% of the recorded value.
+     */
+    static final class Histogram {
+
+        private static final int LINEAR_BUCKETS = 16;
+        private static final int SUB_BUCKET_BITS = 3;
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+        private static final int BUCKET_COUNT = LINEAR_BUCKETS + (63 - 4) * SUB_BUCKETS;
+
+        private final long[] mCounts = new long[BUCKET_COUNT];
+        private long mCount;
+        private long mSum;
+        private long mMin = Long.MAX_VALUE;
+        private long mMax = Long.MIN_VALUE;
+
+        synchronized void record(long value) {
+            if (value < 0) {
+                value = 0;
+            }
+            mCounts[getBucket(value)]++;
+            mCount++;
+            mSum += value;
+            mMin = Math.min(mMin, value);
+            mMax = Math.max(mMax, value);
+        }
+
+        synchronized long getCount() {
+            return mCount;
+        }
+
+        synchronized long getSum() {
+            return mSum;
+        }
+
+        synchronized long getMin() {
+            return mCount == 0 ? 0 : mMin;
+        }
+
+        synchronized long getMax() {
+            return mCount == 0 ? 0 : mMax;
+        }
+
+        /**
+         * Returns the value below which the given percentage of the recorded values fall
+         *
+         * @param percentile is between 0 and 100
+         */
+        synchronized long getPercentile(double percentile) {
+            if (mCount == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(percentile / 100 * mCount);
+            long seen = 0;
+            for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+                seen += mCounts[bucket];
+                if (seen >= Math.max(rank, 1)) {
+                    // The middle of the bucket, but never outside what was actually recorded
+                    return Math.max(mMin, Math.min(mMax, getBucketMiddle(bucket)));
+                }
+            }
+            return mMax;
+        }
+
+        private static int getBucket(long value) {
+            if (value < LINEAR_BUCKETS) {
+                return (int) value;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+            return LINEAR_BUCKETS + (exponent - 4) * SUB_BUCKETS + subBucket;
+        }
+
+        private static long getBucketMiddle(int bucket) {
+            if (bucket < LINEAR_BUCKETS) {
+                return bucket;
+            }
+            int exponent = (bucket - LINEAR_BUCKETS) / SUB_BUCKETS + 4;
+            int subBucket = (bucket - LINEAR_BUCKETS) % SUB_BUCKETS;
+            long width = 1L << (exponent - SUB_BUCKET_BITS);
+            long lower = (1L << exponent) + subBucket * width;
+            return lower + width / 2;
+        }
+    }
+}
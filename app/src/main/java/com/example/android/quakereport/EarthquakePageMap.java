@@ -0,0 +1,123 @@
+package com.example.android.quakereport;
+
+import java.util.Arrays;
+
+/**
+ * Maps the adapter positions of a paged query to its pages.
+ * <p>
+ * Page n is requested at offset n * {@link EarthquakePager#PAGE_SIZE} of the USGS result, but
+ * holds fewer rows than USGS returned records when the parser drops a feature, e.g. one
+ * without a magnitude. Each page therefore starts where the rows of the previous one end,
+ * and the end of the result is decided by the number of records, not of rows.
+ */
+final class EarthquakePageMap {
+
+    private final int mTotalLimit;
+
+    /**
+     * Position of the first row of each page appended so far
+     */
+    private int[] mPageStarts = new int[8];
+    private int mPageCount;
+
+    /**
+     * Number of rows of the pages appended so far
+     */
+    private int mCount;
+    private boolean mReachedEnd;
+
+    /**
+     * Constructs a new {@link EarthquakePageMap}
+     *
+     * @param totalLimit is the maximum number of earthquakes to page through
+     */
+    EarthquakePageMap(int totalLimit) {
+        this.mTotalLimit = totalLimit;
+    }
+
+    /**
+     * Returns the number of rows of the pages appended so far
+     */
+    int getCount() {
+        return mCount;
+    }
+
+    /**
+     * Returns the number of pages appended so far
+     */
+    int getPageCount() {
+        return mPageCount;
+    }
+
+    /**
+     * Returns true once the last page of the result has been appended
+     */
+    boolean hasReachedEnd() {
+        return mReachedEnd;
+    }
+
+    /**
+     * Returns the page holding the row at the given position
+     *
+     * @param position is an adapter position below {@link #getCount()}
+     */
+    int getPage(int position) {
+        // The last page starting at or before the position; a page without rows starts where
+        // the next one does and is skipped
+        int low = 0;
+        int high = mPageCount - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (mPageStarts[middle] <= position) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the index of the row at the given position within its page
+     *
+     * @param position is an adapter position below {@link #getCount()}
+     */
+    int getIndexInPage(int position) {
+        return position - mPageStarts[getPage(position)];
+    }
+
+    /**
+     * Returns the position of the first row of an appended page
+     */
+    int getPageStart(int page) {
+        return mPageStarts[page];
+    }
+
+    /**
+     * Returns the number of rows an appended page was counted with
+     */
+    int getPageRowCount(int page) {
+        return (page + 1 < mPageCount ? mPageStarts[page + 1] : mCount) - mPageStarts[page];
+    }
+
+    /**
+     * Appends the next page
+     *
+     * @param requested   is the number of records the page was requested with
+     * @param recordCount is the number of records USGS returned, including those the parser dropped
+     * @param rowCount    is the number of rows the page holds
+     */
+    void append(int requested, int recordCount, int rowCount) {
+        if (mPageCount == mPageStarts.length) {
+            mPageStarts = Arrays.copyOf(mPageStarts, mPageCount * 2);
+        }
+        mPageStarts[mPageCount] = mCount;
+        mPageCount++;
+        mCount += rowCount;
+
+        // Only a page that came back with fewer records than requested is the last one
+        if (recordCount < requested || mPageCount * EarthquakePager.PAGE_SIZE >= mTotalLimit) {
+            mReachedEnd = true;
+        }
+    }
+}
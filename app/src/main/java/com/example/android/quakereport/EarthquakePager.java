@@ -0,0 +1,306 @@
+package com.example.android.quakereport;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.AsyncTask;
+import android.util.Log;
+import android.util.SparseArray;
+import android.util.SparseBooleanArray;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Loads the result of a large USGS query one page at a time, using the "offset" and "limit"
+ * query parameters.
+ * <p>
+ * The first page is requested straight away and each following page once the list is bound
+ * close to the end of what has been loaded. Only the pages around the last bound position are
+ * kept in memory; a dropped page reads as null until it has been fetched again.
+ */
+public class EarthquakePager {
+
+    public static final String LOG_TAG = EarthquakePager.class.getName();
+
+    /**
+     * Number of earthquakes requested per page
+     */
+    public static final int PAGE_SIZE = 100;
+
+    /**
+     * Number of pages kept on either side of the page being displayed
+     */
+    private static final int WINDOW_PAGES = 2;
+
+    /**
+     * Interface definition for callbacks invoked on the UI thread as pages arrive.
+     */
+    public interface Listener {
+        void onRowsInserted(int positionStart, int itemCount);
+
+        void onRowsChanged(int positionStart, int itemCount);
+
+        void onLoadFailed();
+    }
+
+    private final Context mContext;
+    private final String mQueryUrl;
+    private final int mTotalLimit;
+    private final SparseArray<EarthquakeTable> mPages = new SparseArray<>();
+    private final SparseArray<PageTask> mLoadingPages = new SparseArray<>();
+
+    /**
+     * Pages whose last request failed, until they are requested again
+     */
+    private final SparseBooleanArray mFailedPages = new SparseBooleanArray();
+    private final EarthquakePageMap mPageMap;
+    private Listener mListener;
+
+    /**
+     * Constructs a new {@link EarthquakePager}
+     *
+     * @param context    of the app
+     * @param queryUrl   is the USGS query url, without "limit" and "offset"
+     * @param totalLimit is the maximum number of earthquakes to page through
+     */
+    public EarthquakePager(Context context, String queryUrl, int totalLimit) {
+        this.mContext = context.getApplicationContext();
+        this.mQueryUrl = queryUrl;
+        this.mTotalLimit = totalLimit;
+        this.mPageMap = new EarthquakePageMap(totalLimit);
+    }
+
+    public void setListener(Listener listener) {
+        this.mListener = listener;
+    }
+
+    public String getQueryUrl() {
+        return mQueryUrl;
+    }
+
+    public int getTotalLimit() {
+        return mTotalLimit;
+    }
+
+    /**
+     * Returns the number of rows loaded so far, including rows of pages that were dropped again
+     */
+    public int getCount() {
+        return mPageMap.getCount();
+    }
+
+    /**
+     * Returns the page holding the row at the given position, or null if it is not in memory
+     * or does not hold the row any more
+     *
+     * @param position is the adapter position of the row
+     */
+    public EarthquakeTable getPage(int position) {
+        EarthquakeTable page = mPages.get(mPageMap.getPage(position));
+        // A page fetched again comes back shorter than it was counted if events were deleted
+        // upstream in between, the rows past its end are left as placeholders
+        if (page == null || getIndexInPage(position) >= page.size()) {
+            return null;
+        }
+        return page;
+    }
+
+    /**
+     * Returns the index of the row at the given position within its page
+     *
+     * @param position is the adapter position of the row
+     */
+    public int getIndexInPage(int position) {
+        return mPageMap.getIndexInPage(position);
+    }
+
+    /**
+     * Returns true once the first page has been delivered
+     */
+    public boolean hasLoadedFirstPage() {
+        return mPageMap.getPageCount() > 0;
+    }
+
+    /**
+     * Returns true if a page request failed and the page was not requested again since
+     */
+    public boolean hasFailed() {
+        return mFailedPages.size() > 0;
+    }
+
+    /**
+     * Requests every page whose last request failed again, e.g. when the user asks for it or
+     * the device is back online
+     */
+    public void retry() {
+        int[] pages = new int[mFailedPages.size()];
+        for (int i = 0; i < pages.length; i++) {
+            pages[i] = mFailedPages.keyAt(i);
+        }
+        for (int page : pages) {
+            loadPage(page);
+        }
+    }
+
+    /**
+     * Requests the first page, unless it is already loaded or loading
+     */
+    public void loadFirstPage() {
+        if (!hasLoadedFirstPage()) {
+            loadPage(0);
+        }
+    }
+
+    /**
+     * Tells the pager that the row at the given position is being displayed, so that it can
+     * fetch the next or a dropped page and drop the pages that are far away.
+     *
+     * @param position is the adapter position being bound
+     */
+    public void onPositionBound(int position) {
+        int page = mPageMap.getPage(position);
+
+        // Reload a page that was dropped while it was off-screen, or whose request failed
+        if (mPages.get(page) == null) {
+            loadPage(page);
+        }
+
+        // Fetch the next page once the last loaded one comes into view
+        int lastPage = mPageMap.getPageCount() - 1;
+        if (!mPageMap.hasReachedEnd() && page >= lastPage) {
+            loadPage(lastPage + 1);
+        }
+
+        trimPages(page);
+    }
+
+    /**
+     * Cancels every page request in flight
+     */
+    public void release() {
+        for (int i = 0; i < mLoadingPages.size(); i++) {
+            mLoadingPages.valueAt(i).cancel(true);
+        }
+        mLoadingPages.clear();
+        mFailedPages.clear();
+        mListener = null;
+    }
+
+    private void loadPage(int page) {
+        mFailedPages.delete(page);
+        int offset = page * PAGE_SIZE;
+        if (offset >= mTotalLimit || mLoadingPages.get(page) != null) {
+            return;
+        }
+        int limit = Math.min(PAGE_SIZE, mTotalLimit - offset);
+
+        // USGS offsets start at 1
+        String pageUrl = Uri.parse(mQueryUrl).buildUpon()
+                .appendQueryParameter("offset", String.valueOf(offset + 1))
+                .appendQueryParameter("limit", String.valueOf(limit))
+                .toString();
+
+        PageTask task = new PageTask(page, limit);
+        mLoadingPages.put(page, task);
+        task.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, pageUrl);
+    }
+
+    private void trimPages(int currentPage) {
+        for (int i = mPages.size() - 1; i >= 0; i--) {
+            if (Math.abs(mPages.keyAt(i) - currentPage) > WINDOW_PAGES) {
+                mPages.removeAt(i);
+            }
+        }
+    }
+
+    private void onPageLoaded(int page, int requested, int recordCount, EarthquakeTable rows) {
+        mLoadingPages.remove(page);
+        mPages.put(page, rows);
+
+        // Only the page past those loaded so far is appended; a page fetched again keeps the
+        // rows it was counted with, even if events were deleted or added before it since
+        boolean appended = page == mPageMap.getPageCount();
+        if (appended) {
+            mPageMap.append(requested, recordCount, rows.size());
+            if (rows.size() == 0 && !mPageMap.hasReachedEnd()) {
+                // Every record of the page was dropped, so no row of it is bound to ask for the next
+                loadPage(page + 1);
+            }
+        }
+
+        if (mListener == null) {
+            return;
+        }
+        int start = mPageMap.getPageStart(page);
+        if (appended) {
+            mListener.onRowsInserted(start, rows.size());
+        } else {
+            // Every row counted for the page changes, including those it no longer holds
+            mListener.onRowsChanged(start, mPageMap.getPageRowCount(page));
+        }
+    }
+
+    private void onPageFailed(int page) {
+        mLoadingPages.remove(page);
+        mFailedPages.put(page, true);
+        if (mListener != null) {
+            mListener.onLoadFailed();
+        }
+    }
+
+    /**
+     * Fetches, stores and formats a single page off the UI thread
+     */
+    private class PageTask extends AsyncTask<String, Void, EarthquakeTable> {
+
+        private final int mPage;
+        private final int mRequested;
+
+        /**
+         * Number of records USGS returned, including those the parser dropped
+         */
+        private int mRecordCount;
+
+        PageTask(int page, int requested) {
+            this.mPage = page;
+            this.mRequested = requested;
+        }
+
+        @Override
+        protected EarthquakeTable doInBackground(String... urls) {
+            try {
+                String url = EarthquakeSync.withFormat(urls[0], EarthquakePreferences.getWireFormat(mContext));
+                // The page comes back as a single batch, along with the number of records
+                // read, which tells a short page from one that lost a feature to the parser
+                final List<Earthquake> earthquakes = new ArrayList<>(mRequested);
+                mRecordCount = QueryUtils.fetchEarthquakeBatches(url, mRequested,
+                        new QueryUtils.BatchListener() {
+                            @Override
+                            public void onBatchParsed(List<Earthquake> batch) {
+                                earthquakes.addAll(batch);
+                            }
+                        }, null);
+                new EarthquakeStore(mContext).insert(earthquakes);
+
+                EarthquakeTable.Builder builder = new EarthquakeTable.Builder(earthquakes.size());
+                for (Earthquake earthquake : earthquakes) {
+                    builder.add(earthquake);
+                }
+                return builder.build(EarthquakeAdapter.createFormatter(mContext));
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Problem loading page " + mPage, e);
+                return null;
+            }
+        }
+
+        @Override
+        protected void onPostExecute(EarthquakeTable rows) {
+            if (rows == null) {
+                onPageFailed(mPage);
+            } else {
+                onPageLoaded(mPage, mRequested, mRecordCount, rows);
+            }
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package com.example.android.quakereport;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Inverted index over the words of the place names of earthquakes, answering type-ahead
+ * searches such as "anch" or "alaska anc" with the latest matching events.
+ * <p>
+ * Place names are cut into lower case words without accents. The words are kept in a sorted
+ * dictionary, each with the list of the events whose place holds it, so the words starting
+ * with a prefix are one range of the dictionary. Every word of a query is read as a prefix,
+ * the events of its range are marked in a bit set and the sets of the words are intersected,
+ * so a search costs O(matching events) and never looks at a place string. Events are added
+ * and revised one at a time as they reach the store; a revised event keeps its slot and only
+ * moves between the lists of the words that changed.
+ * <p>
+ * All methods are thread safe.
+ */
+public final class EarthquakePlaceIndex {
+
+    // Columns of the indexed events, by slot
+    private int mSize;
+    private String[] mIds = new String[64];
+    private long[] mTimes = new long[64];
+    private Postings[][] mPostings = new Postings[64][];
+
+    private final Map<String, Integer> mSlots = new HashMap<>();
+    private final TreeMap<String, Postings> mWords = new TreeMap<>();
+
+    /**
+     * Adds an earthquake, or revises it if its id is already indexed
+     *
+     * @param id                 is the USGS event id
+     * @param place              is the place name to index
+     * @param timeInMilliseconds is the time of the earthquake, matches are returned latest first
+     */
+    public synchronized void put(String id, String place, long timeInMilliseconds) {
+        Integer slot = mSlots.get(id);
+        List<String> words = tokenize(place);
+        if (slot == null) {
+            slot = mSize;
+            if (mSize == mIds.length) {
+                grow();
+            }
+            mSize++;
+            mIds[slot] = id;
+            mSlots.put(id, slot);
+        } else {
+            // Leave the lists of the previous place, the words in both are joined again below
+            for (Postings postings : mPostings[slot]) {
+                postings.remove(slot);
+                if (postings.mSize == 0) {
+                    mWords.remove(postings.mWord);
+                }
+            }
+        }
+        mTimes[slot] = timeInMilliseconds;
+
+        Postings[] postingsOfSlot = new Postings[words.size()];
+        for (int i = 0; i < postingsOfSlot.length; i++) {
+            String word = words.get(i);
+            Postings postings = mWords.get(word);
+            if (postings == null) {
+                postings = new Postings(word);
+                mWords.put(word, postings);
+            }
+            postings.add(slot);
+            postingsOfSlot[i] = postings;
+        }
+        mPostings[slot] = postingsOfSlot;
+    }
+
+    /**
+     * Returns the number of earthquakes indexed
+     */
+    public synchronized int size() {
+        return mSize;
+    }
+
+    /**
+     * Finds the earthquakes whose place has a word starting with every word of the query
+     *
+     * @param query is the text typed, e.g. "anch" or "alaska anc"
+     * @param limit is the maximum number of ids to return
+     * @return the {@link Matches} of the query, with the ids of the latest of them
+     */
+    public synchronized Matches search(String query, int limit) {
+        List<String> prefixes = tokenize(query);
+        if (prefixes.isEmpty() || limit <= 0) {
+            return new Matches(Collections.<String>emptyList(), 0);
+        }
+
+        BitSet matches = null;
+        for (String prefix : prefixes) {
+            BitSet prefixMatches = new BitSet(mSize);
+            // Every word starting with the prefix sorts between it and the prefix followed by the last char
+            for (Postings postings : mWords.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values()) {
+                for (int i = 0; i < postings.mSize; i++) {
+                    prefixMatches.set(postings.mSlots[i]);
+                }
+            }
+            if (matches == null) {
+                matches = prefixMatches;
+            } else {
+                matches.and(prefixMatches);
+            }
+            if (matches.isEmpty()) {
+                return new Matches(Collections.<String>emptyList(), 0);
+            }
+        }
+
+        // Keep the latest matches in a min-heap on time, so only they are ever sorted
+        int[] heap = new int[Math.min(limit, matches.cardinality())];
+        int heapSize = 0;
+        int count = 0;
+        for (int slot = matches.nextSetBit(0); slot >= 0; slot = matches.nextSetBit(slot + 1)) {
+            count++;
+            if (heapSize < heap.length) {
+                heap[heapSize++] = slot;
+                siftUp(heap, heapSize - 1);
+            } else if (mTimes[slot] > mTimes[heap[0]]) {
+                heap[0] = slot;
+                siftDown(heap, heapSize);
+            }
+        }
+
+        String[] ids = new String[heapSize];
+        for (int i = heapSize - 1; i >= 0; i--) {
+            ids[i] = mIds[heap[0]];
+            heap[0] = heap[i];
+            siftDown(heap, i);
+        }
+        List<String> latest = new ArrayList<>(ids.length);
+        Collections.addAll(latest, ids);
+        return new Matches(latest, count);
+    }
+
+    /**
+     * Cuts a place name or a query into lower case words of letters and digits, without accents,
+     * each word once
+     *
+     * @param text is the text to cut
+     * @return the words in the order they first appear
+     */
+    static List<String> tokenize(String text) {
+        List<String> words = new ArrayList<>(4);
+        if (text == null) {
+            return words;
+        }
+        // USGS place names are mostly ASCII, only the others pay for the decomposition
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) > 0x7F) {
+                text = Normalizer.normalize(text, Normalizer.Form.NFD);
+                break;
+            }
+        }
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                word.append(Character.toLowerCase(c));
+            } else if (Character.getType(c) == Character.NON_SPACING_MARK) {
+                // The accent of a decomposed letter, the letter itself was kept
+                continue;
+            } else if (word.length() > 0) {
+                String token = word.toString();
+                if (!words.contains(token)) {
+                    words.add(token);
+                }
+                word.setLength(0);
+            }
+        }
+        return words;
+    }
+
+    private void siftUp(int[] heap, int index) {
+        int slot = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) / 2;
+            if (mTimes[heap[parent]] <= mTimes[slot]) {
+                break;
+            }
+            heap[index] = heap[parent];
+            index = parent;
+        }
+        heap[index] = slot;
+    }
+
+    private void siftDown(int[] heap, int size) {
+        if (size == 0) {
+            return;
+        }
+        int slot = heap[0];
+        int index = 0;
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && mTimes[heap[child + 1]] < mTimes[heap[child]]) {
+                child++;
+            }
+            if (mTimes[slot] <= mTimes[heap[child]]) {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = slot;
+    }
+
+    private void grow() {
+        int capacity = mIds.length * 2;
+        String[] ids = new String[capacity];
+        long[] times = new long[capacity];
+        Postings[][] postings = new Postings[capacity][];
+        System.arraycopy(mIds, 0, ids, 0, mSize);
+        System.arraycopy(mTimes, 0, times, 0, mSize);
+        System.arraycopy(mPostings, 0, postings, 0, mSize);
+        mIds = ids;
+        mTimes = times;
+        mPostings = postings;
+    }
+
+    /**
+     * Slots of the events whose place holds a word, in no particular order
+     */
+    private static final class Postings {
+
+        private final String mWord;
+        private int[] mSlots = new int[4];
+        private int mSize;
+
+        Postings(String word) {
+            this.mWord = word;
+        }
+
+        void add(int slot) {
+            if (mSize == mSlots.length) {
+                int[] slots = new int[mSize * 2];
+                System.arraycopy(mSlots, 0, slots, 0, mSize);
+                mSlots = slots;
+            }
+            mSlots[mSize++] = slot;
+        }
+
+        void remove(int slot) {
+            for (int i = 0; i < mSize; i++) {
+                if (mSlots[i] == slot) {
+                    mSlots[i] = mSlots[--mSize];
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Result of a search: the ids of the latest matches and the number of all of them
+     */
+    public static final class Matches {
+
+        private final List<String> mIds;
+        private final int mCount;
+
+        Matches(List<String> ids, int count) {
+            this.mIds = ids;
+            this.mCount = count;
+        }
+
+        /**
+         * Returns the ids of the latest matching earthquakes, latest first
+         */
+        public List<String> getIds() {
+            return mIds;
+        }
+
+        /**
+         * Returns the number of matching earthquakes, including those left out by the limit
+         */
+        public int getCount() {
+            return mCount;
+        }
+    }
+}
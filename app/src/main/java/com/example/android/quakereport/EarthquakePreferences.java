@@ -0,0 +1,220 @@
+package com.example.android.quakereport;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.ConnectivityManager;
+import android.net.Uri;
+import android.preference.PreferenceManager;
+import android.support.v4.net.ConnectivityManagerCompat;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads the user's settings, shared by the screens and the background sync so that they all
+ * ask USGS for the same query.
+ */
+public final class EarthquakePreferences {
+
+    /**
+     * Create a private constructor because no one should ever create a {@link EarthquakePreferences} object.
+     */
+    private EarthquakePreferences() {
+    }
+
+    /**
+     * Builds the USGS query for the current settings, without the "limit" parameter
+     *
+     * @param context is used to read the settings
+     * @return a {@link Uri.Builder} of the query
+     */
+    public static Uri.Builder buildQueryUri(Context context) {
+        SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(context);
+        String minMagnitude = sharedPrefs.getString(
+                context.getString(R.string.settings_min_magnitude_key),
+                context.getString(R.string.settings_min_magnitude_default));
+        String orderBy = sharedPrefs.getString(
+                context.getString(R.string.settings_order_by_key),
+                context.getString(R.string.settings_order_by_default));
+
+        Uri baseUri = Uri.parse(EarthquakeActivity.USGS_REQUEST_URL);
+        Uri.Builder uriBuilder = baseUri.buildUpon();
+
+        // The query names the data; the format it is downloaded in is picked per request,
+        // see getWireFormat()
+        uriBuilder.appendQueryParameter("format", QueryUtils.FORMAT_GEOJSON);
+        uriBuilder.appendQueryParameter("eventtype", "earthquake");
+        uriBuilder.appendQueryParameter("minmag", minMagnitude);
+        uriBuilder.appendQueryParameter("orderby", orderBy);
+        return uriBuilder;
+    }
+
+    /**
+     * Returns the USGS query loaded by {@link EarthquakeLoader} for the current settings
+     *
+     * @param context is used to read the settings
+     * @return the normalized query url, including the "limit" parameter
+     */
+    public static String getLoaderUrl(Context context) {
+        Uri.Builder uriBuilder = buildQueryUri(context);
+        uriBuilder.appendQueryParameter("limit", String.valueOf(getLimit(context)));
+        return EarthquakeCache.normalize(uriBuilder.toString());
+    }
+
+    /**
+     * Returns the "limit" setting as a number, falling back to the default if it is not a whole number
+     */
+    public static int getLimit(Context context) {
+        SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(context);
+        String limit = sharedPrefs.getString(
+                context.getString(R.string.settings_limit_key),
+                context.getString(R.string.settings_limit_default));
+        try {
+            return Integer.parseInt(limit);
+        } catch (NumberFormatException e) {
+            return Integer.parseInt(context.getString(R.string.settings_limit_default));
+        }
+    }
+
+    /**
+     * Returns the "feed" setting: the query value to search USGS, or the period of the live
+     * summary feed to follow, "hour" or "day"
+     */
+    public static String getFeed(Context context) {
+        return PreferenceManager.getDefaultSharedPreferences(context).getString(
+                context.getString(R.string.settings_feed_key),
+                context.getString(R.string.settings_feed_default));
+    }
+
+    /**
+     * Returns true if the "feed" setting selects a live summary feed instead of a search
+     */
+    public static boolean isLiveFeed(Context context) {
+        return !context.getString(R.string.settings_feed_query_value).equals(getFeed(context));
+    }
+
+    /**
+     * Returns the "minimum magnitude" setting as a number, falling back to the default if it is not a number
+     */
+    public static double getMinMagnitude(Context context) {
+        SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(context);
+        String minMagnitude = sharedPrefs.getString(
+                context.getString(R.string.settings_min_magnitude_key),
+                context.getString(R.string.settings_min_magnitude_default));
+        try {
+            return Double.parseDouble(minMagnitude);
+        } catch (NumberFormatException e) {
+            return Double.parseDouble(context.getString(R.string.settings_min_magnitude_default));
+        }
+    }
+
+    /**
+     * Returns the number of time windows a large query is split into and fetched in parallel,
+     * 1 if it is fetched with a single request
+     */
+    public static int getShards(Context context) {
+        return (int) getLong(context, R.string.settings_shards_key, R.string.settings_shards_default);
+    }
+
+    /**
+     * Returns the format USGS responses are downloaded in, see the "download format" setting.
+     * Automatic picks CSV, which is several times smaller and quicker to parse, on a metered
+     * network, and GeoJSON, which carries the event urls and lets an unchanged response be
+     * recognized from its first bytes, otherwise.
+     *
+     * @param context is used to read the settings and reach the connectivity service
+     * @return {@link QueryUtils#FORMAT_GEOJSON} or {@link QueryUtils#FORMAT_CSV}
+     */
+    public static String getWireFormat(Context context) {
+        String format = PreferenceManager.getDefaultSharedPreferences(context).getString(
+                context.getString(R.string.settings_format_key),
+                context.getString(R.string.settings_format_default));
+        if (QueryUtils.FORMAT_GEOJSON.equals(format) || QueryUtils.FORMAT_CSV.equals(format)) {
+            return format;
+        }
+        ConnectivityManager connectivityManager =
+                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        return ConnectivityManagerCompat.isActiveNetworkMetered(connectivityManager)
+                ? QueryUtils.FORMAT_CSV : QueryUtils.FORMAT_GEOJSON;
+    }
+
+    /**
+     * Returns how long a loaded result is served before it is revalidated, in milliseconds
+     */
+    public static long getCacheTtl(Context context) {
+        return TimeUnit.MINUTES.toMillis(getLong(context,
+                R.string.settings_cache_ttl_key, R.string.settings_cache_ttl_default));
+    }
+
+    /**
+     * Returns the interval of the background sync in milliseconds, or 0 if it is turned off
+     */
+    public static long getSyncInterval(Context context) {
+        return TimeUnit.MINUTES.toMillis(getLong(context,
+                R.string.settings_sync_interval_key, R.string.settings_sync_interval_default));
+    }
+
+    /**
+     * Returns true if the background sync may only run on an unmetered network
+     */
+    public static boolean isSyncUnmeteredOnly(Context context) {
+        return PreferenceManager.getDefaultSharedPreferences(context).getBoolean(
+                context.getString(R.string.settings_sync_unmetered_key),
+                context.getResources().getBoolean(R.bool.settings_sync_unmetered_default));
+    }
+
+    /**
+     * Returns true if the background sync may only run while the device is charging
+     */
+    public static boolean isSyncChargingOnly(Context context) {
+        return PreferenceManager.getDefaultSharedPreferences(context).getBoolean(
+                context.getString(R.string.settings_sync_charging_key),
+                context.getResources().getBoolean(R.bool.settings_sync_charging_default));
+    }
+
+    /**
+     * Returns the magnitude from which an earthquake counts as significant for the widget and
+     * the notifications
+     */
+    public static double getAlertMagnitude(Context context) {
+        SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(context);
+        String alertMagnitude = sharedPrefs.getString(
+                context.getString(R.string.settings_alert_magnitude_key),
+                context.getString(R.string.settings_alert_magnitude_default));
+        try {
+            return Double.parseDouble(alertMagnitude);
+        } catch (NumberFormatException e) {
+            return Double.parseDouble(context.getString(R.string.settings_alert_magnitude_default));
+        }
+    }
+
+    /**
+     * Returns true if new significant earthquakes should be notified
+     */
+    public static boolean isNotificationsEnabled(Context context) {
+        return PreferenceManager.getDefaultSharedPreferences(context).getBoolean(
+                context.getString(R.string.settings_notifications_key),
+                context.getResources().getBoolean(R.bool.settings_notifications_default));
+    }
+
+    /**
+     * Returns true if the fetch, parse and render stages should be timed and counted
+     */
+    public static boolean isMetricsEnabled(Context context) {
+        return PreferenceManager.getDefaultSharedPreferences(context).getBoolean(
+                context.getString(R.string.settings_metrics_key),
+                context.getResources().getBoolean(R.bool.settings_metrics_default));
+    }
+
+    /**
+     * Reads a setting stored as a whole number string, falling back to its default if it is not one
+     */
+    private static long getLong(Context context, int keyResId, int defaultResId) {
+        SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(context);
+        String value = sharedPrefs.getString(context.getString(keyResId), context.getString(defaultResId));
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return Long.parseLong(context.getString(defaultResId));
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.example.android.quakereport;
+
+import android.net.Uri;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The parts of a USGS query that can be evaluated on the device: minimum magnitude, order and
+ * limit, and the start of the period the query covers.
+ * <p>
+ * Used to answer a new query from a result already held in memory whenever that result is
+ * known to contain everything the new query asks for, so that changing these settings does not
+ * need a network round trip.
+ */
+public final class EarthquakeQuery {
+
+    private static final String PARAMETER_MIN_MAGNITUDE = "minmag";
+    private static final String PARAMETER_ORDER_BY = "orderby";
+    private static final String PARAMETER_LIMIT = "limit";
+    private static final String PARAMETER_START_TIME = "starttime";
+
+    /**
+     * USGS answers a query without "starttime" with the last 30 days
+     */
+    public static final long DEFAULT_PERIOD_MILLIS = TimeUnit.DAYS.toMillis(30);
+
+    /**
+     * Formats USGS accepts for "starttime", most precise first; times without a zone are UTC
+     */
+    private static final String[] TIME_FORMATS = {
+            "yyyy-MM-dd'T'HH:mm:ss.SSS", "yyyy-MM-dd'T'HH:mm:ss", "yyyy-MM-dd'T'HH:mm", "yyyy-MM-dd"
+    };
+
+    /**
+     * Value of {@link #mStartTime} for a query without a "starttime" of its own
+     */
+    static final long NO_START_TIME = Long.MIN_VALUE;
+
+    /**
+     * Order USGS uses when the query has no "orderby" parameter
+     */
+    private static final String DEFAULT_ORDER_BY = "time";
+
+    private final String mBaseUrl;
+    private final double mMinMagnitude;
+    private final String mOrderBy;
+    private final int mLimit;
+    private final long mStartTime;
+
+    /**
+     * Constructs a query from its parts, see {@link #parse(String)}
+     *
+     * @param baseUrl      is the query url without the locally evaluated parameters
+     * @param minMagnitude is the "minmag" value, 0 if there is none
+     * @param orderBy      is the "orderby" value
+     * @param limit        is the "limit" value, 0 if there is none
+     * @param startTime    is the "starttime" in milliseconds, or {@link #NO_START_TIME}
+     */
+    EarthquakeQuery(String baseUrl, double minMagnitude, String orderBy, int limit, long startTime) {
+        this.mBaseUrl = baseUrl;
+        this.mMinMagnitude = minMagnitude;
+        this.mOrderBy = orderBy;
+        this.mLimit = limit;
+        this.mStartTime = startTime;
+    }
+
+    /**
+     * Parses a normalized USGS query url
+     *
+     * @param url is a url normalized by {@link EarthquakeCache#normalize(String)}
+     * @return the parsed {@link EarthquakeQuery}
+     */
+    public static EarthquakeQuery parse(String url) {
+        Uri uri = Uri.parse(url);
+
+        // Everything but the locally evaluated parameters has to match between two queries
+        Uri.Builder baseBuilder = uri.buildUpon().clearQuery();
+        for (String name : uri.getQueryParameterNames()) {
+            if (PARAMETER_MIN_MAGNITUDE.equals(name) || PARAMETER_ORDER_BY.equals(name)
+                    || PARAMETER_LIMIT.equals(name)) {
+                continue;
+            }
+            for (String value : uri.getQueryParameters(name)) {
+                baseBuilder.appendQueryParameter(name, value);
+            }
+        }
+
+        String orderBy = uri.getQueryParameter(PARAMETER_ORDER_BY);
+        return new EarthquakeQuery(baseBuilder.toString(),
+                parseDouble(uri.getQueryParameter(PARAMETER_MIN_MAGNITUDE)),
+                orderBy != null ? orderBy : DEFAULT_ORDER_BY,
+                parseInt(uri.getQueryParameter(PARAMETER_LIMIT)),
+                parseTime(uri.getQueryParameter(PARAMETER_START_TIME)));
+    }
+
+    public double getMinMagnitude() {
+        return mMinMagnitude;
+    }
+
+    public String getOrderBy() {
+        return mOrderBy;
+    }
+
+    public int getLimit() {
+        return mLimit;
+    }
+
+    /**
+     * Returns the start of the period the query covers: its "starttime", or 30 days before
+     * now if it has none, like USGS
+     *
+     * @param now is the current time in milliseconds since the epoch
+     * @return the inclusive start of the period in milliseconds since the epoch
+     */
+    public long getStartTime(long now) {
+        return mStartTime != NO_START_TIME ? mStartTime : now - DEFAULT_PERIOD_MILLIS;
+    }
+
+    /**
+     * Answers this query from the result of another query, if that result is guaranteed to hold
+     * every earthquake this query would return
+     *
+     * @param held      is the query the table is the result of
+     * @param heldTable is the result of the held query
+     * @return the answer to this query, or null if it has to be asked over the network
+     */
+    public EarthquakeTable answerFrom(EarthquakeQuery held, EarthquakeTable heldTable) {
+        if (!mBaseUrl.equals(held.mBaseUrl) || mMinMagnitude < held.mMinMagnitude) {
+            return null;
+        }
+
+        // A result that was not cut off by its limit holds every matching earthquake
+        boolean complete = held.mLimit <= 0 || heldTable.size() < held.mLimit;
+
+        // The strongest earthquakes are all held down to the weakest one in the result
+        int last = heldTable.size() - 1;
+        if (!complete && "magnitude".equals(held.mOrderBy) && last >= 0
+                && mMinMagnitude > heldTable.getMagnitude(last)) {
+            complete = true;
+        }
+
+        if (complete) {
+            return heldTable.query(mMinMagnitude, mOrderBy, mLimit);
+        }
+
+        // A cut off result still holds the first rows of the same order, as long as enough
+        // of them pass the higher magnitude filter
+        if (mLimit > 0 && mOrderBy.equals(held.mOrderBy)) {
+            EarthquakeTable answer = heldTable.query(mMinMagnitude, mOrderBy, mLimit);
+            if (answer.size() == mLimit) {
+                return answer;
+            }
+        }
+        return null;
+    }
+
+    private static double parseDouble(String value) {
+        try {
+            return value == null ? 0 : Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static long parseTime(String value) {
+        if (value == null) {
+            return NO_START_TIME;
+        }
+        for (String pattern : TIME_FORMATS) {
+            SimpleDateFormat format = new SimpleDateFormat(pattern, Locale.US);
+            format.setTimeZone(TimeZone.getTimeZone("UTC"));
+            format.setLenient(false);
+            try {
+                return format.parse(value).getTime();
+            } catch (ParseException e) {
+                // Try the next, less precise format
+            }
+        }
+        return NO_START_TIME;
+    }
+
+    private static int parseInt(String value) {
+        try {
+            return value == null ? 0 : Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
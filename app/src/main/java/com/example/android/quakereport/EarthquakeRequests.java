@@ -0,0 +1,227 @@
+package com.example.android.quakereport;
+
+import android.support.v4.os.CancellationSignal;
+import android.support.v4.os.OperationCanceledException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Process-wide gate in front of {@link QueryUtils#fetchEarthquakeData(String, QueryUtils.Validators,
+ * QueryUtils.ParseListener, CancellationSignal)} that the loaders, the sync and the live feed go through.
+ * <p>
+ * Identical requests that are in flight at the same time, e.g. from an activity recreated
+ * mid-load and the background sync, share a single network call whose result is handed to
+ * every caller. The calls themselves run on a small fixed pool, which caps how many requests
+ * the app makes to USGS at once.
+ */
+public final class EarthquakeRequests {
+
+    /**
+     * Maximum number of requests made to USGS at the same time; further requests queue
+     */
+    static final int MAX_CONCURRENT_REQUESTS = 4;
+
+    private static final ExecutorService sExecutor = Executors.newFixedThreadPool(MAX_CONCURRENT_REQUESTS,
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "EarthquakeRequest");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    /**
+     * Calls in flight, by url and validators; guarded by itself
+     */
+    private static final Map<String, Call> sCalls = new HashMap<>();
+
+    /**
+     * Create a private constructor because no one should ever create a {@link EarthquakeRequests} object.
+     */
+    private EarthquakeRequests() {
+    }
+
+    /**
+     * Fetches a USGS url like {@link QueryUtils#fetchEarthquakeData(String, QueryUtils.Validators,
+     * QueryUtils.ParseListener, CancellationSignal)}, joining an identical request that is
+     * already in flight instead of making another one
+     *
+     * @param requestUrl         is the USGS url to fetch
+     * @param validators         are sent as conditional headers and updated from the response headers
+     * @param listener           is told about the features parsed so far, or null
+     * @param cancellationSignal stops waiting for the result when canceled, or null; the shared
+     *                           request is only aborted once every caller waiting for it has canceled
+     * @return a list of {@link Earthquake} objects owned by the caller, or null if the stored
+     * data is still current
+     * @throws IOException                if the request failed
+     * @throws OperationCanceledException if the request was canceled
+     */
+    public static List<Earthquake> fetchEarthquakeData(String requestUrl, QueryUtils.Validators validators,
+                                                       QueryUtils.ParseListener listener,
+                                                       CancellationSignal cancellationSignal)
+            throws IOException {
+        // A conditional request is only the same request if it sends the same validators
+        String key = requestUrl + '\n' + validators.getEtag() + '\n' + validators.getLastModified()
+                + '\n' + validators.getGenerated();
+        Call call;
+        synchronized (sCalls) {
+            call = sCalls.get(key);
+            if (call == null) {
+                call = new Call(key, requestUrl, validators.copy());
+                sCalls.put(key, call);
+                sExecutor.execute(call);
+            }
+            call.subscribe(listener);
+        }
+
+        List<Earthquake> result = call.await(listener, cancellationSignal);
+        validators.set(call.mValidators);
+        return result;
+    }
+
+    /**
+     * A single network call and the callers waiting for it
+     */
+    private static final class Call implements Runnable {
+
+        private final String mKey;
+        private final String mUrl;
+        private final QueryUtils.Validators mValidators;
+        private final CancellationSignal mCancellationSignal = new CancellationSignal();
+
+        // Guarded by sCalls
+        private final List<QueryUtils.ParseListener> mListeners = new ArrayList<>();
+        private int mSubscribers;
+
+        // Guarded by this
+        private boolean mDone;
+        private List<Earthquake> mResult;
+        private IOException mError;
+        private RuntimeException mFailure;
+
+        Call(String key, String url, QueryUtils.Validators validators) {
+            this.mKey = key;
+            this.mUrl = url;
+            this.mValidators = validators;
+        }
+
+        void subscribe(QueryUtils.ParseListener listener) {
+            mSubscribers++;
+            if (listener != null) {
+                mListeners.add(listener);
+            }
+        }
+
+        /**
+         * Detaches a caller that stopped waiting, and aborts the request once nobody waits for it
+         */
+        private void unsubscribe(QueryUtils.ParseListener listener) {
+            synchronized (sCalls) {
+                mListeners.remove(listener);
+                if (--mSubscribers > 0) {
+                    return;
+                }
+                // Let a later identical request start afresh rather than join an aborted one
+                if (sCalls.get(mKey) == this) {
+                    sCalls.remove(mKey);
+                }
+            }
+            mCancellationSignal.cancel();
+        }
+
+        @Override
+        public void run() {
+            List<Earthquake> result = null;
+            IOException error = null;
+            RuntimeException failure = null;
+            try {
+                result = QueryUtils.fetchEarthquakeData(mUrl, mValidators, new QueryUtils.ParseListener() {
+                    @Override
+                    public void onFeaturesParsed(List<Earthquake> parsed) {
+                        List<QueryUtils.ParseListener> listeners;
+                        synchronized (sCalls) {
+                            listeners = new ArrayList<>(mListeners);
+                        }
+                        for (QueryUtils.ParseListener listener : listeners) {
+                            listener.onFeaturesParsed(parsed);
+                        }
+                    }
+                }, mCancellationSignal);
+            } catch (IOException e) {
+                error = e;
+            } catch (RuntimeException e) {
+                // Includes OperationCanceledException, once every caller has gone
+                failure = e;
+            } finally {
+                synchronized (sCalls) {
+                    if (sCalls.get(mKey) == this) {
+                        sCalls.remove(mKey);
+                    }
+                }
+            }
+
+            synchronized (this) {
+                mResult = result;
+                mError = error;
+                mFailure = failure;
+                mDone = true;
+                notifyAll();
+            }
+        }
+
+        /**
+         * Waits for the result of the call on behalf of one caller
+         */
+        List<Earthquake> await(final QueryUtils.ParseListener listener, CancellationSignal cancellationSignal)
+                throws IOException {
+            if (cancellationSignal != null) {
+                cancellationSignal.setOnCancelListener(new CancellationSignal.OnCancelListener() {
+                    @Override
+                    public void onCancel() {
+                        synchronized (Call.this) {
+                            Call.this.notifyAll();
+                        }
+                    }
+                });
+            }
+            try {
+                synchronized (this) {
+                    while (!mDone) {
+                        if (cancellationSignal != null && cancellationSignal.isCanceled()) {
+                            unsubscribe(listener);
+                            throw new OperationCanceledException();
+                        }
+                        try {
+                            wait();
+                        } catch (InterruptedException e) {
+                            unsubscribe(listener);
+                            Thread.currentThread().interrupt();
+                            throw new OperationCanceledException();
+                        }
+                    }
+                }
+            } finally {
+                if (cancellationSignal != null) {
+                    cancellationSignal.setOnCancelListener(null);
+                }
+            }
+
+            if (mError != null) {
+                throw new IOException(mError.getMessage(), mError);
+            }
+            if (mFailure != null) {
+                throw mFailure;
+            }
+            // Every caller gets its own list, the earthquakes themselves are immutable
+            return mResult == null ? null : new ArrayList<>(mResult);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.android.quakereport;
+
+import android.content.Context;
+
+/**
+ * Searches the stored earthquakes by place name through an {@link EarthquakePlaceIndex}.
+ * <p>
+ * The index is built from the store once per process, the first time it is needed, and then
+ * kept up to date like {@link EarthquakeStatistics}: after every sync only the rows stored since
+ * are read, through an {@link EarthquakeChangeTracker}, and put into it. A search only touches the index, and then the store for
+ * the few rows it returns.
+ */
+public final class EarthquakeSearch {
+
+    // Guarded by the class
+    private static EarthquakePlaceIndex sIndex;
+    private static final EarthquakeChangeTracker sChanges = new EarthquakeChangeTracker();
+
+    /**
+     * Create a private constructor because no one should ever create a {@link EarthquakeSearch} object.
+     */
+    private EarthquakeSearch() {
+    }
+
+    /**
+     * Returns the stored earthquakes whose place has a word starting with every word of the
+     * query, latest first. Builds the index on the first call, so it must be called off the
+     * UI thread.
+     *
+     * @param context   is used to open the store
+     * @param query     is the text typed
+     * @param limit     is the maximum number of earthquakes to return
+     * @param formatter formats the display columns of the result
+     * @return the {@link Result} of the search
+     */
+    public static Result search(Context context, String query, int limit, EarthquakeFormatter formatter) {
+        EarthquakeStore store = new EarthquakeStore(context);
+        EarthquakePlaceIndex index = getIndex(store);
+        long searchStart = System.nanoTime();
+        EarthquakePlaceIndex.Matches matches = index.search(query, limit);
+        EarthquakeMetrics.recordSince(EarthquakeMetrics.SEARCH, searchStart);
+        if (matches.getIds().isEmpty()) {
+            return new Result(EarthquakeTable.empty(), 0);
+        }
+        return new Result(store.queryIds(matches.getIds(), formatter), matches.getCount());
+    }
+
+    /**
+     * Builds the index if it was not built yet, e.g. as soon as the search screen opens
+     *
+     * @param context is used to open the store
+     */
+    public static void prepare(Context context) {
+        getIndex(new EarthquakeStore(context));
+    }
+
+    /**
+     * Puts the earthquakes stored since the last update into the index. Does nothing until the
+     * index was built, so a process that never searches never builds it.
+     *
+     * @param context is used to open the store
+     */
+    public static synchronized void update(Context context) {
+        if (sIndex != null) {
+            applyUpdates(new EarthquakeStore(context));
+        }
+    }
+
+    /**
+     * Drops the index after earthquakes were deleted from the store, such as the events pruned
+     * after a sync, so that it is built again the next time it is needed
+     */
+    public static synchronized void invalidate() {
+        sIndex = null;
+        sChanges.reset();
+    }
+
+    private static synchronized EarthquakePlaceIndex getIndex(EarthquakeStore store) {
+        if (sIndex == null) {
+            sIndex = new EarthquakePlaceIndex();
+            sChanges.reset();
+            applyUpdates(store);
+        }
+        return sIndex;
+    }
+
+    private static void applyUpdates(EarthquakeStore store) {
+        EarthquakeTable updated = sChanges.readChanges(store);
+        if (updated == null) {
+            return;
+        }
+        for (int i = 0; i < updated.size(); i++) {
+            sIndex.put(updated.getId(i), updated.getLocation(i), updated.getTimeInMilliseconds(i));
+        }
+    }
+
+    /**
+     * Earthquakes found by a search, with the number of all the matches
+     */
+    public static final class Result {
+
+        private final EarthquakeTable mTable;
+        private final int mCount;
+
+        Result(EarthquakeTable table, int count) {
+            this.mTable = table;
+            this.mCount = count;
+        }
+
+        /**
+         * Returns the latest matching earthquakes, latest first
+         */
+        public EarthquakeTable getTable() {
+            return mTable;
+        }
+
+        /**
+         * Returns the number of matching earthquakes, including those left out by the limit
+         */
+        public int getCount() {
+            return mCount;
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package com.example.android.quakereport;
+
+import android.net.Uri;
+import android.support.v4.os.CancellationSignal;
+import android.support.v4.os.OperationCanceledException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fetches a large USGS query as several time-range shards in parallel.
+ * <p>
+ * The query period is split into equal "starttime"/"endtime" windows, each window is fetched
+ * and parsed on its own thread with the full "limit", and the results are merged, deduplicated
+ * by event id, sorted by the query's "orderby" and cut to the limit. The top of every window
+ * together always holds the top of the whole period, so the merged result is the one a single
+ * request would have returned.
+ */
+public final class EarthquakeShardFetcher {
+
+    /**
+     * Queries smaller than this are answered quickly enough by a single request
+     */
+    public static final int MIN_SHARDED_LIMIT = 1000;
+
+    /**
+     * Bound on the shards fetched at the same time, across all callers. Every shard goes
+     * through {@link EarthquakeRequests}, which makes no more requests than this at once, so
+     * further threads would only wait for it.
+     */
+    private static final int MAX_PARALLEL_SHARDS = EarthquakeRequests.MAX_CONCURRENT_REQUESTS;
+
+    private static final ExecutorService sExecutor = Executors.newFixedThreadPool(MAX_PARALLEL_SHARDS,
+            new ThreadFactory() {
+                private final AtomicInteger mCount = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "EarthquakeShard #" + mCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    /**
+     * Create a private constructor because no one should ever create a {@link EarthquakeShardFetcher} object.
+     */
+    private EarthquakeShardFetcher() {
+    }
+
+    /**
+     * Returns true if a query is worth splitting: it asks for many earthquakes and does not
+     * already restrict or page through its period
+     *
+     * @param url    is the USGS query url
+     * @param shards is the number of shards configured
+     */
+    public static boolean canShard(String url, int shards) {
+        if (shards < 2) {
+            return false;
+        }
+        Uri uri = Uri.parse(url);
+        EarthquakeQuery query = EarthquakeQuery.parse(url);
+        // A query without a limit is the largest of all
+        int limit = query.getLimit();
+        return (limit == 0 || limit >= MIN_SHARDED_LIMIT)
+                && uri.getQueryParameter("starttime") == null
+                && uri.getQueryParameter("endtime") == null
+                && uri.getQueryParameter("updatedafter") == null
+                && uri.getQueryParameter("offset") == null;
+    }
+
+    /**
+     * Fetches a query as the given number of time-range shards
+     *
+     * @param url    is the USGS query url, see {@link #canShard(String, int)}
+     * @param shards is the number of time windows to split the query period into
+     * @param format is the format to download the shards in
+     * @param cancellationSignal aborts every shard when canceled, or null
+     * @return the earthquakes of the query, in its order and cut to its limit if it has one
+     * @throws IOException                if any shard failed, in which case the others are cancelled
+     * @throws OperationCanceledException if the fetch was canceled
+     */
+    public static List<Earthquake> fetch(String url, int shards, String format,
+                                         CancellationSignal cancellationSignal)
+            throws IOException {
+        EarthquakeQuery query = EarthquakeQuery.parse(url);
+        long end = System.currentTimeMillis();
+        long start = end - EarthquakeQuery.DEFAULT_PERIOD_MILLIS;
+        long width = (end - start + shards - 1) / shards;
+
+        // Every shard has its own connection, so each gets a signal of its own to disconnect it
+        final List<CancellationSignal> shardSignals = new ArrayList<>(shards);
+        if (cancellationSignal != null) {
+            cancellationSignal.setOnCancelListener(new CancellationSignal.OnCancelListener() {
+                @Override
+                public void onCancel() {
+                    cancelShards(shardSignals);
+                }
+            });
+        }
+
+        List<Future<List<Earthquake>>> futures = new ArrayList<>(shards);
+        for (long shardStart = start; shardStart < end; shardStart += width) {
+            final CancellationSignal shardSignal = new CancellationSignal();
+            synchronized (shardSignals) {
+                shardSignals.add(shardSignal);
+                if (cancellationSignal != null && cancellationSignal.isCanceled()) {
+                    shardSignal.cancel();
+                }
+            }
+            final String shardUrl = Uri.parse(EarthquakeSync.withFormat(url, format)).buildUpon()
+                    .appendQueryParameter("starttime", EarthquakeSync.formatUsgsTime(shardStart))
+                    .appendQueryParameter("endtime", EarthquakeSync.formatUsgsTime(Math.min(shardStart + width, end)))
+                    .toString();
+            futures.add(sExecutor.submit(new Callable<List<Earthquake>>() {
+                @Override
+                public List<Earthquake> call() throws IOException {
+                    return EarthquakeRequests.fetchEarthquakeData(shardUrl, new QueryUtils.Validators(null, null),
+                            null, shardSignal);
+                }
+            }));
+        }
+
+        // Neighbouring windows share their boundary, keep one copy of an event seen twice
+        Map<String, Earthquake> merged = new HashMap<>();
+        try {
+            for (Future<List<Earthquake>> future : futures) {
+                List<Earthquake> shard = future.get();
+                if (shard == null) {
+                    continue;
+                }
+                for (Earthquake earthquake : shard) {
+                    Earthquake held = merged.get(earthquake.getId());
+                    if (held == null || held.getUpdatedInMilliseconds() < earthquake.getUpdatedInMilliseconds()) {
+                        merged.put(earthquake.getId(), earthquake);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            cancelShards(shardSignals);
+            cancelFutures(futures);
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while fetching the shards of " + url, e);
+        } catch (ExecutionException e) {
+            cancelShards(shardSignals);
+            cancelFutures(futures);
+            Throwable cause = e.getCause();
+            if (cause instanceof OperationCanceledException) {
+                throw (OperationCanceledException) cause;
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Problem fetching a shard of " + url, cause);
+        } finally {
+            if (cancellationSignal != null) {
+                cancellationSignal.setOnCancelListener(null);
+            }
+        }
+
+        List<Earthquake> earthquakes = new ArrayList<>(merged.values());
+        Collections.sort(earthquakes, getComparator(query.getOrderBy()));
+        if (query.getLimit() > 0 && earthquakes.size() > query.getLimit()) {
+            earthquakes = new ArrayList<>(earthquakes.subList(0, query.getLimit()));
+        }
+        return earthquakes;
+    }
+
+    private static void cancelFutures(List<Future<List<Earthquake>>> futures) {
+        for (Future<List<Earthquake>> future : futures) {
+            future.cancel(true);
+        }
+    }
+
+    private static void cancelShards(List<CancellationSignal> shardSignals) {
+        synchronized (shardSignals) {
+            for (CancellationSignal shardSignal : shardSignals) {
+                shardSignal.cancel();
+            }
+        }
+    }
+
+    /**
+     * Returns a {@link Comparator} for the given USGS "orderby" value, latest first by default
+     */
+    private static Comparator<Earthquake> getComparator(final String orderBy) {
+        return new Comparator<Earthquake>() {
+            @Override
+            public int compare(Earthquake a, Earthquake b) {
+                if ("time-asc".equals(orderBy)) {
+                    return compareLongs(a.getTimeInMilliseconds(), b.getTimeInMilliseconds());
+                } else if ("magnitude".equals(orderBy)) {
+                    return Double.compare(b.getMagnitude(), a.getMagnitude());
+                } else if ("magnitude-asc".equals(orderBy)) {
+                    return Double.compare(a.getMagnitude(), b.getMagnitude());
+                }
+                return compareLongs(b.getTimeInMilliseconds(), a.getTimeInMilliseconds());
+            }
+        };
+    }
+
+    private static int compareLongs(long a, long b) {
+        return a < b ? -1 : (a == b ? 0 : 1);
+    }
+}
@@ -0,0 +1,356 @@
+package com.example.android.quakereport;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact, versioned binary copy of the last result of a query, read back with memory-mapped
+ * I/O so that a cold start can paint its first rows without opening the database or parsing
+ * anything.
+ * <p>
+ * The file holds a fixed header, one fixed-width column per field and a table of UTF-8
+ * strings addressed by index:
+ * <pre>
+ * header   magic, version, fetched at, row count, string count, string bytes
+ * columns  time, updated (long); magnitude, latitude, longitude, depth (double);
+ *          id, place, url (int reference into the string table)
+ * strings  string count + 1 offsets (int), then the bytes of every string
+ * </pre>
+ * The query the result answers is string 0. Because every column starts at a known offset,
+ * reading the first rows costs the same however many rows the file holds.
+ */
+public final class EarthquakeSnapshot {
+
+    public static final String LOG_TAG = EarthquakeSnapshot.class.getName();
+
+    private static final String FILE_NAME = "earthquakes.snapshot";
+
+    /**
+     * "EQSN"
+     */
+    private static final int MAGIC = 0x4551534E;
+
+    /**
+     * Increment whenever the layout changes; a file of another version is ignored
+     */
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 4 + 4 + 4;
+
+    /**
+     * Bytes of the columns per row: six longs and doubles and three string references
+     */
+    private static final int ROW_SIZE = 6 * 8 + 3 * 4;
+
+    /**
+     * Url reference of a row that has no url
+     */
+    private static final int NO_URL = -1;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final ByteBuffer mBuffer;
+    private final long mFetchedAt;
+    private final int mRowCount;
+    private final int mStringCount;
+
+    // Byte offsets of the columns and of the string table
+    private final int mTimesOffset;
+    private final int mUpdatedOffset;
+    private final int mMagnitudesOffset;
+    private final int mLatitudesOffset;
+    private final int mLongitudesOffset;
+    private final int mDepthsOffset;
+    private final int mIdsOffset;
+    private final int mPlacesOffset;
+    private final int mUrlsOffset;
+    private final int mStringOffsetsOffset;
+    private final int mStringBytesOffset;
+
+    /**
+     * Strings decoded so far, so that a place or url prefix shared by many rows is only
+     * decoded once
+     */
+    private final String[] mStrings;
+    private byte[] mScratch = new byte[128];
+
+    private EarthquakeSnapshot(ByteBuffer buffer, long fetchedAt, int rowCount, int stringCount) {
+        mBuffer = buffer;
+        mFetchedAt = fetchedAt;
+        mRowCount = rowCount;
+        mStringCount = stringCount;
+        mStrings = new String[stringCount];
+
+        mTimesOffset = HEADER_SIZE;
+        mUpdatedOffset = mTimesOffset + 8 * rowCount;
+        mMagnitudesOffset = mUpdatedOffset + 8 * rowCount;
+        mLatitudesOffset = mMagnitudesOffset + 8 * rowCount;
+        mLongitudesOffset = mLatitudesOffset + 8 * rowCount;
+        mDepthsOffset = mLongitudesOffset + 8 * rowCount;
+        mIdsOffset = mDepthsOffset + 8 * rowCount;
+        mPlacesOffset = mIdsOffset + 4 * rowCount;
+        mUrlsOffset = mPlacesOffset + 4 * rowCount;
+        mStringOffsetsOffset = mUrlsOffset + 4 * rowCount;
+        mStringBytesOffset = mStringOffsetsOffset + 4 * (stringCount + 1);
+    }
+
+    /**
+     * Returns the file the snapshot of the app is kept in
+     */
+    public static File getFile(Context context) {
+        return new File(context.getCacheDir(), FILE_NAME);
+    }
+
+    /**
+     * Maps a snapshot file and checks that it answers the given query
+     *
+     * @param file  is the snapshot file
+     * @param query is the normalized USGS query url the snapshot should answer
+     * @return the snapshot, or null if there is none for the query or it cannot be read
+     */
+    public static EarthquakeSnapshot open(File file, String query) {
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            FileInputStream inputStream = new FileInputStream(file);
+            MappedByteBuffer buffer;
+            try {
+                FileChannel channel = inputStream.getChannel();
+                // The mapping stays valid after the channel is closed
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            } finally {
+                inputStream.close();
+            }
+
+            if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                return null;
+            }
+            long fetchedAt = buffer.getLong(8);
+            int rowCount = buffer.getInt(16);
+            int stringCount = buffer.getInt(20);
+            int stringBytes = buffer.getInt(24);
+
+            // The counts size the arrays of the snapshot, so a damaged file must not get that far
+            if (rowCount < 0 || stringCount < 1 || stringBytes < 0
+                    || HEADER_SIZE + (long) ROW_SIZE * rowCount + 4L * (stringCount + 1) + stringBytes
+                    != buffer.capacity()) {
+                return null;
+            }
+            EarthquakeSnapshot snapshot = new EarthquakeSnapshot(buffer, fetchedAt, rowCount, stringCount);
+            if (!query.equals(snapshot.getString(0))) {
+                return null;
+            }
+            return snapshot;
+        } catch (IOException | RuntimeException e) {
+            // A snapshot that cannot be read, however it is damaged, is as good as none
+            Log.e(LOG_TAG, "Problem opening the snapshot", e);
+            return null;
+        }
+    }
+
+    /**
+     * Writes a snapshot of a result, replacing the previous one in a single rename so that a
+     * reader never sees a partly written file
+     *
+     * @param file      is the snapshot file
+     * @param query     is the normalized USGS query url the table answers
+     * @param fetchedAt is when the store last fetched the query, see {@link EarthquakeStore#getFetchedAt(String)}
+     * @param table     is the result of the query
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(File file, String query, long fetchedAt, EarthquakeTable table) throws IOException {
+        int rowCount = table.size();
+        StringTable strings = new StringTable();
+        strings.add(query);
+
+        int[] ids = new int[rowCount];
+        int[] places = new int[rowCount];
+        int[] urls = new int[rowCount];
+        for (int i = 0; i < rowCount; i++) {
+            String id = table.getId(i);
+            String url = table.getUrl(i);
+            ids[i] = strings.add(id);
+            places[i] = strings.add(table.getLocation(i));
+            if (url == null) {
+                urls[i] = NO_URL;
+            } else if (id != null && url.endsWith(id)) {
+                // Event pages share their prefix, so store it once and flag that the id follows
+                urls[i] = strings.add(url.substring(0, url.length() - id.length())) << 1 | 1;
+            } else {
+                urls[i] = strings.add(url) << 1;
+            }
+        }
+
+        EarthquakeSnapshot layout = new EarthquakeSnapshot(null, fetchedAt, rowCount, strings.size());
+        ByteBuffer buffer = ByteBuffer.allocate(layout.mStringBytesOffset + strings.mByteCount);
+        buffer.putInt(MAGIC)
+                .putInt(VERSION)
+                .putLong(fetchedAt)
+                .putInt(rowCount)
+                .putInt(strings.size())
+                .putInt(strings.mByteCount);
+        for (int i = 0; i < rowCount; i++) {
+            buffer.putLong(table.getTimeInMilliseconds(i));
+        }
+        for (int i = 0; i < rowCount; i++) {
+            buffer.putLong(table.getUpdatedInMilliseconds(i));
+        }
+        for (int i = 0; i < rowCount; i++) {
+            buffer.putDouble(table.getMagnitude(i));
+        }
+        for (int i = 0; i < rowCount; i++) {
+            buffer.putDouble(table.getLatitude(i));
+        }
+        for (int i = 0; i < rowCount; i++) {
+            buffer.putDouble(table.getLongitude(i));
+        }
+        for (int i = 0; i < rowCount; i++) {
+            buffer.putDouble(table.getDepth(i));
+        }
+        putInts(buffer, ids);
+        putInts(buffer, places);
+        putInts(buffer, urls);
+
+        int offset = 0;
+        for (byte[] bytes : strings.mBytes) {
+            buffer.putInt(offset);
+            offset += bytes.length;
+        }
+        buffer.putInt(offset);
+        for (byte[] bytes : strings.mBytes) {
+            buffer.put(bytes);
+        }
+        buffer.flip();
+
+        File tempFile = new File(file.getPath() + ".tmp");
+        FileOutputStream outputStream = new FileOutputStream(tempFile);
+        try {
+            FileChannel channel = outputStream.getChannel();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } finally {
+            outputStream.close();
+        }
+        if (!tempFile.renameTo(file)) {
+            tempFile.delete();
+            throw new IOException("Could not replace " + file);
+        }
+    }
+
+    /**
+     * Deletes the snapshot, e.g. once it no longer matches the store
+     */
+    public static void delete(File file) {
+        file.delete();
+    }
+
+    /**
+     * Returns when the store last fetched the query at the time the snapshot was written
+     */
+    public long getFetchedAt() {
+        return mFetchedAt;
+    }
+
+    public int size() {
+        return mRowCount;
+    }
+
+    /**
+     * Reads the first rows of the snapshot into a table
+     *
+     * @param maxRows   is the maximum number of rows to read, or 0 for all of them
+     * @param formatter formats the display columns of the result
+     * @return the rows read
+     */
+    public EarthquakeTable read(int maxRows, EarthquakeFormatter formatter) {
+        int count = maxRows > 0 ? Math.min(maxRows, mRowCount) : mRowCount;
+        EarthquakeTable.Builder builder = new EarthquakeTable.Builder(count);
+        for (int i = 0; i < count; i++) {
+            String id = getString(mBuffer.getInt(mIdsOffset + 4 * i));
+            builder.add(id,
+                    mBuffer.getDouble(mMagnitudesOffset + 8 * i),
+                    getString(mBuffer.getInt(mPlacesOffset + 4 * i)),
+                    mBuffer.getLong(mTimesOffset + 8 * i),
+                    getUrl(mBuffer.getInt(mUrlsOffset + 4 * i), id),
+                    mBuffer.getLong(mUpdatedOffset + 8 * i),
+                    mBuffer.getDouble(mLatitudesOffset + 8 * i),
+                    mBuffer.getDouble(mLongitudesOffset + 8 * i),
+                    mBuffer.getDouble(mDepthsOffset + 8 * i));
+        }
+        return builder.build(formatter);
+    }
+
+    private String getUrl(int reference, String id) {
+        if (reference == NO_URL) {
+            return null;
+        }
+        String url = getString(reference >>> 1);
+        return (reference & 1) != 0 ? url + id : url;
+    }
+
+    private String getString(int index) {
+        String string = mStrings[index];
+        if (string != null) {
+            return string;
+        }
+        int start = mBuffer.getInt(mStringOffsetsOffset + 4 * index);
+        int length = mBuffer.getInt(mStringOffsetsOffset + 4 * (index + 1)) - start;
+        if (mScratch.length < length) {
+            mScratch = new byte[Math.max(length, mScratch.length * 2)];
+        }
+        // Absolute bulk gets only arrived in Java 9, so copy through a duplicate
+        ByteBuffer bytes = mBuffer.duplicate();
+        bytes.position(mStringBytesOffset + start);
+        bytes.get(mScratch, 0, length);
+        string = new String(mScratch, 0, length, UTF_8);
+        mStrings[index] = string;
+        return string;
+    }
+
+    private static void putInts(ByteBuffer buffer, int[] values) {
+        for (int value : values) {
+            buffer.putInt(value);
+        }
+    }
+
+    /**
+     * Collects the distinct strings of a snapshot as UTF-8
+     */
+    private static final class StringTable {
+
+        private final Map<String, Integer> mIndex = new HashMap<>();
+        private final List<byte[]> mBytes = new ArrayList<>();
+        private int mByteCount;
+
+        int add(String string) {
+            Integer index = mIndex.get(string);
+            if (index == null) {
+                byte[] bytes = string.getBytes(UTF_8);
+                index = mBytes.size();
+                mIndex.put(string, index);
+                mBytes.add(bytes);
+                mByteCount += bytes.length;
+            }
+            return index;
+        }
+
+        int size() {
+            return mBytes.size();
+        }
+    }
+}
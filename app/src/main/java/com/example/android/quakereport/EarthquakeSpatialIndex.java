@@ -0,0 +1,329 @@
+package com.example.android.quakereport;
+
+import java.util.Arrays;
+
+/**
+ * Immutable grid index over the epicenters of an {@link EarthquakeTable}, used to cluster
+ * earthquakes by viewport on the map.
+ * <p>
+ * The world is cut into a pyramid of equirectangular grids, from two 180 degree cells at
+ * level 0 down to cells of about a kilometer at {@link #MAX_LEVEL}. Every level keeps only its
+ * non-empty cells, sorted by row-major key, together with the number of earthquakes in the
+ * cell, their mean position and the strongest of them. A viewport query binary searches the
+ * key range of each grid row it covers, so its cost grows with the number of clusters on
+ * screen and not with the number of earthquakes in the table.
+ */
+public final class EarthquakeSpatialIndex {
+
+    /**
+     * Finest grid level; its cells are 180 / 2^14 degrees, about 1.2 kilometers, high
+     */
+    public static final int MAX_LEVEL = 14;
+
+    private final EarthquakeTable mTable;
+    private final Level[] mLevels = new Level[MAX_LEVEL + 1];
+    private final int mSize;
+
+    /**
+     * Builds the index over every earthquake of the table that has coordinates
+     *
+     * @param table is the table to index
+     */
+    public EarthquakeSpatialIndex(EarthquakeTable table) {
+        mTable = table;
+
+        // Sort the located rows by their finest cell, packed with the row index into a long
+        // so that a single primitive sort does the work
+        int size = table.size();
+        long[] keyed = new long[size];
+        int located = 0;
+        for (int i = 0; i < size; i++) {
+            double latitude = table.getLatitude(i);
+            double longitude = table.getLongitude(i);
+            if (Double.isNaN(latitude) || Double.isNaN(longitude)) {
+                continue;
+            }
+            long cell = cellKey(MAX_LEVEL, cellRow(MAX_LEVEL, latitude), cellColumn(MAX_LEVEL, longitude));
+            keyed[located++] = (cell << 31) | i;
+        }
+        Arrays.sort(keyed, 0, located);
+
+        mSize = located;
+        int[] sortedIndices = new int[located];
+        long[] eventCells = new long[located];
+        for (int i = 0; i < located; i++) {
+            sortedIndices[i] = (int) (keyed[i] & Integer.MAX_VALUE);
+            eventCells[i] = keyed[i] >>> 31;
+        }
+
+        mLevels[MAX_LEVEL] = buildFinestLevel(sortedIndices, eventCells);
+        for (int level = MAX_LEVEL - 1; level >= 0; level--) {
+            mLevels[level] = buildParentLevel(mLevels[level + 1], level);
+        }
+    }
+
+    public EarthquakeTable getTable() {
+        return mTable;
+    }
+
+    /**
+     * Returns the number of earthquakes that have coordinates, and so are in the index
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Returns the height and width of a cell at the given level, in degrees
+     */
+    public static double getCellSize(int level) {
+        return 180.0 / (1 << level);
+    }
+
+    /**
+     * Collects the clusters of the given level whose cell overlaps the viewport
+     *
+     * @param level        is the grid level, from 0 to {@link #MAX_LEVEL}
+     * @param minLatitude  is the southern edge of the viewport in degrees
+     * @param maxLatitude  is the northern edge of the viewport in degrees
+     * @param minLongitude is the western edge of the viewport in degrees
+     * @param maxLongitude is the eastern edge of the viewport in degrees
+     * @param clusters     receives the clusters; its previous content is cleared
+     */
+    public void query(int level, double minLatitude, double maxLatitude,
+                      double minLongitude, double maxLongitude, Clusters clusters) {
+        clusters.clear();
+        Level cells = mLevels[Math.max(0, Math.min(level, MAX_LEVEL))];
+        int firstRow = cellRow(cells.mLevel, minLatitude);
+        int lastRow = cellRow(cells.mLevel, maxLatitude);
+        int firstColumn = cellColumn(cells.mLevel, minLongitude);
+        int lastColumn = cellColumn(cells.mLevel, maxLongitude);
+
+        for (int row = firstRow; row <= lastRow; row++) {
+            long lastKey = cellKey(cells.mLevel, row, lastColumn);
+            int i = lowerBound(cells.mKeys, cells.mCount, cellKey(cells.mLevel, row, firstColumn));
+            for (; i < cells.mCount && cells.mKeys[i] <= lastKey; i++) {
+                clusters.add(cells.mCounts[i],
+                        cells.mLatitudes[i],
+                        cells.mLongitudes[i],
+                        cells.mStrongest[i]);
+            }
+        }
+    }
+
+    /**
+     * Groups the rows, sorted by their cell at the finest level, into the cells of that level
+     */
+    private Level buildFinestLevel(int[] sortedIndices, long[] eventCells) {
+        Level cells = new Level(MAX_LEVEL, countDistinct(eventCells, eventCells.length));
+        int cell = -1;
+        for (int i = 0; i < eventCells.length; i++) {
+            int index = sortedIndices[i];
+            if (i == 0 || eventCells[i] != eventCells[i - 1]) {
+                cell++;
+                cells.mKeys[cell] = eventCells[i];
+                cells.mStrongest[cell] = index;
+            }
+            cells.mCounts[cell]++;
+            cells.mLatitudes[cell] += mTable.getLatitude(index);
+            cells.mLongitudes[cell] += mTable.getLongitude(index);
+            if (mTable.getMagnitude(index) > mTable.getMagnitude(cells.mStrongest[cell])) {
+                cells.mStrongest[cell] = index;
+            }
+        }
+        cells.finishMeans();
+        return cells;
+    }
+
+    /**
+     * Merges the cells of a level four at a time into the level above it
+     */
+    private Level buildParentLevel(Level children, int level) {
+        // Row-major keys of the children do not sort their parents, so sort the parent keys
+        // packed with the child position
+        long[] keyed = new long[children.mCount];
+        for (int i = 0; i < children.mCount; i++) {
+            long key = children.mKeys[i];
+            int columns = columnCount(children.mLevel);
+            int row = (int) (key / columns);
+            int column = (int) (key % columns);
+            keyed[i] = (cellKey(level, row >> 1, column >> 1) << 31) | i;
+        }
+        Arrays.sort(keyed);
+
+        long[] parentKeys = new long[keyed.length];
+        for (int i = 0; i < keyed.length; i++) {
+            parentKeys[i] = keyed[i] >>> 31;
+        }
+
+        Level cells = new Level(level, countDistinct(parentKeys, parentKeys.length));
+        int cell = -1;
+        for (int i = 0; i < keyed.length; i++) {
+            int child = (int) (keyed[i] & Integer.MAX_VALUE);
+            if (i == 0 || parentKeys[i] != parentKeys[i - 1]) {
+                cell++;
+                cells.mKeys[cell] = parentKeys[i];
+                cells.mStrongest[cell] = children.mStrongest[child];
+            }
+            int count = children.mCounts[child];
+            cells.mCounts[cell] += count;
+            cells.mLatitudes[cell] += children.mLatitudes[child] * count;
+            cells.mLongitudes[cell] += children.mLongitudes[child] * count;
+            if (mTable.getMagnitude(children.mStrongest[child])
+                    > mTable.getMagnitude(cells.mStrongest[cell])) {
+                cells.mStrongest[cell] = children.mStrongest[child];
+            }
+        }
+        cells.finishMeans();
+        return cells;
+    }
+
+    private static int countDistinct(long[] sorted, int count) {
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) {
+                distinct++;
+            }
+        }
+        return distinct;
+    }
+
+    /**
+     * Returns the position of the first key that is not less than the given key
+     */
+    private static int lowerBound(long[] keys, int count, long key) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (keys[middle] < key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static int columnCount(int level) {
+        return 2 << level;
+    }
+
+    private static int cellRow(int level, double latitude) {
+        int rows = 1 << level;
+        int row = (int) Math.floor((latitude + 90) / getCellSize(level));
+        return Math.max(0, Math.min(row, rows - 1));
+    }
+
+    private static int cellColumn(int level, double longitude) {
+        int columns = columnCount(level);
+        int column = (int) Math.floor((longitude + 180) / getCellSize(level));
+        return Math.max(0, Math.min(column, columns - 1));
+    }
+
+    private static long cellKey(int level, int row, int column) {
+        return (long) row * columnCount(level) + column;
+    }
+
+    /**
+     * The non-empty cells of one grid level, as parallel arrays sorted by key
+     */
+    private static final class Level {
+
+        final int mLevel;
+        final int mCount;
+        final long[] mKeys;
+        final int[] mCounts;
+        final double[] mLatitudes;
+        final double[] mLongitudes;
+        final int[] mStrongest;
+
+        Level(int level, int count) {
+            mLevel = level;
+            mCount = count;
+            mKeys = new long[count];
+            mCounts = new int[count];
+            mLatitudes = new double[count];
+            mLongitudes = new double[count];
+            mStrongest = new int[count];
+        }
+
+        /**
+         * Turns the coordinate sums into means
+         */
+        void finishMeans() {
+            for (int i = 0; i < mCount; i++) {
+                mLatitudes[i] /= mCounts[i];
+                mLongitudes[i] /= mCounts[i];
+            }
+        }
+    }
+
+    /**
+     * Reusable result of a viewport query, so that redrawing the map while it is panned or
+     * zoomed does not allocate
+     */
+    public static final class Clusters {
+
+        private int mSize;
+        private int[] mCounts = new int[64];
+        private double[] mLatitudes = new double[64];
+        private double[] mLongitudes = new double[64];
+        private int[] mStrongest = new int[64];
+
+        public int size() {
+            return mSize;
+        }
+
+        /**
+         * Returns the number of earthquakes in the cluster
+         */
+        public int getCount(int cluster) {
+            return mCounts[cluster];
+        }
+
+        /**
+         * Returns the mean latitude of the earthquakes in the cluster
+         */
+        public double getLatitude(int cluster) {
+            return mLatitudes[cluster];
+        }
+
+        /**
+         * Returns the mean longitude of the earthquakes in the cluster
+         */
+        public double getLongitude(int cluster) {
+            return mLongitudes[cluster];
+        }
+
+        /**
+         * Returns the table index of the strongest earthquake in the cluster
+         */
+        public int getStrongest(int cluster) {
+            return mStrongest[cluster];
+        }
+
+        void clear() {
+            mSize = 0;
+        }
+
+        void add(int count, double latitude, double longitude, int strongest) {
+            if (mSize == mCounts.length) {
+                grow();
+            }
+            mCounts[mSize] = count;
+            mLatitudes[mSize] = latitude;
+            mLongitudes[mSize] = longitude;
+            mStrongest[mSize] = strongest;
+            mSize++;
+        }
+
+        private void grow() {
+            int capacity = mCounts.length * 2;
+            mCounts = Arrays.copyOf(mCounts, capacity);
+            mLatitudes = Arrays.copyOf(mLatitudes, capacity);
+            mLongitudes = Arrays.copyOf(mLongitudes, capacity);
+            mStrongest = Arrays.copyOf(mStrongest, capacity);
+        }
+    }
+}
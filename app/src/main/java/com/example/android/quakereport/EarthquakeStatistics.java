@@ -0,0 +1,458 @@
+package com.example.android.quakereport;
+
+import android.content.Context;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Aggregate statistics over every earthquake in the {@link EarthquakeStore}: a magnitude
+ * histogram, counts per day and per region, the strongest earthquake of every week and the
+ * strongest earthquakes overall.
+ * <p>
+ * The statistics are built from the store once per process, the first time they are asked
+ * for, and then kept up to date through an {@link EarthquakeChangeTracker}: after every sync
+ * only the rows stored since the last update are read. A revised event has its previous values taken out of the
+ * counts before the new ones go in, so each update costs O(new events), except for the rare
+ * revision that lowers a maximum, which is looked up again in the store's indexes.
+ */
+public final class EarthquakeStatistics {
+
+    /**
+     * Interface definition for a callback invoked, on the syncing thread, when the statistics
+     * have changed.
+     */
+    public interface Listener {
+        void onStatisticsChanged();
+    }
+
+    private static final long MILLISECONDS_PER_DAY = TimeUnit.DAYS.toMillis(1);
+
+    private static final List<Listener> sListeners = new CopyOnWriteArrayList<>();
+
+    // Guarded by the class
+    private static Summary sSummary;
+    private static Map<String, Event> sEvents;
+    private static final EarthquakeChangeTracker sChanges = new EarthquakeChangeTracker();
+
+    /**
+     * Create a private constructor because no one should ever create a {@link EarthquakeStatistics} object.
+     */
+    private EarthquakeStatistics() {
+    }
+
+    public static void addListener(Listener listener) {
+        sListeners.add(listener);
+    }
+
+    public static void removeListener(Listener listener) {
+        sListeners.remove(listener);
+    }
+
+    /**
+     * Returns a copy of the current statistics, building them from the store on the first call.
+     * Must be called off the UI thread.
+     *
+     * @param context is used to open the store
+     * @return the statistics of every stored earthquake
+     */
+    public static synchronized Summary getSummary(Context context) {
+        if (sSummary == null) {
+            build(new EarthquakeStore(context));
+        } else {
+            applyUpdates(new EarthquakeStore(context));
+        }
+        return sSummary.copy();
+    }
+
+    /**
+     * Brings the statistics up to date with the store after a sync. Does nothing until the
+     * statistics were asked for, so a process that never shows them never builds them.
+     *
+     * @param context is used to open the store
+     */
+    public static void update(Context context) {
+        synchronized (EarthquakeStatistics.class) {
+            if (sSummary == null || !applyUpdates(new EarthquakeStore(context))) {
+                return;
+            }
+        }
+        for (Listener listener : sListeners) {
+            listener.onStatisticsChanged();
+        }
+    }
+
+    /**
+     * Drops the statistics after earthquakes were deleted from the store, such as the events
+     * pruned after a sync, so that they are built again the next time they are asked for
+     */
+    public static void invalidate() {
+        synchronized (EarthquakeStatistics.class) {
+            if (sSummary == null) {
+                return;
+            }
+            sSummary = null;
+            sEvents = null;
+            sChanges.reset();
+        }
+        for (Listener listener : sListeners) {
+            listener.onStatisticsChanged();
+        }
+    }
+
+    private static void build(EarthquakeStore store) {
+        sChanges.reset();
+        EarthquakeTable table = sChanges.readChanges(store);
+        if (table == null) {
+            table = EarthquakeTable.empty();
+        }
+        sSummary = new Summary();
+        sEvents = new HashMap<>(table.size() * 2);
+        for (int i = 0; i < table.size(); i++) {
+            Event event = new Event(table, i);
+            sEvents.put(event.mId, event);
+            sSummary.add(event);
+        }
+    }
+
+    /**
+     * Applies the rows stored since the last update
+     *
+     * @return true if anything changed
+     */
+    private static boolean applyUpdates(EarthquakeStore store) {
+        EarthquakeTable updated = sChanges.readChanges(store);
+        if (updated == null) {
+            return false;
+        }
+
+        // Take revised events out before the new values of every updated event go in together
+        Summary delta = new Summary();
+        Set<Integer> weeksToRepair = new HashSet<>();
+        boolean repairStrongest = false;
+        for (int i = 0; i < updated.size(); i++) {
+            Event event = new Event(updated, i);
+            Event previous = sEvents.put(event.mId, event);
+            if (previous != null) {
+                if (sSummary.removeFromWeek(previous)) {
+                    weeksToRepair.add(previous.mWeek);
+                }
+                repairStrongest |= sSummary.remove(previous);
+            }
+            delta.add(event);
+        }
+        sSummary.merge(delta);
+
+        // A maximum that was revised down may have been overtaken by an event held elsewhere
+        for (int week : weeksToRepair) {
+            long start = getWeekStart(week);
+            EarthquakeTable strongest = store.queryStrongest(start, start + 7 * MILLISECONDS_PER_DAY, 1, null);
+            if (strongest.size() > 0) {
+                sSummary.offerWeek(sEvents.get(strongest.getId(0)));
+            }
+        }
+        if (repairStrongest) {
+            EarthquakeTable strongest = store.queryStrongest(Long.MIN_VALUE, Long.MAX_VALUE,
+                    Summary.STRONGEST_COUNT, null);
+            sSummary.mStrongest.clear();
+            for (int i = 0; i < strongest.size(); i++) {
+                sSummary.offerStrongest(sEvents.get(strongest.getId(i)));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the day of the given time in the local time zone, counted from the epoch
+     */
+    static int getDay(long timeInMilliseconds) {
+        long localTime = timeInMilliseconds + TimeZone.getDefault().getOffset(timeInMilliseconds);
+        return (int) floorDiv(localTime, MILLISECONDS_PER_DAY);
+    }
+
+    /**
+     * Returns the start of the given day in the local time zone, in milliseconds since the epoch
+     */
+    public static long getDayStart(int day) {
+        long localStart = day * MILLISECONDS_PER_DAY;
+        return localStart - TimeZone.getDefault().getOffset(localStart);
+    }
+
+    /**
+     * Returns the week of the given day, weeks starting on Monday
+     */
+    static int getWeek(int day) {
+        // The epoch was a Thursday
+        return (int) floorDiv(day + 3, 7);
+    }
+
+    /**
+     * Returns the start of the given week in the local time zone, in milliseconds since the epoch
+     */
+    public static long getWeekStart(int week) {
+        return getDayStart(week * 7 - 3);
+    }
+
+    /**
+     * Returns the region of a USGS place, which is the part after its last comma, e.g. "Japan"
+     * for "30km S of Tokyo, Japan", or the place without its offset when it has no comma
+     */
+    static String getRegion(String place) {
+        int comma = place.lastIndexOf(", ");
+        if (comma >= 0) {
+            return place.substring(comma + 2);
+        }
+        int offset = place.indexOf(" of ");
+        return offset >= 0 ? place.substring(offset + 4) : place;
+    }
+
+    private static long floorDiv(long dividend, long divisor) {
+        long quotient = dividend / divisor;
+        return (dividend % divisor != 0 && (dividend < 0) != (divisor < 0)) ? quotient - 1 : quotient;
+    }
+
+    /**
+     * The part of a stored earthquake the statistics are made of
+     */
+    public static final class Event {
+
+        private final String mId;
+        private final double mMagnitude;
+        private final long mTime;
+        private final String mPlace;
+        private final int mDay;
+        private final int mWeek;
+
+        Event(EarthquakeTable table, int index) {
+            mId = table.getId(index);
+            mMagnitude = table.getMagnitude(index);
+            mTime = table.getTimeInMilliseconds(index);
+            mPlace = table.getLocation(index);
+            mDay = getDay(mTime);
+            mWeek = getWeek(mDay);
+        }
+
+        public String getId() {
+            return mId;
+        }
+
+        public double getMagnitude() {
+            return mMagnitude;
+        }
+
+        public long getTimeInMilliseconds() {
+            return mTime;
+        }
+
+        public String getPlace() {
+            return mPlace;
+        }
+    }
+
+    /**
+     * Mergeable aggregates over a set of earthquakes. Counts can also be taken out again, the
+     * maxima only dropped, see {@link #remove(Event)}.
+     */
+    public static final class Summary {
+
+        /**
+         * Width of a bucket of the magnitude histogram
+         */
+        public static final double MAGNITUDE_BUCKET_WIDTH = 0.5;
+
+        /**
+         * Number of buckets of the magnitude histogram, from magnitude 0 (with anything below
+         * in the first bucket) to 10 and above in the last one
+         */
+        public static final int MAGNITUDE_BUCKETS = 21;
+
+        /**
+         * Number of strongest earthquakes kept
+         */
+        public static final int STRONGEST_COUNT = 10;
+
+        private static final Comparator<Event> STRONGEST_FIRST = new Comparator<Event>() {
+            @Override
+            public int compare(Event a, Event b) {
+                int byMagnitude = Double.compare(b.mMagnitude, a.mMagnitude);
+                return byMagnitude != 0 ? byMagnitude : (a.mTime < b.mTime ? 1 : (a.mTime == b.mTime ? 0 : -1));
+            }
+        };
+
+        private int mCount;
+        private final int[] mMagnitudeCounts = new int[MAGNITUDE_BUCKETS];
+        private final TreeMap<Integer, Integer> mDayCounts = new TreeMap<>();
+        private final Map<String, Integer> mRegionCounts = new HashMap<>();
+        private final TreeMap<Integer, Event> mWeekStrongest = new TreeMap<>();
+        private final List<Event> mStrongest = new ArrayList<>(STRONGEST_COUNT + 1);
+
+        /**
+         * Returns the bucket of the magnitude histogram a magnitude falls into
+         */
+        public static int getMagnitudeBucket(double magnitude) {
+            int bucket = (int) Math.floor(magnitude / MAGNITUDE_BUCKET_WIDTH);
+            return Math.max(0, Math.min(bucket, MAGNITUDE_BUCKETS - 1));
+        }
+
+        /**
+         * Returns the number of earthquakes summarized
+         */
+        public int getCount() {
+            return mCount;
+        }
+
+        public int getMagnitudeCount(int bucket) {
+            return mMagnitudeCounts[bucket];
+        }
+
+        /**
+         * Returns the number of earthquakes per day, see {@link EarthquakeStatistics#getDayStart(int)}, for the days
+         * that had any
+         */
+        public SortedMap<Integer, Integer> getDayCounts() {
+            return Collections.unmodifiableSortedMap(mDayCounts);
+        }
+
+        /**
+         * Returns the regions with the most earthquakes, most first
+         *
+         * @param limit is the maximum number of regions to return
+         */
+        public List<Map.Entry<String, Integer>> getTopRegions(int limit) {
+            List<Map.Entry<String, Integer>> regions = new ArrayList<>(mRegionCounts.entrySet());
+            Collections.sort(regions, new Comparator<Map.Entry<String, Integer>>() {
+                @Override
+                public int compare(Map.Entry<String, Integer> a, Map.Entry<String, Integer> b) {
+                    return b.getValue().compareTo(a.getValue());
+                }
+            });
+            return regions.subList(0, Math.min(limit, regions.size()));
+        }
+
+        /**
+         * Returns the strongest earthquake of every week, see {@link EarthquakeStatistics#getWeekStart(int)}, for the
+         * weeks that had any
+         */
+        public SortedMap<Integer, Event> getWeekStrongest() {
+            return Collections.unmodifiableSortedMap(mWeekStrongest);
+        }
+
+        /**
+         * Returns the strongest earthquakes, strongest first
+         */
+        public List<Event> getStrongest() {
+            return Collections.unmodifiableList(mStrongest);
+        }
+
+        void add(Event event) {
+            mCount++;
+            mMagnitudeCounts[getMagnitudeBucket(event.mMagnitude)]++;
+            increment(mDayCounts, event.mDay, 1);
+            increment(mRegionCounts, getRegion(event.mPlace), 1);
+            offerWeek(event);
+            offerStrongest(event);
+        }
+
+        /**
+         * Adds the earthquakes of another summary, which must not hold any of the same events
+         */
+        void merge(Summary other) {
+            mCount += other.mCount;
+            for (int i = 0; i < MAGNITUDE_BUCKETS; i++) {
+                mMagnitudeCounts[i] += other.mMagnitudeCounts[i];
+            }
+            for (Map.Entry<Integer, Integer> entry : other.mDayCounts.entrySet()) {
+                increment(mDayCounts, entry.getKey(), entry.getValue());
+            }
+            for (Map.Entry<String, Integer> entry : other.mRegionCounts.entrySet()) {
+                increment(mRegionCounts, entry.getKey(), entry.getValue());
+            }
+            for (Event event : other.mWeekStrongest.values()) {
+                offerWeek(event);
+            }
+            for (Event event : other.mStrongest) {
+                offerStrongest(event);
+            }
+        }
+
+        /**
+         * Takes an earthquake out of the counts and out of the strongest earthquakes
+         *
+         * @return true if it was one of the strongest earthquakes, which then have to be
+         * looked up again
+         */
+        boolean remove(Event event) {
+            mCount--;
+            mMagnitudeCounts[getMagnitudeBucket(event.mMagnitude)]--;
+            increment(mDayCounts, event.mDay, -1);
+            increment(mRegionCounts, getRegion(event.mPlace), -1);
+            for (int i = 0; i < mStrongest.size(); i++) {
+                if (mStrongest.get(i).mId.equals(event.mId)) {
+                    mStrongest.remove(i);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Drops an earthquake that is the strongest of its week
+         *
+         * @return true if it was, so that the week has to be looked up again
+         */
+        boolean removeFromWeek(Event event) {
+            Event strongest = mWeekStrongest.get(event.mWeek);
+            if (strongest != null && strongest.mId.equals(event.mId)) {
+                mWeekStrongest.remove(event.mWeek);
+                return true;
+            }
+            return false;
+        }
+
+        void offerWeek(Event event) {
+            Event strongest = mWeekStrongest.get(event.mWeek);
+            if (strongest == null || STRONGEST_FIRST.compare(event, strongest) < 0) {
+                mWeekStrongest.put(event.mWeek, event);
+            }
+        }
+
+        void offerStrongest(Event event) {
+            if (mStrongest.size() == STRONGEST_COUNT
+                    && STRONGEST_FIRST.compare(event, mStrongest.get(STRONGEST_COUNT - 1)) >= 0) {
+                return;
+            }
+            int position = Collections.binarySearch(mStrongest, event, STRONGEST_FIRST);
+            mStrongest.add(position < 0 ? -position - 1 : position, event);
+            if (mStrongest.size() > STRONGEST_COUNT) {
+                mStrongest.remove(STRONGEST_COUNT);
+            }
+        }
+
+        Summary copy() {
+            Summary copy = new Summary();
+            copy.merge(this);
+            return copy;
+        }
+
+        private static <K> void increment(Map<K, Integer> counts, K key, int amount) {
+            Integer count = counts.get(key);
+            int updated = (count == null ? 0 : count) + amount;
+            if (updated == 0) {
+                counts.remove(key);
+            } else {
+                counts.put(key, updated);
+            }
+        }
+    }
+}
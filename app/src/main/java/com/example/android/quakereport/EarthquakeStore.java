@@ -0,0 +1,553 @@
+package com.example.android.quakereport;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.example.android.quakereport.EarthquakeContract.EarthquakeEntry;
+import com.example.android.quakereport.EarthquakeContract.ImportEntry;
+import com.example.android.quakereport.EarthquakeContract.SyncEntry;
+
+import java.util.List;
+
+/**
+ * On-device store of every earthquake fetched from USGS, keyed by event id.
+ * <p>
+ * Responses are merged in place, so a query only has to download the events that are new or
+ * were updated since the last time it was synced.
+ */
+public final class EarthquakeStore {
+
+    public static final String LOG_TAG = EarthquakeStore.class.getName();
+
+    private static final String SQL_UPSERT_EARTHQUAKE = "INSERT OR REPLACE INTO "
+            + EarthquakeEntry.TABLE_NAME + " ("
+            + EarthquakeEntry.COLUMN_EVENT_ID + ", "
+            + EarthquakeEntry.COLUMN_MAGNITUDE + ", "
+            + EarthquakeEntry.COLUMN_PLACE + ", "
+            + EarthquakeEntry.COLUMN_TIME + ", "
+            + EarthquakeEntry.COLUMN_URL + ", "
+            + EarthquakeEntry.COLUMN_UPDATED + ", "
+            + EarthquakeEntry.COLUMN_LATITUDE + ", "
+            + EarthquakeEntry.COLUMN_LONGITUDE + ", "
+            + EarthquakeEntry.COLUMN_DEPTH + ", "
+            + EarthquakeEntry.COLUMN_IMPORTED + ", "
+            + EarthquakeEntry.COLUMN_STORED_SEQUENCE + ") VALUES (?1, ?2, ?3, ?4, ?5, ?6, ?7, ?8, ?9, "
+            // Once imported, an earthquake stays imported when a sync or the live feed revises it
+            + "MAX(?10, IFNULL((SELECT " + EarthquakeEntry.COLUMN_IMPORTED + " FROM " + EarthquakeEntry.TABLE_NAME
+            + " WHERE " + EarthquakeEntry.COLUMN_EVENT_ID + " = ?1), 0)), ?11)";
+
+    private static final String[] EARTHQUAKE_PROJECTION = {
+            EarthquakeEntry.COLUMN_EVENT_ID,
+            EarthquakeEntry.COLUMN_MAGNITUDE,
+            EarthquakeEntry.COLUMN_PLACE,
+            EarthquakeEntry.COLUMN_TIME,
+            EarthquakeEntry.COLUMN_URL,
+            EarthquakeEntry.COLUMN_UPDATED,
+            EarthquakeEntry.COLUMN_LATITUDE,
+            EarthquakeEntry.COLUMN_LONGITUDE,
+            EarthquakeEntry.COLUMN_DEPTH
+    };
+
+    private final EarthquakeDbHelper mDbHelper;
+
+    public EarthquakeStore(Context context) {
+        mDbHelper = EarthquakeDbHelper.getInstance(context);
+    }
+
+    /**
+     * Returns the latest "updated" time seen for the given query, or 0 if it was never synced
+     *
+     * @param query is the USGS query url without any sync parameters
+     * @return the sync watermark of the query in milliseconds
+     */
+    public long getWatermark(String query) {
+        SQLiteDatabase db = mDbHelper.getReadableDatabase();
+        Cursor cursor = db.query(SyncEntry.TABLE_NAME,
+                new String[]{SyncEntry.COLUMN_WATERMARK},
+                SyncEntry.COLUMN_QUERY + " = ?",
+                new String[]{query},
+                null, null, null);
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Returns the wall clock time the given query was last fetched or revalidated,
+     * or 0 if it was never synced
+     *
+     * @param query is the USGS query url without any sync parameters
+     * @return the time of the last successful sync in milliseconds since the epoch
+     */
+    public long getFetchedAt(String query) {
+        SQLiteDatabase db = mDbHelper.getReadableDatabase();
+        Cursor cursor = db.query(SyncEntry.TABLE_NAME,
+                new String[]{SyncEntry.COLUMN_FETCHED_AT},
+                SyncEntry.COLUMN_QUERY + " = ?",
+                new String[]{query},
+                null, null, null);
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Returns the latest "updated" time of any stored earthquake, whichever query or feed
+     * stored it
+     *
+     * @return the latest update in milliseconds, or 0 if the store is empty
+     */
+    public long getLatestUpdate() {
+        SQLiteDatabase db = mDbHelper.getReadableDatabase();
+        Cursor cursor = db.rawQuery("SELECT MAX(" + EarthquakeEntry.COLUMN_UPDATED + ") FROM "
+                + EarthquakeEntry.TABLE_NAME, null);
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Returns the sequence number of the latest write to the store, see
+     * {@link EarthquakeEntry#COLUMN_STORED_SEQUENCE}
+     *
+     * @return the latest sequence number, or 0 if the store is empty
+     */
+    public long getLatestSequence() {
+        return getLatestSequence(mDbHelper.getReadableDatabase());
+    }
+
+    /**
+     * Records that the given query was just revalidated without any change ("304 Not Modified")
+     *
+     * @param query is the USGS query url without any sync parameters
+     */
+    public void markFetched(String query) {
+        ContentValues values = new ContentValues();
+        values.put(SyncEntry.COLUMN_FETCHED_AT, System.currentTimeMillis());
+        mDbHelper.getWritableDatabase().update(SyncEntry.TABLE_NAME, values,
+                SyncEntry.COLUMN_QUERY + " = ?", new String[]{query});
+    }
+
+    /**
+     * Returns the HTTP validators of the last successful response to the given query
+     *
+     * @param query is the USGS query url without any sync parameters
+     * @return the {@link QueryUtils.Validators} of the query, empty if it was never synced
+     */
+    public QueryUtils.Validators getValidators(String query) {
+        SQLiteDatabase db = mDbHelper.getReadableDatabase();
+        Cursor cursor = db.query(SyncEntry.TABLE_NAME,
+                new String[]{SyncEntry.COLUMN_ETAG, SyncEntry.COLUMN_LAST_MODIFIED},
+                SyncEntry.COLUMN_QUERY + " = ?",
+                new String[]{query},
+                null, null, null);
+        try {
+            if (cursor.moveToFirst()) {
+                return new QueryUtils.Validators(cursor.getString(0), cursor.getString(1));
+            }
+            return new QueryUtils.Validators(null, null);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Inserts or replaces the given earthquakes in a single transaction, advances the
+     * sync watermark of the query to the latest "updated" time among them and records
+     * the validators of the response they came from.
+     *
+     * @param query       is the USGS query url the earthquakes were fetched with
+     * @param earthquakes are the earthquakes to merge into the store
+     * @param validators  are the HTTP validators of the response
+     */
+    public void merge(String query, List<Earthquake> earthquakes, QueryUtils.Validators validators) {
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            long watermark = upsert(db, earthquakes, false);
+            saveSyncState(db, query, watermark, validators);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Inserts or replaces the given earthquakes in a single transaction, without touching
+     * the sync state of any query
+     *
+     * @param earthquakes are the earthquakes to write to the store
+     */
+    public void insert(List<Earthquake> earthquakes) {
+        if (earthquakes.isEmpty()) {
+            return;
+        }
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            upsert(db, earthquakes, false);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Returns the state of the last bulk import, or null if there never was one
+     *
+     * @return the {@link EarthquakeImporter.Progress} of the import
+     */
+    public EarthquakeImporter.Progress getImport() {
+        SQLiteDatabase db = mDbHelper.getReadableDatabase();
+        Cursor cursor = db.query(ImportEntry.TABLE_NAME,
+                new String[]{ImportEntry.COLUMN_SOURCE, ImportEntry.COLUMN_START, ImportEntry.COLUMN_END,
+                        ImportEntry.COLUMN_CURSOR, ImportEntry.COLUMN_IMPORTED, ImportEntry.COLUMN_COMPLETE},
+                null, null, null, null, null);
+        try {
+            if (!cursor.moveToFirst()) {
+                return null;
+            }
+            return new EarthquakeImporter.Progress(cursor.getString(0), cursor.getLong(1), cursor.getLong(2),
+                    cursor.getLong(3), cursor.getLong(4), cursor.getInt(5) != 0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Starts a bulk import from the beginning, replacing the state of any previous one
+     *
+     * @param source is the USGS query url or the file uri the catalog is imported from
+     * @param start  is the start of the imported period in milliseconds, 0 for a file
+     * @param end    is the end of the imported period in milliseconds, 0 for a file
+     */
+    public void startImport(String source, long start, long end) {
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+        ContentValues values = new ContentValues();
+        values.put(ImportEntry.COLUMN_SOURCE, source);
+        values.put(ImportEntry.COLUMN_START, start);
+        values.put(ImportEntry.COLUMN_END, end);
+        values.put(ImportEntry.COLUMN_CURSOR, start);
+        db.beginTransaction();
+        try {
+            db.delete(ImportEntry.TABLE_NAME, null, null);
+            db.insert(ImportEntry.TABLE_NAME, null, values);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Inserts or replaces a batch of imported earthquakes and moves the cursor of the import
+     * past them in a single transaction, so that the import resumes right after the last batch
+     * stored whenever it is interrupted. The sync state of the queries is not touched.
+     *
+     * @param source      is the source of the import, see {@link #startImport(String, long, long)}
+     * @param earthquakes are the earthquakes of the batch, possibly none
+     * @param cursor      is how far the import has come once the batch is stored
+     */
+    public void importBatch(String source, List<Earthquake> earthquakes, long cursor) {
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            upsert(db, earthquakes, true);
+            db.execSQL("UPDATE " + ImportEntry.TABLE_NAME + " SET " + ImportEntry.COLUMN_CURSOR + " = ?, "
+                            + ImportEntry.COLUMN_IMPORTED + " = " + ImportEntry.COLUMN_IMPORTED + " + ? WHERE "
+                            + ImportEntry.COLUMN_SOURCE + " = ?",
+                    new Object[]{cursor, earthquakes.size(), source});
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Records that the whole catalog of the import was stored
+     *
+     * @param source is the source of the import, see {@link #startImport(String, long, long)}
+     */
+    public void finishImport(String source) {
+        ContentValues values = new ContentValues();
+        values.put(ImportEntry.COLUMN_COMPLETE, 1);
+        mDbHelper.getWritableDatabase().update(ImportEntry.TABLE_NAME, values,
+                ImportEntry.COLUMN_SOURCE + " = ?", new String[]{source});
+    }
+
+    /**
+     * Deletes the earthquakes that happened before the period of every synced query, so the
+     * store does not keep growing as the periods move on. Imported earthquakes are kept: they
+     * are history asked for on purpose, and stay out of the queries through their time alone.
+     *
+     * @param now is the current time in milliseconds since the epoch
+     * @return the number of earthquakes deleted
+     */
+    public int prune(long now) {
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+        Cursor cursor = db.query(SyncEntry.TABLE_NAME,
+                new String[]{SyncEntry.COLUMN_QUERY},
+                null, null, null, null, null);
+        long keepFrom = Long.MAX_VALUE;
+        try {
+            while (cursor.moveToNext()) {
+                keepFrom = Math.min(keepFrom, EarthquakeQuery.parse(cursor.getString(0)).getStartTime(now));
+            }
+        } finally {
+            cursor.close();
+        }
+        if (keepFrom == Long.MAX_VALUE) {
+            // Nothing was synced yet, so nothing says which events are still wanted
+            return 0;
+        }
+        return db.delete(EarthquakeEntry.TABLE_NAME,
+                EarthquakeEntry.COLUMN_TIME + " < ? AND " + EarthquakeEntry.COLUMN_IMPORTED + " = 0",
+                new String[]{String.valueOf(keepFrom)});
+    }
+
+    /**
+     * Reads earthquakes from the store the same way USGS would answer the query
+     *
+     * @param minMagnitude is the smallest magnitude to include
+     * @param startTime    is the inclusive start of the period of the query in milliseconds,
+     *                     see {@link EarthquakeQuery#getStartTime(long)}
+     * @param orderBy      is the USGS "orderby" value (time, time-asc, magnitude, magnitude-asc)
+     * @param limit        is the maximum number of earthquakes to return, or 0 for no limit
+     * @param formatter    formats the display columns of the result
+     * @return an {@link EarthquakeTable} of the matching earthquakes
+     */
+    public EarthquakeTable query(double minMagnitude, long startTime, String orderBy, int limit,
+                                 EarthquakeFormatter formatter) {
+        SQLiteDatabase db = mDbHelper.getReadableDatabase();
+        Cursor cursor = db.query(EarthquakeEntry.TABLE_NAME,
+                EARTHQUAKE_PROJECTION,
+                EarthquakeEntry.COLUMN_MAGNITUDE + " >= ? AND " + EarthquakeEntry.COLUMN_TIME + " >= ?",
+                new String[]{String.valueOf(minMagnitude), String.valueOf(startTime)},
+                null, null,
+                getSortOrder(orderBy),
+                limit > 0 ? String.valueOf(limit) : null);
+        return readTable(cursor, formatter);
+    }
+
+    /**
+     * Reads the earthquakes that were stored or revised within a range of "updated" times,
+     * oldest update first. The range is looked up in the index on the column, so the cost
+     * follows the number of rows in it and not the size of the store.
+     *
+     * @param updatedAfter is the exclusive start of the range in milliseconds
+     * @param updatedUpTo  is the inclusive end of the range in milliseconds
+     * @param minMagnitude is the smallest magnitude to include
+     * @param formatter    formats the display columns of the result
+     * @return an {@link EarthquakeTable} of the matching earthquakes
+     */
+    public EarthquakeTable queryUpdated(long updatedAfter, long updatedUpTo, double minMagnitude,
+                                        EarthquakeFormatter formatter) {
+        SQLiteDatabase db = mDbHelper.getReadableDatabase();
+        Cursor cursor = db.query(EarthquakeEntry.TABLE_NAME,
+                EARTHQUAKE_PROJECTION,
+                EarthquakeEntry.COLUMN_UPDATED + " > ? AND " + EarthquakeEntry.COLUMN_UPDATED + " <= ? AND "
+                        + EarthquakeEntry.COLUMN_MAGNITUDE + " >= ?",
+                new String[]{String.valueOf(updatedAfter), String.valueOf(updatedUpTo),
+                        String.valueOf(minMagnitude)},
+                null, null,
+                EarthquakeEntry.COLUMN_UPDATED + " ASC");
+        return readTable(cursor, formatter);
+    }
+
+    /**
+     * Reads the earthquakes written within a range of sequence numbers, oldest write first.
+     * The range is looked up in the index on the column, so the cost follows the number of
+     * rows in it and not the size of the store.
+     *
+     * @param storedAfter is the exclusive start of the range, 0 to read every earthquake
+     * @param storedUpTo  is the inclusive end of the range, see {@link #getLatestSequence()}
+     * @param formatter   formats the display columns of the result, or null
+     * @return an {@link EarthquakeTable} of the earthquakes written in the range
+     */
+    public EarthquakeTable queryStored(long storedAfter, long storedUpTo, EarthquakeFormatter formatter) {
+        SQLiteDatabase db = mDbHelper.getReadableDatabase();
+        Cursor cursor = db.query(EarthquakeEntry.TABLE_NAME,
+                EARTHQUAKE_PROJECTION,
+                EarthquakeEntry.COLUMN_STORED_SEQUENCE + " > ? AND "
+                        + EarthquakeEntry.COLUMN_STORED_SEQUENCE + " <= ?",
+                new String[]{String.valueOf(storedAfter), String.valueOf(storedUpTo)},
+                null, null,
+                EarthquakeEntry.COLUMN_STORED_SEQUENCE + " ASC");
+        return readTable(cursor, formatter);
+    }
+
+    /**
+     * Reads the strongest earthquakes that happened within a range of times, strongest first
+     *
+     * @param startTime is the inclusive start of the range in milliseconds since the epoch
+     * @param endTime   is the exclusive end of the range in milliseconds since the epoch
+     * @param limit     is the maximum number of earthquakes to return
+     * @param formatter formats the display columns of the result, or null
+     * @return an {@link EarthquakeTable} of the strongest earthquakes in the range
+     */
+    public EarthquakeTable queryStrongest(long startTime, long endTime, int limit, EarthquakeFormatter formatter) {
+        SQLiteDatabase db = mDbHelper.getReadableDatabase();
+        Cursor cursor = db.query(EarthquakeEntry.TABLE_NAME,
+                EARTHQUAKE_PROJECTION,
+                EarthquakeEntry.COLUMN_TIME + " >= ? AND " + EarthquakeEntry.COLUMN_TIME + " < ?",
+                new String[]{String.valueOf(startTime), String.valueOf(endTime)},
+                null, null,
+                getSortOrder("magnitude"),
+                String.valueOf(limit));
+        return readTable(cursor, formatter);
+    }
+
+    /**
+     * Reads the earthquakes with the given ids, latest first. Each id is looked up in the unique
+     * index on the event id column.
+     *
+     * @param ids       are the USGS event ids, at most a few hundred
+     * @param formatter formats the display columns of the result, or null
+     * @return an {@link EarthquakeTable} of the stored earthquakes among the ids
+     */
+    public EarthquakeTable queryIds(List<String> ids, EarthquakeFormatter formatter) {
+        StringBuilder selection = new StringBuilder(EarthquakeEntry.COLUMN_EVENT_ID).append(" IN (");
+        for (int i = 0; i < ids.size(); i++) {
+            selection.append(i == 0 ? "?" : ", ?");
+        }
+        selection.append(')');
+        SQLiteDatabase db = mDbHelper.getReadableDatabase();
+        Cursor cursor = db.query(EarthquakeEntry.TABLE_NAME,
+                EARTHQUAKE_PROJECTION,
+                selection.toString(),
+                ids.toArray(new String[ids.size()]),
+                null, null,
+                getSortOrder("time"));
+        return readTable(cursor, formatter);
+    }
+
+    /**
+     * Reads every row of a cursor over {@link #EARTHQUAKE_PROJECTION} and closes it
+     */
+    private static EarthquakeTable readTable(Cursor cursor, EarthquakeFormatter formatter) {
+        // Rows go straight from the cursor into the columns, without an Earthquake per row
+        EarthquakeTable.Builder builder = new EarthquakeTable.Builder(cursor.getCount());
+        try {
+            while (cursor.moveToNext()) {
+                builder.add(
+                        cursor.getString(0),
+                        cursor.getDouble(1),
+                        cursor.getString(2),
+                        cursor.getLong(3),
+                        cursor.getString(4),
+                        cursor.getLong(5),
+                        getDoubleOrNaN(cursor, 6),
+                        getDoubleOrNaN(cursor, 7),
+                        getDoubleOrNaN(cursor, 8));
+            }
+        } finally {
+            cursor.close();
+        }
+        return builder.build(formatter);
+    }
+
+    /**
+     * Writes the earthquakes inside the caller's transaction
+     *
+     * @param imported is true if a bulk import stored the earthquakes
+     * @return the latest "updated" time among the earthquakes
+     */
+    private static long upsert(SQLiteDatabase db, List<Earthquake> earthquakes, boolean imported) {
+        long watermark = 0;
+        if (earthquakes.isEmpty()) {
+            return watermark;
+        }
+        // Writes go through one connection one transaction at a time, so the numbers become
+        // visible in order and a reader never sees a later write before an earlier one
+        long sequence = getLatestSequence(db) + 1;
+        SQLiteStatement upsert = db.compileStatement(SQL_UPSERT_EARTHQUAKE);
+        try {
+            for (Earthquake earthquake : earthquakes) {
+                bindEarthquake(upsert, earthquake);
+                upsert.bindLong(10, imported ? 1 : 0);
+                upsert.bindLong(11, sequence);
+                upsert.executeInsert();
+                watermark = Math.max(watermark, earthquake.getUpdatedInMilliseconds());
+            }
+        } finally {
+            upsert.close();
+        }
+        return watermark;
+    }
+
+    private static long getLatestSequence(SQLiteDatabase db) {
+        Cursor cursor = db.rawQuery("SELECT MAX(" + EarthquakeEntry.COLUMN_STORED_SEQUENCE + ") FROM "
+                + EarthquakeEntry.TABLE_NAME, null);
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static void bindEarthquake(SQLiteStatement statement, Earthquake earthquake) {
+        statement.clearBindings();
+        statement.bindString(1, earthquake.getId());
+        statement.bindDouble(2, earthquake.getMagnitude());
+        statement.bindString(3, earthquake.getLocation());
+        statement.bindLong(4, earthquake.getTimeInMilliseconds());
+        if (earthquake.getUrl() != null) {
+            statement.bindString(5, earthquake.getUrl());
+        }
+        statement.bindLong(6, earthquake.getUpdatedInMilliseconds());
+        bindDoubleOrNull(statement, 7, earthquake.getLatitude());
+        bindDoubleOrNull(statement, 8, earthquake.getLongitude());
+        bindDoubleOrNull(statement, 9, earthquake.getDepth());
+    }
+
+    /**
+     * Binds an unknown (NaN) value as null, since SQLite has no NaN
+     */
+    private static void bindDoubleOrNull(SQLiteStatement statement, int index, double value) {
+        if (!Double.isNaN(value)) {
+            statement.bindDouble(index, value);
+        }
+    }
+
+    private static double getDoubleOrNaN(Cursor cursor, int index) {
+        return cursor.isNull(index) ? Double.NaN : cursor.getDouble(index);
+    }
+
+    private static void saveSyncState(SQLiteDatabase db, String query, long watermark,
+                                      QueryUtils.Validators validators) {
+        ContentValues values = new ContentValues();
+        values.put(SyncEntry.COLUMN_QUERY, query);
+        values.put(SyncEntry.COLUMN_ETAG, validators.getEtag());
+        values.put(SyncEntry.COLUMN_LAST_MODIFIED, validators.getLastModified());
+        values.put(SyncEntry.COLUMN_FETCHED_AT, System.currentTimeMillis());
+
+        // The watermark only ever moves forward
+        db.insertWithOnConflict(SyncEntry.TABLE_NAME, null, values, SQLiteDatabase.CONFLICT_IGNORE);
+        db.update(SyncEntry.TABLE_NAME, values, SyncEntry.COLUMN_QUERY + " = ?", new String[]{query});
+        db.execSQL("UPDATE " + SyncEntry.TABLE_NAME + " SET " + SyncEntry.COLUMN_WATERMARK
+                        + " = MAX(" + SyncEntry.COLUMN_WATERMARK + ", ?) WHERE " + SyncEntry.COLUMN_QUERY + " = ?",
+                new Object[]{watermark, query});
+    }
+
+    /**
+     * Maps a USGS "orderby" value to the matching SQL sort order
+     */
+    private static String getSortOrder(String orderBy) {
+        if ("time-asc".equals(orderBy)) {
+            return EarthquakeEntry.COLUMN_TIME + " ASC";
+        } else if ("magnitude".equals(orderBy)) {
+            return EarthquakeEntry.COLUMN_MAGNITUDE + " DESC";
+        } else if ("magnitude-asc".equals(orderBy)) {
+            return EarthquakeEntry.COLUMN_MAGNITUDE + " ASC";
+        }
+        return EarthquakeEntry.COLUMN_TIME + " DESC";
+    }
+}
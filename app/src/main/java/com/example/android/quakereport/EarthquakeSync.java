@@ -0,0 +1,209 @@
+package com.example.android.quakereport;
+
+import android.content.Context;
+import android.net.Uri;
+import android.support.v4.os.CancellationSignal;
+import android.support.v4.os.OperationCanceledException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TimeZone;
+
+/**
+ * Brings the {@link EarthquakeStore} up to date with USGS for a query.
+ * <p>
+ * Both the foreground loader and the background sync go through here. Syncs of the same query
+ * wait for each other and are skipped while the stored result is younger than the caller's
+ * maximum age, so a load and a background sync that overlap, or a burst of sync requests, cost
+ * one request to USGS. Syncs of different queries run side by side.
+ */
+public final class EarthquakeSync {
+
+    /**
+     * How often a sync waiting for another one checks whether it was canceled, in milliseconds
+     */
+    private static final long CANCELLATION_POLL_MILLIS = 100;
+
+    /**
+     * Queries being synced; guarded by itself, which is only held to check and update it
+     */
+    private static final Set<String> sSyncing = new HashSet<>();
+
+    /**
+     * Create a private constructor because no one should ever create a {@link EarthquakeSync} object.
+     */
+    private EarthquakeSync() {
+    }
+
+    /**
+     * Syncs a query unless it was synced within the given age
+     *
+     * @param store                is the store to merge the response into
+     * @param url                  is the normalized USGS query url
+     * @param maxAgeInMilliseconds is how old the stored result may be before it is synced
+     * @param shards               is the number of time windows a large first sync is split into
+     *                             and fetched in parallel, 1 to fetch it with a single request
+     * @param format               is the format to download the response in, see
+     *                             {@link EarthquakePreferences#getWireFormat(Context)}
+     * @param listener             is told about the features parsed so far while the first full
+     *                             response of the query is read, or null
+     * @param cancellationSignal   aborts the request when canceled, or null
+     * @return true if new or updated earthquakes were merged into the store
+     * @throws IOException                if the request failed, in which case the store is left as it was
+     * @throws OperationCanceledException if the sync was canceled, the store is left as it was too
+     */
+    public static boolean syncIfStale(EarthquakeStore store, String url, long maxAgeInMilliseconds,
+                                      int shards, String format, QueryUtils.ParseListener listener,
+                                      CancellationSignal cancellationSignal) throws IOException {
+        synchronized (sSyncing) {
+            // A sync of the same query in progress is likely to make this one unnecessary
+            while (sSyncing.contains(url)) {
+                if (cancellationSignal != null) {
+                    cancellationSignal.throwIfCanceled();
+                }
+                try {
+                    sSyncing.wait(CANCELLATION_POLL_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for a sync of " + url);
+                }
+            }
+
+            // Checked under the lock, so a sync that was waiting sees the one that just finished
+            long age = System.currentTimeMillis() - store.getFetchedAt(url);
+            if (age >= 0 && age < maxAgeInMilliseconds) {
+                return false;
+            }
+            sSyncing.add(url);
+        }
+
+        // The request and the merge run without the lock, other queries do not wait for them
+        try {
+            return sync(store, url, shards, format, listener, cancellationSignal);
+        } finally {
+            synchronized (sSyncing) {
+                sSyncing.remove(url);
+                sSyncing.notifyAll();
+            }
+        }
+    }
+
+    private static boolean sync(EarthquakeStore store, String url, int shards, String format,
+                                QueryUtils.ParseListener listener,
+                                CancellationSignal cancellationSignal) throws IOException {
+        // Only ask USGS for events that changed since the last sync of this query
+        long watermark = store.getWatermark(url);
+        if (watermark == 0 && EarthquakeShardFetcher.canShard(url, shards)) {
+            // The first sync of a large query is the one big download, spread it over connections
+            List<Earthquake> fetched = EarthquakeShardFetcher.fetch(url, shards, format, cancellationSignal);
+            merge(store, url, fetched, new QueryUtils.Validators(null, null));
+            return !fetched.isEmpty();
+        }
+
+        String requestUrl = withFormat(url, format);
+        if (watermark > 0) {
+            // A delta is not the top of the result, so it is not worth showing while it is parsed
+            listener = null;
+            // The watermark moves to the latest update in the delta, so the delta has to hold
+            // every change: with the query's "limit" the changes cut off by it would be skipped
+            requestUrl = Uri.parse(withoutParameter(requestUrl, "limit")).buildUpon()
+                    .appendQueryParameter("updatedafter", formatUsgsTime(watermark))
+                    .toString();
+        }
+
+        // Perform the HTTP request for earthquake data and merge the response into the store.
+        // A null result means USGS answered "304 Not Modified" and the store is already current.
+        QueryUtils.Validators validators = store.getValidators(url);
+        List<Earthquake> fetched = EarthquakeRequests.fetchEarthquakeData(requestUrl, validators,
+                listener, cancellationSignal);
+        if (fetched == null) {
+            store.markFetched(url);
+            return false;
+        }
+        merge(store, url, fetched, validators);
+        return !fetched.isEmpty();
+    }
+
+    /**
+     * Merges a response into the store and drops the events that fell out of the period of
+     * every synced query
+     */
+    private static void merge(EarthquakeStore store, String url, List<Earthquake> fetched,
+                              QueryUtils.Validators validators) {
+        store.merge(url, fetched, validators);
+        if (store.prune(System.currentTimeMillis()) > 0) {
+            // Both are kept up to date with added rows only, so they are built again without these
+            EarthquakeStatistics.invalidate();
+            EarthquakeSearch.invalidate();
+        }
+    }
+
+    /**
+     * Lets everything derived incrementally from the store catch up with new or updated
+     * earthquakes. Called on a background thread after each sync or insert.
+     *
+     * @param context is used to open the store
+     */
+    static void notifyStoreChanged(Context context) {
+        EarthquakeAlerts.checkForNewEvents(context);
+        EarthquakeStatistics.update(context);
+        EarthquakeSearch.update(context);
+    }
+
+    /**
+     * Returns a USGS query url that asks for the response in the given format. The query
+     * itself, which keys the sync state and the caches, stays the same whatever the format.
+     *
+     * @param url    is the USGS query url
+     * @param format is the value of the "format" parameter
+     */
+    static String withFormat(String url, String format) {
+        Uri uri = Uri.parse(url);
+        Uri.Builder builder = uri.buildUpon().clearQuery();
+        for (String name : uri.getQueryParameterNames()) {
+            if (name.equals("format")) {
+                builder.appendQueryParameter(name, format);
+                continue;
+            }
+            for (String value : uri.getQueryParameters(name)) {
+                builder.appendQueryParameter(name, value);
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Returns a USGS query url without the given parameter
+     *
+     * @param url  is the USGS query url
+     * @param name is the name of the parameter to leave out
+     */
+    static String withoutParameter(String url, String name) {
+        Uri uri = Uri.parse(url);
+        Uri.Builder builder = uri.buildUpon().clearQuery();
+        for (String parameter : uri.getQueryParameterNames()) {
+            if (parameter.equals(name)) {
+                continue;
+            }
+            for (String value : uri.getQueryParameters(parameter)) {
+                builder.appendQueryParameter(parameter, value);
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Formats a time in milliseconds as the ISO8601 UTC string expected by the USGS API
+     */
+    static String formatUsgsTime(long timeInMilliseconds) {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format.format(new Date(timeInMilliseconds));
+    }
+}
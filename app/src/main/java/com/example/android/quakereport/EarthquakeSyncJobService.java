@@ -0,0 +1,61 @@
+package com.example.android.quakereport;
+
+import android.annotation.TargetApi;
+import android.app.job.JobParameters;
+import android.app.job.JobService;
+import android.os.AsyncTask;
+import android.os.Build;
+import android.util.SparseArray;
+
+/**
+ * Runs the periodic background sync scheduled by {@link EarthquakeSyncScheduler} on Lollipop and later.
+ * A failed sync is handed back to JobScheduler, which retries it with exponential backoff.
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+public class EarthquakeSyncJobService extends JobService {
+
+    /**
+     * Syncs in progress by job id; the periodic and the one-off job can run at the same time
+     */
+    private final SparseArray<SyncTask> mSyncTasks = new SparseArray<>();
+
+    @Override
+    public boolean onStartJob(JobParameters params) {
+        // onStartJob runs on the main thread, so the sync goes to a background thread
+        SyncTask syncTask = new SyncTask(params);
+        mSyncTasks.put(params.getJobId(), syncTask);
+        syncTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        // The constraints are no longer met, ask for the job to be run again later
+        SyncTask syncTask = mSyncTasks.get(params.getJobId());
+        if (syncTask != null) {
+            syncTask.cancel(true);
+            mSyncTasks.remove(params.getJobId());
+        }
+        return true;
+    }
+
+    private class SyncTask extends AsyncTask<Void, Void, Boolean> {
+
+        private final JobParameters mParams;
+
+        SyncTask(JobParameters params) {
+            this.mParams = params;
+        }
+
+        @Override
+        protected Boolean doInBackground(Void... voids) {
+            return EarthquakeSyncScheduler.runSync(getApplicationContext());
+        }
+
+        @Override
+        protected void onPostExecute(Boolean succeeded) {
+            mSyncTasks.remove(mParams.getJobId());
+            jobFinished(mParams, !succeeded);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.android.quakereport;
+
+import android.content.Context;
+import android.content.Intent;
+import android.net.ConnectivityManager;
+import android.support.v4.content.WakefulBroadcastReceiver;
+
+/**
+ * Receives the sync alarms of {@link EarthquakeSyncScheduler} and starts {@link EarthquakeSyncService}
+ * under a wake lock. Alarms do not survive a reboot, so they are also set again on boot. Below
+ * Lollipop, connectivity changes and plugging the device in start the sync queued while the
+ * device was offline; the service only forgets it once its constraints are met.
+ */
+public class EarthquakeSyncReceiver extends WakefulBroadcastReceiver {
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        if (Intent.ACTION_BOOT_COMPLETED.equals(intent.getAction())) {
+            EarthquakeSyncScheduler.ensureScheduled(context);
+            return;
+        }
+        if (ConnectivityManager.CONNECTIVITY_ACTION.equals(intent.getAction())
+                || Intent.ACTION_POWER_CONNECTED.equals(intent.getAction())) {
+            if (!EarthquakeSyncScheduler.isConnected(context)
+                    || !EarthquakeSyncScheduler.isSyncWhenConnectedQueued(context)) {
+                return;
+            }
+        }
+        startWakefulService(context, new Intent(context, EarthquakeSyncService.class));
+    }
+}
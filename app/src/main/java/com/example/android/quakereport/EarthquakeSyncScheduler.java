@@ -0,0 +1,309 @@
+package com.example.android.quakereport;
+
+import android.annotation.TargetApi;
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.app.job.JobInfo;
+import android.app.job.JobScheduler;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.SharedPreferences;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.BatteryManager;
+import android.os.Build;
+import android.os.SystemClock;
+import android.support.v4.net.ConnectivityManagerCompat;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Schedules the periodic background sync that keeps the {@link EarthquakeStore} fresh, so that
+ * opening the app is mostly a read of the store.
+ * <p>
+ * On Lollipop and later the sync is a {@link JobScheduler} job, which the system batches with
+ * other jobs and only runs under the configured network and charging constraints, backing off
+ * exponentially when it fails. Older releases have no JobScheduler, so an inexact repeating alarm
+ * (batched by {@link AlarmManager} with the alarms of other apps) starts
+ * {@link EarthquakeSyncService}, which checks the constraints itself and schedules its own
+ * exponential retries.
+ */
+public final class EarthquakeSyncScheduler {
+
+    private static final String LOG_TAG = EarthquakeSyncScheduler.class.getName();
+
+    private static final int SYNC_JOB_ID = 1;
+    private static final int CONNECTED_SYNC_JOB_ID = 2;
+
+    /**
+     * Delay of the first retry after a failed sync, doubled on every further failure
+     */
+    private static final long INITIAL_BACKOFF_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    private static final String PREFS_NAME = "earthquake_sync";
+    private static final String PREF_FAILED_ATTEMPTS = "failed_attempts";
+    private static final String PREF_SYNC_WHEN_CONNECTED = "sync_when_connected";
+
+    private static final String ACTION_SYNC = "com.example.android.quakereport.action.SYNC";
+    private static final String ACTION_RETRY = "com.example.android.quakereport.action.RETRY";
+
+    /**
+     * Create a private constructor because no one should ever create a {@link EarthquakeSyncScheduler} object.
+     */
+    private EarthquakeSyncScheduler() {
+    }
+
+    /**
+     * Schedules the background sync if it is turned on and not scheduled yet, keeping the
+     * phase of an existing schedule
+     *
+     * @param context is used to read the settings and reach the system services
+     */
+    public static void ensureScheduled(Context context) {
+        if (EarthquakePreferences.getSyncInterval(context) <= 0 || !isScheduled(context)) {
+            schedule(context);
+        }
+    }
+
+    /**
+     * Replaces the background sync schedule with one for the current settings, or cancels it
+     * if the sync is turned off
+     *
+     * @param context is used to read the settings and reach the system services
+     */
+    public static void schedule(Context context) {
+        long interval = EarthquakePreferences.getSyncInterval(context);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            scheduleJob(context, interval);
+        } else {
+            scheduleAlarm(context, interval);
+        }
+    }
+
+    /**
+     * Queues a one-off sync of the query of the current settings for when the device is back
+     * online, e.g. after a load found it offline and answered from the store. On Lollipop and
+     * later this is a job with a network constraint, below that a flag picked up by
+     * {@link EarthquakeSyncReceiver} on the next connectivity change.
+     *
+     * @param context is used to read the settings and reach the system services
+     */
+    public static void requestSyncWhenConnected(Context context) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            scheduleConnectedJob(context);
+        } else {
+            context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+                    .edit().putBoolean(PREF_SYNC_WHEN_CONNECTED, true).apply();
+        }
+    }
+
+    /**
+     * Returns true if a sync was queued by {@link #requestSyncWhenConnected(Context)} below
+     * Lollipop and has not started yet
+     *
+     * @param context is used to open the sync state
+     */
+    static boolean isSyncWhenConnectedQueued(Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+                .getBoolean(PREF_SYNC_WHEN_CONNECTED, false);
+    }
+
+    /**
+     * Forgets the sync queued by {@link #requestSyncWhenConnected(Context)} below Lollipop.
+     * Called once a sync actually starts, so that a queued sync whose constraints are not met
+     * yet waits for the next change instead of being lost.
+     *
+     * @param context is used to open the sync state
+     */
+    static void clearSyncWhenConnected(Context context) {
+        context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+                .edit().remove(PREF_SYNC_WHEN_CONNECTED).apply();
+    }
+
+    /**
+     * Returns true if the device has a network connection right now
+     *
+     * @param context is used to reach the connectivity service
+     */
+    public static boolean isConnected(Context context) {
+        ConnectivityManager connectivityManager =
+                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        NetworkInfo networkInfo = connectivityManager.getActiveNetworkInfo();
+        return networkInfo != null && networkInfo.isConnected();
+    }
+
+    /**
+     * Returns how old the store may get before a load syncs it in the foreground. While the
+     * background sync is on it keeps the store fresh, so loads allow for its interval and some
+     * slack for the system deferring it.
+     *
+     * @param context is used to read the settings
+     * @return the maximum age of the stored result in milliseconds
+     */
+    public static long getStoreMaxAge(Context context) {
+        long ttl = EarthquakePreferences.getCacheTtl(context);
+        long interval = EarthquakePreferences.getSyncInterval(context);
+        return Math.max(ttl, interval + interval / 2);
+    }
+
+    /**
+     * Syncs the query of the current settings. Called on a background thread by the job and the
+     * service. A sync is skipped if the query was synced within half an interval, e.g. by the
+     * app being opened just before.
+     *
+     * @param context is used to read the settings and open the store
+     * @return true if the sync succeeded or was not needed, false if it should be retried
+     */
+    static boolean runSync(Context context) {
+        String url = EarthquakePreferences.getLoaderUrl(context);
+        long interval = EarthquakePreferences.getSyncInterval(context);
+        try {
+            if (EarthquakeSync.syncIfStale(new EarthquakeStore(context), url, interval / 2,
+                    EarthquakePreferences.getShards(context), EarthquakePreferences.getWireFormat(context),
+                    null, null)) {
+                // Results held in memory no longer match the store
+                EarthquakeCache.evictAll();
+                EarthquakeSync.notifyStoreChanged(context);
+            }
+            return true;
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem syncing the earthquake results in the background.", e);
+            return false;
+        }
+    }
+
+    /**
+     * Returns true if the network and charging constraints of the settings are met right now.
+     * Only needed below Lollipop, where JobScheduler cannot check them for us.
+     *
+     * @param context is used to read the settings and reach the system services
+     */
+    static boolean areConstraintsMet(Context context) {
+        if (!isConnected(context)) {
+            return false;
+        }
+        ConnectivityManager connectivityManager =
+                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (EarthquakePreferences.isSyncUnmeteredOnly(context)
+                && ConnectivityManagerCompat.isActiveNetworkMetered(connectivityManager)) {
+            return false;
+        }
+        if (EarthquakePreferences.isSyncChargingOnly(context)) {
+            // ACTION_BATTERY_CHANGED is sticky, so this reads the last broadcast without a receiver
+            Intent battery = context.registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+            int plugged = battery == null ? 0 : battery.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0);
+            if (plugged == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Schedules a one-off retry of a failed sync, after a delay that doubles with every failure
+     * in a row and never exceeds the sync interval
+     *
+     * @param context is used to reach the alarm service
+     */
+    static void scheduleRetry(Context context) {
+        long interval = EarthquakePreferences.getSyncInterval(context);
+        if (interval <= 0) {
+            return;
+        }
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        int failedAttempts = prefs.getInt(PREF_FAILED_ATTEMPTS, 0);
+        prefs.edit().putInt(PREF_FAILED_ATTEMPTS, failedAttempts + 1).apply();
+
+        long delay = INITIAL_BACKOFF_MILLIS << Math.min(failedAttempts, 20);
+        delay = Math.min(delay, interval);
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        alarmManager.set(AlarmManager.ELAPSED_REALTIME_WAKEUP,
+                SystemClock.elapsedRealtime() + delay,
+                getAlarmIntent(context, ACTION_RETRY, PendingIntent.FLAG_UPDATE_CURRENT));
+    }
+
+    /**
+     * Forgets the failures counted by {@link #scheduleRetry(Context)} after a successful sync
+     *
+     * @param context is used to open the sync state
+     */
+    static void resetBackoff(Context context) {
+        context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+                .edit().remove(PREF_FAILED_ATTEMPTS).apply();
+    }
+
+    private static boolean isScheduled(Context context) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            return isJobScheduled(context);
+        }
+        return getAlarmIntent(context, ACTION_SYNC, PendingIntent.FLAG_NO_CREATE) != null;
+    }
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private static boolean isJobScheduled(Context context) {
+        JobScheduler jobScheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        for (JobInfo job : jobScheduler.getAllPendingJobs()) {
+            if (job.getId() == SYNC_JOB_ID) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private static void scheduleJob(Context context, long interval) {
+        JobScheduler jobScheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        if (interval <= 0) {
+            jobScheduler.cancel(SYNC_JOB_ID);
+            return;
+        }
+        JobInfo job = new JobInfo.Builder(SYNC_JOB_ID, new ComponentName(context, EarthquakeSyncJobService.class))
+                .setPeriodic(interval)
+                .setRequiredNetworkType(EarthquakePreferences.isSyncUnmeteredOnly(context)
+                        ? JobInfo.NETWORK_TYPE_UNMETERED : JobInfo.NETWORK_TYPE_ANY)
+                .setRequiresCharging(EarthquakePreferences.isSyncChargingOnly(context))
+                .setBackoffCriteria(INITIAL_BACKOFF_MILLIS, JobInfo.BACKOFF_POLICY_EXPONENTIAL)
+                .setPersisted(true)
+                .build();
+        if (jobScheduler.schedule(job) != JobScheduler.RESULT_SUCCESS) {
+            Log.e(LOG_TAG, "Problem scheduling the background sync.");
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private static void scheduleConnectedJob(Context context) {
+        JobScheduler jobScheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        // Replaces a pending request, so going offline repeatedly queues one sync
+        JobInfo job = new JobInfo.Builder(CONNECTED_SYNC_JOB_ID,
+                new ComponentName(context, EarthquakeSyncJobService.class))
+                .setRequiredNetworkType(JobInfo.NETWORK_TYPE_ANY)
+                .setBackoffCriteria(INITIAL_BACKOFF_MILLIS, JobInfo.BACKOFF_POLICY_EXPONENTIAL)
+                .build();
+        if (jobScheduler.schedule(job) != JobScheduler.RESULT_SUCCESS) {
+            Log.e(LOG_TAG, "Problem scheduling the sync for when the device is online.");
+        }
+    }
+
+    private static void scheduleAlarm(Context context, long interval) {
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        PendingIntent sync = getAlarmIntent(context, ACTION_SYNC, PendingIntent.FLAG_UPDATE_CURRENT);
+        alarmManager.cancel(getAlarmIntent(context, ACTION_RETRY, PendingIntent.FLAG_UPDATE_CURRENT));
+        resetBackoff(context);
+        if (interval <= 0) {
+            alarmManager.cancel(sync);
+            sync.cancel();
+            return;
+        }
+        alarmManager.setInexactRepeating(AlarmManager.ELAPSED_REALTIME_WAKEUP,
+                SystemClock.elapsedRealtime() + interval, interval, sync);
+    }
+
+    private static PendingIntent getAlarmIntent(Context context, String action, int flags) {
+        Intent intent = new Intent(context, EarthquakeSyncReceiver.class).setAction(action);
+        return PendingIntent.getBroadcast(context, 0, intent, flags);
+    }
+}
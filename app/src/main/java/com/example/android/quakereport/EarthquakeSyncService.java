@@ -0,0 +1,36 @@
+package com.example.android.quakereport;
+
+import android.app.IntentService;
+import android.content.Intent;
+
+/**
+ * Runs the background sync started by the alarms of {@link EarthquakeSyncScheduler} below Lollipop.
+ * Requests are handled one at a time on a worker thread, and one that arrives while the query is
+ * still fresh from the previous sync does not go to the network.
+ */
+public class EarthquakeSyncService extends IntentService {
+
+    public EarthquakeSyncService() {
+        super(EarthquakeSyncService.class.getSimpleName());
+    }
+
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        try {
+            // Without JobScheduler the constraints are checked here, the next alarm tries again
+            if (!EarthquakeSyncScheduler.areConstraintsMet(this)) {
+                return;
+            }
+            // The sync queued while offline is covered by this one, whatever started it
+            EarthquakeSyncScheduler.clearSyncWhenConnected(this);
+            if (EarthquakeSyncScheduler.runSync(this)) {
+                EarthquakeSyncScheduler.resetBackoff(this);
+            } else {
+                EarthquakeSyncScheduler.scheduleRetry(this);
+            }
+        } finally {
+            // Let the device sleep again
+            EarthquakeSyncReceiver.completeWakefulIntent(intent);
+        }
+    }
+}
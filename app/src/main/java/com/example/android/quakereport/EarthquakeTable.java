@@ -0,0 +1,427 @@
+package com.example.android.quakereport;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable, column oriented collection of earthquakes.
+ * <p>
+ * Numbers are kept in primitive arrays, places and every display string are pooled so that
+ * equal values share one instance, and event urls are stored as an id into a small table of
+ * url prefixes and rebuilt on demand. Rows are addressed by index, so the list, filtering and
+ * sorting never need an {@link Earthquake} object per event.
+ */
+public final class EarthquakeTable {
+
+    /**
+     * Url prefix id of a row that has no url
+     */
+    private static final int NO_URL = Integer.MIN_VALUE;
+
+    private final int mSize;
+    private final String[] mIds;
+    private final double[] mMagnitudes;
+    private final long[] mTimes;
+    private final long[] mUpdated;
+    private final double[] mLatitudes;
+    private final double[] mLongitudes;
+    private final double[] mDepths;
+    private final String[] mPlaces;
+    private final int[] mUrlPrefixIds;
+    private final String[] mUrlPrefixes;
+
+    // Display columns, filled in by EarthquakeFormatter off the UI thread
+    private final String[] mMagnitudeLabels;
+    private final int[] mMagnitudeColors;
+    private final String[] mLocationOffsets;
+    private final String[] mPrimaryLocations;
+    private final String[] mDates;
+    private final String[] mTimeLabels;
+
+    private EarthquakeTable(int size, String[] urlPrefixes) {
+        mSize = size;
+        mIds = new String[size];
+        mMagnitudes = new double[size];
+        mTimes = new long[size];
+        mUpdated = new long[size];
+        mLatitudes = new double[size];
+        mLongitudes = new double[size];
+        mDepths = new double[size];
+        mPlaces = new String[size];
+        mUrlPrefixIds = new int[size];
+        mUrlPrefixes = urlPrefixes;
+        mMagnitudeLabels = new String[size];
+        mMagnitudeColors = new int[size];
+        mLocationOffsets = new String[size];
+        mPrimaryLocations = new String[size];
+        mDates = new String[size];
+        mTimeLabels = new String[size];
+    }
+
+    /**
+     * Returns an empty table
+     */
+    public static EarthquakeTable empty() {
+        return new EarthquakeTable(0, new String[0]);
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public String getId(int index) {
+        return mIds[index];
+    }
+
+    public double getMagnitude(int index) {
+        return mMagnitudes[index];
+    }
+
+    public long getTimeInMilliseconds(int index) {
+        return mTimes[index];
+    }
+
+    public long getUpdatedInMilliseconds(int index) {
+        return mUpdated[index];
+    }
+
+    /**
+     * Returns the latitude of the epicenter in degrees, or NaN if unknown
+     */
+    public double getLatitude(int index) {
+        return mLatitudes[index];
+    }
+
+    /**
+     * Returns the longitude of the epicenter in degrees, or NaN if unknown
+     */
+    public double getLongitude(int index) {
+        return mLongitudes[index];
+    }
+
+    /**
+     * Returns the depth of the hypocenter in kilometers, or NaN if unknown
+     */
+    public double getDepth(int index) {
+        return mDepths[index];
+    }
+
+    public String getLocation(int index) {
+        return mPlaces[index];
+    }
+
+    /**
+     * Rebuilds the USGS url of the earthquake at the given index
+     */
+    public String getUrl(int index) {
+        int prefixId = mUrlPrefixIds[index];
+        if (prefixId == NO_URL) {
+            return null;
+        }
+        if (prefixId < 0) {
+            // The url did not end with the event id and was stored whole
+            return mUrlPrefixes[-prefixId - 1];
+        }
+        return mUrlPrefixes[prefixId] + mIds[index];
+    }
+
+    public String getMagnitudeLabel(int index) {
+        return mMagnitudeLabels[index];
+    }
+
+    public int getMagnitudeColor(int index) {
+        return mMagnitudeColors[index];
+    }
+
+    public String getLocationOffset(int index) {
+        return mLocationOffsets[index];
+    }
+
+    public String getPrimaryLocation(int index) {
+        return mPrimaryLocations[index];
+    }
+
+    public String getDate(int index) {
+        return mDates[index];
+    }
+
+    public String getTimeLabel(int index) {
+        return mTimeLabels[index];
+    }
+
+    /**
+     * Materializes the earthquake at the given index, for the few callers that need an object
+     */
+    public Earthquake getEarthquake(int index) {
+        return new Earthquake(mIds[index], mMagnitudes[index], mPlaces[index], mTimes[index],
+                getUrl(index), mUpdated[index], mLatitudes[index], mLongitudes[index], mDepths[index]);
+    }
+
+    /**
+     * Returns a new table holding the rows at the given indices, in that order. Pooled strings
+     * and the url prefixes are shared with this table.
+     *
+     * @param indices are row indices of this table
+     * @param count   is the number of indices to use
+     * @return the selected rows
+     */
+    public EarthquakeTable select(int[] indices, int count) {
+        EarthquakeTable table = new EarthquakeTable(count, mUrlPrefixes);
+        for (int i = 0; i < count; i++) {
+            int index = indices[i];
+            table.mIds[i] = mIds[index];
+            table.mMagnitudes[i] = mMagnitudes[index];
+            table.mTimes[i] = mTimes[index];
+            table.mUpdated[i] = mUpdated[index];
+            table.mLatitudes[i] = mLatitudes[index];
+            table.mLongitudes[i] = mLongitudes[index];
+            table.mDepths[i] = mDepths[index];
+            table.mPlaces[i] = mPlaces[index];
+            table.mUrlPrefixIds[i] = mUrlPrefixIds[index];
+            table.mMagnitudeLabels[i] = mMagnitudeLabels[index];
+            table.mMagnitudeColors[i] = mMagnitudeColors[index];
+            table.mLocationOffsets[i] = mLocationOffsets[index];
+            table.mPrimaryLocations[i] = mPrimaryLocations[index];
+            table.mDates[i] = mDates[index];
+            table.mTimeLabels[i] = mTimeLabels[index];
+        }
+        return table;
+    }
+
+    /**
+     * Filters and orders the table the way USGS answers a query, working on the primitive
+     * columns only
+     *
+     * @param minMagnitude is the smallest magnitude to include
+     * @param orderBy      is the USGS "orderby" value (time, time-asc, magnitude, magnitude-asc)
+     * @param limit        is the maximum number of rows to return, or 0 for no limit
+     * @return a new table with the matching rows
+     */
+    public EarthquakeTable query(double minMagnitude, String orderBy, int limit) {
+        int[] indices = new int[mSize];
+        int count = 0;
+        for (int i = 0; i < mSize; i++) {
+            if (mMagnitudes[i] >= minMagnitude) {
+                indices[count++] = i;
+            }
+        }
+        sort(indices, count, orderBy);
+        if (limit > 0 && limit < count) {
+            count = limit;
+        }
+        return select(indices, count);
+    }
+
+    /**
+     * Sorts the first count indices by the given USGS order with a stable merge sort
+     */
+    private void sort(int[] indices, int count, String orderBy) {
+        int[] buffer = new int[count];
+        int[] source = indices;
+        int[] target = buffer;
+        for (int width = 1; width < count; width *= 2) {
+            for (int left = 0; left < count; left += 2 * width) {
+                int middle = Math.min(left + width, count);
+                int right = Math.min(left + 2 * width, count);
+                int i = left;
+                int j = middle;
+                int k = left;
+                while (i < middle && j < right) {
+                    target[k++] = compare(source[j], source[i], orderBy) < 0 ? source[j++] : source[i++];
+                }
+                while (i < middle) {
+                    target[k++] = source[i++];
+                }
+                while (j < right) {
+                    target[k++] = source[j++];
+                }
+            }
+            int[] swap = source;
+            source = target;
+            target = swap;
+        }
+        if (source != indices) {
+            System.arraycopy(source, 0, indices, 0, count);
+        }
+    }
+
+    private int compare(int a, int b, String orderBy) {
+        if ("time-asc".equals(orderBy)) {
+            return compareLongs(mTimes[a], mTimes[b]);
+        } else if ("magnitude".equals(orderBy)) {
+            return Double.compare(mMagnitudes[b], mMagnitudes[a]);
+        } else if ("magnitude-asc".equals(orderBy)) {
+            return Double.compare(mMagnitudes[a], mMagnitudes[b]);
+        }
+        return compareLongs(mTimes[b], mTimes[a]);
+    }
+
+    private static int compareLongs(long a, long b) {
+        return a < b ? -1 : (a == b ? 0 : 1);
+    }
+
+    /**
+     * Collects rows one at a time and builds an {@link EarthquakeTable} from them
+     */
+    public static final class Builder {
+
+        private int mSize;
+        private String[] mIds;
+        private double[] mMagnitudes;
+        private long[] mTimes;
+        private long[] mUpdated;
+        private double[] mLatitudes;
+        private double[] mLongitudes;
+        private double[] mDepths;
+        private String[] mPlaces;
+        private int[] mUrlPrefixIds;
+
+        private final Map<String, String> mPlacePool = new HashMap<>();
+        private final Map<String, Integer> mUrlPrefixIndex = new HashMap<>();
+        private String[] mUrlPrefixes = new String[4];
+        private int mUrlPrefixCount;
+
+        /**
+         * Constructs a new {@link Builder}
+         *
+         * @param capacity is the expected number of rows
+         */
+        public Builder(int capacity) {
+            int initialCapacity = Math.max(capacity, 16);
+            mIds = new String[initialCapacity];
+            mMagnitudes = new double[initialCapacity];
+            mTimes = new long[initialCapacity];
+            mUpdated = new long[initialCapacity];
+            mLatitudes = new double[initialCapacity];
+            mLongitudes = new double[initialCapacity];
+            mDepths = new double[initialCapacity];
+            mPlaces = new String[initialCapacity];
+            mUrlPrefixIds = new int[initialCapacity];
+        }
+
+        public int size() {
+            return mSize;
+        }
+
+        public Builder add(Earthquake earthquake) {
+            return add(earthquake.getId(), earthquake.getMagnitude(), earthquake.getLocation(),
+                    earthquake.getTimeInMilliseconds(), earthquake.getUrl(),
+                    earthquake.getUpdatedInMilliseconds(), earthquake.getLatitude(),
+                    earthquake.getLongitude(), earthquake.getDepth());
+        }
+
+        public Builder add(String id, double magnitude, String place, long timeInMilliseconds, String url,
+                           long updatedInMilliseconds, double latitude, double longitude, double depth) {
+            if (mSize == mIds.length) {
+                grow();
+            }
+            String pooledPlace = mPlacePool.get(place);
+            if (pooledPlace == null) {
+                mPlacePool.put(place, place);
+                pooledPlace = place;
+            }
+
+            mIds[mSize] = id;
+            mMagnitudes[mSize] = magnitude;
+            mTimes[mSize] = timeInMilliseconds;
+            mUpdated[mSize] = updatedInMilliseconds;
+            mLatitudes[mSize] = latitude;
+            mLongitudes[mSize] = longitude;
+            mDepths[mSize] = depth;
+            mPlaces[mSize] = pooledPlace;
+            mUrlPrefixIds[mSize] = encodeUrl(id, url);
+            mSize++;
+            return this;
+        }
+
+        /**
+         * Builds the table and fills in its display columns
+         *
+         * @param formatter formats the display columns; it is only used on the calling thread.
+         *                  Null leaves the display columns empty, for callers that only read the
+         *                  data columns.
+         * @return the built table
+         */
+        public EarthquakeTable build(EarthquakeFormatter formatter) {
+            String[] urlPrefixes = new String[mUrlPrefixCount];
+            System.arraycopy(mUrlPrefixes, 0, urlPrefixes, 0, mUrlPrefixCount);
+
+            EarthquakeTable table = new EarthquakeTable(mSize, urlPrefixes);
+            System.arraycopy(mIds, 0, table.mIds, 0, mSize);
+            System.arraycopy(mMagnitudes, 0, table.mMagnitudes, 0, mSize);
+            System.arraycopy(mTimes, 0, table.mTimes, 0, mSize);
+            System.arraycopy(mUpdated, 0, table.mUpdated, 0, mSize);
+            System.arraycopy(mLatitudes, 0, table.mLatitudes, 0, mSize);
+            System.arraycopy(mLongitudes, 0, table.mLongitudes, 0, mSize);
+            System.arraycopy(mDepths, 0, table.mDepths, 0, mSize);
+            System.arraycopy(mPlaces, 0, table.mPlaces, 0, mSize);
+            System.arraycopy(mUrlPrefixIds, 0, table.mUrlPrefixIds, 0, mSize);
+
+            for (int i = 0; formatter != null && i < mSize; i++) {
+                String[] location = formatter.splitLocation(mPlaces[i]);
+                table.mMagnitudeLabels[i] = formatter.formatMagnitude(mMagnitudes[i]);
+                table.mMagnitudeColors[i] = formatter.getMagnitudeColor(mMagnitudes[i]);
+                table.mLocationOffsets[i] = location[0];
+                table.mPrimaryLocations[i] = location[1];
+                table.mDates[i] = formatter.formatDate(mTimes[i]);
+                table.mTimeLabels[i] = formatter.formatTime(mTimes[i]);
+            }
+            return table;
+        }
+
+        /**
+         * Stores a url as the id of its prefix when it ends with the event id, which is the case
+         * for every USGS event page, and as a whole string otherwise
+         */
+        private int encodeUrl(String id, String url) {
+            if (url == null) {
+                return NO_URL;
+            }
+            boolean endsWithId = id != null && url.endsWith(id);
+            String key = endsWithId ? url.substring(0, url.length() - id.length()) : url;
+            Integer prefixId = mUrlPrefixIndex.get(key);
+            if (prefixId == null) {
+                if (mUrlPrefixCount == mUrlPrefixes.length) {
+                    String[] grown = new String[mUrlPrefixCount * 2];
+                    System.arraycopy(mUrlPrefixes, 0, grown, 0, mUrlPrefixCount);
+                    mUrlPrefixes = grown;
+                }
+                mUrlPrefixes[mUrlPrefixCount] = key;
+                prefixId = mUrlPrefixCount++;
+                mUrlPrefixIndex.put(key, prefixId);
+            }
+            return endsWithId ? prefixId : -prefixId - 1;
+        }
+
+        private void grow() {
+            int capacity = mIds.length * 2;
+            String[] ids = new String[capacity];
+            double[] magnitudes = new double[capacity];
+            long[] times = new long[capacity];
+            long[] updated = new long[capacity];
+            double[] latitudes = new double[capacity];
+            double[] longitudes = new double[capacity];
+            double[] depths = new double[capacity];
+            String[] places = new String[capacity];
+            int[] urlPrefixIds = new int[capacity];
+            System.arraycopy(mIds, 0, ids, 0, mSize);
+            System.arraycopy(mMagnitudes, 0, magnitudes, 0, mSize);
+            System.arraycopy(mTimes, 0, times, 0, mSize);
+            System.arraycopy(mUpdated, 0, updated, 0, mSize);
+            System.arraycopy(mLatitudes, 0, latitudes, 0, mSize);
+            System.arraycopy(mLongitudes, 0, longitudes, 0, mSize);
+            System.arraycopy(mDepths, 0, depths, 0, mSize);
+            System.arraycopy(mPlaces, 0, places, 0, mSize);
+            System.arraycopy(mUrlPrefixIds, 0, urlPrefixIds, 0, mSize);
+            mIds = ids;
+            mMagnitudes = magnitudes;
+            mTimes = times;
+            mUpdated = updated;
+            mLatitudes = latitudes;
+            mLongitudes = longitudes;
+            mDepths = depths;
+            mPlaces = places;
+            mUrlPrefixIds = urlPrefixIds;
+        }
+    }
+}
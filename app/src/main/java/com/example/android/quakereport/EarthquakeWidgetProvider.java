@@ -0,0 +1,16 @@
+package com.example.android.quakereport;
+
+import android.appwidget.AppWidgetManager;
+import android.appwidget.AppWidgetProvider;
+import android.content.Context;
+
+/**
+ * Home screen widget showing the latest significant earthquake found by {@link EarthquakeAlerts}
+ */
+public class EarthquakeWidgetProvider extends AppWidgetProvider {
+
+    @Override
+    public void onUpdate(Context context, AppWidgetManager appWidgetManager, int[] appWidgetIds) {
+        EarthquakeAlerts.updateWidgets(context);
+    }
+}
@@ -0,0 +1,210 @@
+package com.example.android.quakereport;
+
+import android.content.Intent;
+import android.net.Uri;
+import android.os.AsyncTask;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v7.app.AppCompatActivity;
+import android.text.TextUtils;
+import android.view.View;
+import android.widget.Button;
+import android.widget.EditText;
+import android.widget.ProgressBar;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Starts, follows and resumes the bulk import of a historical catalog by
+ * {@link EarthquakeImportService}, from USGS or from a file
+ */
+public class ImportActivity extends AppCompatActivity implements EarthquakeImporter.Listener {
+
+    private static final int PICK_FILE_REQUEST = 1;
+
+    private static final long MILLISECONDS_PER_YEAR = TimeUnit.DAYS.toMillis(365) + TimeUnit.HOURS.toMillis(6);
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    private TextView mStatusTextView;
+    private ProgressBar mProgressBar;
+    private Button mResumeButton;
+    private Button mStopButton;
+    private EditText mYearsEditText;
+    private EditText mMinMagnitudeEditText;
+    private EditText[] mBoundsEditTexts;
+
+    /**
+     * State of the last import, null if there never was one
+     */
+    private EarthquakeImporter.Progress mProgress;
+
+    /**
+     * True once the importer reported progress since the activity was started, which is newer
+     * than the state read from the store
+     */
+    private boolean mProgressReported;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.import_activity);
+        mStatusTextView = (TextView) findViewById(R.id.import_status);
+        mProgressBar = (ProgressBar) findViewById(R.id.import_progress);
+        mResumeButton = (Button) findViewById(R.id.import_resume);
+        mStopButton = (Button) findViewById(R.id.import_stop);
+        mYearsEditText = (EditText) findViewById(R.id.import_years);
+        mMinMagnitudeEditText = (EditText) findViewById(R.id.import_min_magnitude);
+        mBoundsEditTexts = new EditText[]{
+                (EditText) findViewById(R.id.import_min_latitude),
+                (EditText) findViewById(R.id.import_max_latitude),
+                (EditText) findViewById(R.id.import_min_longitude),
+                (EditText) findViewById(R.id.import_max_longitude)
+        };
+
+        findViewById(R.id.import_usgs).setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                startUsgsImport();
+            }
+        });
+        findViewById(R.id.import_file).setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                Intent intent = new Intent(Intent.ACTION_GET_CONTENT)
+                        .setType("*/*")
+                        .addCategory(Intent.CATEGORY_OPENABLE);
+                startActivityForResult(intent, PICK_FILE_REQUEST);
+            }
+        });
+        mResumeButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                if (mProgress != null) {
+                    startImport(mProgress.getSource(), mProgress.getStart(), mProgress.getEnd());
+                }
+            }
+        });
+        mStopButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                EarthquakeImportService.cancelImport(ImportActivity.this);
+            }
+        });
+    }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+        EarthquakeImporter.addListener(this);
+        mProgressReported = false;
+        // The store is read off the UI thread, progress reported meanwhile wins over it
+        new AsyncTask<Void, Void, EarthquakeImporter.Progress>() {
+            @Override
+            protected EarthquakeImporter.Progress doInBackground(Void... voids) {
+                return new EarthquakeStore(ImportActivity.this).getImport();
+            }
+
+            @Override
+            protected void onPostExecute(EarthquakeImporter.Progress progress) {
+                if (!mProgressReported) {
+                    showProgress(progress);
+                }
+            }
+        }.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        EarthquakeImporter.removeListener(this);
+    }
+
+    @Override
+    protected void onActivityResult(int requestCode, int resultCode, Intent data) {
+        super.onActivityResult(requestCode, resultCode, data);
+        if (requestCode == PICK_FILE_REQUEST && resultCode == RESULT_OK && data != null && data.getData() != null) {
+            Uri uri = data.getData();
+            startImport(uri.toString(), 0, 0);
+        }
+    }
+
+    @Override
+    public void onImportProgress(final EarthquakeImporter.Progress progress) {
+        // Reported on the importing thread
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mProgressReported = true;
+                showProgress(progress);
+            }
+        });
+    }
+
+    private void startUsgsImport() {
+        double[] bounds = new double[mBoundsEditTexts.length];
+        int boundsGiven = 0;
+        try {
+            for (int i = 0; i < bounds.length; i++) {
+                String bound = mBoundsEditTexts[i].getText().toString().trim();
+                if (!TextUtils.isEmpty(bound)) {
+                    bounds[i] = Double.parseDouble(bound);
+                    boundsGiven++;
+                }
+            }
+            int years = Integer.parseInt(mYearsEditText.getText().toString().trim());
+            double minMagnitude = Double.parseDouble(mMinMagnitudeEditText.getText().toString().trim());
+            if (years <= 0 || (boundsGiven != 0 && boundsGiven != bounds.length)) {
+                throw new NumberFormatException();
+            }
+            long end = System.currentTimeMillis();
+            startImport(EarthquakeImporter.buildCatalogQuery(minMagnitude, boundsGiven == 0 ? null : bounds),
+                    end - years * MILLISECONDS_PER_YEAR, end);
+        } catch (NumberFormatException e) {
+            Toast.makeText(this, R.string.import_invalid, Toast.LENGTH_SHORT).show();
+        }
+    }
+
+    private void startImport(String source, long start, long end) {
+        EarthquakeImportService.startImport(this, source, start, end);
+        mStatusTextView.setText(R.string.import_status_starting);
+        mResumeButton.setVisibility(View.GONE);
+        mStopButton.setVisibility(View.VISIBLE);
+    }
+
+    private void showProgress(EarthquakeImporter.Progress progress) {
+        mProgress = progress;
+        boolean running = EarthquakeImporter.isRunning();
+        if (progress == null) {
+            mStatusTextView.setText(R.string.import_status_none);
+            mProgressBar.setVisibility(View.GONE);
+            mResumeButton.setVisibility(View.GONE);
+            mStopButton.setVisibility(View.GONE);
+            return;
+        }
+
+        String status;
+        if (progress.isComplete()) {
+            status = getString(R.string.import_status_complete, progress.getImported());
+        } else if (progress.isFile()) {
+            status = getString(R.string.import_status_file, progress.getImported());
+        } else {
+            status = getString(R.string.import_status_query, progress.getImported(),
+                    EarthquakeAdapter.createFormatter(this).formatDate(progress.getCursor()));
+        }
+        if (!running && !progress.isComplete()) {
+            status = getString(R.string.import_status_stopped, status);
+        }
+        mStatusTextView.setText(status);
+
+        int percent = progress.getPercent();
+        mProgressBar.setVisibility(percent >= 0 || running ? View.VISIBLE : View.GONE);
+        mProgressBar.setIndeterminate(percent < 0 && running);
+        mProgressBar.setProgress(Math.max(percent, 0));
+        mResumeButton.setVisibility(!running && !progress.isComplete() ? View.VISIBLE : View.GONE);
+        mStopButton.setVisibility(running ? View.VISIBLE : View.GONE);
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.android.quakereport;
+
+import android.app.LoaderManager.LoaderCallbacks;
+import android.content.AsyncTaskLoader;
+import android.content.Context;
+import android.content.Loader;
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.view.View;
+import android.widget.ProgressBar;
+import android.widget.TextView;
+
+/**
+ * Shows every stored earthquake above the minimum magnitude setting on a clustered map
+ */
+public class MapActivity extends AppCompatActivity implements LoaderCallbacks<EarthquakeSpatialIndex> {
+
+    private static final int MAP_LOADER_ID = 1;
+
+    private EarthquakeMapView mMapView;
+    private TextView mEmptyStateTextView;
+    private ProgressBar mProgressBar;
+    private EarthquakeSpatialIndex mIndex;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.map_activity);
+
+        mMapView = (EarthquakeMapView) findViewById(R.id.map);
+        mEmptyStateTextView = (TextView) findViewById(R.id.empty_view);
+        mProgressBar = (ProgressBar) findViewById(R.id.loading_spinner);
+
+        mMapView.setOnEarthquakeClickListener(new EarthquakeMapView.OnEarthquakeClickListener() {
+            @Override
+            public void onEarthquakeClick(int index) {
+                EarthquakeDetailActivity.start(MapActivity.this, mIndex.getTable(), index);
+            }
+        });
+
+        getLoaderManager().initLoader(MAP_LOADER_ID, null, this);
+    }
+
+    @Override
+    public Loader<EarthquakeSpatialIndex> onCreateLoader(int id, Bundle args) {
+        return new MapLoader(this, EarthquakePreferences.getMinMagnitude(this));
+    }
+
+    @Override
+    public void onLoadFinished(Loader<EarthquakeSpatialIndex> loader, EarthquakeSpatialIndex index) {
+        mProgressBar.setVisibility(View.GONE);
+        mIndex = index;
+        mMapView.setIndex(index);
+        if (index.size() == 0) {
+            mEmptyStateTextView.setText(R.string.no_earthquakes);
+            mEmptyStateTextView.setVisibility(View.VISIBLE);
+        } else {
+            mEmptyStateTextView.setVisibility(View.GONE);
+        }
+    }
+
+    @Override
+    public void onLoaderReset(Loader<EarthquakeSpatialIndex> loader) {
+        mIndex = null;
+        mMapView.setIndex(null);
+    }
+
+    /**
+     * Reads the stored earthquakes and builds the spatial index over them off the UI thread
+     */
+    private static class MapLoader extends AsyncTaskLoader<EarthquakeSpatialIndex> {
+
+        private final double mMinMagnitude;
+        private EarthquakeSpatialIndex mIndex;
+
+        MapLoader(Context context, double minMagnitude) {
+            super(context);
+            this.mMinMagnitude = minMagnitude;
+        }
+
+        @Override
+        protected void onStartLoading() {
+            if (mIndex != null) {
+                deliverResult(mIndex);
+            } else {
+                forceLoad();
+            }
+        }
+
+        @Override
+        public EarthquakeSpatialIndex loadInBackground() {
+            Context context = getContext();
+            // The same period as the list, not the history an import may have stored
+            long startTime = System.currentTimeMillis() - EarthquakeQuery.DEFAULT_PERIOD_MILLIS;
+            EarthquakeTable table = new EarthquakeStore(context).query(mMinMagnitude, startTime, "time", 0,
+                    EarthquakeAdapter.createFormatter(context));
+            return new EarthquakeSpatialIndex(table);
+        }
+
+        @Override
+        public void deliverResult(EarthquakeSpatialIndex index) {
+            mIndex = index;
+            super.deliverResult(index);
+        }
+    }
+}
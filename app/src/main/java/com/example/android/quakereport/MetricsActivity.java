@@ -0,0 +1,69 @@
+package com.example.android.quakereport;
+
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.util.Log;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Debug screen listing the percentiles of every stage recorded by {@link EarthquakeMetrics}
+ */
+public class MetricsActivity extends AppCompatActivity {
+
+    private static final String LOG_TAG = MetricsActivity.class.getName();
+
+    private TextView mReportTextView;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.metrics_activity);
+        mReportTextView = (TextView) findViewById(R.id.metrics_report);
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        showReport();
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.metrics, menu);
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        int id = item.getItemId();
+        if (id == R.id.action_refresh_metrics) {
+            showReport();
+            return true;
+        } else if (id == R.id.action_dump_metrics) {
+            try {
+                File file = EarthquakeMetrics.dump(this);
+                Toast.makeText(this, getString(R.string.metrics_dumped, file.getAbsolutePath()),
+                        Toast.LENGTH_LONG).show();
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Problem dumping the metrics", e);
+                Toast.makeText(this, R.string.metrics_dump_failed, Toast.LENGTH_SHORT).show();
+            }
+            return true;
+        } else if (id == R.id.action_reset_metrics) {
+            EarthquakeMetrics.reset();
+            showReport();
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
+    private void showReport() {
+        mReportTextView.setText(EarthquakeMetrics.report());
+    }
+}
@@ -4,22 +4,27 @@ package com.example.android.quakereport;
  * Created by Jayabrata Dhakai on 11/19/2016.
  */
 
+import android.os.Debug;
+import android.support.v4.os.CancellationSignal;
+import android.support.v4.os.OperationCanceledException;
+import android.util.JsonReader;
+import android.util.JsonToken;
 import android.util.Log;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import java.io.BufferedReader;
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.HttpURLConnection;
+import java.net.InetAddress;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.charset.Charset;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.zip.GZIPInputStream;
 
 /**
  * Helper methods related to requesting and receiving earthquake data from USGS.
@@ -28,6 +33,50 @@ public final class QueryUtils {
 
     public static final String LOG_TAG = QueryUtils.class.getName();
 
+    /**
+     * Values of the "format" parameter of a USGS query that can be parsed
+     */
+    public static final String FORMAT_GEOJSON = "geojson";
+    public static final String FORMAT_CSV = "csv";
+
+    /**
+     * Returned by extractFeatureFromJson() for a payload that was not generated after the previous one
+     */
+    private static final long PAYLOAD_UNCHANGED = -1;
+
+    /**
+     * Number of features parsed before a {@link ParseListener} is first told about them
+     */
+    static final int FIRST_CHUNK_SIZE = 100;
+
+    /**
+     * Interface definition for a callback invoked on the parsing thread while a response is read.
+     */
+    public interface ParseListener {
+        /**
+         * Called after 100, 200, 400, ... features were parsed
+         *
+         * @param parsed are the features parsed so far, in the order of the response; the list
+         *               keeps growing after the call returns, so it must not be held on to
+         */
+        void onFeaturesParsed(List<Earthquake> parsed);
+    }
+
+    /**
+     * Interface definition for a callback that takes over the features of a response in batches
+     * as they are parsed, so that a response of any size is read in bounded memory.
+     */
+    public interface BatchListener {
+        /**
+         * Called with every full batch, and with the last partial one at the end of the response
+         *
+         * @param batch are the features parsed since the previous batch, in the order of the
+         *              response; the list is cleared after the call returns, so it must not be
+         *              held on to
+         */
+        void onBatchParsed(List<Earthquake> batch);
+    }
+
     /**
      * Create a private constructor because no one should ever create a {@link QueryUtils} object.
      * This class is only meant to hold static variables and methods, which can be accessed
@@ -39,27 +88,175 @@ public final class QueryUtils {
     /**
      * Converts the url received to a list of {@link Earthquake} objects
      *
-     * @param requestUrl is the url passed from doInBackground() in EarthquakeAsyncTask class
+     * @param requestUrl is the url passed from loadInBackground() in EarthquakeLoader class
      * @return earthquakeList a list of {@link Earthquake} objects
      */
     public static List<Earthquake> fetchEarthquakeData(String requestUrl) {
+        List<Earthquake> earthquakeList = new ArrayList<>();
+        try {
+            List<Earthquake> fetched = fetchEarthquakeData(requestUrl, new Validators(null, null));
+            if (fetched != null) {
+                earthquakeList = fetched;
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem retrieving the earthquake JSON results.", e);
+        }
+
+        // Return the list of earthquake objects
+        return earthquakeList;
+    }
+
+    /**
+     * Converts the url received to a list of {@link Earthquake} objects, revalidating against
+     * the validators of a previous response to the same query
+     *
+     * @param requestUrl is the url passed from loadInBackground() in EarthquakeLoader class
+     * @param validators are sent as conditional headers and updated from the response headers
+     * @return earthquakeList a list of {@link Earthquake} objects, or null if USGS answered
+     * "304 Not Modified", or sent a payload generated no later than the previous one, and the
+     * previously stored data is still current
+     * @throws IOException if the request failed, so callers can tell it apart from an empty result
+     */
+    public static List<Earthquake> fetchEarthquakeData(String requestUrl, Validators validators)
+            throws IOException {
+        return fetchEarthquakeData(requestUrl, validators, null, null);
+    }
+
+    /**
+     * Converts the url received to a list of {@link Earthquake} objects like
+     * {@link #fetchEarthquakeData(String, Validators)}, reporting the features parsed so far
+     * while the response is read and aborting as soon as the request is canceled
+     *
+     * @param requestUrl         is the url passed from loadInBackground() in EarthquakeLoader class
+     * @param validators         are sent as conditional headers and updated from the response headers
+     * @param listener           is told about the features parsed so far, or null
+     * @param cancellationSignal disconnects the request and stops the parse when canceled, or null
+     * @return earthquakeList a list of {@link Earthquake} objects, or null if the stored data is still current
+     * @throws IOException                if the request failed
+     * @throws OperationCanceledException if the request was canceled
+     */
+    public static List<Earthquake> fetchEarthquakeData(String requestUrl, Validators validators,
+                                                       ParseListener listener,
+                                                       CancellationSignal cancellationSignal)
+            throws IOException {
 
         //create an URL object from the requestUrl string
         URL url = createUrl(requestUrl);
 
-        // Perform HTTP request to the URL and receive a JSON response back
-        String jsonResponse = null;
+        // Perform HTTP request to the URL and parse the response as it arrives
+        return makeHttpRequest(url, validators, listener, cancellationSignal, new ArrayList<Earthquake>());
+    }
+
+    /**
+     * Requests the url without any validators and hands the earthquakes of the response to the
+     * listener in batches as they are parsed, without ever holding the whole response
+     *
+     * @param requestUrl         is the USGS query url
+     * @param batchSize          is the number of earthquakes in a full batch
+     * @param listener           takes over every batch
+     * @param cancellationSignal disconnects the request and stops the parse when canceled, or null
+     * @return the number of features or records in the response, counting those that were
+     * dropped for lack of a magnitude or place, so it can be compared with the "limit" of the request
+     * @throws IOException                if the request failed, after the batches parsed so far
+     * @throws OperationCanceledException if the request was canceled
+     */
+    static int fetchEarthquakeBatches(String requestUrl, int batchSize, BatchListener listener,
+                                      CancellationSignal cancellationSignal) throws IOException {
+        BatchList batches = new BatchList(batchSize, listener);
+        makeHttpRequest(createUrl(requestUrl), new Validators(null, null), null, cancellationSignal, batches);
+        batches.flush();
+        return batches.getRecordCount();
+    }
+
+    /**
+     * Parses the {@link InputStream} like {@link #fetchEarthquakeBatches(String, int,
+     * BatchListener, CancellationSignal)}, e.g. a catalog saved to a file.
+     * The stream is left open for the caller to close.
+     *
+     * @param inputStream        holds a USGS response
+     * @param format             is {@link #FORMAT_GEOJSON} or {@link #FORMAT_CSV}
+     * @param batchSize          is the number of earthquakes in a full batch
+     * @param listener           takes over every batch
+     * @param cancellationSignal stops the parse when canceled, or null
+     * @return the number of features or records in the stream, counting those that were dropped
+     * @throws IOException if the stream fails or does not hold a valid response in the format
+     */
+    static int readBatches(InputStream inputStream, String format, int batchSize, BatchListener listener,
+                           CancellationSignal cancellationSignal) throws IOException {
+        BatchList batches = new BatchList(batchSize, listener);
+        readFromStream(inputStream, format, new Validators(null, null), null, cancellationSignal, batches);
+        batches.flush();
+        return batches.getRecordCount();
+    }
+
+    /**
+     * Requests the USGS event GeoJSON of a single earthquake and parses its details. The
+     * products of the event, which make up most of the response, are skipped while it is read.
+     *
+     * @param requestUrl         is the event url, see {@link EarthquakeDetails#buildDetailUrl(String)}
+     * @param cancellationSignal disconnects the request when canceled, or null
+     * @return the {@link EarthquakeDetail} of the event, or null if the response holds no event
+     * @throws IOException                if the request failed or the server answered with an error
+     * @throws OperationCanceledException if the request was canceled
+     */
+    static EarthquakeDetail fetchEarthquakeDetail(String requestUrl, CancellationSignal cancellationSignal)
+            throws IOException {
+        URL url = createUrl(requestUrl);
+        if (url == null) {
+            return null;
+        }
+
+        InputStream inputStream = null;
         try {
-            jsonResponse = makeHttpRequest(url);
+            HttpURLConnection urlConnection = openConnection(url, cancellationSignal);
+            urlConnection.connect();
+            int responseCode = urlConnection.getResponseCode();
+            if (responseCode != HttpURLConnection.HTTP_OK) {
+                inputStream = urlConnection.getErrorStream();
+                throw new IOException("Error response code: " + responseCode);
+            }
+            inputStream = urlConnection.getInputStream();
+            if ("gzip".equalsIgnoreCase(urlConnection.getContentEncoding())) {
+                inputStream = new GZIPInputStream(inputStream);
+            }
+            EarthquakeDetail detail = readDetailFromStream(inputStream);
+            // The event is a single object, what may follow it is only whitespace
+            drain(inputStream);
+            return detail;
         } catch (IOException e) {
-            Log.e(LOG_TAG, "Error closing input stream", e);
+            // A read aborted by the cancellation surfaces as an IOException of the socket
+            if (cancellationSignal != null) {
+                cancellationSignal.throwIfCanceled();
+            }
+            throw e;
+        } finally {
+            if (cancellationSignal != null) {
+                cancellationSignal.setOnCancelListener(null);
+            }
+            if (inputStream != null) {
+                inputStream.close();
+            }
         }
+    }
 
-        // Extract relevant fields from the JSON response and create a list of Earthquake object
-        List<Earthquake> earthquakeList = extractFeatureFromJson(jsonResponse);
-
-        // Return the list of earthquake objects
-        return earthquakeList;
+    /**
+     * Parses a USGS event GeoJSON, a single feature object, with a pull parser.
+     * The stream is left open for the caller to close.
+     *
+     * @param inputStream holds the event GeoJSON
+     * @return the {@link EarthquakeDetail} of the event, or null if it has no id, magnitude or place
+     * @throws IOException if the stream fails or does not hold a valid feature
+     */
+    static EarthquakeDetail readDetailFromStream(InputStream inputStream) throws IOException {
+        JsonReader reader = new JsonReader(new InputStreamReader(
+                new BufferedInputStream(inputStream), Charset.forName("UTF-8")));
+        DetailProperties properties = new DetailProperties();
+        try {
+            Earthquake earthquake = readFeature(reader, properties);
+            return earthquake == null ? null : properties.build(earthquake);
+        } catch (IllegalStateException | NumberFormatException e) {
+            throw new IOException("Problem parsing the earthquake detail JSON", e);
+        }
     }
 
     /**
@@ -79,105 +276,707 @@ public final class QueryUtils {
     }
 
     /**
-     * Takes a {@link URL} object as input and returns the json response from the USGS server
+     * Returns the value of the "format" parameter of a USGS query, GeoJSON if it has none
+     */
+    private static String getFormat(URL url) {
+        String query = url.getQuery();
+        if (query != null) {
+            for (String parameter : query.split("&")) {
+                if (parameter.startsWith("format=")) {
+                    return parameter.substring("format=".length());
+                }
+            }
+        }
+        return FORMAT_GEOJSON;
+    }
+
+    /**
+     * Takes a {@link URL} object as input and returns the earthquakes parsed from the USGS response.
+     * <p>
+     * The connection is not disconnected: the response body is read to the end and closed instead,
+     * which hands the socket back to the platform's keep-alive pool for the next refresh.
      *
-     * @param url is the corresponding URL object of the query
-     * @return jsonResponse is the String which is obtained as response from USGS
-     * @throws IOException
+     * @param url        is the corresponding URL object of the query
+     * @param validators are the ETag and Last-Modified values of the previous response
+     * @param listener   is told about the features parsed so far, or null
+     * @param cancellationSignal disconnects the request when canceled, or null
+     * @param destination is the list the earthquakes are added to as they are parsed
+     * @return earthquakeList a list of {@link Earthquake} objects read from the response,
+     * or null if the response was "304 Not Modified" or holds a payload that was not generated
+     * after the previous one
+     * @throws IOException if the request failed or the server answered with an error
      */
-    private static String makeHttpRequest(URL url) throws IOException {
-        String jsonResponse = "";
+    private static List<Earthquake> makeHttpRequest(URL url, Validators validators, ParseListener listener,
+                                                    CancellationSignal cancellationSignal,
+                                                    List<Earthquake> destination) throws IOException {
+        List<Earthquake> earthquakeList = destination;
 
         // If the URL is null, then return early.
         if (url == null) {
-            return jsonResponse;
+            return earthquakeList;
         }
 
-        HttpURLConnection urlConnection = null;
         InputStream inputStream = null;
+        boolean drainBody = true;
         try {
-            urlConnection = (HttpURLConnection) url.openConnection();
-            urlConnection.setReadTimeout(10000 /* milliseconds */);
-            urlConnection.setConnectTimeout(15000 /* milliseconds */);
-            urlConnection.setRequestMethod("GET");
+            HttpURLConnection urlConnection = openConnection(url, cancellationSignal);
+            if (validators.getEtag() != null) {
+                urlConnection.setRequestProperty("If-None-Match", validators.getEtag());
+            }
+            if (validators.getLastModified() != null) {
+                urlConnection.setRequestProperty("If-Modified-Since", validators.getLastModified());
+            }
+            long connectStart = System.nanoTime();
             urlConnection.connect();
+            EarthquakeMetrics.recordSince(EarthquakeMetrics.CONNECT, connectStart);
+
+            long requestStart = System.nanoTime();
+            int responseCode = urlConnection.getResponseCode();
+            EarthquakeMetrics.recordSince(EarthquakeMetrics.FIRST_BYTE, requestStart);
+            if (responseCode == HttpURLConnection.HTTP_OK) {
+                // If the request was successful (response code 200),
+                // then parse the input stream as it is being read.
+                // Bytes are counted as received, before they are decompressed
+                CountingInputStream countingStream = new CountingInputStream(urlConnection.getInputStream());
+                inputStream = countingStream;
+                if ("gzip".equalsIgnoreCase(urlConnection.getContentEncoding())) {
+                    inputStream = new GZIPInputStream(inputStream);
+                }
+                long bodyStart = System.nanoTime();
+                earthquakeList = readFromStream(inputStream, getFormat(url), validators, listener,
+                        cancellationSignal, destination);
+                EarthquakeMetrics.recordSince(EarthquakeMetrics.BODY, bodyStart);
+                EarthquakeMetrics.record(EarthquakeMetrics.DOWNLOAD_BYTES, countingStream.getCount());
 
-            // If the request was successful (response code 200),
-            // then read the input stream and parse the response.
-            if (urlConnection.getResponseCode() == 200) {
-                inputStream = urlConnection.getInputStream();
-                jsonResponse = readFromStream(inputStream);
+                // Only remember the validators once the whole body has been parsed,
+                // otherwise a truncated response would be revalidated forever.
+                validators.update(urlConnection.getHeaderField("ETag"),
+                        urlConnection.getHeaderField("Last-Modified"));
+
+                // The payload was generated no later than the one already seen and was
+                // abandoned after its metadata; don't download the rest just to reuse the socket.
+                drainBody = earthquakeList != null;
+            } else if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                // Nothing changed since the validators were issued, keep what is stored.
+                earthquakeList = null;
             } else {
-                Log.e(LOG_TAG, "Error response code: " + urlConnection.getResponseCode());
+                inputStream = urlConnection.getErrorStream();
+                throw new IOException("Error response code: " + responseCode);
             }
         } catch (IOException e) {
-            Log.e(LOG_TAG, "Problem retrieving the earthquake JSON results.", e);
+            // A read aborted by the cancellation surfaces as an IOException of the socket
+            if (cancellationSignal != null) {
+                cancellationSignal.throwIfCanceled();
+            }
+            throw e;
         } finally {
-            if (urlConnection != null) {
-                urlConnection.disconnect();
+            if (cancellationSignal != null) {
+                cancellationSignal.setOnCancelListener(null);
+                drainBody = drainBody && !cancellationSignal.isCanceled();
             }
             if (inputStream != null) {
+                if (drainBody) {
+                    drain(inputStream);
+                }
                 inputStream.close();
             }
         }
-        return jsonResponse;
+        return earthquakeList;
     }
 
     /**
-     * Convert the {@link InputStream} into a String which contains the whole JSON response from the server.
+     * Opens a GET connection to a USGS url that accepts a gzipped response, and makes the
+     * cancellation signal disconnect it
+     *
+     * @param url                is the url to request
+     * @param cancellationSignal disconnects the request when canceled, or null
+     * @return the connection, not connected yet
+     * @throws IOException                if the connection could not be opened
+     * @throws OperationCanceledException if the request was already canceled
+     */
+    private static HttpURLConnection openConnection(URL url, CancellationSignal cancellationSignal)
+            throws IOException {
+        final HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
+        if (cancellationSignal != null) {
+            // Closing the socket from the canceling thread makes a blocked read throw at once
+            cancellationSignal.setOnCancelListener(new CancellationSignal.OnCancelListener() {
+                @Override
+                public void onCancel() {
+                    urlConnection.disconnect();
+                }
+            });
+            cancellationSignal.throwIfCanceled();
+        }
+        if (EarthquakeMetrics.isEnabled()) {
+            // Resolve the host on its own to time it; the connection then hits the DNS cache
+            long dnsStart = System.nanoTime();
+            InetAddress.getAllByName(url.getHost());
+            EarthquakeMetrics.recordSince(EarthquakeMetrics.DNS, dnsStart);
+        }
+        urlConnection.setReadTimeout(10000 /* milliseconds */);
+        urlConnection.setConnectTimeout(15000 /* milliseconds */);
+        urlConnection.setRequestMethod("GET");
+        urlConnection.setRequestProperty("Accept-Encoding", "gzip");
+        return urlConnection;
+    }
+
+    /**
+     * Reads whatever is left of a response body, so the connection can be reused
+     */
+    private static void drain(InputStream inputStream) {
+        byte[] buffer = new byte[1024];
+        try {
+            while (inputStream.read(buffer) != -1) {
+                // discard
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem draining the response body", e);
+        }
+    }
+
+    /**
+     * Parses the {@link InputStream} with a pull parser, so that only the feature currently being
+     * read is held in memory and the whole JSON response is never buffered as a String.
+     * The stream is left open for the caller to close.
+     *
+     * @param inputStream is stream obtained from USGS server
+     * @return earthquakeList a list of {@link Earthquake} objects
+     * @throws IOException if the stream fails or does not hold a valid GeoJSON response
+     */
+    static List<Earthquake> readFromStream(InputStream inputStream) throws IOException {
+        return readFromStream(inputStream, new Validators(null, null));
+    }
+
+    /**
+     * Parses the {@link InputStream} like {@link #readFromStream(InputStream)}, but stops after the
+     * response metadata if it was generated no later than the previous response. USGS writes the
+     * metadata before the features, so an unchanged summary feed is recognized without parsing it.
      *
      * @param inputStream is stream obtained from USGS server
-     * @return output is the String format of the inputStream
+     * @param validators  hold the "generated" time of the previous response, and are given
+     *                    the time of this one once it has been parsed completely
+     * @return earthquakeList a list of {@link Earthquake} objects, or null if the payload is unchanged
+     * @throws IOException if the stream fails or does not hold a valid GeoJSON response
+     */
+    static List<Earthquake> readFromStream(InputStream inputStream, Validators validators)
+            throws IOException {
+        return readFromStream(inputStream, validators, null, null);
+    }
+
+    /**
+     * Parses the {@link InputStream} like {@link #readFromStream(InputStream, Validators)},
+     * reporting the features parsed so far and checking for cancellation between features
+     *
+     * @param inputStream        is stream obtained from USGS server
+     * @param validators         hold the "generated" time of the previous response
+     * @param listener           is told about the features parsed so far, or null
+     * @param cancellationSignal stops the parse when canceled, or null
+     * @return earthquakeList a list of {@link Earthquake} objects, or null if the payload is unchanged
+     * @throws IOException if the stream fails or does not hold a valid GeoJSON response
+     */
+    static List<Earthquake> readFromStream(InputStream inputStream, Validators validators,
+                                           ParseListener listener, CancellationSignal cancellationSignal)
+            throws IOException {
+        return readFromStream(inputStream, FORMAT_GEOJSON, validators, listener, cancellationSignal);
+    }
+
+    /**
+     * Parses the {@link InputStream} like {@link #readFromStream(InputStream, Validators,
+     * ParseListener, CancellationSignal)}, in the given format
+     *
+     * @param inputStream        is stream obtained from USGS server
+     * @param format             is {@link #FORMAT_GEOJSON} or {@link #FORMAT_CSV}
+     * @param validators         hold the "generated" time of the previous GeoJSON response
+     * @param listener           is told about the features parsed so far, or null
+     * @param cancellationSignal stops the parse when canceled, or null
+     * @return earthquakeList a list of {@link Earthquake} objects, or null if the payload is unchanged
+     * @throws IOException if the stream fails or does not hold a valid response in the format
+     */
+    static List<Earthquake> readFromStream(InputStream inputStream, String format, Validators validators,
+                                           ParseListener listener, CancellationSignal cancellationSignal)
+            throws IOException {
+        return readFromStream(inputStream, format, validators, listener, cancellationSignal,
+                new ArrayList<Earthquake>());
+    }
+
+    private static List<Earthquake> readFromStream(InputStream inputStream, String format, Validators validators,
+                                                   ParseListener listener, CancellationSignal cancellationSignal,
+                                                   List<Earthquake> earthquakeList) throws IOException {
+        if (inputStream == null) {
+            return earthquakeList;
+        }
+
+        long generated = 0;
+        long cpuStart = EarthquakeMetrics.isEnabled() ? Debug.threadCpuTimeNanos() : 0;
+        long allocationsStart = EarthquakeMetrics.getThreadAllocations();
+        if (FORMAT_CSV.equals(format)) {
+            // CSV carries no "generated" time, so it is always read to the end
+            EarthquakeCsvParser.read(inputStream, earthquakeList, listener, cancellationSignal);
+        } else {
+            JsonReader reader = new JsonReader(new InputStreamReader(
+                    new BufferedInputStream(inputStream), Charset.forName("UTF-8")));
+            try {
+                generated = extractFeatureFromJson(reader, earthquakeList, validators.getGenerated(),
+                        listener, cancellationSignal);
+            } catch (IllegalStateException | NumberFormatException e) {
+                // JsonReader reports an unexpected token type with an IllegalStateException
+                throw new IOException("Problem parsing the earthquake JSON results", e);
+            }
+        }
+        if (EarthquakeMetrics.isEnabled()) {
+            // CPU time leaves out the time spent waiting for the network while streaming
+            long cpuNanos = Debug.threadCpuTimeNanos() - cpuStart;
+            EarthquakeMetrics.record(EarthquakeMetrics.PARSE_CPU, cpuNanos / 1000000);
+            EarthquakeMetrics.record(EarthquakeMetrics.PARSE_ALLOCATIONS,
+                    EarthquakeMetrics.getThreadAllocations() - allocationsStart);
+            // A batch list only holds the features of its current batch
+            int parsed = earthquakeList instanceof BatchList
+                    ? ((BatchList) earthquakeList).getCount() : earthquakeList.size();
+            if (cpuNanos > 0 && parsed > 0) {
+                EarthquakeMetrics.record(EarthquakeMetrics.FEATURES_PER_SECOND,
+                        parsed * 1000000000L / cpuNanos);
+            }
+        }
+        if (generated == PAYLOAD_UNCHANGED) {
+            return null;
+        }
+        validators.mGenerated = generated;
+        return earthquakeList;
+    }
+
+    /**
+     * Walks the root object of the GeoJSON response and appends one {@link Earthquake} per feature
+     * as soon as it has been read. Every member other than "metadata" and "features" is skipped
+     * without being materialized.
+     *
+     * @param reader             is positioned before the root object of the response
+     * @param earthquakeList     is the list the parsed earthquakes are added to
+     * @param previousGenerated  is the "generated" time of the previous response, or 0
+     * @param listener           is told about the features parsed so far, or null
+     * @param cancellationSignal stops the parse when canceled, or null
+     * @return the "generated" time of the response, 0 if it has none, or {@link #PAYLOAD_UNCHANGED}
+     * if it was generated no later than the previous one and the rest of it was not read
      * @throws IOException
      */
-    private static String readFromStream(InputStream inputStream) throws IOException {
-        StringBuilder output = new StringBuilder();
-        if (inputStream != null) {
-            InputStreamReader inputStreamReader = new InputStreamReader(inputStream, Charset.forName("UTF-8"));
-            BufferedReader reader = new BufferedReader(inputStreamReader);
-            String line = reader.readLine();
-            while (line != null) {
-                output.append(line);
-                line = reader.readLine();
+    private static long extractFeatureFromJson(JsonReader reader, List<Earthquake> earthquakeList,
+                                               long previousGenerated, ParseListener listener,
+                                               CancellationSignal cancellationSignal) throws IOException {
+        long generated = 0;
+        int nextChunk = FIRST_CHUNK_SIZE;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String member = reader.nextName();
+            if ("features".equals(member)) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    if (cancellationSignal != null) {
+                        cancellationSignal.throwIfCanceled();
+                    }
+                    Earthquake earthquake = readFeature(reader, null);
+                    countRecord(earthquakeList);
+                    if (earthquake != null) {
+                        earthquakeList.add(earthquake);
+                    }
+                    if (listener != null && earthquakeList.size() == nextChunk) {
+                        listener.onFeaturesParsed(earthquakeList);
+                        // Doubling the chunks keeps the total work of the listener linear
+                        nextChunk *= 2;
+                    }
+                }
+                reader.endArray();
+            } else if ("metadata".equals(member)) {
+                generated = readGenerated(reader);
+                if (previousGenerated > 0 && generated > 0 && generated <= previousGenerated) {
+                    return PAYLOAD_UNCHANGED;
+                }
+            } else {
+                reader.skipValue();
             }
         }
-        return output.toString();
+        reader.endObject();
+        return generated;
     }
 
     /**
-     * Parses the jsonResponse to list of {@link Earthquake} objects
+     * Reads the metadata object of a response
      *
-     * @param jsonResponse contains the response returned while hitting the USGS query
-     * @return earthquakeList a list of {@link Earthquake} objects
+     * @param reader is positioned before the metadata object
+     * @return the time the response was generated in milliseconds, or 0 if it is not given
+     * @throws IOException
      */
-    private static List<Earthquake> extractFeatureFromJson(String jsonResponse) {
+    private static long readGenerated(JsonReader reader) throws IOException {
+        long generated = 0;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if ("generated".equals(reader.nextName()) && reader.peek() == JsonToken.NUMBER) {
+                generated = reader.nextLong();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return generated;
+    }
 
-        // Create an empty ArrayList that we can start adding earthquakes to
-        List<Earthquake> earthquakeList = new ArrayList<>();
+    /**
+     * Reads a single feature object, keeping only the properties the app displays and the
+     * coordinates of its geometry.
+     *
+     * @param reader  is positioned before a feature object
+     * @param details receives the properties of the detail screen, or null to skip them
+     * @return the {@link Earthquake} for the feature, or null if it has no id, magnitude or place
+     * @throws IOException
+     */
+    private static Earthquake readFeature(JsonReader reader, DetailProperties details) throws IOException {
+        String id = null;
+        double magnitude = 0;
+        String location = null;
+        long time = 0;
+        String url = null;
+        long updated = 0;
+        boolean hasMagnitude = false;
+        double[] coordinates = {Double.NaN, Double.NaN, Double.NaN};
 
-        // build up a list of Earthquake objects with the corresponding data.
-        try {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String member = reader.nextName();
+            if ("id".equals(member)) {
+                id = reader.nextString();
+                continue;
+            }
+            if ("geometry".equals(member)) {
+                readCoordinates(reader, coordinates);
+                continue;
+            }
+            if (!"properties".equals(member)) {
+                reader.skipValue();
+                continue;
+            }
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (reader.peek() == JsonToken.NULL) {
+                    reader.skipValue();
+                    continue;
+                }
+                switch (name) {
+                    case "mag":
+                        magnitude = reader.nextDouble();
+                        hasMagnitude = true;
+                        break;
+                    case "place":
+                        location = reader.nextString();
+                        break;
+                    case "time":
+                        time = reader.nextLong();
+                        break;
+                    case "url":
+                        url = reader.nextString();
+                        break;
+                    case "updated":
+                        updated = reader.nextLong();
+                        break;
+                    default:
+                        if (details == null || !details.read(name, reader)) {
+                            reader.skipValue();
+                        }
+                        break;
+                }
+            }
+            reader.endObject();
+        }
+        reader.endObject();
 
-            JSONObject rootJsonResponse = new JSONObject(jsonResponse);
+        if (id == null || !hasMagnitude || location == null) {
+            return null;
+        }
+        // GeoJSON points are [longitude, latitude, depth]
+        return new Earthquake(id, magnitude, location, time, url, updated,
+                coordinates[1], coordinates[0], coordinates[2]);
+    }
 
-            JSONArray featuresArray = rootJsonResponse.getJSONArray("features");
+    /**
+     * Reads the point geometry of a feature
+     *
+     * @param reader      is positioned before the geometry object, which may be null
+     * @param coordinates receives the longitude, latitude and depth that are given
+     * @throws IOException
+     */
+    private static void readCoordinates(JsonReader reader, double[] coordinates) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.skipValue();
+            return;
+        }
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (!"coordinates".equals(reader.nextName()) || reader.peek() != JsonToken.BEGIN_ARRAY) {
+                reader.skipValue();
+                continue;
+            }
+            reader.beginArray();
+            for (int i = 0; reader.hasNext(); i++) {
+                if (i < coordinates.length && reader.peek() == JsonToken.NUMBER) {
+                    coordinates[i] = reader.nextDouble();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endArray();
+        }
+        reader.endObject();
+    }
 
-            for (int i = 0; i < featuresArray.length(); i++) {
-                JSONObject currentFeature = featuresArray.getJSONObject(i);
-                JSONObject properties = currentFeature.getJSONObject("properties");
+    /**
+     * The properties of an event GeoJSON that only the detail screen shows
+     */
+    private static final class DetailProperties {
 
-                double magnitude = properties.getDouble("mag");
-                String location = properties.getString("place");
-                long time = properties.getLong("time");
-                String url = properties.getString("url");
+        private String mTitle;
+        private String mMagnitudeType;
+        private int mFelt = -1;
+        private double mCdi = Double.NaN;
+        private double mMmi = Double.NaN;
+        private String mAlert;
+        private boolean mTsunami;
+        private int mSignificance;
+        private String mStatus;
+        private String mNetwork;
+        private final List<String> mProductTypes = new ArrayList<>();
 
-                earthquakeList.add(new Earthquake(magnitude, location, time, url));
+        /**
+         * Reads the value of a property if it is one of them
+         *
+         * @param name   is the name of the property, whose value is not null
+         * @param reader is positioned before the value
+         * @return true if the value was read, false if it is left for the caller to skip
+         * @throws IOException
+         */
+        boolean read(String name, JsonReader reader) throws IOException {
+            switch (name) {
+                case "title":
+                    mTitle = reader.nextString();
+                    return true;
+                case "magType":
+                    mMagnitudeType = reader.nextString();
+                    return true;
+                case "felt":
+                    mFelt = reader.nextInt();
+                    return true;
+                case "cdi":
+                    mCdi = reader.nextDouble();
+                    return true;
+                case "mmi":
+                    mMmi = reader.nextDouble();
+                    return true;
+                case "alert":
+                    mAlert = reader.nextString();
+                    return true;
+                case "tsunami":
+                    mTsunami = reader.nextInt() != 0;
+                    return true;
+                case "sig":
+                    mSignificance = reader.nextInt();
+                    return true;
+                case "status":
+                    mStatus = reader.nextString();
+                    return true;
+                case "net":
+                    mNetwork = reader.nextString();
+                    return true;
+                case "types":
+                    // A comma separated list such as ",origin,dyfi,shakemap,", which spares
+                    // reading the "products" object, by far the largest part of the event
+                    for (String type : reader.nextString().split(",")) {
+                        if (!type.isEmpty()) {
+                            mProductTypes.add(type);
+                        }
+                    }
+                    return true;
+                default:
+                    return false;
             }
-        } catch (JSONException e) {
-            Log.e(LOG_TAG, "Problem parsing the earthquake JSON results", e);
         }
 
-        // Return the list of earthquake objects
-        return earthquakeList;
+        EarthquakeDetail build(Earthquake earthquake) {
+            return new EarthquakeDetail(earthquake, mTitle, mMagnitudeType, mFelt, mCdi, mMmi, mAlert,
+                    mTsunami, mSignificance, mStatus, mNetwork, mProductTypes);
+        }
+    }
+
+    /**
+     * Counts a feature or record read by a parser, whether it is added to the list or dropped,
+     * when the list is the one of a batched read
+     *
+     * @param earthquakeList is the list the parser adds to
+     */
+    static void countRecord(List<Earthquake> earthquakeList) {
+        if (earthquakeList instanceof BatchList) {
+            ((BatchList) earthquakeList).mRecordCount++;
+        }
+    }
+
+    /**
+     * The list the parsers add to when a response is read in batches. The parsers only ever add
+     * to their list, so handing a batch to the listener and clearing it every few features keeps
+     * the memory of the parse flat however large the response is.
+     */
+    private static final class BatchList extends AbstractList<Earthquake> {
+
+        private final int mBatchSize;
+        private final BatchListener mListener;
+        private final List<Earthquake> mBatch;
+        private int mCount;
+        private int mRecordCount;
+
+        BatchList(int batchSize, BatchListener listener) {
+            this.mBatchSize = batchSize;
+            this.mListener = listener;
+            this.mBatch = new ArrayList<>(batchSize);
+        }
+
+        @Override
+        public boolean add(Earthquake earthquake) {
+            mBatch.add(earthquake);
+            mCount++;
+            if (mBatch.size() == mBatchSize) {
+                flush();
+            }
+            return true;
+        }
+
+        @Override
+        public Earthquake get(int index) {
+            return mBatch.get(index);
+        }
+
+        @Override
+        public int size() {
+            return mBatch.size();
+        }
+
+        /**
+         * Returns the number of earthquakes added, across every batch
+         */
+        int getCount() {
+            return mCount;
+        }
+
+        /**
+         * Returns the number of features or records the parser read, including those it dropped
+         */
+        int getRecordCount() {
+            return mRecordCount;
+        }
+
+        /**
+         * Hands the features added since the previous batch to the listener
+         */
+        void flush() {
+            if (!mBatch.isEmpty()) {
+                mListener.onBatchParsed(mBatch);
+                mBatch.clear();
+            }
+        }
+    }
+
+    /**
+     * Counts the bytes read through it
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+
+        private long mCount;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        long getCount() {
+            return mCount;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                mCount++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                mCount += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            mCount += skipped;
+            return skipped;
+        }
+    }
+
+    /**
+     * HTTP cache validators of a USGS response, used to revalidate a query instead of
+     * downloading it again, together with the "generated" time of its GeoJSON metadata.
+     */
+    public static final class Validators {
+
+        private String mEtag;
+        private String mLastModified;
+        private long mGenerated;
+
+        /**
+         * Constructs a new {@link Validators}
+         *
+         * @param etag         is the ETag header of the previous response, or null
+         * @param lastModified is the Last-Modified header of the previous response, or null
+         */
+        public Validators(String etag, String lastModified) {
+            this.mEtag = etag;
+            this.mLastModified = lastModified;
+        }
+
+        public String getEtag() {
+            return mEtag;
+        }
+
+        public String getLastModified() {
+            return mLastModified;
+        }
+
+        /**
+         * Returns the "generated" time from the metadata of the previous response, or 0 if unknown
+         */
+        public long getGenerated() {
+            return mGenerated;
+        }
+
+        /**
+         * Returns a copy of these validators
+         */
+        Validators copy() {
+            Validators copy = new Validators(mEtag, mLastModified);
+            copy.mGenerated = mGenerated;
+            return copy;
+        }
+
+        /**
+         * Replaces these validators with the given ones, e.g. those a shared request was sent with
+         */
+        void set(Validators validators) {
+            this.mEtag = validators.mEtag;
+            this.mLastModified = validators.mLastModified;
+            this.mGenerated = validators.mGenerated;
+        }
+
+        private void update(String etag, String lastModified) {
+            this.mEtag = etag;
+            this.mLastModified = lastModified;
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,152 @@
+package com.example.android.quakereport;
+
+import android.app.LoaderManager.LoaderCallbacks;
+import android.content.AsyncTaskLoader;
+import android.content.Context;
+import android.content.Loader;
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.text.Editable;
+import android.text.TextUtils;
+import android.text.TextWatcher;
+import android.widget.EditText;
+import android.widget.TextView;
+
+/**
+ * Finds the stored earthquakes by place name as the user types, through the index of
+ * {@link EarthquakeSearch}
+ */
+public class SearchActivity extends AppCompatActivity implements LoaderCallbacks<EarthquakeSearch.Result> {
+
+    private static final int SEARCH_LOADER_ID = 1;
+
+    private static final String ARG_QUERY = "query";
+
+    /**
+     * Maximum number of earthquakes listed for a query, the latest of the matches
+     */
+    private static final int RESULT_LIMIT = 50;
+
+    private TextView mSummaryTextView;
+    private EarthquakeAdapter mAdapter;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.search_activity);
+        EditText searchEditText = (EditText) findViewById(R.id.search_box);
+        mSummaryTextView = (TextView) findViewById(R.id.search_summary);
+        RecyclerView searchRecyclerView = (RecyclerView) findViewById(R.id.search_list);
+
+        // Open the detail screen of a clicked earthquake, like the main list
+        mAdapter = new EarthquakeAdapter(new EarthquakeAdapter.OnItemClickListener() {
+            @Override
+            public void onItemClick(EarthquakeTable table, int index) {
+                EarthquakeDetailActivity.start(SearchActivity.this, table, index);
+            }
+        });
+        searchRecyclerView.setLayoutManager(new LinearLayoutManager(this));
+        searchRecyclerView.setHasFixedSize(true);
+        searchRecyclerView.setAdapter(mAdapter);
+        EarthquakeDetailPrefetcher.attach(searchRecyclerView, mAdapter);
+
+        // Every key typed replaces the search in progress, the index answers in a few milliseconds
+        searchEditText.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                Bundle args = new Bundle();
+                args.putString(ARG_QUERY, s.toString());
+                getLoaderManager().restartLoader(SEARCH_LOADER_ID, args, SearchActivity.this);
+            }
+        });
+
+        // Without a query the loader only builds the index, so it is ready for the first key
+        Bundle args = new Bundle();
+        args.putString(ARG_QUERY, searchEditText.getText().toString());
+        getLoaderManager().initLoader(SEARCH_LOADER_ID, args, this);
+    }
+
+    @Override
+    public Loader<EarthquakeSearch.Result> onCreateLoader(int id, Bundle args) {
+        return new SearchLoader(this, args.getString(ARG_QUERY));
+    }
+
+    @Override
+    public void onLoadFinished(Loader<EarthquakeSearch.Result> loader, EarthquakeSearch.Result result) {
+        mAdapter.swapTable(result.getTable());
+        String query = ((SearchLoader) loader).getQuery();
+        if (EarthquakePlaceIndex.tokenize(query).isEmpty()) {
+            mSummaryTextView.setText("");
+        } else if (result.getCount() == 0) {
+            mSummaryTextView.setText(getString(R.string.search_no_matches, query.trim()));
+        } else if (result.getCount() > result.getTable().size()) {
+            mSummaryTextView.setText(getString(R.string.search_count_limited,
+                    result.getCount(), result.getTable().size()));
+        } else {
+            mSummaryTextView.setText(getString(R.string.search_count, result.getCount()));
+        }
+    }
+
+    @Override
+    public void onLoaderReset(Loader<EarthquakeSearch.Result> loader) {
+        mAdapter.swapTable(EarthquakeTable.empty());
+    }
+
+    /**
+     * Searches the index off the UI thread, building it the first time
+     */
+    private static class SearchLoader extends AsyncTaskLoader<EarthquakeSearch.Result> {
+
+        private final String mQuery;
+        private EarthquakeSearch.Result mResult;
+
+        SearchLoader(Context context, String query) {
+            super(context);
+            this.mQuery = query;
+        }
+
+        String getQuery() {
+            return mQuery;
+        }
+
+        @Override
+        protected void onStartLoading() {
+            if (mResult != null) {
+                deliverResult(mResult);
+            } else {
+                forceLoad();
+            }
+        }
+
+        @Override
+        public EarthquakeSearch.Result loadInBackground() {
+            if (TextUtils.isEmpty(mQuery)) {
+                EarthquakeSearch.prepare(getContext());
+                return new EarthquakeSearch.Result(EarthquakeTable.empty(), 0);
+            }
+            return EarthquakeSearch.search(getContext(), mQuery, RESULT_LIMIT,
+                    EarthquakeAdapter.createFormatter(getContext()));
+        }
+
+        @Override
+        public void deliverResult(EarthquakeSearch.Result result) {
+            mResult = result;
+            super.deliverResult(result);
+        }
+
+        @Override
+        protected void onReset() {
+            mResult = null;
+        }
+    }
+}
@@ -22,6 +22,9 @@ public class SettingsActivity extends AppCompatActivity {
             super.onCreate(savedInstanceState);
             addPreferencesFromResource(R.xml.settings_main);
 
+            Preference feed = findPreference(getString(R.string.settings_feed_key));
+            bindPreferenceSummaryToValue(feed);
+
             Preference minMagnitude = findPreference(getString(R.string.settings_min_magnitude_key));
             bindPreferenceSummaryToValue(minMagnitude);
 
@@ -30,6 +33,21 @@ public class SettingsActivity extends AppCompatActivity {
 
             Preference orderBy = findPreference(getString(R.string.settings_order_by_key));
             bindPreferenceSummaryToValue(orderBy);
+
+            Preference cacheTtl = findPreference(getString(R.string.settings_cache_ttl_key));
+            bindPreferenceSummaryToValue(cacheTtl);
+
+            Preference shards = findPreference(getString(R.string.settings_shards_key));
+            bindPreferenceSummaryToValue(shards);
+
+            Preference format = findPreference(getString(R.string.settings_format_key));
+            bindPreferenceSummaryToValue(format);
+
+            Preference syncInterval = findPreference(getString(R.string.settings_sync_interval_key));
+            bindPreferenceSummaryToValue(syncInterval);
+
+            Preference alertMagnitude = findPreference(getString(R.string.settings_alert_magnitude_key));
+            bindPreferenceSummaryToValue(alertMagnitude);
         }
 
         @Override
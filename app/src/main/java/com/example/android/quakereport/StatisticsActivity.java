@@ -0,0 +1,190 @@
+package com.example.android.quakereport;
+
+import android.app.LoaderManager.LoaderCallbacks;
+import android.content.AsyncTaskLoader;
+import android.content.Context;
+import android.content.Loader;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v7.app.AppCompatActivity;
+import android.widget.TextView;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * Shows the aggregate statistics kept by {@link EarthquakeStatistics} as a text report, which
+ * is redrawn whenever a sync brings in new earthquakes
+ */
+public class StatisticsActivity extends AppCompatActivity
+        implements LoaderCallbacks<EarthquakeStatistics.Summary> {
+
+    private static final int STATISTICS_LOADER_ID = 1;
+
+    /**
+     * Number of most recent days, weeks and of regions listed in the report
+     */
+    private static final int DAYS_SHOWN = 14;
+    private static final int WEEKS_SHOWN = 8;
+    private static final int REGIONS_SHOWN = 10;
+
+    /**
+     * Length of the longest bar of the magnitude histogram, in characters
+     */
+    private static final int HISTOGRAM_WIDTH = 40;
+
+    private TextView mReportTextView;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.statistics_activity);
+        mReportTextView = (TextView) findViewById(R.id.statistics_report);
+        mReportTextView.setText(R.string.statistics_loading);
+
+        getLoaderManager().initLoader(STATISTICS_LOADER_ID, null, this);
+    }
+
+    @Override
+    public Loader<EarthquakeStatistics.Summary> onCreateLoader(int id, Bundle args) {
+        return new StatisticsLoader(this);
+    }
+
+    @Override
+    public void onLoadFinished(Loader<EarthquakeStatistics.Summary> loader, EarthquakeStatistics.Summary summary) {
+        if (summary.getCount() == 0) {
+            mReportTextView.setText(R.string.no_earthquakes);
+        } else {
+            mReportTextView.setText(report(summary, EarthquakeAdapter.createFormatter(this)));
+        }
+    }
+
+    @Override
+    public void onLoaderReset(Loader<EarthquakeStatistics.Summary> loader) {
+    }
+
+    private String report(EarthquakeStatistics.Summary summary, EarthquakeFormatter formatter) {
+        StringBuilder report = new StringBuilder();
+        report.append(getString(R.string.statistics_count, summary.getCount())).append("\n\n");
+
+        report.append(getString(R.string.statistics_magnitudes)).append('\n');
+        int first = EarthquakeStatistics.Summary.MAGNITUDE_BUCKETS;
+        int last = -1;
+        int largest = 0;
+        for (int i = 0; i < EarthquakeStatistics.Summary.MAGNITUDE_BUCKETS; i++) {
+            int count = summary.getMagnitudeCount(i);
+            if (count > 0) {
+                first = Math.min(first, i);
+                last = i;
+                largest = Math.max(largest, count);
+            }
+        }
+        for (int i = first; i <= last; i++) {
+            int count = summary.getMagnitudeCount(i);
+            int bar = count == 0 ? 0 : Math.max(1, (int) ((long) count * HISTOGRAM_WIDTH / largest));
+            report.append(String.format(Locale.US, "%4.1f %7d ", i * EarthquakeStatistics.Summary.MAGNITUDE_BUCKET_WIDTH, count));
+            for (int j = 0; j < bar; j++) {
+                report.append('#');
+            }
+            report.append('\n');
+        }
+
+        report.append('\n').append(getString(R.string.statistics_days)).append('\n');
+        int today = EarthquakeStatistics.getDay(System.currentTimeMillis());
+        SortedMap<Integer, Integer> dayCounts = summary.getDayCounts();
+        for (int day = today - DAYS_SHOWN + 1; day <= today; day++) {
+            Integer count = dayCounts.get(day);
+            report.append(String.format(Locale.US, "%-14s %7d%n",
+                    formatter.formatDate(EarthquakeStatistics.getDayStart(day)), count == null ? 0 : count));
+        }
+
+        report.append('\n').append(getString(R.string.statistics_regions)).append('\n');
+        for (Map.Entry<String, Integer> region : summary.getTopRegions(REGIONS_SHOWN)) {
+            report.append(String.format(Locale.US, "%7d %s%n", region.getValue(), region.getKey()));
+        }
+
+        report.append('\n').append(getString(R.string.statistics_weeks)).append('\n');
+        SortedMap<Integer, EarthquakeStatistics.Event> weekStrongest = summary.getWeekStrongest();
+        int thisWeek = EarthquakeStatistics.getWeek(today);
+        for (int week = thisWeek; week > thisWeek - WEEKS_SHOWN; week--) {
+            EarthquakeStatistics.Event event = weekStrongest.get(week);
+            String start = formatter.formatDate(EarthquakeStatistics.getWeekStart(week));
+            if (event == null) {
+                report.append(String.format(Locale.US, "%-14s    -%n", start));
+            } else {
+                report.append(String.format(Locale.US, "%-14s %4s %s%n", start,
+                        formatter.formatMagnitude(event.getMagnitude()), event.getPlace()));
+            }
+        }
+
+        report.append('\n').append(getString(R.string.statistics_strongest)).append('\n');
+        List<EarthquakeStatistics.Event> strongest = summary.getStrongest();
+        for (EarthquakeStatistics.Event event : strongest) {
+            report.append(String.format(Locale.US, "%4s %-14s %s%n", formatter.formatMagnitude(event.getMagnitude()),
+                    formatter.formatDate(event.getTimeInMilliseconds()), event.getPlace()));
+        }
+        return report.toString();
+    }
+
+    /**
+     * Loads the statistics off the UI thread, building them from the store the first time, and
+     * reloads them whenever they change
+     */
+    private static class StatisticsLoader extends AsyncTaskLoader<EarthquakeStatistics.Summary>
+            implements EarthquakeStatistics.Listener {
+
+        private final Handler mHandler = new Handler(Looper.getMainLooper());
+        private EarthquakeStatistics.Summary mSummary;
+        private boolean mListening;
+
+        StatisticsLoader(Context context) {
+            super(context);
+        }
+
+        @Override
+        protected void onStartLoading() {
+            if (!mListening) {
+                EarthquakeStatistics.addListener(this);
+                mListening = true;
+            }
+            if (mSummary != null) {
+                deliverResult(mSummary);
+            }
+            if (mSummary == null || takeContentChanged()) {
+                forceLoad();
+            }
+        }
+
+        @Override
+        public EarthquakeStatistics.Summary loadInBackground() {
+            return EarthquakeStatistics.getSummary(getContext());
+        }
+
+        @Override
+        public void deliverResult(EarthquakeStatistics.Summary summary) {
+            mSummary = summary;
+            super.deliverResult(summary);
+        }
+
+        @Override
+        public void onStatisticsChanged() {
+            // Loaders must be told on the main thread
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    onContentChanged();
+                }
+            });
+        }
+
+        @Override
+        protected void onReset() {
+            EarthquakeStatistics.removeListener(this);
+            mListening = false;
+            mSummary = null;
+        }
+    }
+}
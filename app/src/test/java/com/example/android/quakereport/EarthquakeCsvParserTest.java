@@ -0,0 +1,116 @@
+package com.example.android.quakereport;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Reads a response in the USGS "format=csv" layout, the columns in the order USGS sends them
+ */
+public class EarthquakeCsvParserTest {
+
+    private static final String HEADER = "time,latitude,longitude,depth,mag,magType,nst,gap,dmin,rms,net,id,"
+            + "updated,place,type,horizontalError,depthError,magError,magNst,status,locationSource,magSource\n";
+
+    @Test
+    public void readsEveryRowWithAMagnitude() throws IOException {
+        List<Earthquake> earthquakes = readResource("usgs_query.csv");
+
+        // The Hawaii row has no magnitude and is dropped, like a GeoJSON feature without one
+        assertEquals(4, earthquakes.size());
+        assertEquals("us10007b9r", earthquakes.get(0).getId());
+        assertEquals("us10007b88", earthquakes.get(1).getId());
+        assertEquals("ak14558371", earthquakes.get(2).getId());
+        assertEquals("us10007b6k", earthquakes.get(3).getId());
+    }
+
+    @Test
+    public void readsTheFieldsOfARow() throws IOException {
+        Earthquake earthquake = readResource("usgs_query.csv").get(1);
+
+        assertEquals(6.9, earthquake.getMagnitude(), 0);
+        assertEquals("38km SE of Namie, Japan", earthquake.getLocation());
+        assertEquals(1479761986730L, earthquake.getTimeInMilliseconds());
+        assertEquals(1479881512040L, earthquake.getUpdatedInMilliseconds());
+        assertEquals(37.3929, earthquake.getLatitude(), 0);
+        assertEquals(141.4001, earthquake.getLongitude(), 0);
+        assertEquals(11.36, earthquake.getDepth(), 0);
+        assertEquals(EarthquakeCsvParser.EVENT_PAGE_URL + "us10007b88", earthquake.getUrl());
+    }
+
+    @Test
+    public void readsTimesWithFewerMillisecondDigits() throws IOException {
+        Earthquake earthquake = readResource("usgs_query.csv").get(3);
+
+        assertEquals(1479729601000L, earthquake.getTimeInMilliseconds());
+        assertEquals(1479731400500L, earthquake.getUpdatedInMilliseconds());
+        assertEquals(-178.4, earthquake.getLongitude(), 0);
+        assertEquals("Fiji region", earthquake.getLocation());
+    }
+
+    @Test
+    public void readsDecimalsLikeTheJavaParser() throws IOException {
+        List<Earthquake> earthquakes = readString(HEADER
+                + "2016-11-21T12:00:01Z,0.1,-0.30000000000000004,1e2,0.00000000000000000000000123,"
+                + "mb,,,,,us,us1,2016-11-21T12:00:01Z,Somewhere,earthquake,,,,,reviewed,us,us\n");
+
+        Earthquake earthquake = earthquakes.get(0);
+        assertEquals(Double.parseDouble("0.1"), earthquake.getLatitude(), 0);
+        assertEquals(Double.parseDouble("-0.30000000000000004"), earthquake.getLongitude(), 0);
+        assertEquals(100, earthquake.getDepth(), 0);
+        // More fraction digits than there are exact powers of ten
+        assertEquals(Double.parseDouble("0.00000000000000000000000123"), earthquake.getMagnitude(), 0);
+    }
+
+    @Test
+    public void readsQuotedFields() throws IOException {
+        List<Earthquake> earthquakes = readString(HEADER
+                + "2016-11-21T12:00:01Z,1,2,3,4.5,mb,,,,,us,us1,2016-11-21T12:00:01Z,"
+                + "\"Off the \"\"Coast\"\", Oregon\",earthquake,,,,,reviewed,us,us\r\n");
+
+        assertEquals("Off the \"Coast\", Oregon", earthquakes.get(0).getLocation());
+    }
+
+    @Test
+    public void readsAnEmptyBodyAsAnEmptyResult() throws IOException {
+        assertTrue(readString("").isEmpty());
+        assertTrue(readString(HEADER).isEmpty());
+    }
+
+    @Test
+    public void rejectsAHeaderWithoutTheNeededColumns() {
+        try {
+            readString("time,latitude,longitude\n2016-11-21T12:00:01Z,1,2\n");
+            fail("Expected an IOException");
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+
+    private List<Earthquake> readResource(String name) throws IOException {
+        InputStream inputStream = getClass().getClassLoader().getResourceAsStream(name);
+        try {
+            List<Earthquake> earthquakes = new ArrayList<>();
+            EarthquakeCsvParser.read(inputStream, earthquakes, null, null);
+            return earthquakes;
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    private static List<Earthquake> readString(String body) throws IOException {
+        List<Earthquake> earthquakes = new ArrayList<>();
+        EarthquakeCsvParser.read(new ByteArrayInputStream(body.getBytes(Charset.forName("UTF-8"))),
+                earthquakes, null, null);
+        return earthquakes;
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.android.quakereport;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class EarthquakeFormatterTest {
+
+    private static final int[] MAGNITUDE_COLORS = {0, 1, 2, 3, 4, 5, 6, 7, 8, 9};
+
+    @Test
+    public void formatMagnitudeRoundsHalvesUp() {
+        EarthquakeFormatter formatter = new EarthquakeFormatter(MAGNITUDE_COLORS, "Near the");
+
+        assertEquals("2.3", formatter.formatMagnitude(2.25));
+        assertEquals("2.3", formatter.formatMagnitude(2.3));
+        assertEquals("4.3", formatter.formatMagnitude(4.25));
+        assertEquals("2.8", formatter.formatMagnitude(2.75));
+    }
+
+    @Test
+    public void formatMagnitudeDoesNotLetAPooledHalfChangeALaterLabel() {
+        EarthquakeFormatter formatter = new EarthquakeFormatter(MAGNITUDE_COLORS, "Near the");
+
+        // Both share the pool slot of 2.3, whichever comes first
+        formatter.formatMagnitude(2.25);
+        assertEquals("2.3", formatter.formatMagnitude(2.3));
+
+        formatter = new EarthquakeFormatter(MAGNITUDE_COLORS, "Near the");
+        formatter.formatMagnitude(1.3);
+        assertEquals("1.3", formatter.formatMagnitude(1.25));
+    }
+
+    @Test
+    public void formatMagnitudeOutsideThePool() {
+        EarthquakeFormatter formatter = new EarthquakeFormatter(MAGNITUDE_COLORS, "Near the");
+
+        assertEquals("12.5", formatter.formatMagnitude(12.45));
+        assertEquals("-0.5", formatter.formatMagnitude(-0.5));
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.android.quakereport;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class EarthquakePageMapTest {
+
+    private static final int PAGE_SIZE = EarthquakePager.PAGE_SIZE;
+
+    @Test
+    public void aPageWithADroppedFeatureIsNotTheEnd() {
+        EarthquakePageMap pageMap = new EarthquakePageMap(1000);
+
+        // USGS returned a full page, but one feature had no magnitude
+        pageMap.append(PAGE_SIZE, PAGE_SIZE, PAGE_SIZE - 1);
+        assertFalse(pageMap.hasReachedEnd());
+        assertEquals(PAGE_SIZE - 1, pageMap.getCount());
+
+        pageMap.append(PAGE_SIZE, PAGE_SIZE, PAGE_SIZE);
+        assertFalse(pageMap.hasReachedEnd());
+        assertEquals(2 * PAGE_SIZE - 1, pageMap.getCount());
+    }
+
+    @Test
+    public void theRowsOfAPageFollowThoseOfAPageWithADroppedFeature() {
+        EarthquakePageMap pageMap = new EarthquakePageMap(1000);
+        pageMap.append(PAGE_SIZE, PAGE_SIZE, PAGE_SIZE - 1);
+        pageMap.append(PAGE_SIZE, PAGE_SIZE, PAGE_SIZE);
+
+        assertEquals(0, pageMap.getPage(PAGE_SIZE - 2));
+        assertEquals(PAGE_SIZE - 2, pageMap.getIndexInPage(PAGE_SIZE - 2));
+        assertEquals(1, pageMap.getPage(PAGE_SIZE - 1));
+        assertEquals(0, pageMap.getIndexInPage(PAGE_SIZE - 1));
+        assertEquals(1, pageMap.getPage(2 * PAGE_SIZE - 2));
+        assertEquals(PAGE_SIZE - 1, pageMap.getIndexInPage(2 * PAGE_SIZE - 2));
+
+        assertEquals(PAGE_SIZE - 1, pageMap.getPageStart(1));
+        assertEquals(PAGE_SIZE - 1, pageMap.getPageRowCount(0));
+        assertEquals(PAGE_SIZE, pageMap.getPageRowCount(1));
+    }
+
+    @Test
+    public void aPageWithoutRowsIsSkipped() {
+        EarthquakePageMap pageMap = new EarthquakePageMap(1000);
+        pageMap.append(PAGE_SIZE, PAGE_SIZE, PAGE_SIZE);
+        pageMap.append(PAGE_SIZE, PAGE_SIZE, 0);
+        pageMap.append(PAGE_SIZE, PAGE_SIZE, 10);
+
+        assertFalse(pageMap.hasReachedEnd());
+        assertEquals(3, pageMap.getPageCount());
+        assertEquals(0, pageMap.getPageRowCount(1));
+        assertEquals(2, pageMap.getPage(PAGE_SIZE));
+        assertEquals(0, pageMap.getIndexInPage(PAGE_SIZE));
+    }
+
+    @Test
+    public void aPageWithFewerRecordsThanRequestedIsTheEnd() {
+        EarthquakePageMap pageMap = new EarthquakePageMap(1000);
+        pageMap.append(PAGE_SIZE, PAGE_SIZE, PAGE_SIZE);
+        pageMap.append(PAGE_SIZE, 40, 39);
+
+        assertTrue(pageMap.hasReachedEnd());
+        assertEquals(PAGE_SIZE + 39, pageMap.getCount());
+    }
+
+    @Test
+    public void thePageReachingTheTotalLimitIsTheEnd() {
+        EarthquakePageMap pageMap = new EarthquakePageMap(PAGE_SIZE + 50);
+        pageMap.append(PAGE_SIZE, PAGE_SIZE, PAGE_SIZE);
+        assertFalse(pageMap.hasReachedEnd());
+
+        pageMap.append(50, 50, 48);
+        assertTrue(pageMap.hasReachedEnd());
+    }
+
+    @Test
+    public void keepsTrackOfManyPages() {
+        EarthquakePageMap pageMap = new EarthquakePageMap(100 * PAGE_SIZE);
+        for (int i = 0; i < 20; i++) {
+            pageMap.append(PAGE_SIZE, PAGE_SIZE, PAGE_SIZE - 1);
+        }
+
+        assertEquals(20, pageMap.getPageCount());
+        assertEquals(19, pageMap.getPage(20 * (PAGE_SIZE - 1) - 1));
+        assertEquals(12, pageMap.getPage(12 * (PAGE_SIZE - 1)));
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.android.quakereport;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class EarthquakePlaceIndexTest {
+
+    @Test
+    public void tokenizeCutsLowerCaseWordsWithoutAccents() {
+        assertEquals(Arrays.asList("48km", "w", "of", "anchor", "point", "alaska"),
+                EarthquakePlaceIndex.tokenize("48km W of Anchor Point, Alaska"));
+        assertEquals(Arrays.asList("10km", "ssw", "of", "valparaiso", "chile"),
+                EarthquakePlaceIndex.tokenize("10km SSW of Valparaíso, Chile"));
+        assertEquals(Arrays.asList("fiji", "region"), EarthquakePlaceIndex.tokenize("Fiji region, Fiji"));
+        assertTrue(EarthquakePlaceIndex.tokenize(" , ").isEmpty());
+        assertTrue(EarthquakePlaceIndex.tokenize(null).isEmpty());
+    }
+
+    @Test
+    public void searchMatchesEveryWordAsAPrefix() {
+        EarthquakePlaceIndex index = newIndex();
+
+        assertEquals(Arrays.asList("ak2", "ak1"), index.search("anch", 10).getIds());
+        assertEquals(Arrays.asList("ak2", "ak1"), index.search("Alaska anc", 10).getIds());
+        assertEquals(Collections.singletonList("ak1"), index.search("anchorage", 10).getIds());
+        assertEquals(Collections.singletonList("cl1"), index.search("valpa", 10).getIds());
+        assertEquals(0, index.search("alaska chile", 10).getCount());
+        assertEquals(0, index.search("tokyo", 10).getCount());
+        assertEquals(0, index.search("  ", 10).getCount());
+    }
+
+    @Test
+    public void searchReturnsTheLatestMatchesFirst() {
+        EarthquakePlaceIndex index = newIndex();
+
+        EarthquakePlaceIndex.Matches matches = index.search("of", 2);
+        assertEquals(Arrays.asList("cl1", "ak2"), matches.getIds());
+        assertEquals(4, matches.getCount());
+    }
+
+    @Test
+    public void putRevisesAnIndexedEarthquake() {
+        EarthquakePlaceIndex index = newIndex();
+
+        index.put("ak1", "5km N of Fairbanks, Alaska", 5000);
+
+        assertEquals(4, index.size());
+        assertEquals(0, index.search("anchorage", 10).getCount());
+        assertEquals(Collections.singletonList("ak2"), index.search("anch", 10).getIds());
+        assertEquals(Collections.singletonList("ak1"), index.search("fair", 10).getIds());
+        assertEquals(Arrays.asList("ak1", "ak2"), index.search("alaska", 10).getIds());
+    }
+
+    @Test
+    public void searchFindsEveryEarthquakeOfALargeIndex() {
+        EarthquakePlaceIndex index = new EarthquakePlaceIndex();
+        for (int i = 0; i < 1000; i++) {
+            index.put("id" + i, i % 2 == 0 ? "Even, Alaska" : "Odd, Chile", i);
+        }
+
+        EarthquakePlaceIndex.Matches matches = index.search("alaska", 3);
+        assertEquals(500, matches.getCount());
+        assertEquals(Arrays.asList("id998", "id996", "id994"), matches.getIds());
+    }
+
+    private static EarthquakePlaceIndex newIndex() {
+        EarthquakePlaceIndex index = new EarthquakePlaceIndex();
+        index.put("ak1", "12km N of Anchorage, Alaska", 1000);
+        index.put("ak2", "3km W of Anchor Point, Alaska", 2000);
+        index.put("cl1", "10km SSW of Valparaíso, Chile", 3000);
+        index.put("fj1", "south of the Fiji Islands", 500);
+        return index;
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.android.quakereport;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Answers queries from held results. The queries are built from their parts, as parsing a url
+ * needs the framework's Uri.
+ */
+public class EarthquakeQueryTest {
+
+    private static final String BASE_URL = "http://earthquake.usgs.gov/fdsnws/event/1/query?format=geojson";
+
+    /**
+     * Held result, latest first: ids "e0" to "e5" with magnitudes 5, 3, 6, 2, 4 and 7
+     */
+    private static final double[] MAGNITUDES = {5, 3, 6, 2, 4, 7};
+
+    @Test
+    public void doesNotAnswerAnotherBaseQuery() {
+        EarthquakeQuery held = query(BASE_URL, 0, "time", 0);
+        EarthquakeQuery asked = query(BASE_URL + "&minlatitude=10", 0, "time", 0);
+
+        assertNull(asked.answerFrom(held, table(MAGNITUDES.length)));
+    }
+
+    @Test
+    public void doesNotAnswerALowerMinimumMagnitude() {
+        EarthquakeQuery held = query(BASE_URL, 3, "time", 0);
+        EarthquakeQuery asked = query(BASE_URL, 2.5, "time", 0);
+
+        assertNull(asked.answerFrom(held, table(MAGNITUDES.length)));
+    }
+
+    @Test
+    public void filtersAndReordersAResultWithoutLimit() {
+        EarthquakeQuery held = query(BASE_URL, 0, "time", 0);
+        EarthquakeQuery asked = query(BASE_URL, 4, "magnitude", 2);
+
+        assertIds(asked.answerFrom(held, table(MAGNITUDES.length)), "e5", "e2");
+    }
+
+    @Test
+    public void takesAResultShorterThanItsLimitAsComplete() {
+        EarthquakeQuery held = query(BASE_URL, 0, "time", 10);
+        EarthquakeQuery asked = query(BASE_URL, 4.5, "time-asc", 0);
+
+        assertIds(asked.answerFrom(held, table(MAGNITUDES.length)), "e5", "e2", "e0");
+    }
+
+    @Test
+    public void answersFromTheStrongestAboveTheWeakestHeld() {
+        // The 3 strongest were held, so every earthquake above 4 is among them
+        EarthquakeQuery held = query(BASE_URL, 0, "magnitude", 3);
+        EarthquakeTable heldTable = table(MAGNITUDES.length).query(0, "magnitude", 3);
+        EarthquakeQuery asked = query(BASE_URL, 5.5, "time", 0);
+
+        assertIds(asked.answerFrom(held, heldTable), "e2", "e5");
+        assertNull(query(BASE_URL, 4, "time", 0).answerFrom(held, heldTable));
+    }
+
+    @Test
+    public void answersTheFirstRowsOfACutOffResultInTheSameOrder() {
+        EarthquakeQuery held = query(BASE_URL, 0, "time", MAGNITUDES.length);
+        EarthquakeTable heldTable = table(MAGNITUDES.length);
+
+        assertIds(query(BASE_URL, 4, "time", 3).answerFrom(held, heldTable), "e0", "e2", "e4");
+        // Only two of the held rows pass, the rest may be past the cut
+        assertNull(query(BASE_URL, 5.5, "time", 3).answerFrom(held, heldTable));
+        // Another order may start with rows past the cut
+        assertNull(query(BASE_URL, 4, "magnitude", 3).answerFrom(held, heldTable));
+        // A query without a limit needs every row
+        assertNull(query(BASE_URL, 4, "time", 0).answerFrom(held, heldTable));
+    }
+
+    private static EarthquakeQuery query(String baseUrl, double minMagnitude, String orderBy, int limit) {
+        return new EarthquakeQuery(baseUrl, minMagnitude, orderBy, limit, EarthquakeQuery.NO_START_TIME);
+    }
+
+    /**
+     * Returns the first rows of the held result, ordered by time, latest first
+     */
+    private static EarthquakeTable table(int size) {
+        EarthquakeTable.Builder builder = new EarthquakeTable.Builder(size);
+        for (int i = 0; i < size; i++) {
+            builder.add(new Earthquake("e" + i, MAGNITUDES[i], "Place " + i, 1000000L - i * 1000L,
+                    null, 0, Double.NaN, Double.NaN, Double.NaN));
+        }
+        return builder.build(null);
+    }
+
+    private static void assertIds(EarthquakeTable table, String... ids) {
+        assertEquals(ids.length, table.size());
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals(ids[i], table.getId(i));
+        }
+    }
+}
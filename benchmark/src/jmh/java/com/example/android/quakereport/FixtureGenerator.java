@@ -0,0 +1,117 @@
+package com.example.android.quakereport;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Locale;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes the benchmark fixtures: gzipped USGS "fdsnws/event/1/query" GeoJSON responses with
+ * every property and the geometry USGS sends, so the parsers skip as much as they would on
+ * a real response.
+ * <p>
+ * The content is generated from a fixed seed, so running it again gives byte-identical files.
+ */
+public final class FixtureGenerator {
+
+    private static final long SEED = 20161119L;
+
+    private static final String[] DIRECTIONS = {
+            "N", "NNE", "NE", "ENE", "E", "ESE", "SE", "SSE", "S", "SSW", "SW", "WSW", "W", "WNW", "NW", "NNW"
+    };
+
+    private static final String[] REGIONS = {
+            "Anchorage, Alaska", "Petrolia, CA", "Ridgecrest, CA", "Hilo, Hawaii", "Honshu, Japan",
+            "Valparaiso, Chile", "Kokopo, Papua New Guinea", "Hualian, Taiwan", "Ovalle, Chile",
+            "Sola, Vanuatu", "Ndoi Island, Fiji", "Lata, Solomon Islands", "Kaikoura, New Zealand",
+            "Norcia, Italy", "Tobelo, Indonesia", "Pahala, Hawaii", "Cantwell, Alaska", "The Geysers, CA"
+    };
+
+    private static final String[] UNNAMED_REGIONS = {
+            "Fiji region", "South of the Fiji Islands", "Mid-Atlantic Ridge", "central East Pacific Rise",
+            "Kermadec Islands region", "off the coast of Oregon"
+    };
+
+    private static final String[] NETWORKS = {"us", "ak", "nc", "ci", "hv", "uw", "nn"};
+
+    private FixtureGenerator() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        File directory = new File(args.length > 0 ? args[0] : "src/jmh/resources/fixtures");
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        for (int features : Fixtures.FEATURE_COUNTS) {
+            write(new File(directory, Fixtures.fileName(features)), features);
+        }
+    }
+
+    private static void write(File file, int features) throws IOException {
+        Random random = new Random(SEED + features);
+        long generated = 1479513600000L;
+        Writer writer = new OutputStreamWriter(
+                new GZIPOutputStream(new FileOutputStream(file)), Charset.forName("UTF-8"));
+        try {
+            writer.write("{\"type\":\"FeatureCollection\",\"metadata\":{\"generated\":" + generated
+                    + ",\"url\":\"http://earthquake.usgs.gov/fdsnws/event/1/query?format=geojson&limit="
+                    + features + "\",\"title\":\"USGS Earthquakes\",\"status\":200,\"api\":\"1.5.2\","
+                    + "\"limit\":" + features + ",\"offset\":1,\"count\":" + features + "},\"features\":[");
+            long time = generated;
+            for (int i = 0; i < features; i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                time -= 1000L + (long) (random.nextDouble() * 600000L);
+                writeFeature(writer, random, time);
+            }
+            writer.write("],\"bbox\":[-179.9,-62.3,-3.9,179.9,84.1,660.5]}");
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static void writeFeature(Writer writer, Random random, long time) throws IOException {
+        String network = NETWORKS[random.nextInt(NETWORKS.length)];
+        String code = String.format(Locale.US, "%08d", random.nextInt(100000000));
+        String id = network + code;
+        double magnitude = Math.round((2.5 + random.nextDouble() * random.nextDouble() * 6.5) * 10) / 10.0;
+        String place;
+        if (random.nextInt(8) == 0) {
+            place = UNNAMED_REGIONS[random.nextInt(UNNAMED_REGIONS.length)];
+        } else {
+            place = (1 + random.nextInt(150)) + "km " + DIRECTIONS[random.nextInt(DIRECTIONS.length)]
+                    + " of " + REGIONS[random.nextInt(REGIONS.length)];
+        }
+        long updated = time + (long) (random.nextDouble() * 86400000L);
+        double longitude = -180 + random.nextDouble() * 360;
+        double latitude = -70 + random.nextDouble() * 140;
+        double depth = random.nextDouble() * 600;
+
+        writer.write(String.format(Locale.US,
+                "{\"type\":\"Feature\",\"properties\":{\"mag\":%.1f,\"place\":\"%s\",\"time\":%d,"
+                        + "\"updated\":%d,\"tz\":%d,\"url\":\"http://earthquake.usgs.gov/earthquakes/eventpage/%s\","
+                        + "\"detail\":\"http://earthquake.usgs.gov/fdsnws/event/1/query?eventid=%s&format=geojson\","
+                        + "\"felt\":%s,\"cdi\":%s,\"mmi\":%s,\"alert\":%s,\"status\":\"reviewed\",\"tsunami\":%d,"
+                        + "\"sig\":%d,\"net\":\"%s\",\"code\":\"%s\",\"ids\":\",%s,\",\"sources\":\",%s,\","
+                        + "\"types\":\",geoserve,origin,phase-data,\",\"nst\":%s,\"dmin\":%.3f,\"rms\":%.2f,"
+                        + "\"gap\":%d,\"magType\":\"%s\",\"type\":\"earthquake\",\"title\":\"M %.1f - %s\"},"
+                        + "\"geometry\":{\"type\":\"Point\",\"coordinates\":[%.4f,%.4f,%.2f]},\"id\":\"%s\"}",
+                magnitude, place, time, updated, -600 + random.nextInt(25) * 60, id, id,
+                random.nextInt(3) == 0 ? String.valueOf(random.nextInt(500)) : "null",
+                random.nextInt(3) == 0 ? String.format(Locale.US, "%.1f", random.nextDouble() * 8) : "null",
+                magnitude >= 5 ? String.format(Locale.US, "%.2f", random.nextDouble() * 8) : "null",
+                magnitude >= 6 ? "\"green\"" : "null",
+                magnitude >= 7 ? 1 : 0,
+                (int) (magnitude * magnitude * 20), network, code, id, network,
+                random.nextInt(4) == 0 ? "null" : String.valueOf(random.nextInt(200)),
+                random.nextDouble() * 20, random.nextDouble() * 2, random.nextInt(360),
+                magnitude >= 4.5 ? "mww" : "mb", magnitude, place,
+                longitude, latitude, depth, id));
+    }
+}
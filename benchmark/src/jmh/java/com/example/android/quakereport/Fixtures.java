@@ -0,0 +1,75 @@
+package com.example.android.quakereport;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Access to the checked-in USGS GeoJSON fixtures in src/jmh/resources/fixtures.
+ */
+final class Fixtures {
+
+    /**
+     * Number of features in each fixture
+     */
+    static final int[] FEATURE_COUNTS = {100, 1000, 10000, 20000};
+
+    private Fixtures() {
+    }
+
+    static String fileName(int features) {
+        return "usgs_" + features + ".geojson.gz";
+    }
+
+    /**
+     * Reads the decompressed response body of the fixture with the given number of features
+     */
+    static byte[] load(int features) throws IOException {
+        InputStream inputStream = Fixtures.class.getResourceAsStream("/fixtures/" + fileName(features));
+        if (inputStream == null) {
+            throw new IOException("Missing fixture " + fileName(features) + ", run generateFixtures");
+        }
+        try {
+            InputStream gzipStream = new GZIPInputStream(inputStream);
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = gzipStream.read(buffer)) != -1) {
+                output.write(buffer, 0, read);
+            }
+            return output.toByteArray();
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    /**
+     * Writes earthquakes as the body of a USGS "format=csv" response, with every column USGS
+     * sends and the ones the app does not read left empty
+     */
+    static byte[] toCsv(List<Earthquake> earthquakes) {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        StringBuilder csv = new StringBuilder("time,latitude,longitude,depth,mag,magType,nst,gap,dmin,rms,"
+                + "net,id,updated,place,type,horizontalError,depthError,magError,magNst,status,"
+                + "locationSource,magSource\n");
+        for (Earthquake earthquake : earthquakes) {
+            csv.append(format.format(new Date(earthquake.getTimeInMilliseconds()))).append(',')
+                    .append(earthquake.getLatitude()).append(',')
+                    .append(earthquake.getLongitude()).append(',')
+                    .append(earthquake.getDepth()).append(',')
+                    .append(earthquake.getMagnitude()).append(",ml,,,,,us,")
+                    .append(earthquake.getId()).append(',')
+                    .append(format.format(new Date(earthquake.getUpdatedInMilliseconds()))).append(",\"")
+                    .append(earthquake.getLocation().replace("\"", "\"\"")).append("\",earthquake,,,,,reviewed,us,us\n");
+        }
+        return csv.toString().getBytes(Charset.forName("UTF-8"));
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.android.quakereport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.text.DecimalFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the formatting behind each list row.
+ * <p>
+ * {@link #buildTable()} is what the loader does once per result with {@link EarthquakeFormatter}.
+ * {@link #formatPerRow(Blackhole)} repeats the work EarthquakeAdapter.getView used to do for
+ * every bind (a new DecimalFormat, two SimpleDateFormats, a Date and a String.split per row),
+ * kept as a baseline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class FormatBenchmark {
+
+    private static final int[] MAGNITUDE_COLORS = {
+            0xFF4A7BA7, 0xFF4A7BA7, 0xFF04B4B3, 0xFF10CAC9, 0xFFF5A623, 0xFFFF7D50,
+            0xFFFC6644, 0xFFE75F40, 0xFFE13A20, 0xFFD93218, 0xFFC03823
+    };
+
+    private static final String LOCATION_SEPARATOR = "of ";
+    private static final String NEAR_THE = "Near the";
+
+    @Param({"100", "1000", "10000", "20000"})
+    public int features;
+
+    private List<Earthquake> mEarthquakes;
+
+    @Setup
+    public void parseFixture() throws IOException {
+        mEarthquakes = QueryUtils.readFromStream(new ByteArrayInputStream(Fixtures.load(features)));
+    }
+
+    @Benchmark
+    public EarthquakeTable buildTable() {
+        EarthquakeTable.Builder builder = new EarthquakeTable.Builder(mEarthquakes.size());
+        for (Earthquake earthquake : mEarthquakes) {
+            builder.add(earthquake);
+        }
+        return builder.build(new EarthquakeFormatter(MAGNITUDE_COLORS, NEAR_THE));
+    }
+
+    @Benchmark
+    public void formatPerRow(Blackhole blackhole) {
+        for (Earthquake earthquake : mEarthquakes) {
+            DecimalFormat formatter = new DecimalFormat("0.0");
+            blackhole.consume(formatter.format(earthquake.getMagnitude()));
+
+            String location = earthquake.getLocation();
+            if (location.contains(LOCATION_SEPARATOR)) {
+                String[] parts = location.split(LOCATION_SEPARATOR);
+                blackhole.consume(parts[0] + LOCATION_SEPARATOR);
+                blackhole.consume(parts[1]);
+            } else {
+                blackhole.consume(NEAR_THE);
+                blackhole.consume(location);
+            }
+
+            Date dateObject = new Date(earthquake.getTimeInMilliseconds());
+            blackhole.consume(new SimpleDateFormat("LLL dd, yyyy").format(dateObject));
+            blackhole.consume(new SimpleDateFormat("h:mm a").format(dateObject));
+        }
+    }
+}
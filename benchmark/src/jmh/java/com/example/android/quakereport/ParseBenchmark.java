@@ -0,0 +1,89 @@
+package com.example.android.quakereport;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures turning a USGS response body into {@link Earthquake} objects.
+ * <p>
+ * {@link #streamingParse()} is the path the app uses for GeoJSON and {@link #csvParse()} the
+ * one for the same events downloaded as CSV. {@link #stringAndDomParse()} is the previous
+ * approach of reading the whole body into a String and walking an org.json tree, kept as a
+ * baseline to compare parser strategies against. Run with the gc profiler (the
+ * default in build.gradle) to see allocation per operation next to the time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ParseBenchmark {
+
+    @Param({"100", "1000", "10000", "20000"})
+    public int features;
+
+    private byte[] mResponse;
+    private byte[] mCsvResponse;
+
+    @Setup
+    public void loadFixture() throws IOException {
+        mResponse = Fixtures.load(features);
+        mCsvResponse = Fixtures.toCsv(QueryUtils.readFromStream(new ByteArrayInputStream(mResponse)));
+    }
+
+    @Benchmark
+    public List<Earthquake> streamingParse() throws IOException {
+        return QueryUtils.readFromStream(new ByteArrayInputStream(mResponse));
+    }
+
+    @Benchmark
+    public List<Earthquake> csvParse() throws IOException {
+        return QueryUtils.readFromStream(new ByteArrayInputStream(mCsvResponse), QueryUtils.FORMAT_CSV,
+                new QueryUtils.Validators(null, null), null, null);
+    }
+
+    @Benchmark
+    public List<Earthquake> stringAndDomParse() throws Exception {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new ByteArrayInputStream(mResponse), Charset.forName("UTF-8")));
+        StringBuilder output = new StringBuilder();
+        String line = reader.readLine();
+        while (line != null) {
+            output.append(line);
+            line = reader.readLine();
+        }
+
+        List<Earthquake> earthquakeList = new ArrayList<>();
+        JSONArray featuresArray = new JSONObject(output.toString()).getJSONArray("features");
+        for (int i = 0; i < featuresArray.length(); i++) {
+            JSONObject currentFeature = featuresArray.getJSONObject(i);
+            JSONObject properties = currentFeature.getJSONObject("properties");
+            JSONArray coordinates = currentFeature.getJSONObject("geometry").getJSONArray("coordinates");
+            earthquakeList.add(new Earthquake(currentFeature.getString("id"),
+                    properties.getDouble("mag"),
+                    properties.getString("place"),
+                    properties.getLong("time"),
+                    properties.getString("url"),
+                    properties.getLong("updated"),
+                    coordinates.getDouble(1),
+                    coordinates.getDouble(0),
+                    coordinates.getDouble(2)));
+        }
+        return earthquakeList;
+    }
+}
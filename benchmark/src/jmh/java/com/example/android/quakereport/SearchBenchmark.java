@@ -0,0 +1,86 @@
+package com.example.android.quakereport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a type-ahead search of {@link EarthquakePlaceIndex} over 100,000 earthquakes, built
+ * from copies of the largest fixture.
+ * <p>
+ * {@link #search()} is one key typed in the search screen. {@link #scanPlaces()} answers the
+ * same query by testing every place name, as a search without the index would, kept as a
+ * baseline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SearchBenchmark {
+
+    private static final int COPIES = 5;
+
+    private static final int LIMIT = 50;
+
+    @Param({"a", "anch", "alaska anc", "ca"})
+    public String query;
+
+    private EarthquakePlaceIndex mIndex;
+    private String[] mPlaces;
+
+    @Setup
+    public void buildIndex() throws IOException {
+        List<Earthquake> earthquakes = QueryUtils.readFromStream(new ByteArrayInputStream(Fixtures.load(20000)));
+        mIndex = new EarthquakePlaceIndex();
+        mPlaces = new String[earthquakes.size() * COPIES];
+        for (int copy = 0; copy < COPIES; copy++) {
+            for (int i = 0; i < earthquakes.size(); i++) {
+                Earthquake earthquake = earthquakes.get(i);
+                mIndex.put(earthquake.getId() + "-" + copy, earthquake.getLocation(),
+                        earthquake.getTimeInMilliseconds() - copy);
+                mPlaces[copy * earthquakes.size() + i] = earthquake.getLocation();
+            }
+        }
+    }
+
+    @Benchmark
+    public EarthquakePlaceIndex.Matches search() {
+        return mIndex.search(query, LIMIT);
+    }
+
+    @Benchmark
+    public int scanPlaces() {
+        List<String> prefixes = EarthquakePlaceIndex.tokenize(query);
+        int count = 0;
+        for (String place : mPlaces) {
+            List<String> words = EarthquakePlaceIndex.tokenize(place);
+            boolean matches = true;
+            for (String prefix : prefixes) {
+                boolean found = false;
+                for (String word : words) {
+                    if (word.startsWith(prefix)) {
+                        found = true;
+                        break;
+                    }
+                }
+                if (!found) {
+                    matches = false;
+                    break;
+                }
+            }
+            if (matches) {
+                count++;
+            }
+        }
+        return count;
+    }
+}